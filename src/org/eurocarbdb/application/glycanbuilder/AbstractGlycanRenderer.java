@@ -13,6 +13,7 @@ import static org.eurocarbdb.application.glycanbuilder.Geometry.width;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
@@ -230,16 +231,76 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 			paintComposition(paintable, structure.getRoot(), structure.getBracket(),
 					selected_residues, posManager, bboxManager);
 		else {
+			Rectangle clip = getClipBounds(paintable);
 			paintResidue(paintable, structure.getRoot(show_redend),
 					selected_residues, selected_linkages, active_residues,
-					posManager, bboxManager);
+					posManager, bboxManager, clip);
 			paintBracket(paintable, structure.getBracket(), selected_residues,
-					selected_linkages, active_residues, posManager, bboxManager);
+					selected_linkages, active_residues, posManager, bboxManager,
+					clip);
 		}
 		if (show_mass)
 			displayMass(paintable, structure, show_redend, bboxManager);
 	}
 
+	/**
+	 * Return the bounds of the clipping area of the paintable, or
+	 * <code>null</code> if all the residues must be painted.
+	 */
+	protected Rectangle getClipBounds(Paintable paintable) {
+		Graphics2D g2d = paintable.getGraphics2D();
+		return (g2d != null) ? g2d.getClipBounds() : null;
+	}
+
+	/**
+	 * Return <code>true</code> if the subtree rooted at a residue can be
+	 * visible in the clipping area. The bounding box of the subtree is
+	 * expanded by the space between residues to account for the linkage
+	 * information and the outline of the residues.
+	 */
+	protected boolean isVisible(Residue node, Rectangle clip,
+			BBoxManager bboxManager) {
+		if (clip == null)
+			return true;
+
+		Rectangle bbox = bboxManager.getComplete(node);
+		if (bbox == null)
+			return true;
+
+		int margin = theGraphicOptions.NODE_SPACE;
+		return bbox.x - margin < clip.x + clip.width
+				&& bbox.x + bbox.width + margin > clip.x
+				&& bbox.y - margin < clip.y + clip.height
+				&& bbox.y + bbox.height + margin > clip.y;
+	}
+
+	/**
+	 * Return <code>true</code> if a structure can be visible in the clipping
+	 * area. The bounding box of the structure is expanded by the space
+	 * between residues; the mass text is below the structure and can be
+	 * wider than it, so it is assumed to extend to the right of the clip.
+	 */
+	public boolean isVisible(Glycan structure, Rectangle clip,
+			boolean show_mass, boolean show_redend, BBoxManager bboxManager) {
+		if (clip == null)
+			return true;
+
+		Rectangle bbox = bboxManager.getBBox(structure, show_redend);
+		if (bbox == null)
+			return true;
+
+		int margin = theGraphicOptions.NODE_SPACE;
+		int right = right(bbox) + margin;
+		int bottom = bottom(bbox) + margin;
+		if (show_mass) {
+			right = Integer.MAX_VALUE;
+			bottom += theGraphicOptions.MASS_TEXT_SPACE + 2
+					* theGraphicOptions.MASS_TEXT_SIZE;
+		}
+		return left(bbox) - margin < right(clip) && right > left(clip)
+				&& top(bbox) - margin < bottom(clip) && bottom > top(clip);
+	}
+
 	abstract protected void displayMass(Paintable paintable, Glycan structure,boolean show_redend, BBoxManager bboxManager);
 
 	protected String getMassText(Glycan structure) {
@@ -269,7 +330,24 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 			HashSet<Linkage> selected_linkages,
 			Collection<Residue> active_residues, PositionManager posManager,
 			BBoxManager bboxManager) {
-		if (node == null)
+		paintResidue(paintable, node, selected_residues, selected_linkages,
+				active_residues, posManager, bboxManager, null);
+	}
+
+	/**
+	 * Paint the subtree rooted at a residue. The subtrees that are outside
+	 * the clipping area are skipped.
+	 * 
+	 * @param clip
+	 *            the bounds of the clipping area, or <code>null</code> to
+	 *            paint all the residues
+	 */
+	protected void paintResidue(Paintable paintable, Residue node,
+			HashSet<Residue> selected_residues,
+			HashSet<Linkage> selected_linkages,
+			Collection<Residue> active_residues, PositionManager posManager,
+			BBoxManager bboxManager, Rectangle clip) {
+		if (node == null || !isVisible(node, clip, bboxManager))
 			return;
 
 		Rectangle parent_bbox = bboxManager.getParent(node);
@@ -308,7 +386,8 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 		// paint children
 		for (Linkage link : node.getChildrenLinkages())
 			paintResidue(paintable, link.getChildResidue(), selected_residues,
-					selected_linkages, active_residues, posManager, bboxManager);
+					selected_linkages, active_residues, posManager, bboxManager,
+					clip);
 
 		// paint info
 		for (Linkage link : node.getChildrenLinkages()) {
@@ -387,6 +466,98 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 		return all_bbox;
 	}
 
+	/**
+	 * Compute the bounding boxes of all the residues of a list of structures
+	 * reusing the layout computed by the previous call for the structures
+	 * that have not been modified. The bounding boxes of these structures are
+	 * only moved to their new position, while the other structures are laid
+	 * out again. All the structures are laid out again if the graphic
+	 * options, the dictionaries or the managers have changed since the
+	 * previous call.
+	 * 
+	 * @param layoutCache
+	 *            the layouts of the previous call, or <code>null</code> to
+	 *            lay out all the structures
+	 * @return the bounding box of all the structures
+	 * @see LayoutCache
+	 */
+	public Rectangle computeBoundingBoxes(Collection<Glycan> structures,
+			boolean show_masses, boolean show_redend,
+			PositionManager posManager, BBoxManager bboxManager,
+			LayoutCache layoutCache) {
+		if (layoutCache == null)
+			return computeBoundingBoxes(structures, show_masses, show_redend,
+					posManager, bboxManager, true);
+
+		if (layoutCache.checkSettings(getLayoutSettings(show_redend,
+				posManager, bboxManager))) {
+			// discard the layouts of the modified structures
+			layoutCache.removeInvalid(structures, posManager, bboxManager);
+		} else {
+			posManager.reset();
+			bboxManager.reset();
+		}
+
+		// compute bounding boxes;
+		Rectangle all_bbox = new Rectangle(theGraphicOptions.MARGIN_TOP,theGraphicOptions.MARGIN_LEFT, 0, 0);
+		int cur_top = theGraphicOptions.MARGIN_TOP;
+		int cur_left=theGraphicOptions.MARGIN_LEFT;
+		for (Glycan structure : structures) {
+			// reuse or compute glycan bbox
+			Rectangle glycan_bbox = layoutCache.place(structure, cur_left,
+					cur_top, bboxManager);
+			if (glycan_bbox == null)
+				glycan_bbox = layoutCache.layout(this, structure, cur_left,
+						cur_top, show_redend, posManager, bboxManager);
+
+			// the mass depends also on the mass options
+			if (show_masses && layoutCache.isLaidOut(structure))
+				glycan_bbox = addMassBBox(structure, glycan_bbox);
+
+			all_bbox = Geometry.union(all_bbox, glycan_bbox);
+			
+			if(theRendererMode==GlycanRendererMode.DRAWING){
+				cur_top=Geometry.bottom(all_bbox) + theGraphicOptions.STRUCTURES_SPACE;
+			}else if(theRendererMode==GlycanRendererMode.TOOLBAR){
+				cur_left=Geometry.right(all_bbox) + theGraphicOptions.STRUCTURES_SPACE;
+			}
+		}
+
+		return all_bbox;
+	}
+
+	/**
+	 * Return the values that determine the layout of a structure apart from
+	 * its residues. The margins and the space between structures only change
+	 * the position of the structures and are not included.
+	 */
+	private Object[] getLayoutSettings(boolean show_redend,
+			PositionManager posManager, BBoxManager bboxManager) {
+		GraphicOptions opt = theGraphicOptions;
+		return new Object[] { opt, opt.NOTATION, opt.DISPLAY, opt.ORIENTATION,
+				opt.SCALE, opt.SHOW_INFO, opt.COLLAPSE_MULTIPLE_ANTENNAE,
+				opt.NODE_SIZE, opt.NODE_FONT_SIZE, opt.NODE_FONT_FACE,
+				opt.COMPOSITION_FONT_SIZE, opt.COMPOSITION_FONT_FACE,
+				opt.LINKAGE_INFO_SIZE, opt.LINKAGE_INFO_FONT_FACE,
+				opt.NODE_SPACE, opt.NODE_SUB_SPACE, theResidueRenderer,
+				theLinkageRenderer, theResiduePlacementDictionary,
+				theResidueStyleDictionary, theLinkageStyleDictionary,
+				theRendererMode, show_redend, posManager, bboxManager };
+	}
+
+	/**
+	 * Return the union of the bounding box of a structure with the bounding
+	 * box of the text displaying its mass.
+	 */
+	protected Rectangle addMassBBox(Glycan structure, Rectangle bbox) {
+		Dimension d = textBounds(getMassText(structure),
+				theGraphicOptions.MASS_TEXT_FONT_FACE,
+				theGraphicOptions.MASS_TEXT_SIZE);
+		Rectangle text_bbox = new Rectangle(bbox.x, bottom(bbox)
+				+ theGraphicOptions.MASS_TEXT_SPACE, d.width, d.height);
+		return union(bbox, text_bbox);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eurocarbdb.application.glycanbuilder.GlycanRenderer#computeBoundingBoxes(org.eurocarbdb.application.glycanbuilder.Glycan, int, int, boolean, boolean, org.eurocarbdb.application.glycanbuilder.PositionManager, org.eurocarbdb.application.glycanbuilder.BBoxManager)
 	 */
@@ -398,74 +569,82 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 			return new Rectangle(cur_left, cur_top, 0, 0);
 
 		try {
-			bboxManager.setGraphicOptions(theGraphicOptions);
-
-			if (!structure.isEmpty()) {
+			Rectangle bbox = computeStructureBoundingBoxes(structure,
+					cur_left, cur_top, show_redend, posManager, bboxManager);
+			if (bbox != null) {
+				// add masses
+				if (show_mass)
+					bbox = addMassBBox(structure, bbox);
 
-				Residue root, bracket;
-				ResAngle orientation = theGraphicOptions.getOrientationAngle();
+				return bbox;
+			}
+		} catch (Exception e) {
+			LogUtils.report(e);
+		}
+		return new Rectangle(cur_left, cur_top, 0, 0);
+	}
 
-				if (structure.isComposition()) {
-					root = structure.getRoot();
-					bracket = structure.getBracket();
+	/**
+	 * Compute the bounding boxes of all the residues of a structure without
+	 * the mass text.
+	 * 
+	 * @return the bounding box of the structure, or <code>null</code> if the
+	 *         structure is empty
+	 * @throws Exception
+	 *             if the residues cannot be placed
+	 */
+	protected Rectangle computeStructureBoundingBoxes(Glycan structure,
+			int cur_left, int cur_top, boolean show_redend,
+			PositionManager posManager, BBoxManager bboxManager)
+			throws Exception {
+		bboxManager.setGraphicOptions(theGraphicOptions);
 
-					// assign positions
-					assignPositionComposition(root, posManager);
-					assignPositionComposition(bracket, posManager);
+		if (structure.isEmpty())
+			return null;
 
-					// compute bounding boxes
-					computeBoundingBoxesComposition(root, bracket, posManager,
-							bboxManager);
-				} else {
-					root = structure.getRoot(show_redend);
-					bracket = structure.getBracket();
+		Residue root, bracket;
+		ResAngle orientation = theGraphicOptions.getOrientationAngle();
 
-					// assign positions
-					posManager.add(root, new ResAngle(), orientation, false,
-							true);
-					assignPosition(root, false, orientation, root, posManager);
+		if (structure.isComposition()) {
+			root = structure.getRoot();
+			bracket = structure.getBracket();
 
-					posManager.add(bracket, new ResAngle(), orientation, false,
-							true);
-					assignPosition(bracket, false, orientation, bracket,
-							posManager);
-
-					// compute bounding boxes
-					computeBoundingBoxes(root, posManager, bboxManager);
-					computeBoundingBoxesBracket(bracket, root,
-							theGraphicOptions.COLLAPSE_MULTIPLE_ANTENNAE,
-							posManager, bboxManager);
-				}
+			// assign positions
+			assignPositionComposition(root, posManager);
+			assignPositionComposition(bracket, posManager);
 
-				// add bracket bbox
-				Rectangle bbox = union(bboxManager.getComplete(root),
-						bboxManager.getComplete(bracket));
-				bboxManager.setComplete(root, bbox);
+			// compute bounding boxes
+			computeBoundingBoxesComposition(root, bracket, posManager,
+					bboxManager);
+		} else {
+			root = structure.getRoot(show_redend);
+			bracket = structure.getBracket();
 
-				// translate if necessary
-				bboxManager
-						.translate(cur_left - bbox.x, cur_top - bbox.y, root);
-				bboxManager.translate(cur_left - bbox.x, cur_top - bbox.y,
-						bracket);
-				bbox.translate(cur_left - bbox.x, cur_top - bbox.y);
+			// assign positions
+			posManager.add(root, new ResAngle(), orientation, false, true);
+			assignPosition(root, false, orientation, root, posManager);
 
-				// add masses
-				if (show_mass) {
-					Dimension d = textBounds(getMassText(structure),
-							theGraphicOptions.MASS_TEXT_FONT_FACE,
-							theGraphicOptions.MASS_TEXT_SIZE);
-					Rectangle text_bbox = new Rectangle(cur_left, bottom(bbox)
-							+ theGraphicOptions.MASS_TEXT_SPACE, d.width,
-							d.height);
-					bbox = union(bbox, text_bbox);
-				}
+			posManager.add(bracket, new ResAngle(), orientation, false, true);
+			assignPosition(bracket, false, orientation, bracket, posManager);
 
-				return bbox;
-			}
-		} catch (Exception e) {
-			LogUtils.report(e);
+			// compute bounding boxes
+			computeBoundingBoxes(root, posManager, bboxManager);
+			computeBoundingBoxesBracket(bracket, root,
+					theGraphicOptions.COLLAPSE_MULTIPLE_ANTENNAE, posManager,
+					bboxManager);
 		}
-		return new Rectangle(cur_left, cur_top, 0, 0);
+
+		// add bracket bbox
+		Rectangle bbox = union(bboxManager.getComplete(root),
+				bboxManager.getComplete(bracket));
+		bboxManager.setComplete(root, bbox);
+
+		// translate if necessary
+		bboxManager.translate(cur_left - bbox.x, cur_top - bbox.y, root);
+		bboxManager.translate(cur_left - bbox.x, cur_top - bbox.y, bracket);
+		bbox.translate(cur_left - bbox.x, cur_top - bbox.y);
+
+		return bbox;
 	}
 
 	/* (non-Javadoc)
@@ -671,8 +850,9 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 		ResAngle orientation = posManager.getOrientation(root);
 
 		String text = makeCompositionText(root, bracket, orientation, true);
-		Font font = new Font(theGraphicOptions.COMPOSITION_FONT_FACE,
-				Font.PLAIN, theGraphicOptions.COMPOSITION_FONT_SIZE);
+		Font font = FontMetricsCache.getInstance().getFont(
+				theGraphicOptions.COMPOSITION_FONT_FACE,
+				theGraphicOptions.COMPOSITION_FONT_SIZE);
 
 		StyledTextCellRenderer stcr = new StyledTextCellRenderer(false);
 		stcr.getRendererComponent(font, Color.black, Color.white, text);
@@ -1739,6 +1919,23 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 			HashSet<Linkage> selected_linkages,
 			Collection<Residue> active_residues, PositionManager posManager,
 			BBoxManager bboxManager) {
+		paintBracket(paintable, bracket, selected_residues, selected_linkages,
+				active_residues, posManager, bboxManager, null);
+	}
+
+	/**
+	 * Paint the bracket and the antennae. The antennae that are outside the
+	 * clipping area are skipped.
+	 * 
+	 * @param clip
+	 *            the bounds of the clipping area, or <code>null</code> to
+	 *            paint all the residues
+	 */
+	protected void paintBracket(Paintable paintable, Residue bracket,
+			HashSet<Residue> selected_residues,
+			HashSet<Linkage> selected_linkages,
+			Collection<Residue> active_residues, PositionManager posManager,
+			BBoxManager bboxManager, Rectangle clip) {
 		if (bracket == null)
 			return;
 
@@ -1779,7 +1976,7 @@ public abstract class AbstractGlycanRenderer implements GlycanRenderer{
 
 				// paint child
 				paintResidue(paintable, child, selected_residues, selected_linkages,
-						active_residues, posManager, bboxManager);
+						active_residues, posManager, bboxManager, clip);
 
 				// paint info
 				if (!posManager.isOnBorder(child))
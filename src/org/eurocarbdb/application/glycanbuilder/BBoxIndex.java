@@ -0,0 +1,301 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.*;
+
+import static org.eurocarbdb.application.glycanbuilder.Geometry.*;
+
+/**
+   Spatial index over the bounding boxes of the residues, used to
+   find the residues at a given position without scanning all the
+   bounding boxes of the display area. The index is an R-tree packed
+   with the Sort-Tile-Recursive method: it is built once from a
+   snapshot of the bounding boxes and cannot be modified, a new index
+   must be created after the bounding boxes have changed.
+
+   @see BBoxManager
+ */
+
+class BBoxIndex {
+
+	/** Direction of the nearest residue: above the reference. */
+	public static final int UP = 0;
+	/** Direction of the nearest residue: below the reference. */
+	public static final int DOWN = 1;
+	/** Direction of the nearest residue: on the left of the reference. */
+	public static final int LEFT = 2;
+	/** Direction of the nearest residue: on the right of the reference. */
+	public static final int RIGHT = 3;
+
+	private static final int NODE_CAPACITY = 16;
+
+	private static final Comparator<Node> BY_X = new Comparator<Node>() {
+		public int compare(Node a, Node b) {
+			return midx(a.bounds)-midx(b.bounds);
+		}
+	};
+
+	private static final Comparator<Node> BY_Y = new Comparator<Node>() {
+		public int compare(Node a, Node b) {
+			return midy(a.bounds)-midy(b.bounds);
+		}
+	};
+
+	private Node root = null;
+	private int size = 0;
+
+	/**
+	   Create a new index containing a copy of the given bounding
+	   boxes.
+	 */
+	public BBoxIndex(Map<Residue,Rectangle> bboxes) {
+		ArrayList<Node> nodes = new ArrayList<Node>(bboxes.size());
+		for( Map.Entry<Residue,Rectangle> e : bboxes.entrySet() ) {
+			if( e.getKey()!=null && e.getValue()!=null )
+				nodes.add(new Node(e.getKey(),new Rectangle(e.getValue())));
+		}
+		size = bboxes.size();
+
+		// the root is never a leaf, even with a single bounding box
+		if( !nodes.isEmpty() ) {
+			do {
+				nodes = pack(nodes);
+			} while( nodes.size()>1 );
+			root = nodes.get(0);
+		}
+	}
+
+	/**
+	   Return the number of bounding boxes in the map from which the
+	   index was created.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	   Return the residues whose bounding boxes contain the point.
+	 */
+	public Vector<Residue> getNodesAtPoint(Point p) {
+		Vector<Residue> ret = new Vector<Residue>();
+		if( root!=null && p!=null )
+			getNodesAtPoint(root,p,ret);
+		return ret;
+	}
+
+	private void getNodesAtPoint(Node node, Point p, Vector<Residue> buffer) {
+		if( !node.bounds.contains(p) )
+			return;
+
+		if( node.residue!=null )
+			buffer.add(node.residue);
+		else {
+			for( Node child : node.children )
+				getNodesAtPoint(child,p,buffer);
+		}
+	}
+
+	/**
+	   Return the residues whose bounding boxes intersect the given
+	   rectangle.
+	 */
+	public Vector<Residue> getNodesInside(Rectangle r) {
+		Vector<Residue> ret = new Vector<Residue>();
+		if( root!=null && r!=null )
+			getNodesInside(root,r,ret);
+		return ret;
+	}
+
+	private void getNodesInside(Node node, Rectangle r, Vector<Residue> buffer) {
+		if( !r.intersects(node.bounds) )
+			return;
+
+		if( node.residue!=null )
+			buffer.add(node.residue);
+		else {
+			for( Node child : node.children )
+				getNodesInside(child,r,buffer);
+		}
+	}
+
+	/**
+	   Return the residue whose bounding box is the nearest to the
+	   given one among those in the specified direction. The distance
+	   is measured between the centers of the bounding boxes; ties are
+	   resolved in favour of the leftmost residue when moving up or
+	   down and of the topmost residue when moving left or right.
+
+	   @param cur_rect
+	            the bounding box of the reference residue
+	   @param direction
+	            one of {@link #UP}, {@link #DOWN}, {@link #LEFT} or
+	            {@link #RIGHT}
+	 */
+	public Residue getNearest(Rectangle cur_rect, int direction) {
+		if( root==null || cur_rect==null )
+			return null;
+
+		// visit the tree in order of distance, the distance of a node
+		// is a lower bound of the distance of all its residues
+		Point center = center(cur_rect);
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(root,center,cur_rect));
+
+		Residue best_node = null;
+		Rectangle best_rect = null;
+		double best_dist = 0.;
+		while( !queue.isEmpty() ) {
+			Candidate c = queue.poll();
+			if( best_node!=null && c.dist>best_dist )
+				break;
+
+			Node node = c.node;
+			if( node.residue!=null ) {
+				if( best_node==null || c.dist<best_dist || isBefore(node.bounds,best_rect,direction) ) {
+					best_node = node.residue;
+					best_rect = node.bounds;
+					best_dist = c.dist;
+				}
+			}
+			else {
+				for( Node child : node.children ) {
+					if( child.residue!=null ) {
+						if( isInDirection(child.bounds,cur_rect,direction) )
+							queue.add(new Candidate(child,center,cur_rect));
+					}
+					else if( mayBeInDirection(child.bounds,center,direction) )
+						queue.add(new Candidate(child,center,cur_rect));
+				}
+			}
+		}
+		return best_node;
+	}
+
+	static private boolean isInDirection(Rectangle nav_rect, Rectangle cur_rect, int direction) {
+		if( direction==UP )
+			return isUp(nav_rect,cur_rect);
+		if( direction==DOWN )
+			return isDown(nav_rect,cur_rect);
+		if( direction==LEFT )
+			return isLeft(nav_rect,cur_rect);
+		return isRight(nav_rect,cur_rect);
+	}
+
+	static private boolean isBefore(Rectangle nav_rect, Rectangle best_rect, int direction) {
+		if( direction==UP || direction==DOWN )
+			return best_rect.x>nav_rect.x;
+		return best_rect.y>nav_rect.y;
+	}
+
+	/**
+	   Return <code>false</code> if none of the centers of the
+	   bounding boxes contained in the area can be in the given
+	   direction from the reference point.
+	 */
+	static private boolean mayBeInDirection(Rectangle bounds, Point center, int direction) {
+		if( direction==UP )
+			return (center.y-bounds.y) > distance1D(center.x,bounds.x,bounds.x+bounds.width);
+		if( direction==DOWN )
+			return (bounds.y+bounds.height-center.y) > distance1D(center.x,bounds.x,bounds.x+bounds.width);
+		if( direction==LEFT )
+			return (center.x-bounds.x) > distance1D(center.y,bounds.y,bounds.y+bounds.height);
+		return (bounds.x+bounds.width-center.x) > distance1D(center.y,bounds.y,bounds.y+bounds.height);
+	}
+
+	static private int distance1D(int v, int min, int max) {
+		if( v<min )
+			return min-v;
+		if( v>max )
+			return v-max;
+		return 0;
+	}
+
+	/**
+	   Group the nodes into parents of at most {@link #NODE_CAPACITY}
+	   children: the nodes are sorted into vertical slices by their
+	   horizontal position and each slice is divided into parents by
+	   the vertical position of the nodes.
+	 */
+	static private ArrayList<Node> pack(ArrayList<Node> nodes) {
+		int no_parents = (nodes.size()+NODE_CAPACITY-1)/NODE_CAPACITY;
+		int no_slices = (int)Math.ceil(Math.sqrt(no_parents));
+		int slice_size = no_slices*NODE_CAPACITY;
+
+		ArrayList<Node> ret = new ArrayList<Node>(no_parents);
+		Collections.sort(nodes,BY_X);
+		for( int s=0; s<nodes.size(); s+=slice_size ) {
+			List<Node> slice = nodes.subList(s,Math.min(s+slice_size,nodes.size()));
+			Collections.sort(slice,BY_Y);
+			for( int i=0; i<slice.size(); i+=NODE_CAPACITY )
+				ret.add(new Node(slice.subList(i,Math.min(i+NODE_CAPACITY,slice.size()))));
+		}
+		return ret;
+	}
+
+	/**
+	   A node of the tree: either the bounding box of a residue or
+	   the area covered by a group of nodes.
+	 */
+	static private class Node {
+		Rectangle bounds;
+		Residue residue = null;
+		Node[] children = null;
+
+		Node(Residue _residue, Rectangle _bounds) {
+			residue = _residue;
+			bounds = _bounds;
+		}
+
+		Node(List<Node> _children) {
+			children = _children.toArray(new Node[_children.size()]);
+			bounds = new Rectangle(children[0].bounds);
+			for( int i=1; i<children.length; i++ )
+				bounds.add(children[i].bounds);
+		}
+	}
+
+	/**
+	   A node waiting to be visited during the search of the nearest
+	   residue, sorted by distance from the reference.
+	 */
+	static private class Candidate implements Comparable<Candidate> {
+		Node node;
+		double dist;
+
+		Candidate(Node _node, Point center, Rectangle cur_rect) {
+			node = _node;
+			if( node.residue!=null )
+				dist = distance(node.bounds,cur_rect);
+			else {
+				double dx = distance1D(center.x,node.bounds.x,node.bounds.x+node.bounds.width);
+				double dy = distance1D(center.y,node.bounds.y,node.bounds.y+node.bounds.height);
+				dist = Math.sqrt(dx*dx+dy*dy);
+			}
+		}
+
+		public int compareTo(Candidate other) {
+			return Double.compare(dist,other.dist);
+		}
+	}
+}
@@ -30,7 +30,11 @@ import static org.eurocarbdb.application.glycanbuilder.Geometry.*;
 /**
  * Objects of this class are used to compute and store the bounding box of a
  * residue. The bounding boxes are used to identify the position of a residue in
- * the display area.
+ * the display area. The residues at a given position are found using a spatial
+ * index of the bounding boxes, which is built when needed and discarded when
+ * the bounding boxes are modified; the index must be discarded with
+ * {@link #invalidateIndex} after modifying the maps of bounding boxes
+ * directly.
  * 
  * @see GlycanRendererAWT
  * @see ResidueRendererAWT
@@ -49,6 +53,8 @@ public class BBoxManager {
 
 	public HashMap<Residue, Vector<Residue>> linked_residues;
 
+	private BBoxIndex theIndex = null;
+
 	//
 
 	/**
@@ -100,6 +106,37 @@ public class BBoxManager {
 		support_bboxes.clear();
 
 		linked_residues.clear();
+		theIndex = null;
+	}
+
+	/**
+	 * Remove all the bounding boxes of a residue and the list of residues
+	 * linked to it.
+	 */
+	public void remove(Residue node) {
+		parent_bboxes.remove(node);
+		current_bboxes.remove(node);
+		border_bboxes.remove(node);
+		complete_bboxes.remove(node);
+		support_bboxes.remove(node);
+
+		linked_residues.remove(node);
+		theIndex = null;
+	}
+
+	/**
+	 * Discard the spatial index of the bounding boxes. Must be called after
+	 * modifying the maps of bounding boxes without using the methods of this
+	 * class.
+	 */
+	public void invalidateIndex() {
+		theIndex = null;
+	}
+
+	private BBoxIndex getIndex() {
+		if (theIndex == null || theIndex.size() != current_bboxes.size())
+			theIndex = new BBoxIndex(current_bboxes);
+		return theIndex;
 	}
 
 	/**
@@ -201,8 +238,10 @@ public class BBoxManager {
 	 * Set the bounding box of the residue.
 	 */
 	public void setCurrent(Residue node, Rectangle bbox) {
-		if (node != null && bbox != null)
+		if (node != null && bbox != null) {
 			current_bboxes.put(node, new Rectangle(bbox));
+			theIndex = null;
+		}
 	}
 
 	/**
@@ -279,13 +318,18 @@ public class BBoxManager {
 		if (p == null)
 			return null;
 
-		for (Iterator<Map.Entry<Residue, Rectangle>> i = current_bboxes
-				.entrySet().iterator(); i.hasNext();) {
-			Map.Entry<Residue, Rectangle> e = i.next();
-			if (e.getValue().contains(p))
-				return e.getKey();
-		}
-		return null;
+		Vector<Residue> nodes = getIndex().getNodesAtPoint(p);
+		return nodes.isEmpty() ? null : nodes.firstElement();
+	}
+
+	/**
+	 * Return all the residues whose bounding boxes contain the point.
+	 */
+	public Vector<Residue> getNodesAtPoint(Point p) {
+		if (p == null)
+			return null;
+
+		return getIndex().getNodesAtPoint(p);
 	}
 
 	/**
@@ -295,15 +339,7 @@ public class BBoxManager {
 		if (r == null)
 			return null;
 
-		Vector<Residue> nodes = new Vector<Residue>();
-		for (Iterator<Map.Entry<Residue, Rectangle>> i = current_bboxes
-				.entrySet().iterator(); i.hasNext();) {
-			Map.Entry<Residue, Rectangle> e = i.next();
-			if (r.intersects(e.getValue()))
-				nodes.add(e.getKey());
-		}
-
-		return nodes;
+		return getIndex().getNodesInside(r);
 	}
 
 	/**
@@ -448,7 +484,9 @@ public class BBoxManager {
 	}
 
 	public Residue getNearestUp(Residue node) {
-		return getNearestUp(node, current_bboxes.keySet().iterator());
+		if (node == null)
+			return null;
+		return getIndex().getNearest(getCurrent(node), BBoxIndex.UP);
 	}
 
 	public Residue getNearestUp(Residue node, Collection<Residue> brothers) {
@@ -480,7 +518,9 @@ public class BBoxManager {
 	}
 
 	public Residue getNearestDown(Residue node) {
-		return getNearestDown(node, current_bboxes.keySet().iterator());
+		if (node == null)
+			return null;
+		return getIndex().getNearest(getCurrent(node), BBoxIndex.DOWN);
 	}
 
 	public Residue getNearestDown(Residue node, Collection<Residue> brothers) {
@@ -512,7 +552,9 @@ public class BBoxManager {
 	}
 
 	public Residue getNearestLeft(Residue node) {
-		return getNearestLeft(node, current_bboxes.keySet().iterator());
+		if (node == null)
+			return null;
+		return getIndex().getNearest(getCurrent(node), BBoxIndex.LEFT);
 	}
 
 	public Residue getNearestLeft(Residue node, Collection<Residue> brothers) {
@@ -544,7 +586,9 @@ public class BBoxManager {
 	}
 
 	public Residue getNearestRight(Residue node) {
-		return getNearestRight(node, current_bboxes.keySet().iterator());
+		if (node == null)
+			return null;
+		return getIndex().getNearest(getCurrent(node), BBoxIndex.RIGHT);
 	}
 
 	public Residue getNearestRight(Residue node, Collection<Residue> brothers) {
@@ -655,6 +699,7 @@ public class BBoxManager {
 			translate(sx, sy, border_bboxes.get(node));
 			translate(sx, sy, complete_bboxes.get(node));
 			translate(sx, sy, support_bboxes.get(node));
+			theIndex = null;
 
 			for (Iterator<Linkage> i = node.iterator(); i.hasNext();)
 				translate(sx, sy, i.next().getChildResidue());
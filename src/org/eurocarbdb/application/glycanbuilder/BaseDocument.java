@@ -358,9 +358,10 @@ public abstract class BaseDocument {
     protected String consume(BufferedReader br) throws Exception {
     StringBuilder ret = new StringBuilder();
 
-    int ch;
-    while( (ch = br.read())!=-1 ) 
-        ret.appendCodePoint(ch);
+    char[] buffer = new char[8192];
+    int n;
+    while( (n = br.read(buffer))!=-1 ) 
+        ret.append(buffer,0,n);
 
     return ret.toString();
     }
@@ -0,0 +1,362 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Convert a stream of structures from one sequence format to another
+   without a graphical workspace. The records of the input stream are
+   split as done by {@link GlycanStreamReader}, and each record is
+   parsed and written in the output format by a pool of threads
+   sharing the dictionaries loaded by {@link ConvertGWS}. The output
+   records are written in the order of the input records, or as soon
+   as they are converted if the order is not required. The records
+   that cannot be converted are reported to an error writer, with
+   their position in the input stream, and are skipped.
+
+   @see ConvertGWS
+ */
+
+public class BatchConverter {
+
+	private final String input_format;
+	private final String output_format;
+	private MassOptions default_mass_options;
+	private boolean tolerate_unknown = false;
+	private boolean ordered = true;
+	private int no_threads = 0;
+	private Writer errors = null;
+
+	private final Queue<GlycanParser> writers = new ConcurrentLinkedQueue<GlycanParser>();
+
+	/**
+	   Create a new converter.
+	   @param _input_format the identifier of the format of the input
+	   stream
+	   @param _output_format the identifier of the format of the output
+	   stream
+	   @throws Exception if the output format is not valid
+	   @see GlycanParserFactory#getParserForId
+	 */
+	public BatchConverter(String _input_format, String _output_format) throws Exception {
+		input_format = _input_format;
+		output_format = _output_format;
+		default_mass_options = ConvertGWS.getWorkspace().getDefaultMassOptions().clone();
+
+		// check the format
+		writers.add(GlycanParserFactory.getParserForId(output_format));
+	}
+
+	/**
+	   Set the mass options to use for the structures if they are not
+	   specified in their representation.
+	 */
+	public void setDefaultMassOptions(MassOptions mass_opt) {
+		default_mass_options = mass_opt.clone();
+	}
+
+	/**
+	   Set to <code>true</code> to tolerate residues of a type that is
+	   not specified in the dictionary.
+	 */
+	public void setTolerateUnknown(boolean f) {
+		tolerate_unknown = f;
+	}
+
+	/**
+	   Return <code>true</code> if the output records are written in
+	   the order of the input records.
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	   Set to <code>false</code> to write the output records as soon
+	   as they are converted.
+	 */
+	public void setOrdered(boolean f) {
+		ordered = f;
+	}
+
+	/**
+	   Return the number of threads used for the conversion, 0 means
+	   one per available processor.
+	 */
+	public int getNoThreads() {
+		return no_threads;
+	}
+
+	/**
+	   Set the number of threads used for the conversion, 0 means one
+	   per available processor.
+	 */
+	public void setNoThreads(int i) {
+		no_threads = i;
+	}
+
+	/**
+	   Set the writer receiving a line for each record that cannot be
+	   converted, or <code>null</code> to discard the errors.
+	 */
+	public void setErrorWriter(Writer w) {
+		errors = w;
+	}
+
+	/**
+	   Convert all the records of a stream of bytes in the default
+	   character set.
+	   @throws Exception if the streams cannot be read or written
+	 */
+	public Statistics convert(InputStream in, OutputStream out) throws Exception {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+		Statistics ret = convert(new InputStreamReader(in),writer);
+		writer.flush();
+		return ret;
+	}
+
+	/**
+	   Convert all the records of a stream of characters. The streams
+	   are not closed.
+	   @throws Exception if the streams cannot be read or written
+	 */
+	public Statistics convert(Reader in, Writer out) throws Exception {
+		Statistics stats = new Statistics();
+		final GlycanStreamReader reader = new GlycanStreamReader(in,input_format,default_mass_options,tolerate_unknown);
+
+		int threads = (no_threads>0) ?no_threads :Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads,new GlycanStreamReader.DaemonThreadFactory());
+		CompletionService<Result> completed = new ExecutorCompletionService<Result>(executor);
+		LinkedList<Future<Result>> pending = new LinkedList<Future<Result>>();
+		int no_pending = 0;
+		try {
+			long no_records = 0;
+			for( String record; (record=reader.nextRecord())!=null; ) {
+				// such as the end of line after the last separator
+				if( record.trim().length()==0 )
+					continue;
+
+				final long ind = no_records++;
+				final String text = record;
+				Callable<Result> task = new Callable<Result>() {
+					public Result call() {
+						return convert(reader,ind,text);
+					}
+				};
+				if( ordered )
+					pending.add(executor.submit(task));
+				else
+					completed.submit(task);
+				no_pending++;
+
+				// keep at most two records per thread in memory
+				if( no_pending>=2*threads ) {
+					write(out,(ordered) ?pending.removeFirst().get() :completed.take().get(),stats);
+					no_pending--;
+				}
+			}
+			for( ; no_pending>0; no_pending-- )
+				write(out,(ordered) ?pending.removeFirst().get() :completed.take().get(),stats);
+		}
+		finally {
+			executor.shutdownNow();
+			if( errors!=null )
+				errors.flush();
+		}
+
+		stats.elapsed = System.nanoTime()-stats.start;
+		return stats;
+	}
+
+	private Result convert(GlycanStreamReader reader, long ind, String record) {
+		Result ret = new Result(ind);
+		GlycanParser writer = writers.poll();
+		try {
+			if( writer==null )
+				writer = GlycanParserFactory.getParserForId(output_format);
+
+			Glycan structure = reader.decode(record);
+			if( structure==null || structure.isEmpty() )
+				throw new Exception("Empty structure");
+			ret.output = writer.writeGlycan(structure);
+			if( ret.output==null || ret.output.length()==0 )
+				throw new Exception("Cannot write the structure in " + output_format + " format");
+		}
+		catch(Exception e) {
+			ret.output = null;
+			ret.error = e;
+		}
+		finally {
+			if( writer!=null )
+				writers.add(writer);
+		}
+		return ret;
+	}
+
+	private void write(Writer out, Result result, Statistics stats) throws IOException {
+		stats.no_records++;
+		if( result.error==null ) {
+			out.write(result.output);
+			out.write(output_format.equalsIgnoreCase("gws") ?";\n" :"\n\n");
+			stats.no_converted++;
+			return;
+		}
+
+		stats.no_errors++;
+		if( errors!=null ) {
+			String message = LogUtils.getError(result.error);
+			errors.write("record " + (result.record+1) + ": " + ((message!=null) ?message :result.error.toString()) + "\n");
+		}
+	}
+
+	static private class Result {
+
+		public final long record;
+		public String output = null;
+		public Exception error = null;
+
+		public Result(long _record) {
+			record = _record;
+		}
+	}
+
+	/**
+	   The number of records processed by a conversion and its
+	   duration.
+	 */
+	public static class Statistics {
+
+		private final long start = System.nanoTime();
+		private long elapsed = 0;
+		private long no_records = 0;
+		private long no_converted = 0;
+		private long no_errors = 0;
+
+		/**
+		   Return the number of input records.
+		 */
+		public long getNoRecords() {
+			return no_records;
+		}
+
+		/**
+		   Return the number of records converted.
+		 */
+		public long getNoConverted() {
+			return no_converted;
+		}
+
+		/**
+		   Return the number of records that could not be converted.
+		 */
+		public long getNoErrors() {
+			return no_errors;
+		}
+
+		/**
+		   Return the duration of the conversion in milliseconds.
+		 */
+		public double getElapsedTime() {
+			return elapsed/1e6;
+		}
+
+		/**
+		   Return the number of records processed per second.
+		 */
+		public double getThroughput() {
+			return (elapsed>0) ?no_records/(elapsed/1e9) :0.;
+		}
+
+		public String toString() {
+			return String.format("%d records, %d converted, %d errors in %.3f s (%.1f records/s)",
+								 no_records,no_converted,no_errors,elapsed/1e9,getThroughput());
+		}
+	}
+
+	//----------------
+	// command line
+
+	static public void main(String[] args) {
+		int no_threads = 0;
+		boolean ordered = true;
+		boolean tolerate = false;
+		String errors_file = null;
+		ArrayList<String> params = new ArrayList<String>();
+		try {
+			for( int i=0; i<args.length; i++ ) {
+				if( args[i].equals("-threads") && i+1<args.length )
+					no_threads = Integer.parseInt(args[++i]);
+				else if( args[i].equals("-unordered") )
+					ordered = false;
+				else if( args[i].equals("-tolerate") )
+					tolerate = true;
+				else if( args[i].equals("-errors") && i+1<args.length )
+					errors_file = args[++i];
+				else
+					params.add(args[i]);
+			}
+		}
+		catch(NumberFormatException e) {
+			params.clear();
+		}
+		if( params.size()<2 || params.size()>4 ) {
+			System.err.println("Usage: BatchConverter [-threads <n>] [-unordered] [-tolerate] [-errors <file>] <input format> <output format> [<input file> [<output file>]]");
+			return;
+		}
+
+		InputStream in = null;
+		OutputStream out = null;
+		Writer errors = null;
+		try {
+			in = (params.size()>2) ?new FileInputStream(params.get(2)) :System.in;
+			out = (params.size()>3) ?new FileOutputStream(params.get(3)) :System.out;
+			errors = new OutputStreamWriter((errors_file!=null) ?new FileOutputStream(errors_file) :System.err);
+
+			BatchConverter converter = new BatchConverter(params.get(0),params.get(1));
+			converter.setNoThreads(no_threads);
+			converter.setOrdered(ordered);
+			converter.setTolerateUnknown(tolerate);
+			converter.setErrorWriter(errors);
+
+			Statistics stats = converter.convert(new BufferedInputStream(in),out);
+			System.err.println(stats);
+		}
+		catch(Exception e) {
+			System.err.println("Error: " + LogUtils.getError(e));
+		}
+		finally {
+			try {
+				if( in!=null && in!=System.in )
+					in.close();
+				if( out!=null && out!=System.out )
+					out.close();
+				if( errors!=null && errors_file!=null )
+					errors.close();
+			}
+			catch(IOException e) {
+				System.err.println("Error: " + LogUtils.getError(e));
+			}
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+
+/**
+   A 128 bit fingerprint of a glycan structure. The fingerprint is
+   computed bottom-up from the information written by {@link
+   GWSWriter}: the type of each residue, the residue cleaved by a
+   fragmentation, the bounds of the repeat blocks, the preferred
+   placements and the bonds of each linkage. The children of a
+   residue are combined independently from their order, so that two
+   structures with the same ordered string representation (see
+   {@link Glycan#toStringOrdered}) have the same key. Different
+   structures have different keys with very high probability but not
+   with certainty: equal keys must be confirmed by comparing the
+   structures before the two are treated as the same.
+
+   @see Glycan#canonicalKey
+ */
+
+public final class CanonicalKey implements Comparable<CanonicalKey> {
+
+	/** The key of a structure without residues. */
+	public static final CanonicalKey EMPTY = new CanonicalKey(0L,0L);
+
+	private static final long SEED1 = 0x9E3779B97F4A7C15L;
+	private static final long SEED2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME1 = 0x100000001B3L;
+	private static final long PRIME2 = 0xFF51AFD7ED558CCDL;
+
+	private final long high;
+	private final long low;
+
+	/**
+       Create a new key from its two halves.
+	 */
+	public CanonicalKey(long _high, long _low) {
+		high = _high;
+		low = _low;
+	}
+
+	/**
+       Return the most significant 64 bits of the key.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+       Return the least significant 64 bits of the key.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+       Return a new key combining this one with a string, used to add
+       the mass settings to the key of a structure.
+	 */
+	public CanonicalKey append(String str) {
+		Hasher h = new Hasher(high,low);
+		h.add('$');
+		h.add(str);
+		return h.key();
+	}
+
+	public int compareTo(CanonicalKey other) {
+		if( high!=other.high )
+			return (high<other.high) ?-1 :1;
+		if( low!=other.low )
+			return (low<other.low) ?-1 :1;
+		return 0;
+	}
+
+	public boolean equals(Object other) {
+		if( !(other instanceof CanonicalKey) )
+			return false;
+		CanonicalKey k = (CanonicalKey)other;
+		return high==k.high && low==k.low;
+	}
+
+	public int hashCode() {
+		return (int)(low ^ (low>>>32));
+	}
+
+	/**
+       Return the hexadecimal representation of the key.
+	 */
+	public String toString() {
+		String h = Long.toHexString(high);
+		String l = Long.toHexString(low);
+		StringBuilder sb = new StringBuilder(32);
+		for( int i=h.length(); i<16; i++ )
+			sb.append('0');
+		sb.append(h);
+		for( int i=l.length(); i<16; i++ )
+			sb.append('0');
+		sb.append(l);
+		return sb.toString();
+	}
+
+	//----------------
+	// computation
+
+	/**
+       Compute the key of a structure from its root and its bracket.
+	 */
+	public static CanonicalKey compute(Residue root, Residue bracket) {
+		if( root==null )
+			return EMPTY;
+		return structure(subtree(root),(bracket!=null) ?subtree(bracket) :null);
+	}
+
+	/**
+       Compute the key of the subtree rooted at a residue.
+	 */
+	public static CanonicalKey subtree(Residue node) {
+		int no_children = node.getNoChildren();
+		CanonicalKey[] links = new CanonicalKey[no_children];
+		for( int i=0; i<no_children; i++ ) {
+			Linkage l = node.getLinkageAt(i);
+			links[i] = linkage(l,subtree(l.getChildResidue()));
+		}
+		return node(node,links);
+	}
+
+	/**
+       Combine the keys of the root and of the bracket of a
+       structure.
+	 */
+	static CanonicalKey structure(CanonicalKey root, CanonicalKey bracket) {
+		Hasher h = new Hasher(SEED1,SEED2);
+		h.add(root);
+		if( bracket!=null ) {
+			h.add('}');
+			h.add(bracket);
+		}
+		return h.key();
+	}
+
+	/**
+       Combine the type of a residue with the keys of its children
+       linkages. The children are sorted in place.
+	 */
+	static CanonicalKey node(Residue residue, CanonicalKey[] links) {
+		Hasher h = new Hasher(SEED1,SEED2);
+		addResidue(h,residue);
+
+		Residue placed = (residue.getCleavedResidue()!=null) ?residue.getCleavedResidue() :residue;
+		if( placed.hasPreferredPlacement() ) {
+			ResiduePlacement rp = placed.getPreferredPlacement();
+			h.add('@');
+			h.add(rp.getPositions()[0].getIntAngle());
+			h.add(rp.isSticky() ?'s' :'-');
+		}
+
+		// combine the children independently from their order
+		if( links.length>0 ) {
+			Arrays.sort(links);
+
+			h.add('(');
+			for( CanonicalKey k : links )
+				h.add(k);
+			h.add(')');
+		}
+		return h.key();
+	}
+
+	/**
+       Combine the bonds of a linkage with the key of the subtree
+       rooted at its child. As in the string representation, the child
+       position of the glycosidic bond is not part of the key.
+	 */
+	static CanonicalKey linkage(Linkage link, CanonicalKey child) {
+		Hasher h = new Hasher(SEED2,SEED1);
+		Vector<Bond> bonds = link.getBonds();
+		for( int i=0; i<bonds.size(); i++ ) {
+			Bond b = bonds.get(i);
+			for( char p : b.getParentPositions() )
+				h.add(p);
+			if( i<bonds.size()-1 ) {
+				h.add('=');
+				h.add(b.getChildPosition());
+			}
+			h.add(',');
+		}
+		h.add(child);
+		return h.key();
+	}
+
+	private static void addResidue(Hasher h, Residue r) {
+		h.add(r.getTypeName());
+		h.add(r.getAnomericState());
+		h.add(r.getAnomericCarbon());
+		h.add(r.getChirality());
+		h.add(r.getRingSize());
+
+		if( r.isEndRepetition() ) {
+			h.add(r.getMinRepetitions());
+			h.add(r.getMaxRepetitions());
+		}
+
+		if( r.getCleavedResidue()!=null ) {
+			h.add('/');
+			addResidue(h,r.getCleavedResidue());
+		}
+	}
+
+	/**
+       Two independent 64 bit hash functions fed with the same values.
+	 */
+	private static class Hasher {
+
+		private long h1;
+		private long h2;
+
+		public Hasher(long seed1, long seed2) {
+			h1 = seed1;
+			h2 = seed2;
+		}
+
+		public void add(long v) {
+			h1 = (h1 ^ v) * PRIME1;
+			h2 = Long.rotateLeft(h2 ^ v, 31) * PRIME2;
+		}
+
+		public void add(char c) {
+			add((long)c);
+		}
+
+		public void add(String str) {
+			add((long)str.length());
+			for( int i=0; i<str.length(); i++ )
+				add(str.charAt(i));
+		}
+
+		public void add(CanonicalKey k) {
+			add(k.high);
+			add(k.low);
+		}
+
+		public CanonicalKey key() {
+			return new CanonicalKey(mix(h1 ^ h2),mix(h2 + h1*PRIME1));
+		}
+
+		private static long mix(long h) {
+			h ^= h>>>33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h>>>33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			h ^= h>>>33;
+			return h;
+		}
+	}
+}
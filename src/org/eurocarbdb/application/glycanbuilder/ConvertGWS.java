@@ -20,6 +20,7 @@
 
 package org.eurocarbdb.application.glycanbuilder;
 
+import java.util.Collection;
 
 /**
 *   Converts GWS sequence format to other sequence formats.
@@ -29,6 +30,20 @@ package org.eurocarbdb.application.glycanbuilder;
 public class ConvertGWS 
 {
 
+    private static BuilderWorkspace theWorkspace = null;
+
+    /**
+    *   Returns the workspace shared by all conversions, the dictionaries
+    *   are loaded when it is first requested.
+    *   @see BatchConverter
+    */
+    static synchronized BuilderWorkspace getWorkspace()
+    {
+        if( theWorkspace == null )
+            theWorkspace = new BuilderWorkspace( null, false,new GlycanRendererAWT() );
+        return theWorkspace;
+    }
+
     /**
     *   Converts GWS format to the given format name. 
     *   See {@link GlycanDocument#toString} for valid format names.
@@ -36,11 +51,16 @@ public class ConvertGWS
     public static final String toFormat( String format_name, String gws_sequence )
     throws Exception
     {
-        BuilderWorkspace theWorkspace = new BuilderWorkspace( null, false,new GlycanRendererAWT() );
-        GlycanDocument theDoc = theWorkspace.getStructures(); 
-        
-        theDoc.fromString( gws_sequence, false );
-        return theDoc.toString( format_name );
+        Collection<Glycan> structures = GlycanDocument.parseString( gws_sequence, getWorkspace().getDefaultMassOptions() );
+        try
+        {
+            return GlycanDocument.toString( structures, GlycanParserFactory.getParser( format_name ) );
+        }
+        catch( Exception e )
+        {
+            LogUtils.report(e);
+            return "";
+        }
     }
     
     
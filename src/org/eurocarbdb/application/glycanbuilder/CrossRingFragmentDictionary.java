@@ -27,6 +27,7 @@ import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.*;
+import java.util.List;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.*;
@@ -47,9 +48,30 @@ public class CrossRingFragmentDictionary {
     
     static {
     dictionary = new Vector<CrossRingFragmentType>();
+    index = new HashMap<String,IndexEntry[]>();
     }
     
     private static Vector<CrossRingFragmentType> dictionary;
+    private static volatile HashMap<String,IndexEntry[]> index;
+
+    private static final List<CrossRingFragmentType> NO_TYPES = Collections.emptyList();
+
+    /**
+       The ring fragment types available for the residues with a given
+       anomeric carbon and ring size.
+     */
+    private static class IndexEntry {
+    public final char anomeric_carbon;
+    public final char ring_size;
+    public List<CrossRingFragmentType> all = new ArrayList<CrossRingFragmentType>();
+    public List<CrossRingFragmentType> a_types = new ArrayList<CrossRingFragmentType>();
+    public List<CrossRingFragmentType> x_types = new ArrayList<CrossRingFragmentType>();
+
+    public IndexEntry(char _anomeric_carbon, char _ring_size) {
+        anomeric_carbon = _anomeric_carbon;
+        ring_size = _ring_size;
+    }
+    }
         
     //---- init
 
@@ -88,6 +110,7 @@ public class CrossRingFragmentDictionary {
         line = TextUtils.trim(line);
         if( line.length()>0 && !line.startsWith("%") ) {
             CrossRingFragmentType toadd = new CrossRingFragmentType(line);
+            toadd.in_dictionary = true;
             dictionary.add(toadd);
         }
         }
@@ -98,6 +121,70 @@ public class CrossRingFragmentDictionary {
         LogUtils.report(e);
         dictionary.clear();
     }
+
+    buildIndex();
+    }
+
+    /**
+       Index the ring fragment types by residue type, anomeric carbon
+       and ring size. The lists in the index keep the order of the
+       dictionary and cannot be modified.
+     */
+    private static void buildIndex() {
+    HashMap<String,Vector<IndexEntry>> entries = new HashMap<String,Vector<IndexEntry>>();
+    for( CrossRingFragmentType crt : dictionary ) {
+        for( String residue : new LinkedHashSet<String>(crt.getResidues()) ) {
+        Vector<IndexEntry> v = entries.get(residue);
+        if( v==null ) {
+            v = new Vector<IndexEntry>();
+            entries.put(residue,v);
+        }
+        
+        IndexEntry entry = findEntry(v,crt.getResidueAnomericCarbon(),crt.getResidueRingSize());
+        if( entry==null ) {
+            entry = new IndexEntry(crt.getResidueAnomericCarbon(),crt.getResidueRingSize());
+            v.add(entry);
+        }
+
+        entry.all.add(crt);
+        if( crt.isACleavage() )
+            entry.a_types.add(crt);
+        if( crt.isXCleavage() )
+            entry.x_types.add(crt);
+        }
+    }
+
+    HashMap<String,IndexEntry[]> new_index = new HashMap<String,IndexEntry[]>();
+    for( Map.Entry<String,Vector<IndexEntry>> e : entries.entrySet() ) {
+        for( IndexEntry entry : e.getValue() ) {
+        entry.all = Collections.unmodifiableList(entry.all);
+        entry.a_types = Collections.unmodifiableList(entry.a_types);
+        entry.x_types = Collections.unmodifiableList(entry.x_types);
+        }
+        new_index.put(e.getKey(),e.getValue().toArray(new IndexEntry[0]));
+    }
+    index = new_index;
+    }
+
+    private static IndexEntry findEntry(Collection<IndexEntry> entries, char anomeric_carbon, char ring_size) {
+    for( IndexEntry entry : entries ) {
+        if( entry.anomeric_carbon==anomeric_carbon && entry.ring_size==ring_size )
+        return entry;
+    }
+    return null;
+    }
+
+    private static IndexEntry findEntry(Residue r) {
+    IndexEntry[] entries = index.get(r.getTypeName());
+    if( entries==null )
+        return null;
+    char anomeric_carbon = r.getAnomericCarbon();
+    char ring_size = r.getRingSize();
+    for( int i=0; i<entries.length; i++ ) {
+        if( entries[i].anomeric_carbon==anomeric_carbon && entries[i].ring_size==ring_size )
+        return entries[i];
+    }
+    return null;
     }
       
     
@@ -105,39 +192,30 @@ public class CrossRingFragmentDictionary {
 
 
     /**
-       Get all cross ring fragment types available for the given residue.
+       Get all cross ring fragment types available for the given
+       residue. The returned collection cannot be modified.
      */
     public static Collection<CrossRingFragmentType> getCrossRingFragmentTypes(Residue r) {
-    Vector<CrossRingFragmentType> ret = new Vector<CrossRingFragmentType>();
-    for(CrossRingFragmentType crt : dictionary ) {
-        if( crt.matches(r) ) 
-        ret.add(crt);
-    }
-    return ret;
+    IndexEntry entry = findEntry(r);
+    return (entry!=null) ?entry.all :NO_TYPES;
     }
 
     /**
-       Get all A cross ring fragment types available for the given residue.
+       Get all A cross ring fragment types available for the given
+       residue. The returned collection cannot be modified.
      */
     public static Collection<CrossRingFragmentType> getCrossRingFragmentTypesA(Residue r) {
-    Vector<CrossRingFragmentType> ret = new Vector<CrossRingFragmentType>();
-    for(CrossRingFragmentType crt : dictionary ) {
-        if( crt.matches(r) && crt.isACleavage() ) 
-        ret.add(crt);
-    }
-    return ret;
+    IndexEntry entry = findEntry(r);
+    return (entry!=null) ?entry.a_types :NO_TYPES;
     }
 
     /**
-       Get all X cross ring fragment types available for the given residue.
+       Get all X cross ring fragment types available for the given
+       residue. The returned collection cannot be modified.
      */
     public static Collection<CrossRingFragmentType> getCrossRingFragmentTypesX(Residue r) {
-    Vector<CrossRingFragmentType> ret = new Vector<CrossRingFragmentType>();
-    for(CrossRingFragmentType crt : dictionary ) {
-        if( crt.matches(r) && crt.isXCleavage() ) 
-        ret.add(crt);
-    }
-    return ret;
+    IndexEntry entry = findEntry(r);
+    return (entry!=null) ?entry.x_types :NO_TYPES;
     }
 
     /**
@@ -148,7 +226,13 @@ public class CrossRingFragmentDictionary {
        @param r residue for which the ring fragment is computed
      */
     public static CrossRingFragmentType getCrossRingFragmentType(char fragment_type, int first_pos, int last_pos, Residue r) {
-    for(CrossRingFragmentType crt : dictionary ) {
+    IndexEntry entry = findEntry(r);
+    if( entry==null )
+        return null;
+
+    // indexed loop, the lookup is done for each cleavage of each residue
+    for( int i=0; i<entry.all.size(); i++ ) {
+        CrossRingFragmentType crt = entry.all.get(i);
         if( crt.matches(fragment_type,first_pos,last_pos,r) ) 
         return crt;
     }
@@ -141,6 +141,22 @@ public class CrossRingFragmentType extends ResidueType {
     return residues;
     }
 
+    /**
+       Return the anomeric carbon of the residues to which this ring
+       fragment can be applied.
+     */
+    public char getResidueAnomericCarbon() {
+    return anomeric_carbon;
+    }
+
+    /**
+       Return the ring size of the residues to which this ring
+       fragment can be applied.
+     */
+    public char getResidueRingSize() {
+    return ring_size;
+    }
+
     /**
        Return <code>true</code> if this is an A ring fragment.
      */
@@ -0,0 +1,203 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.image.*;
+import java.util.*;
+
+/**
+   Measure texts without creating a graphic context for each
+   measure. The font render context is created once, the fonts are
+   shared by face and size and the bounds of the last measured texts
+   are kept in a cache that discards the least recently used entries
+   first. A single instance is shared by all the renderers and can be
+   used by several threads.
+
+   @see Geometry#textBounds
+ */
+
+public class FontMetricsCache {
+
+	/** The number of text bounds stored by the shared instance. */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final FontMetricsCache instance = new FontMetricsCache(DEFAULT_CAPACITY);
+
+	private FontRenderContext frc = null;
+	private HashMap<Key,Font> fonts = new HashMap<Key,Font>();
+	private int capacity;
+	private LinkedHashMap<Key,Dimension> bounds;
+
+	/**
+	   Return the instance shared by the renderers.
+	 */
+	public static FontMetricsCache getInstance() {
+		return instance;
+	}
+
+	/**
+	   Create a new cache holding the bounds of at most
+	   <code>_capacity</code> texts.
+	 */
+	public FontMetricsCache(int _capacity) {
+		if( _capacity<1 )
+			throw new IllegalArgumentException("Invalid capacity: " + _capacity);
+
+		capacity = _capacity;
+		bounds = new LinkedHashMap<Key,Dimension>(16,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key,Dimension> eldest) {
+				return size()>capacity;
+			}
+		};
+	}
+
+	/**
+	   Return the maximum number of text bounds stored in the cache.
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	   Set the maximum number of text bounds stored in the cache. The
+	   least recently used entries are discarded if the cache is too
+	   large.
+	 */
+	public synchronized void setCapacity(int _capacity) {
+		if( _capacity<1 )
+			throw new IllegalArgumentException("Invalid capacity: " + _capacity);
+
+		capacity = _capacity;
+		Iterator<Key> i = bounds.keySet().iterator();
+		while( bounds.size()>capacity ) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/**
+	   Return the number of text bounds stored in the cache.
+	 */
+	public synchronized int size() {
+		return bounds.size();
+	}
+
+	/**
+	   Remove all the fonts and text bounds from the cache.
+	 */
+	public synchronized void clear() {
+		fonts.clear();
+		bounds.clear();
+	}
+
+	/**
+	   Return the context used to measure the texts, the same of an
+	   image compatible with the display.
+	 */
+	public synchronized FontRenderContext getFontRenderContext() {
+		if( frc==null ) {
+			BufferedImage img = GraphicUtils.createCompatibleImage(10,10,true);
+			Graphics2D g2d = img.createGraphics();
+			frc = g2d.getFontRenderContext();
+			g2d.dispose();
+		}
+		return frc;
+	}
+
+	/**
+	   Return the plain font with a given face and size.
+	 */
+	public synchronized Font getFont(String font_face, int font_size) {
+		Key key = new Key(null,font_face,font_size);
+		Font ret = fonts.get(key);
+		if( ret==null ) {
+			ret = new Font(font_face,Font.PLAIN,font_size);
+			fonts.put(key,ret);
+		}
+		return ret;
+	}
+
+	/**
+	   Return the dimensions of a text in a given font.
+	 */
+	public Dimension textBounds(String text, String font_face, int font_size) {
+		if( text.length()==0 )
+			return new Dimension(0,font_size);
+
+		Key key = new Key(text,font_face,font_size);
+		Dimension ret;
+		synchronized( this ) {
+			ret = bounds.get(key);
+		}
+		if( ret==null ) {
+			// measure outside the lock
+			Rectangle text_bound = new Rectangle();
+			text_bound.setRect(new TextLayout(text,getFont(font_face,font_size),getFontRenderContext()).getBounds());
+			ret = new Dimension(text_bound.width,text_bound.height);
+			synchronized( this ) {
+				bounds.put(key,ret);
+			}
+		}
+
+		// the callers can modify the returned object
+		return new Dimension(ret);
+	}
+
+	/**
+	   Return the shape used to draw a text in a given font.
+	 */
+	public Shape getTextShape(String text, String font_face, int font_size) {
+		return new TextLayout(text,getFont(font_face,font_size),getFontRenderContext()).getOutline(null);
+	}
+
+	static private class Key {
+		private final String text;
+		private final String font_face;
+		private final int font_size;
+		private final int hash;
+
+		Key(String _text, String _font_face, int _font_size) {
+			text = _text;
+			font_face = _font_face;
+			font_size = _font_size;
+			hash = 31*(31*((text!=null) ?text.hashCode() :0) + ((font_face!=null) ?font_face.hashCode() :0)) + font_size;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			if( !(other instanceof Key) )
+				return false;
+			Key k = (Key)other;
+			return hash==k.hash && font_size==k.font_size && equals(text,k.text) && equals(font_face,k.font_face);
+		}
+
+		static private boolean equals(String a, String b) {
+			return (a==null) ?b==null :a.equals(b);
+		}
+	}
+}
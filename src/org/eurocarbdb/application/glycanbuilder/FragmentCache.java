@@ -0,0 +1,227 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+
+/**
+   Store the fragments obtained from a structure by a single cleavage,
+   so that they can be reused when the same structure is generated
+   again. The fragments are indexed by the string representation of
+   the structure, the mass settings and the fragmentation settings:
+   the subtrees shared by the structures of a library, such as the
+   antennae and the cores of the N-glycans, are then fragmented only
+   once. The string representation is used instead of the canonical
+   key because it preserves the order of the children, on which the
+   order of the fragments depends. The cache holds at most a fixed
+   number of structures and discards the least recently used ones
+   first. The same cache can be shared by several fragmenters and
+   threads.
+
+   @see Fragmenter#setFragmentCache
+ */
+
+public class FragmentCache {
+
+	/** The number of structures stored by a cache created with the
+		default constructor. */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private int capacity;
+	private LinkedHashMap<String,Fragments> entries;
+	private long no_hits = 0;
+	private long no_misses = 0;
+
+	/**
+	   Create a new cache holding at most {@link #DEFAULT_CAPACITY}
+	   structures.
+	 */
+	public FragmentCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	   Create a new cache holding at most <code>_capacity</code>
+	   structures.
+	 */
+	public FragmentCache(int _capacity) {
+		if( _capacity<1 )
+			throw new IllegalArgumentException("Invalid capacity: " + _capacity);
+
+		capacity = _capacity;
+		entries = new LinkedHashMap<String,Fragments>(16,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String,Fragments> eldest) {
+				return size()>capacity;
+			}
+		};
+	}
+
+	/**
+	   Return the maximum number of structures stored in the cache.
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	   Set the maximum number of structures stored in the cache. The
+	   least recently used structures are discarded if the cache is
+	   too large.
+	 */
+	public synchronized void setCapacity(int _capacity) {
+		if( _capacity<1 )
+			throw new IllegalArgumentException("Invalid capacity: " + _capacity);
+
+		capacity = _capacity;
+		Iterator<String> i = entries.keySet().iterator();
+		while( entries.size()>capacity ) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/**
+	   Return the number of structures stored in the cache.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	   Return the number of times the fragments of a structure have
+	   been found in the cache.
+	 */
+	public synchronized long getNoHits() {
+		return no_hits;
+	}
+
+	/**
+	   Return the number of times the fragments of a structure have
+	   been computed because they were not in the cache.
+	 */
+	public synchronized long getNoMisses() {
+		return no_misses;
+	}
+
+	/**
+	   Return the fraction of the requests that have been satisfied by
+	   the cache, 0 if no request has been made.
+	 */
+	public synchronized double getHitRatio() {
+		long total = no_hits + no_misses;
+		return (total>0) ?(double)no_hits/total :0.;
+	}
+
+	/**
+	   Reset the hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		no_hits = 0;
+		no_misses = 0;
+	}
+
+	/**
+	   Remove all structures from the cache. The counters are not
+	   changed.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	   Return the fragments stored for a structure, or
+	   <code>null</code> if they are not in the cache.
+	   @param with_crossrings <code>true</code> if the cross ring
+	   fragments are needed
+	 */
+	synchronized Fragments get(String key, boolean with_crossrings) {
+		Fragments ret = entries.get(key);
+		if( ret==null || (with_crossrings && !ret.with_crossrings) ) {
+			no_misses++;
+			return null;
+		}
+		no_hits++;
+		return ret;
+	}
+
+	/**
+	   Store the fragments of a structure.
+	 */
+	synchronized void put(String key, Fragments value) {
+		entries.put(key,value);
+	}
+
+	/**
+	   The fragments obtained from a structure by a single cleavage,
+	   in the order in which they are added by {@link
+	   Fragmenter#computeAllFragments}. Only the string representation
+	   and the canonical key of the fragments are stored, so that the
+	   cache is small and cannot be changed by the users of the
+	   fragments.
+	 */
+	static class Fragments {
+
+		public final String[] structures;
+		public final CanonicalKey[] keys;
+		public final String[] names;
+		public final Double[] masses;
+		public final Double[] mz_ratios;
+		public final boolean[] ring_fragments;
+		public final boolean with_crossrings;
+
+		public Fragments(FragmentEntry[] _entries, boolean[] _ring_fragments, boolean _with_crossrings) {
+			structures = new String[_entries.length];
+			keys = new CanonicalKey[_entries.length];
+			names = new String[_entries.length];
+			masses = new Double[_entries.length];
+			mz_ratios = new Double[_entries.length];
+			for( int i=0; i<_entries.length; i++ ) {
+				structures[i] = _entries[i].structure;
+				keys[i] = _entries[i].fragment.canonicalKey();
+				names[i] = _entries[i].name;
+				masses[i] = _entries[i].mass;
+				mz_ratios[i] = _entries[i].mz_ratio;
+			}
+			ring_fragments = _ring_fragments;
+			with_crossrings = _with_crossrings;
+		}
+
+		/**
+		   Return the number of fragments.
+		 */
+		public int size() {
+			return structures.length;
+		}
+
+		/**
+		   Create a new entry for the fragment at the specified
+		   index. The fragment structure is not set, it is read from
+		   its string representation by {@link
+		   FragmentCollection#addFragment(FragmentEntry,CanonicalKey)}
+		   if the entry is not a duplicate.
+		 */
+		public FragmentEntry newEntry(int ind) {
+			return new FragmentEntry(null,names[ind],masses[ind],mz_ratios[ind],structures[ind]);
+		}
+	}
+}
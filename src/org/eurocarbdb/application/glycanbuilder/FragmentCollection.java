@@ -39,13 +39,35 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
 
     // -----
 
-    private Vector<FragmentEntry> fragments;
+    // sorted view of the entries, completed in place on read with the
+    // pending ones
+    private final Vector<FragmentEntry> fragments;
+    private final Vector<EntryKey> keys;
+    private ArrayList<EntryKey> pending;
+
+    // index used to discard the duplicated entries
+    private HashMap<EntryKey,FragmentEntry> index;
+
+    // read-only view of the sorted entries
+    private List<FragmentEntry> view;
 
     /**
        Empty constructor.
      */
     public FragmentCollection() {
     fragments = new Vector<FragmentEntry>();
+    keys = new Vector<EntryKey>();
+    pending = new ArrayList<EntryKey>();
+    index = new HashMap<EntryKey,FragmentEntry>();
+    view = new AbstractList<FragmentEntry>() {
+        public FragmentEntry get(int ind) {
+        FragmentCollection.this.sort();
+        return fragments.get(ind);
+        }
+        public int size() {
+        return FragmentCollection.this.size();
+        }
+    };
     }
 
     /**
@@ -55,16 +77,24 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
 
     public FragmentCollection clone() {
     FragmentCollection ret = new FragmentCollection();
-    for( Iterator<FragmentEntry> i=fragments.iterator(); i.hasNext(); ) 
-        ret.fragments.add(i.next().clone());
+    for( EntryKey k : sortedKeys() ) {
+        EntryKey copy = new EntryKey(k.entry.clone(),k.structure,k.string);
+        ret.fragments.add(copy.entry);
+        ret.keys.add(copy);
+        ret.index.put(copy,copy.entry);
+    }
     return ret;
     }
 
     /**
-       Return the underlying collection of fragment entries.
+       Return the fragment entries in sorted order. The returned
+       collection is a read-only live view: it always reflects the
+       entries added to or removed from this collection after the
+       call. Use the methods of this class to change the content of
+       the collection.
      */
     public Collection<FragmentEntry> getFragments() {
-    return fragments;
+    return view;
     }    
 
     /**
@@ -72,6 +102,7 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
        entries.
      */
     public Iterator<FragmentEntry> iterator() {
+    sort();
     return fragments.iterator();
     }
 
@@ -79,6 +110,7 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
        Return the entry at the specified position.
      */
     public FragmentEntry elementAt(int ind) {
+    sort();
     return fragments.elementAt(ind);
     }
     
@@ -86,7 +118,7 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
        Return the number of entries in the collection.
      */
     public int size() {
-    return fragments.size();
+    return fragments.size() + pending.size();
     }
 
     /**
@@ -104,7 +136,8 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
     Double   _mass = _fragment.computeMass();
     Double   _mz   = _fragment.computeMZ();
     String   _structure = _fragment.toString();
-    return addFragment(new FragmentEntry(_fragment,_name,_mass,_mz,_structure));    
+    FragmentEntry toadd = new FragmentEntry(_fragment,_name,_mass,_mz,_structure);
+    return addFragment(toadd,new EntryKey(toadd,toadd.fragment.canonicalKey(),_structure));
     }    
 
     /**
@@ -113,33 +146,39 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
        @return <code>true</code> if the operation was successful
      */
     public boolean addFragment(FragmentEntry toadd) {
-    // sorted insertion
-    for( int i=0; i<fragments.size(); i++ ) {        
-        FragmentEntry fe = fragments.elementAt(i);
-        int comp = toadd.compareTo(fe);
-        if( comp==0 )
+    if( toadd==null )
         return false;
-        if( comp<0 ) {
-        fragments.insertElementAt(toadd,i);
-        return true;
-        }
-        
-        /*if( fe.mass.equals(toadd.mass) && fe.structure.equalsStructure(toadd.structure) ) {   
-        if( fe.name.length()>toadd.name.length() ) {
-            fragments.setElementAt(toadd,i);
-            return true;
-        }
-        return false;        
-        }
-        if( fe.mass>toadd.mass ) {
-        fragments.insertElementAt(toadd,i);
-        return true;
-        }*/
+    return addFragment(toadd,new EntryKey(toadd));
+    }    
+
+    /**
+       Add a fragment entry stored in a {@link FragmentCache}. The
+       fragment structure is read from its string representation only
+       if the entry is not a duplicate.
+       @param structure the canonical key of the fragment structure
+       @return <code>true</code> if the operation was successful
+     */
+    boolean addFragment(FragmentEntry toadd, CanonicalKey structure) {
+    EntryKey key = new EntryKey(toadd,structure,toadd.structure);
+    if( index.containsKey(key) )
+        return false;
+
+    if( toadd.fragment==null )
+        toadd.fragment = Glycan.fromString(toadd.structure);
+    index.put(key,toadd);
+    pending.add(key);
+    return true;
     }
-    
-    fragments.add(toadd);
+
+    private boolean addFragment(FragmentEntry toadd, EntryKey key) {
+    if( index.containsKey(key) )
+        return false;
+
+    // the entry is placed in the sorted view at the next read
+    index.put(key,toadd);
+    pending.add(key);
     return true;
-    }    
+    }
 
     /**
        Remove the specified fragments from the collection.
@@ -149,7 +188,24 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
     if( fec==null )
         return false;
     
-    return fragments.removeAll(fec);
+    sort();
+    if( fec==view ) // the view changes while removing
+        fec = new ArrayList<FragmentEntry>(fec);
+    if( !fragments.removeAll(fec) )
+        return false;
+
+    // rebuild the index, removing the keys in place
+    index.clear();
+    int j = 0;
+    for( int i=0; i<keys.size() && j<fragments.size(); i++ ) {
+        EntryKey k = keys.elementAt(i);
+        if( k.entry==fragments.elementAt(j) ) {
+        keys.setElementAt(k,j++);
+        index.put(k,k.entry);
+        }
+    }
+    keys.setSize(j);
+    return true;
     }    
 
     /**
@@ -160,9 +216,12 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
     if( _fe==null )
         return false;
 
+    sort();
     for( int i=0; i<fragments.size(); i++ ) {
         if( fragments.elementAt(i).equals(_fe) ) {
+        index.remove(keys.elementAt(i));
         fragments.removeElementAt(i);
+        keys.removeElementAt(i);
         return true;
         }
     }
@@ -201,9 +260,129 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
     }
     */
 
+    private Vector<EntryKey> sortedKeys() {
+    sort();
+    return keys;
+    }
+
+    /**
+       Merge the entries added since the last read into the sorted
+       view. The entries are merged in place starting from the end,
+       so that the sorted view is always the same object.
+     */
+    private void sort() {
+    if( pending.size()==0 )
+        return;
+    
+    Collections.sort(pending);
+
+    int i = keys.size()-1;
+    int j = pending.size()-1;
+    int k = keys.size()+pending.size()-1;
+    keys.setSize(k+1);
+    fragments.setSize(k+1);
+    for( ; j>=0; k-- ) {
+        EntryKey key;
+        if( i>=0 && keys.elementAt(i).compareTo(pending.get(j))>0 )
+        key = keys.elementAt(i--);
+        else
+        key = pending.get(j--);
+        keys.setElementAt(key,k);
+        fragments.setElementAt(key.entry,k);
+    }
+    pending.clear();
+    }
+
+    /**
+       Key of a fragment entry, with the same ordering and identity
+       defined by {@link FragmentEntry#compareTo}. The canonical key
+       of the structure is computed only once, the ordered string
+       representation of the structure is computed only to confirm
+       that two entries with the same canonical key are identical
+       when their string representations are not known or differ.
+     */
+    private static class EntryKey implements Comparable<EntryKey> {
+
+    public final FragmentEntry entry;
+    public final double score;
+    public final double mz_ratio;
+    public final CanonicalKey structure;
+    // string representation of the structure, null if not known
+    public final String string;
+    private String ordered = null;
+
+    public EntryKey(FragmentEntry _entry) {
+        this(_entry,(_entry.fragment!=null) ?_entry.fragment.canonicalKey() :null,null);
+    }
+
+    public EntryKey(FragmentEntry _entry, CanonicalKey _structure, String _string) {
+        entry = _entry;
+        score = _entry.score;
+        mz_ratio = _entry.mz_ratio;
+        structure = _structure;
+        string = _string;
+    }
+
+    public int compareTo(EntryKey k) {
+        if( this.score>k.score ) return -1;
+        if( this.score<k.score ) return 1;
+        if( this.mz_ratio<k.mz_ratio ) return -1;
+        if( this.mz_ratio>k.mz_ratio ) return 1;
+        if( this.structure==null ) return (k.structure==null) ?0 :-1;
+        if( k.structure==null ) return 1;
+
+        int ret = this.structure.compareTo(k.structure);
+        if( ret!=0 || this.entry==k.entry )
+        return ret;
+        if( this.string!=null && this.string.equals(k.string) )
+        return 0;
+        return this.getOrdered().compareTo(k.getOrdered());
+    }
+
+    private String getOrdered() {
+        if( ordered==null ) {
+        if( entry.fragment==null )
+            entry.fragment = Glycan.fromString(string);
+        ordered = entry.fragment.toStringOrdered();
+        }
+        return ordered;
+    }
+
+    public boolean equals(Object other) {
+        if( !(other instanceof EntryKey) )
+        return false;
+        return compareTo((EntryKey)other)==0;
+    }
+
+    public int hashCode() {
+        // adding 0. turns -0. into 0. as they compare equal
+        int ret = Double.valueOf(score+0.).hashCode();
+        ret = 31*ret + Double.valueOf(mz_ratio+0.).hashCode();
+        if( structure!=null )
+        ret = 31*ret + structure.hashCode();
+        return ret;
+    }
+    }
+
     //---------------
     // serialization
 
+    /**
+       Create a new object from its binary representation.
+       @see GlycanBinaryFormat
+    */
+    static public FragmentCollection fromBinary(byte[] data) throws Exception {
+    return GlycanBinaryFormat.readFragments(data);
+    }
+
+    /**
+       Create a binary representation of this object.
+       @see GlycanBinaryFormat
+    */
+    public byte[] toBinary() {
+    return GlycanBinaryFormat.toBytes(this);
+    }
+
     /**
        Create a new object from its XML representation as part of a
        DOM tree.
@@ -234,7 +413,7 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
         return null;
 
     // add fragments
-    for(FragmentEntry fe : fragments ) 
+    for(FragmentEntry fe : getFragments() ) 
         root_node.appendChild(fe.toXML(document));    
 
     return root_node;
@@ -276,7 +455,7 @@ public class FragmentCollection implements SAXUtils.SAXWriter {
      */
     public void write(TransformerHandler th) throws SAXException {
     th.startElement("","","FragmentCollection",new AttributesImpl());
-    for(FragmentEntry fe : fragments ) 
+    for(FragmentEntry fe : getFragments() ) 
         fe.write(th);
     th.endElement("","","FragmentCollection");
     }
@@ -0,0 +1,389 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+   Iterate over the fragments of a structure as they are computed.
+   The fragments are returned in the same order in which {@link
+   Fragmenter#computeAllFragments} adds them to a collection, without
+   keeping them in memory. The iteration stops when a maximum number
+   of fragments has been returned, when a deadline is passed or when
+   a cancellation flag is set; in all cases {@link #isTruncated}
+   tells if some fragments have been skipped.
+
+   @see Fragmenter#iterateAllFragments
+ */
+
+public class FragmentIterator implements Iterator<FragmentEntry> {
+
+	private Fragmenter fragmenter;
+	private int max_no_fragments;
+	private long deadline;
+	private AtomicBoolean cancelled;
+
+	private LinkedList<Glycan> parents = new LinkedList<Glycan>();
+	private LinkedList<MassOptions> parents_options = new LinkedList<MassOptions>();
+	private Glycan parent = null;
+	private LinkedList<Frame> stack = new LinkedList<Frame>();
+	private LinkedList<Glycan> pending = new LinkedList<Glycan>();
+	private HashSet<EntryKey> visited = new HashSet<EntryKey>();
+
+	private FragmentEntry next_entry = null;
+	private int no_fragments = 0;
+	private boolean finished = false;
+	private boolean truncated = false;
+
+	/**
+	   Create a new iterator over the fragments of a structure.
+	   @param _fragmenter the object holding the fragmentation
+	   settings
+	   @param _max_no_fragments the maximum number of fragments to
+	   return, 0 for no limit
+	   @param _deadline the time at which the iteration is stopped,
+	   in milliseconds as returned by
+	   <code>System.currentTimeMillis()</code>, 0 for no limit
+	   @param _cancelled a flag used to stop the iteration from
+	   another thread, can be <code>null</code>
+	 */
+	FragmentIterator(Fragmenter _fragmenter, Glycan structure, int _max_no_fragments, long _deadline, AtomicBoolean _cancelled) {
+		fragmenter = _fragmenter;
+		max_no_fragments = _max_no_fragments;
+		deadline = _deadline;
+		cancelled = _cancelled;
+
+		if( structure==null || structure.isFuzzy(true) || structure.hasRepetition() ) {
+			finished = true;
+			return;
+		}
+
+		// remove exchanges from parent mass options
+		MassOptions mass_opt = structure.getMassOptions().removeExchanges();
+		List<IonCloud> ionClouds;
+		if( fragmenter.iterate_ion_combinations )
+			ionClouds = mass_opt.ION_CLOUD.generateCombinations();
+		else {
+			ionClouds = new ArrayList<IonCloud>();
+			ionClouds.add(mass_opt.ION_CLOUD);
+		}
+
+		for( IonCloud ionCloud : ionClouds ) {
+			MassOptions options = mass_opt.clone();
+			options.ION_CLOUD = ionCloud.clone();
+
+			Glycan toadd = structure.clone();
+			toadd.setMassOptions(options);
+			parents.add(toadd);
+			parents_options.add(options);
+		}
+	}
+
+	/**
+	   Return <code>true</code> if the iteration has been stopped
+	   before all fragments have been returned.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	   Return the number of fragments returned so far.
+	 */
+	public int getNoFragments() {
+		return no_fragments;
+	}
+
+	/**
+	   Stop the iteration. The fragments not yet returned are
+	   discarded.
+	 */
+	public void cancel() {
+		if( !finished ) {
+			truncated = true;
+			close();
+		}
+	}
+
+	public boolean hasNext() {
+		if( next_entry!=null )
+			return true;
+		if( finished )
+			return false;
+
+		if( (cancelled!=null && cancelled.get()) ||
+			(deadline>0 && System.currentTimeMillis()>=deadline) ) {
+			cancel();
+			return false;
+		}
+
+		next_entry = computeNext();
+		if( next_entry==null ) {
+			close();
+			return false;
+		}
+
+		// the budget is exhausted but there are more fragments
+		if( max_no_fragments>0 && no_fragments>=max_no_fragments ) {
+			next_entry = null;
+			cancel();
+			return false;
+		}
+		return true;
+	}
+
+	public FragmentEntry next() {
+		if( !hasNext() )
+			throw new NoSuchElementException();
+
+		FragmentEntry ret = next_entry;
+		next_entry = null;
+		no_fragments++;
+		return ret;
+	}
+
+	/**
+	   Not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void close() {
+		finished = true;
+		parents.clear();
+		parents_options.clear();
+		parent = null;
+		stack.clear();
+		pending.clear();
+		visited.clear();
+	}
+
+	//----------------
+	// visit
+
+	private FragmentEntry computeNext() {
+		for( ;; ) {
+			// fragments
+			while( !stack.isEmpty() ) {
+				Frame frame = stack.getLast();
+				Glycan fragment = frame.nextCandidate();
+				if( fragment==null ) {
+					stack.removeLast();
+					continue;
+				}
+
+				FragmentEntry ret = add(fragment);
+				if( ret!=null ) {
+					frame.push(fragment);
+					return ret;
+				}
+			}
+
+			// unfragmented structure
+			while( !pending.isEmpty() ) {
+				FragmentEntry ret = add(pending.removeFirst());
+				if( ret!=null )
+					return ret;
+			}
+
+			if( parent!=null ) {
+				if( parent.hasLabileResidues() )
+					pending.addAll(parent.getAllLabilesConfigurations());
+				else
+					pending.add(parent);
+				parent = null;
+				continue;
+			}
+
+			// next ion combination
+			if( parents.isEmpty() )
+				return null;
+
+			parent = parents.removeFirst();
+			MassOptions options = parents_options.removeFirst();
+			int cur_max_no_crossrings = Math.min(fragmenter.max_no_cleavages,fragmenter.max_no_crossrings);
+			if( fragmenter.max_no_cleavages>0 )
+				stack.add(new Frame(parent,parent.hasLabileResidues(),options,fragmenter.max_no_cleavages,cur_max_no_crossrings));
+		}
+	}
+
+	private FragmentEntry add(Glycan fragment) {
+		if( fragment==null || fragment.getRoot()==null )
+			return null;
+
+		FragmentEntry ret = new FragmentEntry(fragment,Fragmenter.getFragmentType(fragment),fragment.computeMass(),fragment.computeMZ(),fragment.toString());
+		if( !visited.add(new EntryKey(ret.mz_ratio,getStructureKey(fragment,ret.structure))) )
+			return null;
+		return ret;
+	}
+
+	/**
+	   Return the identity of a fragment without keeping a reference to
+	   it: the visited fragments are not retained while streaming, the
+	   structure is parsed again from its string only to confirm that
+	   two fragments with the same key are identical.
+	 */
+	private static StructureKey getStructureKey(Glycan fragment, final String string) {
+		return new StructureKey(fragment.canonicalKey(true),null,true) {
+			protected Glycan createStructure() {
+				return Glycan.fromString(string);
+			}
+		};
+	}
+
+	/**
+	   The residues of a structure visited in the same order of {@link
+	   Fragmenter#computeAllFragments}, with the fragments computed at
+	   the current residue still to be returned.
+	 */
+	private class Frame {
+
+		private Glycan structure;
+		private TypePattern avail_labiles = null;
+		private boolean with_labiles;
+		private MassOptions mass_opt;
+		private int cur_max_no_cleavages;
+		private int cur_max_no_crossrings;
+
+		private LinkedList<Residue> residues = new LinkedList<Residue>();
+		private LinkedList<Glycan> candidates = new LinkedList<Glycan>();
+		private LinkedList<Boolean> ring_fragments = new LinkedList<Boolean>();
+		private boolean last_ring_fragment = false;
+
+		public Frame(Glycan _structure, boolean _with_labiles, MassOptions _mass_opt, int _cur_max_no_cleavages, int _cur_max_no_crossrings) {
+			with_labiles = _with_labiles;
+			mass_opt = _mass_opt;
+			cur_max_no_cleavages = _cur_max_no_cleavages;
+			cur_max_no_crossrings = _cur_max_no_crossrings;
+
+			if( with_labiles ) {
+				structure = _structure.detachLabileResidues();
+				avail_labiles = structure.getDetachedLabilesPattern();
+			}
+			else
+				structure = _structure;
+			addResidues(structure.getRoot());
+		}
+
+		private void addResidues(Residue node) {
+			residues.add(node);
+			for( Linkage l : node.getChildrenLinkages() )
+				addResidues(l.getChildResidue());
+		}
+
+		/**
+		   Return the next fragment to be added, or <code>null</code>
+		   if all residues have been visited.
+		 */
+		public Glycan nextCandidate() {
+			while( candidates.isEmpty() ) {
+				if( residues.isEmpty() )
+					return null;
+				computeCandidates(residues.removeFirst());
+			}
+
+			last_ring_fragment = ring_fragments.removeFirst();
+			return candidates.removeFirst();
+		}
+
+		/**
+		   Visit the last fragment returned by {@link #nextCandidate}.
+		 */
+		public void push(Glycan fragment) {
+			int no_cleavages = cur_max_no_cleavages-1;
+			int no_crossrings = (last_ring_fragment) ?cur_max_no_crossrings-1 :cur_max_no_crossrings;
+			if( no_cleavages>0 )
+				stack.add(new Frame(fragment,with_labiles,mass_opt,no_cleavages,no_crossrings));
+		}
+
+		private void computeCandidates(Residue current) {
+			// glycosidic cleavages
+			if( Fragmenter.canDoCleavage(current) ) {
+				if( fragmenter.bfragments )
+					addCandidates(fragmenter.getBFragment(current,mass_opt),false,false);
+				if( fragmenter.cfragments )
+					addCandidates(fragmenter.getCFragment(current,mass_opt),false,false);
+				if( fragmenter.yfragments )
+					addCandidates(fragmenter.getYFragment(current,mass_opt),false,false);
+				if( fragmenter.zfragments )
+					addCandidates(fragmenter.getZFragment(current,mass_opt),false,false);
+			}
+
+			// cross ring cleavages
+			if( cur_max_no_crossrings>0 && Fragmenter.canDoRingFragment(current) ) {
+				if( fragmenter.afragments ) {
+					for( CrossRingFragmentType crt : CrossRingFragmentDictionary.getCrossRingFragmentTypesA(current) )
+						addCandidates(fragmenter.getAFragment(current,crt,with_labiles,mass_opt),true,with_labiles);
+				}
+				if( fragmenter.xfragments ) {
+					for( CrossRingFragmentType crt : CrossRingFragmentDictionary.getCrossRingFragmentTypesX(current) )
+						addCandidates(fragmenter.getXFragment(current,crt,with_labiles,mass_opt),true,with_labiles);
+				}
+			}
+		}
+
+		private void addCandidates(Glycan fragment, boolean ring_fragment, boolean check_small_rings) {
+			if( !with_labiles ) {
+				if( fragment!=null ) {
+					candidates.add(fragment);
+					ring_fragments.add(ring_fragment);
+				}
+				return;
+			}
+
+			for( Glycan conf : Glycan.getAllLabilesConfigurations(fragment,avail_labiles) ) {
+				if( !check_small_rings || !conf.isSmallRingFragment() || conf.countCharges()>0 ) {
+					candidates.add(conf);
+					ring_fragments.add(ring_fragment);
+				}
+			}
+		}
+	}
+
+	/**
+	   The values used by {@link FragmentCollection} to detect
+	   duplicated fragments.
+	 */
+	private static class EntryKey {
+
+		private final double mz_ratio;
+		private final StructureKey structure;
+
+		public EntryKey(double _mz_ratio, StructureKey _structure) {
+			mz_ratio = _mz_ratio;
+			structure = _structure;
+		}
+
+		public boolean equals(Object other) {
+			if( !(other instanceof EntryKey) )
+				return false;
+			EntryKey k = (EntryKey)other;
+			return (mz_ratio==k.mz_ratio && structure.equals(k.structure));
+		}
+
+		public int hashCode() {
+			// adding 0. turns -0. into 0. as they compare equal
+			return 31*Double.valueOf(mz_ratio+0.).hashCode() + structure.hashCode();
+		}
+	}
+}
@@ -0,0 +1,1067 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+
+/**
+   The masses of all the fragments of a structure computed without
+   creating the fragment structures. Each fragment is described by
+   the list of its cleavages, each one encoded in an integer as
+   <code>(site&lt;&lt;12)|(kind&lt;&lt;8)|ring</code>, where
+   <code>site</code> is the position of the cleaved residue in the
+   preorder visit of the structure, <code>kind</code> is one of the
+   cleavage constants of this class and <code>ring</code> is the
+   index of the ring fragment type in the list returned by {@link
+   CrossRingFragmentDictionary}. The lists are sorted in increasing
+   order. The fragment structures can be created on demand with
+   {@link #getFragment}.
+
+   <p>
+   The results are stored for each ion cloud in the same order used
+   by {@link Fragmenter#computeAllFragments}: all the fragments
+   followed by the unfragmented structure, which is described by an
+   empty list of cleavages. Structures with labile residues are
+   fragmented with {@link Fragmenter#computeAllFragments} and have no
+   descriptors.
+
+   @see Fragmenter#computeAllFragmentMasses
+ */
+
+public class FragmentMasses {
+
+	/** B-type glycosidic cleavage. */
+	public static final int B_CLEAVAGE = 1;
+	/** C-type glycosidic cleavage. */
+	public static final int C_CLEAVAGE = 2;
+	/** Y-type glycosidic cleavage. */
+	public static final int Y_CLEAVAGE = 3;
+	/** Z-type glycosidic cleavage. */
+	public static final int Z_CLEAVAGE = 4;
+	/** A-type ring cleavage. */
+	public static final int A_CLEAVAGE = 5;
+	/** X-type ring cleavage. */
+	public static final int X_CLEAVAGE = 6;
+
+	static final int[] NO_CLEAVAGES = new int[0];
+
+	private Glycan structure = null;
+	private Sites sites = null;
+	private MassOptions[] options = null;
+	private int[][] descriptors = null;
+	private FragmentEntry[] entries = null;
+
+	private double[] masses = new double[0];
+	private double[] mz_ratios = new double[0];
+
+	/**
+	   Create an empty set of results.
+	 */
+	public FragmentMasses() {
+	}
+
+	/**
+	   Create the results for the fragments of a structure described
+	   by their cleavages. The masses are computed once and the m/z
+	   values for each set of mass options.
+	 */
+	FragmentMasses(Sites _sites, MassOptions[] _options, List<int[]> fragments) {
+		sites = _sites;
+		structure = sites.getStructure();
+		options = _options;
+
+		descriptors = new int[fragments.size()+1][];
+		double[] fragment_masses = new double[descriptors.length];
+		for( int i=0; i<fragments.size(); i++ ) {
+			descriptors[i] = fragments.get(i);
+			fragment_masses[i] = sites.computeMass(descriptors[i]);
+		}
+		descriptors[fragments.size()] = NO_CLEAVAGES;
+		fragment_masses[fragments.size()] = structure.computeMass();
+
+		masses = new double[options.length*descriptors.length];
+		mz_ratios = new double[masses.length];
+		for( int c=0, i=0; c<options.length; c++ ) {
+			// use the same settings of the fragment structures
+			MassOptions mass_opt = new MassOptions();
+			mass_opt.setValues(options[c]);
+
+			IonCloud cloud = mass_opt.ION_CLOUD.and(mass_opt.NEUTRAL_EXCHANGES);
+			for( int f=0; f<descriptors.length; f++, i++ ) {
+				masses[i] = fragment_masses[f];
+				mz_ratios[i] = cloud.computeMZ(fragment_masses[f]);
+			}
+		}
+	}
+
+	/**
+	   Create the results from a collection of fragment structures.
+	 */
+	FragmentMasses(FragmentCollection fragments) {
+		entries = fragments.getFragments().toArray(new FragmentEntry[0]);
+		masses = new double[entries.length];
+		mz_ratios = new double[entries.length];
+		for( int i=0; i<entries.length; i++ ) {
+			masses[i] = entries[i].mass;
+			mz_ratios[i] = entries[i].mz_ratio;
+		}
+	}
+
+	/**
+	   Return the number of results.
+	 */
+	public int size() {
+		return masses.length;
+	}
+
+	/**
+	   Return the m/z values of all results. The array is shared and
+	   must not be modified.
+	 */
+	public double[] getMZs() {
+		return mz_ratios;
+	}
+
+	/**
+	   Return the neutral masses of all results. The array is shared
+	   and must not be modified.
+	 */
+	public double[] getMasses() {
+		return masses;
+	}
+
+	/**
+	   Return the m/z value of the result at the specified index.
+	 */
+	public double getMZ(int ind) {
+		return mz_ratios[ind];
+	}
+
+	/**
+	   Return the neutral mass of the result at the specified index.
+	 */
+	public double getMass(int ind) {
+		return masses[ind];
+	}
+
+	/**
+	   Return the list of cleavages describing the result at the
+	   specified index, or <code>null</code> if the results have been
+	   computed from the fragment structures.
+	 */
+	public int[] getDescriptor(int ind) {
+		if( descriptors==null )
+			return null;
+		return descriptors[ind%descriptors.length].clone();
+	}
+
+	/**
+	   Return the fragment type of the result at the specified index.
+	   @see Fragmenter#getFragmentType
+	 */
+	public String getName(int ind) {
+		if( entries!=null )
+			return entries[ind].name;
+
+		int[] cuts = descriptors[ind%descriptors.length];
+		if( cuts.length==0 )
+			return Fragmenter.getFragmentType(structure);
+		return sites.getName(cuts);
+	}
+
+	/**
+	   Create the fragment structure of the result at the specified
+	   index.
+	 */
+	public Glycan getFragment(int ind) {
+		if( entries!=null )
+			return entries[ind].fragment.clone();
+
+		MassOptions mass_opt = options[ind/descriptors.length];
+		int[] cuts = descriptors[ind%descriptors.length];
+		if( cuts.length==0 ) {
+			Glycan ret = structure.clone();
+			ret.setMassOptions(mass_opt);
+			return ret;
+		}
+		return sites.createFragment(cuts,mass_opt);
+	}
+
+	/**
+	   Create the fragment entry of the result at the specified
+	   index.
+	 */
+	public FragmentEntry getFragmentEntry(int ind) {
+		if( entries!=null )
+			return entries[ind].clone();
+
+		Glycan fragment = getFragment(ind);
+		return new FragmentEntry(fragment,getName(ind),masses[ind],mz_ratios[ind],fragment.toString());
+	}
+
+	/**
+	   Create the fragment structures of all results and return them
+	   in a collection.
+	 */
+	public FragmentCollection toFragmentCollection() {
+		FragmentCollection ret = new FragmentCollection();
+		for( int i=0; i<size(); i++ )
+			ret.addFragment(getFragmentEntry(i));
+		return ret;
+	}
+
+	//----------------
+	// descriptors
+
+	/**
+	   Return the position of the cleaved residue in the preorder
+	   visit of the structure.
+	 */
+	public static int getSite(int cleavage) {
+		return cleavage>>>12;
+	}
+
+	/**
+	   Return the kind of cleavage.
+	 */
+	public static int getKind(int cleavage) {
+		return (cleavage>>>8)&0xF;
+	}
+
+	/**
+	   Return the index of the ring fragment type.
+	 */
+	public static int getRingType(int cleavage) {
+		return cleavage&0xFF;
+	}
+
+	static int encode(int site, int kind, int ring) {
+		return (site<<12)|(kind<<8)|ring;
+	}
+
+	static boolean isTop(int kind) {
+		return (kind==B_CLEAVAGE || kind==C_CLEAVAGE || kind==A_CLEAVAGE);
+	}
+
+	static boolean isRing(int kind) {
+		return (kind==A_CLEAVAGE || kind==X_CLEAVAGE);
+	}
+
+	/**
+	   The residues of a structure numbered in preorder, together with
+	   the information needed to apply cleavages to them: the masses
+	   and keys of the unfragmented subtrees, the ring fragment types
+	   and the children included by each of them. A fragment is
+	   represented by its sorted list of cleavages; the state of each
+	   residue in the fragment is given by {@link #status}.
+	 */
+	static class Sites {
+
+		/** State of a residue that is part of the fragment. */
+		static final int KEPT = 0;
+		/** State of a residue that has been cleaved off. */
+		static final int GONE = -1;
+
+		private Glycan structure;
+		private int size;
+
+		private Residue[] residues;
+		private Residue[] copies;
+		private int[] parents;
+		private int[] ends;
+		private int[][] children;
+		private Linkage[] links;
+		private int[] no_bonds;
+
+		private boolean[] cleavable;
+		private boolean[] saccharide;
+		private boolean[] ring_linked;
+		private boolean[] ring_unlinked;
+
+		private double[] own_masses;
+		private double[] subtree_masses;
+		private CanonicalKey[] subtree_keys;
+
+		private CrossRingFragmentType[][] types_a;
+		private CrossRingFragmentType[][] types_x;
+		private boolean[][] blocked_a;
+		private boolean[][] allowed_x;
+		private int[][][] included_a;
+		private int[][][] included_x;
+
+		private HashMap<Integer,Residue> markers = new HashMap<Integer,Residue>();
+		private HashMap<Integer,Linkage> marker_links = new HashMap<Integer,Linkage>();
+
+		/**
+		   Number the residues of a structure. The structure must not be
+		   fuzzy and must not contain repeating units or labile residues.
+		 */
+		public Sites(Glycan _structure) {
+			structure = _structure;
+
+			ArrayList<Residue> visit = new ArrayList<Residue>();
+			visit(structure.getRoot(),visit);
+
+			size = visit.size();
+			residues = visit.toArray(new Residue[size]);
+			copies = new Residue[size];
+			parents = new int[size];
+			ends = new int[size];
+			children = new int[size][];
+			links = new Linkage[size];
+			no_bonds = new int[size];
+			cleavable = new boolean[size];
+			saccharide = new boolean[size];
+			ring_linked = new boolean[size];
+			ring_unlinked = new boolean[size];
+			own_masses = new double[size];
+			subtree_masses = new double[size];
+			subtree_keys = new CanonicalKey[size];
+			types_a = new CrossRingFragmentType[size][];
+			types_x = new CrossRingFragmentType[size][];
+			blocked_a = new boolean[size][];
+			allowed_x = new boolean[size][];
+			included_a = new int[size][][];
+			included_x = new int[size][][];
+
+			number(0,-1);
+			for( int i=0; i<size; i++ )
+				init(i);
+
+			// masses and keys are computed bottom-up
+			for( int i=size-1; i>=0; i-- ) {
+				double mass = own_masses[i];
+				CanonicalKey[] keys = new CanonicalKey[children[i].length];
+				for( int j=0; j<children[i].length; j++ ) {
+					int c = children[i][j];
+					mass -= MassUtils.water.getMass()*no_bonds[c];
+					mass += subtree_masses[c];
+					keys[j] = CanonicalKey.linkage(links[c],subtree_keys[c]);
+				}
+				subtree_masses[i] = mass;
+				subtree_keys[i] = CanonicalKey.node(copies[i],keys);
+			}
+		}
+
+		private static void visit(Residue node, ArrayList<Residue> visit) {
+			visit.add(node);
+			for( Linkage l : node.getChildrenLinkages() )
+				visit(l.getChildResidue(),visit);
+		}
+
+		private int number(int i, int parent) {
+			parents[i] = parent;
+			Residue node = residues[i];
+			children[i] = new int[node.getNoChildren()];
+
+			// fragments have the linkages set to the anomeric carbon
+			if( parent>=0 ) {
+				links[i] = createLink(node.getParentLinkage().getBonds(),node.getAnomericCarbon());
+				no_bonds[i] = links[i].getNoBonds();
+			}
+
+			int next = i+1;
+			for( int j=0; j<children[i].length; j++ ) {
+				children[i][j] = next;
+				next = number(next,i);
+			}
+			ends[i] = next;
+			return next;
+		}
+
+		private void init(int i) {
+			Residue node = residues[i];
+			copies[i] = node.cloneResidue();
+			cleavable[i] = node.isCleavable();
+			saccharide[i] = node.isSaccharide();
+			own_masses[i] = structure.computeResidueMass(node.getType(),node.isReducingEnd(),node.hasChildren(),node.getNoBonds());
+
+			if( !saccharide[i] ) {
+				types_a[i] = new CrossRingFragmentType[0];
+				types_x[i] = new CrossRingFragmentType[0];
+				return;
+			}
+
+			ring_linked[i] = checkLinkages(i,true);
+			ring_unlinked[i] = checkLinkages(i,false);
+
+			types_a[i] = CrossRingFragmentDictionary.getCrossRingFragmentTypesA(node).toArray(new CrossRingFragmentType[0]);
+			blocked_a[i] = new boolean[types_a[i].length];
+			included_a[i] = new int[types_a[i].length][];
+			for( int k=0; k<types_a[i].length; k++ ) {
+				blocked_a[i][k] = (links[i]==null || types_a[i][k].anyValidPosition(links[i].getChildPositions()));
+				included_a[i][k] = included(i,types_a[i][k]);
+			}
+
+			types_x[i] = CrossRingFragmentDictionary.getCrossRingFragmentTypesX(node).toArray(new CrossRingFragmentType[0]);
+			allowed_x[i] = new boolean[types_x[i].length];
+			included_x[i] = new int[types_x[i].length][];
+			for( int k=0; k<types_x[i].length; k++ ) {
+				allowed_x[i][k] = (links[i]!=null && types_x[i][k].areValidPositions(links[i].getChildPositions()));
+				included_x[i][k] = included(i,types_x[i][k]);
+			}
+		}
+
+		private static Linkage createLink(Collection<Bond> bonds, char anomeric_carbon) {
+			Linkage ret = new Linkage(null,null,bonds);
+			ret.setAnomericCarbon(anomeric_carbon);
+			return ret;
+		}
+
+		private int[] included(int i, CrossRingFragmentType type) {
+			int no_included = 0;
+			int[] ret = new int[children[i].length];
+			for( int c : children[i] ) {
+				if( type.areValidPositions(links[c].getParentPositions()) )
+					ret[no_included++] = c;
+			}
+			if( no_included==ret.length )
+				return ret;
+
+			int[] trimmed = new int[no_included];
+			System.arraycopy(ret,0,trimmed,0,no_included);
+			return trimmed;
+		}
+
+		/**
+		   Same as {@link Residue#checkLinkages} for a saccharide, the
+		   linkage with the parent is checked only if
+		   <code>linked</code> is <code>true</code>.
+		 */
+		private boolean checkLinkages(int i, boolean linked) {
+			Vector<Character> all_pos = new Vector<Character>(0,1);
+			if( linked && links[i]!=null ) {
+				if( links[i].hasUncertainChildPositions() )
+					return false;
+				all_pos.addAll(links[i].getChildPositions());
+			}
+
+			for( int c : children[i] ) {
+				if( links[c].hasUncertainParentPositions() )
+					return false;
+				all_pos.addAll(links[c].getParentPositions());
+			}
+
+			// check for conflicts
+			HashSet<Character> set = new HashSet<Character>();
+			for( Character c : all_pos ) {
+				if( !set.add(c) )
+					return false;
+			}
+
+			// check linkage positions
+			ResidueType type = residues[i].getType();
+			for( Character pos : all_pos ) {
+				if( !type.isValidPosition(pos.charValue()) )
+					return false;
+			}
+			return true;
+		}
+
+		//----------------
+		// members access
+
+		/**
+		   Return the numbered structure.
+		 */
+		public Glycan getStructure() {
+			return structure;
+		}
+
+		/**
+		   Return the number of residues.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		   Return the parent of a residue, or -1 for the root.
+		 */
+		public int getParent(int i) {
+			return parents[i];
+		}
+
+		/**
+		   Return <code>true</code> if a glycosidic cleavage can be
+		   computed between a residue and its parent in a fragment with
+		   the given state.
+		   @see Fragmenter#canDoCleavage(Residue)
+		 */
+		public boolean canDoCleavage(int[] status, int i) {
+			int p = parents[i];
+			return (cleavable[i] && p>=0 && status[p]==KEPT && cleavable[p]);
+		}
+
+		/**
+		   Return <code>true</code> if a ring cleavage can be computed
+		   at a residue in a fragment with the given state.
+		   @see Fragmenter#canDoRingFragment(Residue)
+		 */
+		public boolean canDoRingFragment(int[] status, int i) {
+			if( !saccharide[i] )
+				return false;
+
+			// the parent linkage is checked only for the reducing end
+			int p = parents[i];
+			if( p>=0 && status[p]==KEPT && isReducingEndMarker(residues[p]) )
+				return ring_linked[i];
+			return ring_unlinked[i];
+		}
+
+		private static boolean isReducingEndMarker(Residue r) {
+			return (r.getTypeName().equals("freeEnd") || r.getTypeName().equals("redEnd"));
+		}
+
+		/**
+		   Return the number of A-type ring fragments for a residue.
+		 */
+		public int getNoRingTypesA(int i) {
+			return types_a[i].length;
+		}
+
+		/**
+		   Return the number of X-type ring fragments for a residue.
+		 */
+		public int getNoRingTypesX(int i) {
+			return types_x[i].length;
+		}
+
+		//----------------
+		// fragment state
+
+		/**
+		   Return the state of each residue in the fragment described by
+		   the list of cleavages: {@link #KEPT}, {@link #GONE} or the
+		   code of the cleavage replacing the residue.
+		 */
+		public int[] status(int[] cuts) {
+			int top = getTop(cuts);
+			int t = (top!=0) ?getSite(top) :-1;
+
+			int[] ret = new int[size];
+			for( int i=0, k=0; i<size; i++ ) {
+				// find the cleavage replacing the residue
+				while( k<cuts.length && getSite(cuts[k])<i )
+					k++;
+				int bottom = KEPT;
+				for( int j=k; j<cuts.length && getSite(cuts[j])==i; j++ ) {
+					if( !isTop(getKind(cuts[j])) )
+						bottom = cuts[j];
+				}
+
+				int p = parents[i];
+				if( i==t )
+					ret[i] = (getKind(top)==A_CLEAVAGE) ?top :bottom;
+				else if( p<0 )
+					ret[i] = (t<0) ?bottom :GONE;
+				else if( ret[p]==GONE )
+					ret[i] = GONE;
+				else if( ret[p]==KEPT )
+					ret[i] = bottom;
+				else if( isRing(getKind(ret[p])) && contains(getIncluded(ret[p]),i) )
+					ret[i] = bottom;
+				else
+					ret[i] = GONE;
+			}
+			return ret;
+		}
+
+		private static int getTop(int[] cuts) {
+			for( int c : cuts ) {
+				if( isTop(getKind(c)) )
+					return c;
+			}
+			return 0;
+		}
+
+		private static boolean contains(int[] v, int e) {
+			for( int i : v ) {
+				if( i==e )
+					return true;
+			}
+			return false;
+		}
+
+		private int[] getIncluded(int code) {
+			int i = getSite(code);
+			if( getKind(code)==A_CLEAVAGE )
+				return included_a[i][getRingType(code)];
+			return included_x[i][getRingType(code)];
+		}
+
+		private CrossRingFragmentType getCrossRingType(int code) {
+			int i = getSite(code);
+			if( getKind(code)==A_CLEAVAGE )
+				return types_a[i][getRingType(code)];
+			return types_x[i][getRingType(code)];
+		}
+
+		private boolean hasBottomCuts(int[] cuts, int from, int to) {
+			for( int c : cuts ) {
+				int s = getSite(c);
+				if( s>=from && s<to && !isTop(getKind(c)) )
+					return true;
+			}
+			return false;
+		}
+
+		//----------------
+		// cleavages
+
+		/**
+		   Return the fragment obtained with a glycosidic cleavage of
+		   the residue <code>i</code> from a fragment, or
+		   <code>null</code> if the result would contain no
+		   saccharide. The cleavage must be allowed by {@link
+		   #canDoCleavage}.
+		 */
+		public int[] cleave(int[] cuts, int i, int kind) {
+			if( kind==B_CLEAVAGE || kind==C_CLEAVAGE ) {
+				// a glycan must contain at least one saccharide
+				if( !saccharide[i] )
+					return null;
+				return collect(cuts,encode(i,kind,0),i+1,ends[i]);
+			}
+
+			// a glycan must contain at least one saccharide
+			if( !saccharide[parents[i]] )
+				return null;
+			return replace(cuts,encode(i,kind,0),i);
+		}
+
+		/**
+		   Return the fragment obtained with a ring cleavage of the
+		   residue <code>i</code> of a fragment, or <code>null</code>
+		   if the fragment is not valid. The checks are the same
+		   performed by {@link Fragmenter#getAFragment} and {@link
+		   Fragmenter#getXFragment}.
+		 */
+		public int[] cleaveRing(int[] cuts, int[] status, int i, int kind, int ring, boolean internal_fragments, boolean small_ring_fragments) {
+			int code = encode(i,kind,ring);
+			int[] included = getIncluded(code);
+
+			int[] ret;
+			if( kind==A_CLEAVAGE ) {
+				// an A fragment must contain no bonds to its parent
+				if( !internal_fragments && blocked_a[i][ring] )
+					return null;
+
+				ret = collect(cuts,code,0,0);
+				for( int c : included )
+					ret = merge(ret,collect(cuts,0,c,ends[c]));
+			}
+			else {
+				// a X fragment must contain all the bonds to its parent
+				if( !allowed_x[i][ring] )
+					return null;
+
+				// an X fragment cannot have children (no internal fragments)
+				if( !internal_fragments ) {
+					for( int c : included ) {
+						if( status[c]==KEPT && saccharide[c] )
+							return null;
+					}
+				}
+
+				ret = replace(cuts,code,i);
+				for( int c : included )
+					ret = merge(ret,collect(cuts,0,c,ends[c]));
+			}
+
+			// check the resulting fragment
+			int[] new_status = status(ret);
+			if( !internal_fragments && hasGlycosidicNeighbours(ret,new_status,i) )
+				return null;
+
+			// a glycan must contain at least one saccharide or a charge (in
+			// negative mode)
+			if( (!isSmallRingFragment(ret,new_status) && !hasRingNeighbours(ret,new_status,i)) ||
+				(small_ring_fragments && countCharges(ret,new_status)>0) )
+				return ret;
+			return null;
+		}
+
+		/**
+		   Return the cleavages of a fragment with code <code>top</code>
+		   (if not 0) followed by the bottom cleavages in the range of
+		   sites [from,to).
+		 */
+		private static int[] collect(int[] cuts, int top, int from, int to) {
+			int n = (top!=0) ?1 :0;
+			for( int c : cuts ) {
+				int s = getSite(c);
+				if( s>=from && s<to && !isTop(getKind(c)) )
+					n++;
+			}
+
+			int[] ret = new int[n];
+			n = 0;
+			if( top!=0 )
+				ret[n++] = top;
+			for( int c : cuts ) {
+				int s = getSite(c);
+				if( s>=from && s<to && !isTop(getKind(c)) )
+					ret[n++] = c;
+			}
+			return ret;
+		}
+
+		/**
+		   Return the cleavages of a fragment where the subtree rooted
+		   at site <code>i</code> is replaced by the cleavage
+		   <code>code</code>.
+		 */
+		private int[] replace(int[] cuts, int code, int i) {
+			int n = 1;
+			for( int c : cuts ) {
+				int s = getSite(c);
+				if( s<i || s>=ends[i] || isTop(getKind(c)) )
+					n++;
+			}
+
+			int[] ret = new int[n];
+			n = 0;
+			for( int c : cuts ) {
+				int s = getSite(c);
+				if( s<i || s>=ends[i] || isTop(getKind(c)) )
+					ret[n++] = c;
+			}
+			ret[n] = code;
+			Arrays.sort(ret);
+			return ret;
+		}
+
+		private static int[] merge(int[] a, int[] b) {
+			if( b.length==0 )
+				return a;
+			int[] ret = new int[a.length+b.length];
+			System.arraycopy(a,0,ret,0,a.length);
+			System.arraycopy(b,0,ret,a.length,b.length);
+			Arrays.sort(ret);
+			return ret;
+		}
+
+		private boolean isSaccharide(int[] status, int i) {
+			return (status[i]==KEPT && saccharide[i]);
+		}
+
+		private boolean hasSaccharideChildren(int[] status, int i) {
+			for( int c : children[i] ) {
+				if( isSaccharide(status,c) )
+					return true;
+			}
+			return false;
+		}
+
+		private static boolean isRingFragment(int state) {
+			return (state>0 && isRing(getKind(state)));
+		}
+
+		private static boolean isGlycosidicCleavage(int state) {
+			return (state>0 && !isRing(getKind(state)));
+		}
+
+		/**
+		   Same as {@link Glycan#isSmallRingFragment}.
+		 */
+		private boolean isSmallRingFragment(int[] cuts, int[] status) {
+			int top = getTop(cuts);
+			if( top!=0 ) {
+				int t = getSite(top);
+				if( getKind(top)==A_CLEAVAGE )
+					return !hasSaccharideChildren(status,t);
+
+				// the B/C cleavage has a single child
+				return (isRingFragment(status[t]) && !hasSaccharideChildren(status,t));
+			}
+
+			int first = -1, no_children = 0;
+			for( int c : children[0] ) {
+				if( status[c]!=GONE ) {
+					if( no_children++==0 )
+						first = c;
+				}
+			}
+			return (no_children==1 && isRingFragment(status[first]) && !hasSaccharideChildren(status,first));
+		}
+
+		private boolean isBelowTop(int[] cuts, int i) {
+			int top = getTop(cuts);
+			return (top!=0 && getSite(top)==i);
+		}
+
+		/**
+		   Same as {@link Residue#hasRingFragments} for the residue
+		   replaced by a ring cleavage at site <code>i</code>.
+		 */
+		private boolean hasRingNeighbours(int[] cuts, int[] status, int i) {
+			for( int c : children[i] ) {
+				if( isRingFragment(status[c]) )
+					return true;
+			}
+			if( isBelowTop(cuts,i) )
+				return false;
+			return (parents[i]>=0 && isRingFragment(status[parents[i]]));
+		}
+
+		/**
+		   Same as {@link Residue#hasGlycosidicCleavages} for the
+		   residue replaced by a ring cleavage at site <code>i</code>.
+		 */
+		private boolean hasGlycosidicNeighbours(int[] cuts, int[] status, int i) {
+			for( int c : children[i] ) {
+				if( isGlycosidicCleavage(status[c]) )
+					return true;
+			}
+			if( isBelowTop(cuts,i) )
+				return !isRing(getKind(getTop(cuts)));
+			return (parents[i]>=0 && isGlycosidicCleavage(status[parents[i]]));
+		}
+
+		/**
+		   Same as {@link Glycan#countCharges}.
+		 */
+		private int countCharges(int[] cuts, int[] status) {
+			int ret = 0;
+			int top = getTop(cuts);
+			if( top!=0 && !isRing(getKind(top)) )
+				ret += getMarker(top).getType().getNoCharges();
+			for( int i=0; i<size; i++ ) {
+				if( status[i]==KEPT )
+					ret += residues[i].getType().getNoCharges();
+				else if( status[i]!=GONE )
+					ret += getMarker(status[i]).getType().getNoCharges();
+			}
+			return ret;
+		}
+
+		//----------------
+		// markers
+
+		/**
+		   Return the residue representing a cleavage.
+		 */
+		private Residue getMarker(int code) {
+			Residue ret = markers.get(code);
+			if( ret==null ) {
+				ret = createMarker(code);
+				markers.put(code,ret);
+			}
+			return ret;
+		}
+
+		private Residue createMarker(int code) {
+			int i = getSite(code);
+			int kind = getKind(code);
+
+			Residue ret;
+			if( kind==B_CLEAVAGE )
+				ret = ResidueDictionary.createBCleavage();
+			else if( kind==C_CLEAVAGE )
+				ret = ResidueDictionary.createCCleavage();
+			else if( kind==Y_CLEAVAGE )
+				ret = ResidueDictionary.createYCleavage();
+			else if( kind==Z_CLEAVAGE )
+				ret = ResidueDictionary.createZCleavage();
+			else
+				ret = new Residue(getCrossRingType(code));
+
+			// B/C cleavages replace the parent
+			if( kind==B_CLEAVAGE || kind==C_CLEAVAGE )
+				ret.setCleavedResidue(copies[parents[i]].cloneResidue());
+			else
+				ret.setCleavedResidue(copies[i].cloneResidue());
+			return ret;
+		}
+
+		/**
+		   Return the linkage between the residue at site
+		   <code>i</code> and its parent in a fragment.
+		 */
+		private Linkage getLink(int[] status, int i) {
+			if( status[i]==KEPT )
+				return links[i];
+
+			Linkage ret = marker_links.get(status[i]);
+			if( ret==null ) {
+				ret = createLink(links[i].getBonds(),getMarker(status[i]).getAnomericCarbon());
+				marker_links.put(status[i],ret);
+			}
+			return ret;
+		}
+
+		private double computeMarkerMass(int code, boolean has_children, int bonds) {
+			Residue marker = getMarker(code);
+			return structure.computeResidueMass(marker.getType(),false,has_children,bonds);
+		}
+
+		//----------------
+		// fragment values
+
+		/**
+		   Compute the mass of a fragment. The values are added in the
+		   same order used by {@link Glycan#computeMass}.
+		 */
+		public double computeMass(int[] cuts) {
+			int[] status = status(cuts);
+			int top = getTop(cuts);
+			if( top==0 )
+				return computeMass(cuts,status,0) + 0.;
+
+			int t = getSite(top);
+			if( getKind(top)==A_CLEAVAGE )
+				return computeMass(cuts,status,t) + 0.;
+
+			Residue marker = getMarker(top);
+			double mass = structure.computeResidueMass(marker.getType(),marker.getType().canBeReducingEnd(),true,no_bonds[t]);
+			mass -= MassUtils.water.getMass()*no_bonds[t];
+			mass += computeMass(cuts,status,t);
+			return mass + 0.;
+		}
+
+		private double computeMass(int[] cuts, int[] status, int i) {
+			int state = status[i];
+			if( state==KEPT && !hasBottomCuts(cuts,i,ends[i]) )
+				return subtree_masses[i];
+
+			double mass;
+			if( state==KEPT )
+				mass = own_masses[i];
+			else if( !isRing(getKind(state)) )
+				return computeMarkerMass(state,false,no_bonds[i]);
+			else {
+				int bonds = (getKind(state)==A_CLEAVAGE) ?0 :no_bonds[i];
+				int[] included = getIncluded(state);
+				for( int c : included )
+					bonds += no_bonds[c];
+
+				Residue marker = getMarker(state);
+				boolean redend = (getKind(state)==A_CLEAVAGE && marker.getType().canBeReducingEnd());
+				mass = structure.computeResidueMass(marker.getType(),redend,included.length>0,bonds);
+			}
+
+			for( int c : children[i] ) {
+				if( status[c]!=GONE ) {
+					mass -= MassUtils.water.getMass()*no_bonds[c];
+					mass += computeMass(cuts,status,c);
+				}
+			}
+			return mass;
+		}
+
+		/**
+		   Compute the key of a fragment, without the mass options.
+		   @see Glycan#canonicalKey(boolean)
+		 */
+		public CanonicalKey computeKey(int[] cuts) {
+			int[] status = status(cuts);
+			int top = getTop(cuts);
+			if( top==0 )
+				return CanonicalKey.structure(computeKey(cuts,status,0),null);
+
+			int t = getSite(top);
+			if( getKind(top)==A_CLEAVAGE )
+				return CanonicalKey.structure(computeKey(cuts,status,t),null);
+
+			CanonicalKey[] links = new CanonicalKey[] { CanonicalKey.linkage(getLink(status,t),computeKey(cuts,status,t)) };
+			return CanonicalKey.structure(CanonicalKey.node(getMarker(top),links),null);
+		}
+
+		private CanonicalKey computeKey(int[] cuts, int[] status, int i) {
+			if( status[i]==KEPT && !hasBottomCuts(cuts,i,ends[i]) )
+				return subtree_keys[i];
+
+			int no_links = 0;
+			CanonicalKey[] links = new CanonicalKey[children[i].length];
+			for( int c : children[i] ) {
+				if( status[c]!=GONE )
+					links[no_links++] = CanonicalKey.linkage(getLink(status,c),computeKey(cuts,status,c));
+			}
+			if( no_links<links.length ) {
+				CanonicalKey[] trimmed = new CanonicalKey[no_links];
+				System.arraycopy(links,0,trimmed,0,no_links);
+				links = trimmed;
+			}
+
+			Residue node = (status[i]==KEPT) ?copies[i] :getMarker(status[i]);
+			return CanonicalKey.node(node,links);
+		}
+
+		/**
+		   Return the identity of a fragment, used to detect the
+		   duplicated fragments. The structure of the fragment is
+		   created only to confirm that two fragments with the same key
+		   are identical.
+		 */
+		public StructureKey getStructureKey(final int[] cuts) {
+			return new StructureKey(computeKey(cuts),null,false) {
+				protected Glycan createStructure() {
+					return createFragment(cuts,structure.getMassOptions());
+				}
+			};
+		}
+
+		/**
+		   Return the type of a fragment.
+		   @see Fragmenter#getFragmentType
+		 */
+		public String getName(int[] cuts) {
+			StringBuilder sb = new StringBuilder();
+			for( int c : cuts ) {
+				Residue marker = getMarker(c);
+				sb.append(marker.getCleavageType());
+				if( marker.isRingFragment() )
+					sb.append("_{").append(marker.getCleavedResidue().getTypeName()).append('}');
+			}
+			return sb.toString();
+		}
+
+		/**
+		   Create the structure of a fragment.
+		 */
+		public Glycan createFragment(int[] cuts, MassOptions mass_opt) {
+			int[] status = status(cuts);
+			int top = getTop(cuts);
+
+			Residue root;
+			if( top==0 )
+				root = createSubtree(status,0);
+			else if( getKind(top)==A_CLEAVAGE )
+				root = createSubtree(status,getSite(top));
+			else {
+				int t = getSite(top);
+				root = createMarker(top);
+				root.addChild(createSubtree(status,t),links[t].getBonds());
+			}
+			return new Glycan(root,false,mass_opt);
+		}
+
+		private Residue createSubtree(int[] status, int i) {
+			Residue ret = (status[i]==KEPT) ?copies[i].cloneResidue() :createMarker(status[i]);
+			for( int c : children[i] ) {
+				if( status[c]!=GONE )
+					ret.addChild(createSubtree(status,c),links[c].getBonds());
+			}
+			return ret;
+		}
+	}
+}
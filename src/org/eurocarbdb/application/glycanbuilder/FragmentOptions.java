@@ -53,6 +53,13 @@ public class FragmentOptions {
     public int MAX_NO_CROSSRINGS = 1;   
 
     public boolean ITERATE_ION_COMBINATIONS=false;
+
+    /** Specify if the fragments should be computed using multiple
+    threads (default = false) */
+    public boolean PARALLEL_FRAGMENTATION = false;
+    /** Specify the number of threads used for the parallel
+    fragmentation, 0 means one per available processor (default = 0) */
+    public int NO_THREADS = 0;
     
     // pojo
     
@@ -160,6 +167,30 @@ public class FragmentOptions {
 
 
 
+    /** Return <code>true</code> if the fragments should be computed
+    using multiple threads */
+    public boolean getParallelFragmentation() {
+    return PARALLEL_FRAGMENTATION;
+    }
+
+    /** Specify if the fragments should be computed using multiple
+    threads */
+    public void setParallelFragmentation(boolean f) {
+    PARALLEL_FRAGMENTATION = f;
+    }
+
+    /** Return the number of threads used for the parallel
+    fragmentation */
+    public int getNoThreads() {
+    return NO_THREADS;
+    }
+
+    /** Specify the number of threads used for the parallel
+    fragmentation, 0 means one per available processor */
+    public void setNoThreads(int i) {
+    NO_THREADS = i;
+    }
+
     // serialization
 
     public boolean isITERATE_ION_COMBINATIONS() {
@@ -182,6 +213,9 @@ public class FragmentOptions {
 
     config.put("FragmentOptions","max_no_cleavages",MAX_NO_CLEAVAGES);
     config.put("FragmentOptions","max_no_crossrings",MAX_NO_CROSSRINGS);
+
+    config.put("FragmentOptions","parallel_fragmentation",PARALLEL_FRAGMENTATION);
+    config.put("FragmentOptions","no_threads",NO_THREADS);
     }
 
     public void retrieve(Configuration config) {
@@ -196,5 +230,8 @@ public class FragmentOptions {
 
     MAX_NO_CLEAVAGES  = config.get("FragmentOptions","max_no_cleavages",MAX_NO_CLEAVAGES);
     MAX_NO_CROSSRINGS = config.get("FragmentOptions","max_no_crossrings",MAX_NO_CROSSRINGS);
+
+    PARALLEL_FRAGMENTATION = config.get("FragmentOptions","parallel_fragmentation",PARALLEL_FRAGMENTATION);
+    NO_THREADS = config.get("FragmentOptions","no_threads",NO_THREADS);
     }
 }
\ No newline at end of file
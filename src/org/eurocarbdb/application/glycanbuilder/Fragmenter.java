@@ -21,6 +21,9 @@
 package org.eurocarbdb.application.glycanbuilder;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This utility class is used to generate all possible fragments of a glycan
@@ -42,6 +45,10 @@ public class Fragmenter {
 	protected int max_no_crossrings = 1;
 	protected boolean small_ring_fragments = true;
 	protected boolean iterate_ion_combinations = false;
+	protected boolean parallel_fragmentation = false;
+	protected int no_threads = 0;
+	protected ExecutorService executor = null;
+	protected FragmentCache fragment_cache = null;
 
 	/**
 	 * Initialize the fragmenter using the default options.
@@ -69,6 +76,9 @@ public class Fragmenter {
 			max_no_crossrings = opt.MAX_NO_CROSSRINGS;
 			
 			iterate_ion_combinations = opt.ITERATE_ION_COMBINATIONS;
+
+			parallel_fragmentation = opt.PARALLEL_FRAGMENTATION;
+			no_threads = opt.NO_THREADS;
 		}
 	}
 
@@ -210,6 +220,74 @@ public class Fragmenter {
 		this.iterate_ion_combinations = iterate_ion_combinations;
 	}
 
+	/**
+	 * Return <code>true</code> if this fragmenter will compute the fragments
+	 * using multiple threads.
+	 */
+	public boolean getParallelFragmentation() {
+		return parallel_fragmentation;
+	}
+
+	/**
+	 * Set to <code>true</code> if this fragmenter should compute the
+	 * fragments using multiple threads.
+	 */
+	public void setParallelFragmentation(boolean f) {
+		parallel_fragmentation = f;
+	}
+
+	/**
+	 * Return the number of threads used for the parallel fragmentation, 0
+	 * means one per available processor.
+	 */
+	public int getNoThreads() {
+		return no_threads;
+	}
+
+	/**
+	 * Set the number of threads used for the parallel fragmentation, 0 means
+	 * one per available processor.
+	 */
+	public void setNoThreads(int i) {
+		no_threads = i;
+	}
+
+	/**
+	 * Return the executor used for the parallel fragmentation, or
+	 * <code>null</code> if a new thread pool is created for each structure.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Set the executor used for the parallel fragmentation. The executor is
+	 * not shut down by the fragmenter. If <code>null</code> a thread pool of
+	 * {@link #getNoThreads} threads is created for each structure.
+	 */
+	public void setExecutor(ExecutorService e) {
+		executor = e;
+	}
+
+	/**
+	 * Return the cache used to reuse the fragments of the structures already
+	 * fragmented, or <code>null</code> if the fragments are always computed.
+	 */
+	public FragmentCache getFragmentCache() {
+		return fragment_cache;
+	}
+
+	/**
+	 * Set the cache used to reuse the fragments of the structures already
+	 * fragmented. The same cache should be used for all structures of a batch
+	 * so that the subtrees they have in common are fragmented only once. If
+	 * <code>null</code> the fragments are always computed. The cache is not
+	 * used by the parallel fragmentation.
+	 */
+	public void setFragmentCache(FragmentCache c) {
+		fragment_cache = c;
+	}
+
 	/**
 	 * Return <code>true</code> if this fragmenter will create fragments
 	 * containing no intact saccharides.
@@ -345,6 +423,11 @@ public class Fragmenter {
 	 */
 	public void computeAllFragments(FragmentCollection fragments,
 			Glycan structure) {
+		if (parallel_fragmentation) {
+			computeAllFragmentsParallel(fragments, structure);
+			return;
+		}
+
 		if (structure != null && !structure.isFuzzy(true)
 				&& !structure.hasRepetition()) {
 			// remove exchanges from parent mass options
@@ -368,7 +451,17 @@ public class Fragmenter {
 				parent.setMassOptions(options);
 
 				// compute fragments
-				if (parent.hasLabileResidues()) {
+				if (fragment_cache != null) {
+					boolean with_labiles = parent.hasLabileResidues();
+					computeAllFragmentsCached(fragments, parent, with_labiles,
+							max_no_cleavages, Math.min(max_no_cleavages,
+									max_no_crossrings), options);
+					if (with_labiles) {
+						for (Glycan conf : parent.getAllLabilesConfigurations())
+							fragments.addFragment(conf, getFragmentType(conf));
+					} else
+						fragments.addFragment(parent, getFragmentType(parent));
+				} else if (parent.hasLabileResidues()) {
 					computeAllFragmentsWithLabiles(fragments, parent,
 							max_no_cleavages, Math.min(max_no_cleavages,
 									max_no_crossrings), options);
@@ -384,6 +477,515 @@ public class Fragmenter {
 		}
 	}
 
+	/**
+	 * Compute all fragments of a given structure using multiple threads. The
+	 * fragments generated by each cleavage site of each structure and ion
+	 * combination are computed concurrently, then the results are merged in
+	 * the same order used by the serial version so that the returned
+	 * collection is exactly the same. Return the results in
+	 * <code>fragments</code>.
+	 * 
+	 * @see #setExecutor
+	 */
+	public void computeAllFragmentsParallel(FragmentCollection fragments,
+			Glycan structure) {
+		if (structure != null && !structure.isFuzzy(true)
+				&& !structure.hasRepetition()) {
+			// remove exchanges from parent mass options
+			MassOptions mass_opt = structure.getMassOptions().removeExchanges();
+			List<IonCloud> ionClouds;
+
+			if (iterate_ion_combinations) {
+				ionClouds = mass_opt.ION_CLOUD.generateCombinations();
+			} else {
+				ionClouds = new ArrayList<IonCloud>();
+				ionClouds.add(mass_opt.ION_CLOUD);
+			}
+
+			ExecutorService pool = executor;
+			if (pool == null)
+				pool = Executors.newFixedThreadPool((no_threads > 0) ? no_threads
+						: Runtime.getRuntime().availableProcessors());
+
+			try {
+				ParallelFragmentation run = new ParallelFragmentation(pool);
+				Vector<FragmentNode> parents = new Vector<FragmentNode>();
+				int cur_max_no_crossrings = Math.min(max_no_cleavages,
+						max_no_crossrings);
+
+				// compute the fragments of all ion combinations at once
+				for (IonCloud ionCloud : ionClouds) {
+					MassOptions options = mass_opt.clone();
+					options.ION_CLOUD = ionCloud.clone();
+
+					Glycan parent = structure.clone();
+					parent.setMassOptions(options);
+
+					FragmentNode node = new FragmentNode(parent, parent
+							.hasLabileResidues(), options, null);
+					parents.add(node);
+					run.offer(node, max_no_cleavages, cur_max_no_crossrings);
+				}
+				run.await();
+
+				// merge
+				for (FragmentNode parent : parents) {
+					run.merge(fragments, parent, max_no_cleavages,
+							cur_max_no_crossrings);
+					if (parent.with_labiles) {
+						for (Glycan conf : parent.structure
+								.getAllLabilesConfigurations())
+							fragments.addFragment(conf, getFragmentType(conf));
+					} else
+						fragments.addFragment(parent.structure,
+								getFragmentType(parent.structure));
+				}
+			} finally {
+				if (pool != executor)
+					pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Return an iterator over all fragments of a given structure. The
+	 * fragments are computed while iterating, in the same order used by
+	 * {@link #computeAllFragments(Glycan)}.
+	 */
+	public FragmentIterator iterateAllFragments(Glycan structure) {
+		return new FragmentIterator(this, structure, 0, 0, null);
+	}
+
+	/**
+	 * Return an iterator over all fragments of a given structure. The
+	 * fragments are computed while iterating, in the same order used by
+	 * {@link #computeAllFragments(Glycan)}, and the iteration stops after
+	 * <code>max_no_fragments</code> fragments, when the time returned by
+	 * <code>System.currentTimeMillis()</code> reaches <code>deadline</code>
+	 * or when <code>cancelled</code> is set. A value of 0 disables the
+	 * corresponding limit.
+	 * 
+	 * @see FragmentIterator#isTruncated
+	 */
+	public FragmentIterator iterateAllFragments(Glycan structure,
+			int max_no_fragments, long deadline, AtomicBoolean cancelled) {
+		return new FragmentIterator(this, structure, max_no_fragments,
+				deadline, cancelled);
+	}
+
+	/**
+	 * Compute the masses of all fragments of a given structure without
+	 * creating the fragment structures. The fragments are the same returned
+	 * by {@link #computeAllFragments(Glycan)}, each one described by the list
+	 * of its cleavages. Structures with labile residues are fragmented with
+	 * {@link #computeAllFragments(Glycan)}.
+	 */
+	public FragmentMasses computeAllFragmentMasses(Glycan structure) {
+		if (structure == null || structure.isFuzzy(true)
+				|| structure.hasRepetition())
+			return new FragmentMasses();
+
+		if (structure.hasLabileResidues()) {
+			FragmentCollection fragments = new FragmentCollection();
+			computeAllFragments(fragments, structure);
+			return new FragmentMasses(fragments);
+		}
+
+		// remove exchanges from parent mass options
+		MassOptions mass_opt = structure.getMassOptions().removeExchanges();
+		List<IonCloud> ionClouds;
+
+		if (iterate_ion_combinations) {
+			ionClouds = mass_opt.ION_CLOUD.generateCombinations();
+		} else {
+			ionClouds = new ArrayList<IonCloud>();
+			ionClouds.add(mass_opt.ION_CLOUD);
+		}
+
+		MassOptions[] options = new MassOptions[ionClouds.size()];
+		for (int i = 0; i < options.length; i++) {
+			options[i] = mass_opt.clone();
+			options[i].ION_CLOUD = ionClouds.get(i).clone();
+		}
+
+		Glycan parent = structure.clone();
+		parent.setMassOptions(options[0]);
+
+		// the fragments are the same for all ion combinations
+		FragmentMasses.Sites sites = new FragmentMasses.Sites(parent);
+		List<int[]> fragments = new ArrayList<int[]>();
+		computeAllFragmentMasses(sites, fragments, new HashSet<StructureKey>(),
+				FragmentMasses.NO_CLEAVAGES, max_no_cleavages, Math.min(
+						max_no_cleavages, max_no_crossrings));
+		return new FragmentMasses(sites, options, fragments);
+	}
+
+	/**
+	 * A structure generated during the parallel fragmentation, together with
+	 * the ordered list of fragments obtained from it by a single cleavage.
+	 */
+	private static class FragmentNode {
+
+		public final Glycan structure;
+		public final boolean with_labiles;
+		public final MassOptions mass_opt;
+		public final FragmentEntry entry;
+
+		// largest number of cleavages with which the node has been reached
+		private int max_no_cleavages = 0;
+		private int max_no_crossrings = 0;
+
+		private List<FragmentNode> children = null;
+		private List<Boolean> ring_fragments = null;
+		private boolean with_crossrings = false;
+
+		public FragmentNode(Glycan _structure, boolean _with_labiles,
+				MassOptions _mass_opt, FragmentEntry _entry) {
+			structure = _structure;
+			with_labiles = _with_labiles;
+			mass_opt = _mass_opt;
+			entry = _entry;
+		}
+
+		public synchronized boolean raise(int cur_max_no_cleavages,
+				int cur_max_no_crossrings) {
+			if (cur_max_no_cleavages == 0)
+				return false;
+			if (cur_max_no_cleavages <= max_no_cleavages
+					&& cur_max_no_crossrings <= max_no_crossrings)
+				return false;
+
+			max_no_cleavages = Math.max(max_no_cleavages, cur_max_no_cleavages);
+			max_no_crossrings = Math.max(max_no_crossrings,
+					cur_max_no_crossrings);
+			return true;
+		}
+	}
+
+	/**
+	 * Hold the state of a parallel fragmentation. The structures are
+	 * expanded concurrently with the largest number of cleavages with which
+	 * they are reached; the fragments are then added to the collection
+	 * following the order of the serial version, which discards the
+	 * duplicates the same way.
+	 */
+	private class ParallelFragmentation {
+
+		private ExecutorService pool;
+		private ConcurrentHashMap<StructureKey, FragmentNode> nodes = new ConcurrentHashMap<StructureKey, FragmentNode>();
+		private AtomicInteger pending = new AtomicInteger(0);
+		private volatile Throwable failure = null;
+
+		public ParallelFragmentation(ExecutorService _pool) {
+			pool = _pool;
+		}
+
+		public void offer(final FragmentNode node, int cur_max_no_cleavages,
+				int cur_max_no_crossrings) {
+			if (!node.raise(cur_max_no_cleavages, cur_max_no_crossrings))
+				return;
+
+			pending.incrementAndGet();
+			try {
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							if (failure == null)
+								expand(node);
+						} catch (Throwable t) {
+							failure = t;
+						} finally {
+							done();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				failure = e;
+				done();
+			}
+		}
+
+		private void done() {
+			if (pending.decrementAndGet() == 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+
+		private void expand(FragmentNode node) {
+			int cur_max_no_cleavages;
+			int cur_max_no_crossrings;
+			List<FragmentNode> children;
+			List<Boolean> ring_fragments;
+
+			synchronized (node) {
+				cur_max_no_cleavages = node.max_no_cleavages;
+				cur_max_no_crossrings = node.max_no_crossrings;
+
+				boolean with_crossrings = (cur_max_no_crossrings > 0);
+				if (node.children == null
+						|| (with_crossrings && !node.with_crossrings)) {
+					List<Glycan> found = new ArrayList<Glycan>();
+					List<Boolean> rings = new ArrayList<Boolean>();
+					computeChildren(node.structure, node.with_labiles,
+							with_crossrings, node.mass_opt, found, rings);
+
+					node.children = new ArrayList<FragmentNode>();
+					node.ring_fragments = new ArrayList<Boolean>();
+					node.with_crossrings = with_crossrings;
+					for (int i = 0; i < found.size(); i++)
+						addChild(node, found.get(i), rings.get(i));
+				}
+				children = node.children;
+				ring_fragments = node.ring_fragments;
+			}
+
+			for (int i = 0; i < children.size(); i++) {
+				if (!ring_fragments.get(i))
+					offer(children.get(i), cur_max_no_cleavages - 1,
+							cur_max_no_crossrings);
+				else if (cur_max_no_crossrings > 0)
+					offer(children.get(i), cur_max_no_cleavages - 1,
+							cur_max_no_crossrings - 1);
+			}
+		}
+
+		private void addChild(FragmentNode node, Glycan fragment,
+				boolean ring_fragment) {
+			if (fragment == null || fragment.getRoot() == null)
+				return;
+
+			StructureKey key = new StructureKey(fragment, true);
+			FragmentNode child = nodes.get(key);
+			if (child == null) {
+				FragmentEntry entry = new FragmentEntry(fragment,
+						getFragmentType(fragment), fragment.computeMass(),
+						fragment.computeMZ(), fragment.toString());
+				child = new FragmentNode(fragment, node.with_labiles,
+						node.mass_opt, entry);
+
+				FragmentNode old = nodes.putIfAbsent(key, child);
+				if (old != null)
+					child = old;
+			}
+
+			node.children.add(child);
+			node.ring_fragments.add(ring_fragment);
+		}
+
+		public void await() {
+			synchronized (this) {
+				while (pending.get() > 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException(
+								"Interrupted while computing the fragments", e);
+					}
+				}
+			}
+
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			if (failure != null)
+				throw new RuntimeException(failure);
+		}
+
+		public void merge(FragmentCollection fragments, FragmentNode node,
+				int cur_max_no_cleavages, int cur_max_no_crossrings) {
+			if (cur_max_no_cleavages == 0)
+				return;
+
+			for (int i = 0; i < node.children.size(); i++) {
+				FragmentNode child = node.children.get(i);
+				if (!node.ring_fragments.get(i)) {
+					if (fragments.addFragment(child.entry))
+						merge(fragments, child, cur_max_no_cleavages - 1,
+								cur_max_no_crossrings);
+				} else if (cur_max_no_crossrings > 0) {
+					if (fragments.addFragment(child.entry))
+						merge(fragments, child, cur_max_no_cleavages - 1,
+								cur_max_no_crossrings - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the fragments obtained from a structure by a single cleavage, in
+	 * the order in which they are added by {@link #computeAllFragments}.
+	 * Return the fragments in <code>children</code> and in
+	 * <code>ring_fragments</code> which of them are cross ring fragments.
+	 */
+	private void computeChildren(Glycan structure, boolean with_labiles,
+			boolean with_crossrings, MassOptions mass_opt,
+			List<Glycan> children, List<Boolean> ring_fragments) {
+		if (with_labiles) {
+			Glycan detached = structure.detachLabileResidues();
+			computeChildren(detached.getRoot(), detached
+					.getDetachedLabilesPattern(), with_labiles,
+					with_crossrings, mass_opt, children, ring_fragments);
+		} else
+			computeChildren(structure.getRoot(), null, with_labiles,
+					with_crossrings, mass_opt, children, ring_fragments);
+	}
+
+	private void computeChildren(Residue current, TypePattern avail_labiles,
+			boolean with_labiles, boolean with_crossrings,
+			MassOptions mass_opt, List<Glycan> children,
+			List<Boolean> ring_fragments) {
+		// glycosidic cleavages
+		if (canDoCleavage(current)) {
+			if (bfragments)
+				addChildren(getBFragment(current, mass_opt), false,
+						with_labiles, avail_labiles, children, ring_fragments);
+			if (cfragments)
+				addChildren(getCFragment(current, mass_opt), false,
+						with_labiles, avail_labiles, children, ring_fragments);
+			if (yfragments)
+				addChildren(getYFragment(current, mass_opt), false,
+						with_labiles, avail_labiles, children, ring_fragments);
+			if (zfragments)
+				addChildren(getZFragment(current, mass_opt), false,
+						with_labiles, avail_labiles, children, ring_fragments);
+		}
+
+		// cross ring cleavages
+		if (with_crossrings && canDoRingFragment(current)) {
+			if (afragments) {
+				for (CrossRingFragmentType crt : CrossRingFragmentDictionary
+						.getCrossRingFragmentTypesA(current))
+					addChildren(getAFragment(current, crt, with_labiles,
+							mass_opt), true, with_labiles, avail_labiles,
+							children, ring_fragments);
+			}
+			if (xfragments) {
+				for (CrossRingFragmentType crt : CrossRingFragmentDictionary
+						.getCrossRingFragmentTypesX(current))
+					addChildren(getXFragment(current, crt, with_labiles,
+							mass_opt), true, with_labiles, avail_labiles,
+							children, ring_fragments);
+			}
+		}
+
+		// recursion
+		for (Linkage l : current.getChildrenLinkages())
+			computeChildren(l.getChildResidue(), avail_labiles, with_labiles,
+					with_crossrings, mass_opt, children, ring_fragments);
+	}
+
+	private void addChildren(Glycan fragment, boolean ring_fragment,
+			boolean with_labiles, TypePattern avail_labiles,
+			List<Glycan> children, List<Boolean> ring_fragments) {
+		if (!with_labiles) {
+			if (fragment != null && fragment.getRoot() != null) {
+				children.add(fragment);
+				ring_fragments.add(ring_fragment);
+			}
+			return;
+		}
+
+		for (Glycan conf : Glycan.getAllLabilesConfigurations(fragment,
+				avail_labiles)) {
+			if (conf.getRoot() != null
+					&& (!ring_fragment || !conf.isSmallRingFragment() || conf
+							.countCharges() > 0)) {
+				children.add(conf);
+				ring_fragments.add(ring_fragment);
+			}
+		}
+	}
+
+	/**
+	 * Compute all fragments of a structure reusing the fragments stored in
+	 * the cache. The fragments are added in the same order used by
+	 * {@link #computeAllFragments(FragmentCollection, Residue, int, int, MassOptions)}
+	 * so that the duplicates are discarded the same way.
+	 */
+	protected void computeAllFragmentsCached(FragmentCollection fragments,
+			Glycan structure, boolean with_labiles, int cur_max_no_cleavages,
+			int cur_max_no_crossrings, MassOptions mass_opt) {
+		computeAllFragmentsCached(fragments, structure, structure.toString(),
+				with_labiles, cur_max_no_cleavages, cur_max_no_crossrings,
+				mass_opt);
+	}
+
+	private void computeAllFragmentsCached(FragmentCollection fragments,
+			Glycan structure, String str, boolean with_labiles,
+			int cur_max_no_cleavages, int cur_max_no_crossrings,
+			MassOptions mass_opt) {
+		if (cur_max_no_cleavages == 0)
+			return;
+
+		// the order of the fragments depends on the order of the children
+		// of each residue, which is preserved by the string representation
+		boolean with_crossrings = (cur_max_no_crossrings > 0);
+		String key = str + "|" + mass_opt.toString() + "|"
+				+ getCacheSettings(with_labiles);
+		FragmentCache.Fragments cached = fragment_cache.get(key,
+				with_crossrings);
+		FragmentEntry[] children;
+		if (cached == null) {
+			List<Glycan> found = new ArrayList<Glycan>();
+			List<Boolean> ring_fragments = new ArrayList<Boolean>();
+			computeChildren(structure, with_labiles, with_crossrings,
+					mass_opt, found, ring_fragments);
+
+			children = new FragmentEntry[found.size()];
+			boolean[] rings = new boolean[found.size()];
+			for (int i = 0; i < children.length; i++) {
+				Glycan fragment = found.get(i);
+				children[i] = new FragmentEntry(fragment,
+						getFragmentType(fragment), fragment.computeMass(),
+						fragment.computeMZ(), fragment.toString());
+				rings[i] = ring_fragments.get(i);
+			}
+			cached = new FragmentCache.Fragments(children, rings,
+					with_crossrings);
+			fragment_cache.put(key, cached);
+		} else {
+			// the fragments are read only if they are not duplicates
+			children = new FragmentEntry[cached.size()];
+			for (int i = 0; i < children.length; i++)
+				children[i] = cached.newEntry(i);
+		}
+
+		for (int i = 0; i < children.length; i++) {
+			FragmentEntry child = children[i];
+			if (!cached.ring_fragments[i]) {
+				if (fragments.addFragment(child, cached.keys[i]))
+					computeAllFragmentsCached(fragments, child.fragment,
+							child.structure, with_labiles,
+							cur_max_no_cleavages - 1, cur_max_no_crossrings,
+							mass_opt);
+			} else if (with_crossrings) {
+				if (fragments.addFragment(child, cached.keys[i]))
+					computeAllFragmentsCached(fragments, child.fragment,
+							child.structure, with_labiles,
+							cur_max_no_cleavages - 1,
+							cur_max_no_crossrings - 1, mass_opt);
+			}
+		}
+	}
+
+	private String getCacheSettings(boolean with_labiles) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(afragments ? 'A' : '-');
+		sb.append(bfragments ? 'B' : '-');
+		sb.append(cfragments ? 'C' : '-');
+		sb.append(xfragments ? 'X' : '-');
+		sb.append(yfragments ? 'Y' : '-');
+		sb.append(zfragments ? 'Z' : '-');
+		sb.append(internal_fragments ? 'I' : '-');
+		sb.append(small_ring_fragments ? 'S' : '-');
+		sb.append(with_labiles ? 'L' : '-');
+		return sb.toString();
+	}
+
 	protected void computeAllFragments(FragmentCollection fragments,
 			Residue current, int cur_max_no_cleavages,
 			int cur_max_no_crossrings, MassOptions mass_opt) {
@@ -457,6 +1059,76 @@ public class Fragmenter {
 					cur_max_no_cleavages, cur_max_no_crossrings, mass_opt);
 	}
 
+	private void computeAllFragmentMasses(FragmentMasses.Sites sites,
+			List<int[]> fragments, Set<StructureKey> visited, int[] cuts,
+			int cur_max_no_cleavages, int cur_max_no_crossrings) {
+		if (cur_max_no_cleavages == 0)
+			return;
+
+		// visit the residues of the fragment in the same order of
+		// computeAllFragments
+		int[] status = sites.status(cuts);
+		for (int i = 0; i < sites.size(); i++) {
+			if (status[i] != FragmentMasses.Sites.KEPT)
+				continue;
+
+			// glycosidic cleavages
+			if (sites.canDoCleavage(status, i)) {
+				if (bfragments)
+					addFragmentMasses(sites, fragments, visited, sites.cleave(
+							cuts, i, FragmentMasses.B_CLEAVAGE),
+							cur_max_no_cleavages - 1, cur_max_no_crossrings);
+				if (cfragments)
+					addFragmentMasses(sites, fragments, visited, sites.cleave(
+							cuts, i, FragmentMasses.C_CLEAVAGE),
+							cur_max_no_cleavages - 1, cur_max_no_crossrings);
+				if (yfragments)
+					addFragmentMasses(sites, fragments, visited, sites.cleave(
+							cuts, i, FragmentMasses.Y_CLEAVAGE),
+							cur_max_no_cleavages - 1, cur_max_no_crossrings);
+				if (zfragments)
+					addFragmentMasses(sites, fragments, visited, sites.cleave(
+							cuts, i, FragmentMasses.Z_CLEAVAGE),
+							cur_max_no_cleavages - 1, cur_max_no_crossrings);
+			}
+
+			// cross ring cleavages
+			if (cur_max_no_crossrings > 0 && sites.canDoRingFragment(status, i)) {
+				if (afragments) {
+					for (int k = 0; k < sites.getNoRingTypesA(i); k++)
+						addFragmentMasses(sites, fragments, visited, sites
+								.cleaveRing(cuts, status, i,
+										FragmentMasses.A_CLEAVAGE, k,
+										internal_fragments,
+										small_ring_fragments),
+								cur_max_no_cleavages - 1,
+								cur_max_no_crossrings - 1);
+				}
+
+				if (xfragments) {
+					for (int k = 0; k < sites.getNoRingTypesX(i); k++)
+						addFragmentMasses(sites, fragments, visited, sites
+								.cleaveRing(cuts, status, i,
+										FragmentMasses.X_CLEAVAGE, k,
+										internal_fragments,
+										small_ring_fragments),
+								cur_max_no_cleavages - 1,
+								cur_max_no_crossrings - 1);
+				}
+			}
+		}
+	}
+
+	private void addFragmentMasses(FragmentMasses.Sites sites,
+			List<int[]> fragments, Set<StructureKey> visited, int[] cuts,
+			int cur_max_no_cleavages, int cur_max_no_crossrings) {
+		if (cuts != null && visited.add(sites.getStructureKey(cuts))) {
+			fragments.add(cuts);
+			computeAllFragmentMasses(sites, fragments, visited, cuts,
+					cur_max_no_cleavages, cur_max_no_crossrings);
+		}
+	}
+
 	protected void computeAllFragmentsWithLabiles(FragmentCollection fragments,
 			Glycan structure, int cur_max_no_cleavages,
 			int cur_max_no_crossrings, MassOptions mass_opt) {
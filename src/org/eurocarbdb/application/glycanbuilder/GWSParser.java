@@ -21,6 +21,7 @@
 package org.eurocarbdb.application.glycanbuilder;
 
 import java.awt.Rectangle;
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.*;
 
@@ -72,8 +73,9 @@ public class GWSParser implements GlycanParser {
 	}
 
 	/**
-       Create a unique representation of a glycan structure using the
-       lexical ordering between the children of each residue.
+       Create a unique representation of a glycan structure sorting
+       the children of each residue by canonical key.
+       @see GWSWriter
 	 */
 	public String writeGlycanOrdered(Glycan structure) {
 		return toString(structure,true,true);
@@ -104,8 +106,8 @@ public class GWSParser implements GlycanParser {
        Static method for creating string representation of glycan
        structures.
        @param structure the structure to be converted
-       @param ordered <code>true</code> if the representation must use
-       the lexical ordering between children
+       @param ordered <code>true</code> if the children of each
+       residue must be sorted by canonical key
 	 */
 	static public String toString(Glycan structure, boolean ordered, BBoxManager bboxManager) {
 		return toString(structure,ordered,true, bboxManager);
@@ -120,28 +122,21 @@ public class GWSParser implements GlycanParser {
        Static method for creating string representation of glycan
        structures.
        @param structure the structure to be converted
-       @param ordered <code>true</code> if the representation must use
-       the lexical ordering between children
+       @param ordered <code>true</code> if the children of each
+       residue must be sorted by canonical key
        @param add_massopt <code>true</code> if the representation must
        contain the mass options
 	 */
 	static public String toString(Glycan structure, boolean ordered, boolean add_massopt, BBoxManager bboxManager) {
-		if( structure==null )
-			return "";
-
 		StringBuilder ss = new StringBuilder();
-		if( structure.getRoot()!=null ) {
-			ss.append(writeSubtree(structure.getRoot(),ordered, bboxManager));
-			if( structure.getBracket()!=null ) 
-				ss.append(writeSubtree(structure.getBracket(),ordered, bboxManager));
-
-			if( add_massopt ) {
-				ss.append("$");
-				ss.append(structure.getMassOptions().toString());                    
-			}
+		try {
+			new GWSWriter(ordered,add_massopt,bboxManager).write(ss,structure);
+		}
+		catch(IOException e) {
+			// never thrown by StringBuilder
+			throw new IllegalStateException(e);
 		}
 		return ss.toString();
-
 	}
 
 	/**
@@ -150,63 +145,21 @@ public class GWSParser implements GlycanParser {
        structure if they are not specified in the string
        representation
        @throws Exception if the string cannot be parsed    
+       @see GWSReader
 	 */
 	static public Glycan fromString(String str, MassOptions default_mass_options) throws Exception {
-		str = TextUtils.trim(str);
-
-		// read mass options
-		MassOptions mass_opt = default_mass_options.clone();
-		int ind1 = str.indexOf('$');
-		if( ind1!=-1 ) {
-			mass_opt = MassOptions.fromString(str.substring(ind1+1));       
-			str = str.substring(0,ind1);
-		}
-
-		// read structure
-		Glycan ret = null;
-		int ind2 = str.indexOf('}');
-		if( ind2==-1 ) 
-			ret = new Glycan(readSubtree(str,true),false,mass_opt);
-		else {
-			// read structure with bracket
-			ret = new Glycan(readSubtree(str.substring(0,ind2),true),
-					readSubtree(str.substring(ind2),true),
-					false,mass_opt);        
-		}    
-
-		return ret;
+		return new GWSReader().readGlycan(str,default_mass_options);
 	}
 
 	static public String writeResidueType(Residue r) {
-		String str = "";
-
-		if( r.isBracket() )
-			str += '}';
-		else if( r.isStartRepetition() ) {
-			str += '[';
-		}
-		else if( r.isEndRepetition() ) {
-			str += ']';
-			if( r.getType().getMinRepetitions()>=0 )
-				str += "_" + r.getType().getMinRepetitions();
-			if( r.getType().getMaxRepetitions()>=0 )
-				str += "^" + r.getType().getMaxRepetitions();
+		StringBuilder sb = new StringBuilder();
+		try {
+			new GWSWriter().writeResidueType(sb,r);
 		}
-		else if( r.isCleavage() ) {
-			Residue cleaved_residue = r.getCleavedResidue();
-			str += writeResidueType(cleaved_residue) + "/" + r.getTypeName();    
+		catch(IOException e) {
+			throw new IllegalStateException(e);
 		}
-		else {
-			if( r.hasAnomericState() || r.hasAnomericCarbon() ) 
-				str += r.getAnomericState() + "" + r.getAnomericCarbon();        
-			if( r.hasChirality() ) 
-				str += r.getChirality() + "-";        
-			str += r.getTypeName();
-			if( r.hasRingSize() ) 
-				str += "," + r.getRingSize();            
-		}
-
-		return str;
+		return sb.toString();
 	}
 
 	static public String writeSubtree(Residue r, boolean ordered) {
@@ -214,50 +167,14 @@ public class GWSParser implements GlycanParser {
 	}
 	
 	static public String writeSubtree(Residue r, boolean ordered, BBoxManager bboxManager ) {
-		//------------
-		// write type
-		String str = writeResidueType(r);    
-
-		// write placement
-		if( r.getCleavedResidue()!=null ) {
-			Residue cleaved_residue = r.getCleavedResidue();
-			if( cleaved_residue.hasPreferredPlacement() )
-				str += "@" + placementToString(cleaved_residue.getPreferredPlacement());    
-		}
-		else { 
-			if( r.hasPreferredPlacement() )
-				str += "@" + placementToString(r.getPreferredPlacement());    
+		StringBuilder sb = new StringBuilder();
+		try {
+			new GWSWriter(ordered,false,bboxManager).writeSubtree(sb,r);
 		}
-		
-		if(bboxManager!=null && bboxManager.border_bboxes.containsKey(r)){
-			Rectangle rec=bboxManager.border_bboxes.get(r);
-			str+="<bounding_box>"+rec.x+","+rec.y+","+rec.width+","+rec.height+"</bounding_box>";
+		catch(IOException e) {
+			throw new IllegalStateException(e);
 		}
-
-		//-----------------
-		// write children
-
-		Vector<String> str_children = new Vector<String>();
-		for( Linkage l : r.getChildrenLinkages() )
-			str_children.add(writeSubtree(l,ordered, bboxManager));
-
-		if( ordered ) 
-			Collections.sort(str_children);    
-
-		// add parenthesis    
-		for( int i=0; i<r.getChildrenLinkages().size()-1; i++ ) 
-			str += "(";       
-
-		// write children
-		for( Iterator<String> i=str_children.iterator(); i.hasNext(); ) {
-			str += i.next();
-
-			// close parenthesis
-			if( i.hasNext() ) 
-				str += ")";                
-		}    
-
-		return str;
+		return sb.toString();
 	}
 
 	static public String writeSubtree(Linkage l, boolean ordered) {
@@ -265,31 +182,24 @@ public class GWSParser implements GlycanParser {
 	}
 	
 	static public String writeSubtree(Linkage l, boolean ordered, BBoxManager bboxManager) {
-		return ("--" + toStringLinkage(l) + writeSubtree(l.getChildResidue(),ordered,bboxManager));
+		StringBuilder sb = new StringBuilder();
+		try {
+			new GWSWriter(ordered,false,bboxManager).writeSubtree(sb,l);
+		}
+		catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
 	}
 
 	static public String toStringLinkage(Linkage link) {        
 		StringBuilder sb = new StringBuilder();
-		for( Iterator<Bond> i=link.getBonds().iterator(); i.hasNext(); ) {
-			Bond b = i.next();
-
-			if( sb.length()>0 ) 
-				sb.append(',');
-
-			// write parent positions
-			char[] p_poss = b.getParentPositions();
-			for( int l=0; l<p_poss.length; l++ ) {
-				if( l>0 )
-					sb.append('/');
-				sb.append(p_poss[l]);
-			}
-
-			// write child position for non-glycosidic bonds
-			if( i.hasNext() ) {
-				sb.append('=');
-				sb.append(b.getChildPosition());
-			}
-		}        
+		try {
+			new GWSWriter().writeLinkage(sb,link);
+		}
+		catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
 		return sb.toString();
 	}
 
@@ -486,16 +396,6 @@ public class GWSParser implements GlycanParser {
 	}    
 
 
-	static private String placementToString(ResiduePlacement rp) {
-		if( rp==null )
-			return "";
-
-		String str = "" + (rp.getPositions()[0].getIntAngle()+360);
-		if( rp.isSticky() )
-			str += 's';
-		return str;
-	}
-
 	static private ResiduePlacement placementFromString(String str) throws Exception {
 		if( str.length()==0 )
 			return null;
@@ -0,0 +1,552 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.awt.Rectangle;
+import java.util.*;
+
+/**
+   Read glycan structures in the GlycoWorkbench internal format
+   directly from a sequence of characters. The input is scanned once
+   by moving a cursor inside the sequence, without creating
+   substrings for the residues, the linkages or the structures of a
+   list; the residue types are resolved once for each distinct name.
+   The structures are identical to the ones created by {@link
+   GWSParser#readSubtree}. A reader is not thread safe, and should be
+   created again after the residue dictionary is reloaded.
+
+   @see GWSParser
+ */
+
+public class GWSReader {
+
+	private static final String BBOX_START = "<bounding_box>";
+	private static final String BBOX_END = "</bounding_box>";
+
+	private CharSequence str;
+	private int pos;
+	private ResidueHolder startRep;
+
+	// residue types by name, open addressing
+	private String[] type_names = new String[64];
+	private ResidueType[] types = new ResidueType[64];
+	private int no_types = 0;
+
+	/**
+	   Default constructor.
+	 */
+	public GWSReader() {
+	}
+
+	/**
+	   Read all structures from a sequence of representations
+	   separated by semicolons. Empty representations are skipped.
+	   @param default_mass_options the mass options to use for the new
+	   structures if they are not specified in their representation
+	   @throws Exception if a structure cannot be parsed
+	 */
+	public List<Glycan> readGlycans(CharSequence str, MassOptions default_mass_options) throws Exception {
+		List<Glycan> ret = new ArrayList<Glycan>();
+		int start = 0;
+		for( int i=0; i<=str.length(); i++ ) {
+			if( i==str.length() || str.charAt(i)==';' ) {
+				if( i>start )
+					ret.add(readGlycan(str,start,i,default_mass_options));
+				start = i+1;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	   Read a structure from its string representation.
+	   @param default_mass_options the mass options to use for the new
+	   structure if they are not specified in the string
+	   representation
+	   @throws Exception if the string cannot be parsed
+	 */
+	public Glycan readGlycan(CharSequence str, MassOptions default_mass_options) throws Exception {
+		return readGlycan(str,0,str.length(),default_mass_options);
+	}
+
+	/**
+	   Read a structure from the representation contained in the
+	   characters from <code>start</code> (included) to
+	   <code>end</code> (excluded) of a sequence.
+	   @param default_mass_options the mass options to use for the new
+	   structure if they are not specified in the string
+	   representation
+	   @throws Exception if the string cannot be parsed
+	 */
+	public Glycan readGlycan(CharSequence _str, int start, int end, MassOptions default_mass_options) throws Exception {
+		str = _str;
+		try {
+			// remove spacing as TextUtils.trim
+			start = skip(start,end,' ');
+			start = skip(start,end,'\t');
+			start = skip(start,end,'\n');
+			start = skip(start,end,'\r');
+			end = skipBack(start,end,' ');
+			end = skipBack(start,end,'\t');
+			end = skipBack(start,end,'\n');
+			end = skipBack(start,end,'\r');
+
+			// read mass options
+			MassOptions mass_opt = null;
+			int ind1 = indexOf('$',start,end);
+			if( ind1!=-1 ) {
+				mass_opt = MassOptions.fromString(str.subSequence(ind1+1,end).toString());
+				end = ind1;
+			}
+			else
+				mass_opt = default_mass_options.clone();
+
+			// read structure
+			int ind2 = indexOf('}',start,end);
+			if( ind2==-1 )
+				return new Glycan(readStructure(start,end),false,mass_opt);
+
+			// read structure with bracket
+			Residue root = readStructure(start,ind2);
+			Residue bracket = readStructure(ind2,end);
+			return new Glycan(root,bracket,false,mass_opt);
+		}
+		finally {
+			str = null;
+			startRep = null;
+		}
+	}
+
+	private Residue readStructure(int start, int end) throws Exception {
+		startRep = new ResidueHolder();
+		return readSubtree(start,end,true);
+	}
+
+	//----------------
+	// tree
+
+	private Residue readSubtree(int start, int end, boolean accept_empty) throws Exception {
+		if( start==end ) {
+			if( accept_empty )
+				return null;
+			throw new Exception("Empty node");
+		}
+
+		Residue ret = null;
+		if( str.charAt(start)=='}' ) {
+			ret = ResidueDictionary.createBracket();
+			pos = start+1;
+		}
+		else
+			ret = readResidue(start,end);
+
+		//-----------------
+		// parse children
+
+		// skip open parentheses
+		int nopars = 0;
+		for( ; pos<end && str.charAt(pos)=='('; pos++ )
+			nopars++;
+
+		// add children
+		while( pos<end ) {
+			Linkage child_link = null;
+			if( nopars>0 ) {
+				// find subtree enclosed in parenthesis
+				int ind = findClosedParenthesis(pos,end);
+				if( ind==-1 )
+					throw new Exception("Invalid string format: " + str.subSequence(pos,end));
+
+				child_link = readSubtreeLinkage(pos,ind);
+				pos = ind+1;
+				nopars--;
+			}
+			else {
+				// add last child
+				child_link = readSubtreeLinkage(pos,end);
+				pos = end;
+			}
+
+			// add child
+			child_link.setParentResidue(ret);
+			ret.getChildrenLinkages().add(child_link);
+		}
+
+		return ret;
+	}
+
+	private Linkage readSubtreeLinkage(int start, int end) throws Exception {
+		if( start+1<end && str.charAt(start)=='-' && isPosition(str.charAt(start+1)) ) {
+			// old style
+			Residue child = readSubtree(start+2,end,false);
+			return new Linkage(null,child,str.charAt(start+1));
+		}
+
+		if( start+1>=end || str.charAt(start)!='-' || str.charAt(start+1)!='-' )
+			throw new Exception("invalid format for linkage: " + str.subSequence(start,end));
+
+		// find the bonds, only the last non glycosidic bond is kept
+		// as done by GWSParser
+		int no_bonds = 0;
+		int last_bond = -1;
+		int glyco_bond = start+2;
+		for( int ind; (ind=matchBond(glyco_bond,end))!=-1; no_bonds++ ) {
+			last_bond = glyco_bond;
+			glyco_bond = ind;
+		}
+		int link_end = matchPositions(glyco_bond,end);
+		while( link_end==-1 && no_bonds>0 ) {
+			// give back the last non glycosidic bond
+			no_bonds--;
+			last_bond = -1;
+			glyco_bond = start+2;
+			for( int i=0; i<no_bonds; i++ ) {
+				last_bond = glyco_bond;
+				glyco_bond = matchBond(glyco_bond,end);
+			}
+			link_end = matchPositions(glyco_bond,end);
+		}
+		if( link_end==-1 )
+			throw new Exception("invalid format for linkage: " + str.subSequence(start,end));
+
+		// parse bonds
+		Vector<Bond> ret_bonds = new Vector<Bond>();
+		if( last_bond!=-1 ) {
+			int ind = matchPositions(last_bond,end);
+			ret_bonds.add(new Bond(readPositions(last_bond,ind),str.charAt(ind+1)));
+		}
+		ret_bonds.add(new Bond(readPositions(glyco_bond,link_end),'?')); // anomeric carbon position is added later
+
+		// parse child
+		Residue child = readSubtree(link_end,end,false);
+
+		// create linkage
+		Linkage ret = new Linkage(null,child);
+		ret.setBonds(ret_bonds);
+		ret.getChildResidue().setParentLinkage(ret);
+
+		return ret;
+	}
+
+	//----------------
+	// residues
+
+	private Residue readResidue(int start, int end) throws Exception {
+		Residue ret = null;
+		char first = str.charAt(start);
+		if( first=='[' ) {
+			ret = ResidueDictionary.createStartRepetition();
+			startRep.res = ret;
+			pos = start+1;
+			return ret;
+		}
+		if( first==']' ) {
+			pos = start+1;
+			String min = null;
+			String max = null;
+			if( pos+1<end && str.charAt(pos)=='_' && isDigit(str.charAt(pos+1)) ) {
+				int ind = skipDigits(pos+1,end);
+				min = str.subSequence(pos+1,ind).toString();
+				pos = ind;
+			}
+			if( pos+1<end && str.charAt(pos)=='^' && isDigit(str.charAt(pos+1)) ) {
+				int ind = skipDigits(pos+1,end);
+				max = str.subSequence(pos+1,ind).toString();
+				pos = ind;
+			}
+			ret = ResidueDictionary.createEndRepetition(min,max);
+			if( startRep.res==null )
+				throw new Exception("Invalid format for string: " + str.subSequence(start,end));
+			startRep.res.setEndRepitionResidue(ret);
+			startRep.res = null;
+			return ret;
+		}
+
+		// get stereochemistry
+		int ind = start;
+		char ret_anom_state = '?';
+		char ret_anom_carbon = '?';
+		char ret_chirality = '?';
+		if( ind+1<end && isAnomericState(str.charAt(ind)) && isPosition(str.charAt(ind+1)) ) {
+			ret_anom_state = str.charAt(ind);
+			ret_anom_carbon = str.charAt(ind+1);
+			ind += 2;
+		}
+		if( ind+1<end && (str.charAt(ind)=='D' || str.charAt(ind)=='L') && str.charAt(ind+1)=='-' ) {
+			ret_chirality = str.charAt(ind);
+			ind += 2;
+		}
+
+		// get type name
+		int name_start = ind;
+		while( ind<end && isNameChar(str.charAt(ind)) )
+			ind++;
+		if( ind==name_start )
+			throw new Exception("Invalid format for string: " + str.subSequence(start,end));
+		int name_end = ind;
+
+		// get ring size
+		char ret_ring_size = '?';
+		if( ind+1<end && str.charAt(ind)==',' && isRingSize(str.charAt(ind+1)) ) {
+			ret_ring_size = str.charAt(ind+1);
+			ind += 2;
+		}
+
+		// create residue
+		ret = new Residue(getResidueType(name_start,name_end));
+		ret.setAnomericState(ret_anom_state);
+		ret.setAnomericCarbon(ret_anom_carbon);
+		ret.setChirality(ret_chirality);
+		ret.setRingSize(ret_ring_size);
+
+		// create cleavage
+		if( ind+1<end && str.charAt(ind)=='/' && isCleavageChar(str.charAt(ind+1)) ) {
+			int cleavage_start = ind+1;
+			for( ind+=2; ind<end && isCleavageChar(str.charAt(ind)); ind++ );
+
+			Residue cleavage = null;
+			if( indexOf('_',cleavage_start,ind)!=-1 ) {
+				String cleavage_typename = str.subSequence(cleavage_start,ind).toString();
+				cleavage = CrossRingFragmentDictionary.newFragment(cleavage_typename,ret);
+				if( cleavage==null )
+					throw new Exception("Invalid type: <" + cleavage_typename + ">");
+			}
+			else
+				cleavage = new Residue(getResidueType(cleavage_start,ind));
+
+			cleavage.setCleavedResidue(ret);
+			ret = cleavage;
+		}
+
+		// get placement
+		if( ind+1<end && str.charAt(ind)=='@' ) {
+			int num_start = ind+1;
+			int num_end = (str.charAt(num_start)=='-') ?num_start+1 :num_start;
+			if( num_end<end && isDigit(str.charAt(num_end)) ) {
+				num_end = skipDigits(num_end,end);
+				boolean sticky = (num_end<end && str.charAt(num_end)=='s');
+				ResiduePlacement pref_place = new ResiduePlacement(new ResAngle(parseInt(num_start,num_end)),false,sticky);
+				if( ret.getCleavedResidue()!=null )
+					ret.getCleavedResidue().setPreferredPlacement(pref_place);
+				else
+					ret.setPreferredPlacement(pref_place);
+				ind = (sticky) ?num_end+1 :num_end;
+			}
+		}
+
+		// get bounding box
+		if( startsWith(BBOX_START,ind,end) )
+			ind = readBoundingBox(ret,ind,end);
+
+		pos = ind;
+		return ret;
+	}
+
+	private int readBoundingBox(Residue ret, int start, int end) {
+		int[] values = new int[4];
+		int ind = start+BBOX_START.length();
+		for( int i=0; i<4; i++ ) {
+			if( i>0 ) {
+				if( ind>=end || str.charAt(ind)!=',' )
+					return start;
+				ind++;
+			}
+			int num_end = skipDigits(ind,end);
+			if( num_end==ind )
+				return start;
+			values[i] = parseInt(ind,num_end);
+			ind = num_end;
+		}
+		if( !startsWith(BBOX_END,ind,end) )
+			return start;
+
+		ret.setCenterPosition(new Rectangle(values[0],values[1],values[2],values[3]));
+		return ind+BBOX_END.length();
+	}
+
+	private ResidueType getResidueType(int start, int end) throws Exception {
+		int hash = 0;
+		for( int i=start; i<end; i++ )
+			hash = 31*hash + str.charAt(i);
+
+		int mask = type_names.length-1;
+		int ind = hash & mask;
+		for( ; type_names[ind]!=null; ind=(ind+1) & mask ) {
+			if( regionEquals(type_names[ind],start,end) )
+				return types[ind];
+		}
+
+		String type_name = str.subSequence(start,end).toString();
+		ResidueType ret = ResidueDictionary.getResidueType(type_name);
+		if( type_name.indexOf('=')!=-1 )
+			return ret; // a new type is created for each residue
+
+		type_names[ind] = type_name;
+		types[ind] = ret;
+		if( ++no_types*2>type_names.length )
+			growTypes();
+		return ret;
+	}
+
+	private void growTypes() {
+		String[] old_names = type_names;
+		ResidueType[] old_types = types;
+		type_names = new String[old_names.length*2];
+		types = new ResidueType[old_types.length*2];
+
+		int mask = type_names.length-1;
+		for( int i=0; i<old_names.length; i++ ) {
+			if( old_names[i]!=null ) {
+				int ind = old_names[i].hashCode() & mask;
+				while( type_names[ind]!=null )
+					ind = (ind+1) & mask;
+				type_names[ind] = old_names[i];
+				types[ind] = old_types[i];
+			}
+		}
+	}
+
+	//----------------
+	// scanning
+
+	private int matchBond(int start, int end) {
+		// (?:P/)*P=P,
+		int ind = matchPositions(start,end);
+		if( ind==-1 || ind+2>=end )
+			return -1;
+		if( str.charAt(ind)!='=' || !isPosition(str.charAt(ind+1)) || str.charAt(ind+2)!=',' )
+			return -1;
+		return ind+3;
+	}
+
+	private int matchPositions(int start, int end) {
+		// (?:P/)*P
+		if( start>=end || !isPosition(str.charAt(start)) )
+			return -1;
+		int ind = start+1;
+		while( ind+1<end && str.charAt(ind)=='/' && isPosition(str.charAt(ind+1)) )
+			ind += 2;
+		return ind;
+	}
+
+	private char[] readPositions(int start, int end) {
+		char[] ret = new char[(end-start+1)/2];
+		for( int i=0; i<ret.length; i++ )
+			ret[i] = str.charAt(start+2*i);
+		return ret;
+	}
+
+	private int findClosedParenthesis(int start, int end) {
+		int nopen = 0;
+		for( int i=start; i<end; i++ ) {
+			char c = str.charAt(i);
+			if( c==')' ) {
+				if( nopen==0 )
+					return i;
+				nopen--;
+			}
+			else if( c=='(' )
+				nopen++;
+		}
+		return -1;
+	}
+
+	private int indexOf(char c, int start, int end) {
+		for( int i=start; i<end; i++ ) {
+			if( str.charAt(i)==c )
+				return i;
+		}
+		return -1;
+	}
+
+	private int skip(int start, int end, char c) {
+		while( start<end && str.charAt(start)==c )
+			start++;
+		return start;
+	}
+
+	private int skipBack(int start, int end, char c) {
+		while( end>start && str.charAt(end-1)==c )
+			end--;
+		return end;
+	}
+
+	private int skipDigits(int start, int end) {
+		while( start<end && isDigit(str.charAt(start)) )
+			start++;
+		return start;
+	}
+
+	private boolean startsWith(String prefix, int start, int end) {
+		return (end-start>=prefix.length() && regionEquals(prefix,start,start+prefix.length()));
+	}
+
+	private boolean regionEquals(String s, int start, int end) {
+		if( s.length()!=end-start )
+			return false;
+		for( int i=0; i<s.length(); i++ ) {
+			if( s.charAt(i)!=str.charAt(start+i) )
+				return false;
+		}
+		return true;
+	}
+
+	private int parseInt(int start, int end) {
+		boolean negative = (str.charAt(start)=='-');
+		long value = 0;
+		for( int i=(negative) ?start+1 :start; i<end; i++ ) {
+			value = value*10 + (str.charAt(i)-'0');
+			if( value>Integer.MAX_VALUE+1L )
+				throw new NumberFormatException("For input string: \"" + str.subSequence(start,end) + "\"");
+		}
+		if( negative )
+			value = -value;
+		if( value>Integer.MAX_VALUE )
+			throw new NumberFormatException("For input string: \"" + str.subSequence(start,end) + "\"");
+		return (int)value;
+	}
+
+	static private boolean isDigit(char c) {
+		return (c>='0' && c<='9');
+	}
+
+	static private boolean isPosition(char c) {
+		return ((c>='1' && c<='9') || c=='N' || c=='?');
+	}
+
+	static private boolean isAnomericState(char c) {
+		return (c=='a' || c=='b' || c=='o' || c=='?');
+	}
+
+	static private boolean isRingSize(char c) {
+		return (c=='?' || c=='o' || c=='p' || c=='f');
+	}
+
+	static private boolean isNameChar(char c) {
+		// same as [a-zA-z0-9_#=\.] in GWSParser
+		return ((c>='A' && c<='z') || isDigit(c) || c=='#' || c=='=' || c=='.');
+	}
+
+	static private boolean isCleavageChar(char c) {
+		// same as [a-zA-z0-9_#] in GWSParser
+		return ((c>='A' && c<='z') || isDigit(c) || c=='#');
+	}
+}
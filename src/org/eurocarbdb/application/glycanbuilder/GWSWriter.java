@@ -0,0 +1,301 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.*;
+
+/**
+   Write glycan structures in the GlycoWorkbench internal format
+   directly to an {@link Appendable}, such as a {@link StringBuilder}
+   or a {@link java.io.Writer}, without creating intermediate strings
+   for the subtrees. In ordered mode the children of each residue are
+   sorted by the canonical key of their subtree (see {@link
+   CanonicalKey}), children with the same key are sorted by the
+   representation of their subtree so that the order does not depend
+   on the original one even if two keys collide. A writer can be used
+   by several threads.
+
+   @see GWSParser
+ */
+
+public class GWSWriter {
+
+	private final boolean ordered;
+	private final boolean add_massopt;
+	private final BBoxManager bboxManager;
+
+	/**
+	   Create a new writer that does not sort the children and adds
+	   the mass options to each structure.
+	 */
+	public GWSWriter() {
+		this(false,true,null);
+	}
+
+	/**
+	   Create a new writer.
+	   @param _ordered <code>true</code> if the children of each
+	   residue must be sorted by canonical key
+	   @param _add_massopt <code>true</code> if the representation
+	   must contain the mass options
+	   @param _bboxManager the object containing the bounding boxes of
+	   the residues to be written, or <code>null</code>
+	 */
+	public GWSWriter(boolean _ordered, boolean _add_massopt, BBoxManager _bboxManager) {
+		ordered = _ordered;
+		add_massopt = _add_massopt;
+		bboxManager = _bboxManager;
+	}
+
+	/**
+	   Return <code>true</code> if the children of each residue are
+	   sorted by canonical key.
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	   Return <code>true</code> if the mass options are added to each
+	   structure.
+	 */
+	public boolean getAddMassOptions() {
+		return add_massopt;
+	}
+
+	/**
+	   Write a list of structures separated by semicolons.
+	 */
+	public void write(Appendable out, Collection<Glycan> structures) throws IOException {
+		for( Iterator<Glycan> i=structures.iterator(); i.hasNext(); ) {
+			write(out,i.next());
+			if( i.hasNext() )
+				out.append(';');
+		}
+	}
+
+	/**
+	   Write a single structure. Nothing is written for
+	   <code>null</code> or empty structures.
+	 */
+	public void write(Appendable out, Glycan structure) throws IOException {
+		if( structure==null || structure.getRoot()==null )
+			return;
+
+		writeSubtree(out,structure.getRoot());
+		if( structure.getBracket()!=null )
+			writeSubtree(out,structure.getBracket());
+
+		if( add_massopt ) {
+			out.append('$');
+			out.append(structure.getMassOptions().toString());
+		}
+	}
+
+	/**
+	   Write the subtree rooted at a residue.
+	 */
+	public void writeSubtree(Appendable out, Residue r) throws IOException {
+		Map<Linkage,CanonicalKey> keys = null;
+		if( ordered ) {
+			keys = new HashMap<Linkage,CanonicalKey>();
+			computeKeys(r,keys);
+		}
+		writeSubtree(out,r,keys);
+	}
+
+	/**
+	   Write the linkage to a child and the subtree rooted at the
+	   child.
+	 */
+	public void writeSubtree(Appendable out, Linkage l) throws IOException {
+		Map<Linkage,CanonicalKey> keys = null;
+		if( ordered ) {
+			keys = new HashMap<Linkage,CanonicalKey>();
+			computeKeys(l.getChildResidue(),keys);
+		}
+		writeSubtree(out,l,keys);
+	}
+
+	private void writeSubtree(Appendable out, Residue r, Map<Linkage,CanonicalKey> keys) throws IOException {
+		//------------
+		// write type
+		writeResidueType(out,r);
+
+		// write placement
+		Residue placed = (r.getCleavedResidue()!=null) ?r.getCleavedResidue() :r;
+		if( placed.hasPreferredPlacement() ) {
+			out.append('@');
+			writePlacement(out,placed.getPreferredPlacement());
+		}
+
+		if( bboxManager!=null && bboxManager.border_bboxes.containsKey(r) ) {
+			Rectangle rec = bboxManager.border_bboxes.get(r);
+			out.append("<bounding_box>");
+			out.append(String.valueOf(rec.x)).append(',');
+			out.append(String.valueOf(rec.y)).append(',');
+			out.append(String.valueOf(rec.width)).append(',');
+			out.append(String.valueOf(rec.height));
+			out.append("</bounding_box>");
+		}
+
+		//-----------------
+		// write children
+
+		List<Linkage> children = r.getChildrenLinkages();
+		int no_children = children.size();
+		if( no_children==0 )
+			return;
+
+		if( ordered && no_children>1 )
+			children = sortChildren(children,keys);
+
+		// add parenthesis
+		for( int i=0; i<no_children-1; i++ )
+			out.append('(');
+
+		// write children
+		for( int i=0; i<no_children; i++ ) {
+			writeSubtree(out,children.get(i),keys);
+
+			// close parenthesis
+			if( i<no_children-1 )
+				out.append(')');
+		}
+	}
+
+	private void writeSubtree(Appendable out, Linkage l, Map<Linkage,CanonicalKey> keys) throws IOException {
+		out.append("--");
+		writeLinkage(out,l);
+		writeSubtree(out,l.getChildResidue(),keys);
+	}
+
+	/**
+	   Write the type of a residue, including its stereochemistry,
+	   without placement and children.
+	 */
+	public void writeResidueType(Appendable out, Residue r) throws IOException {
+		if( r.isBracket() )
+			out.append('}');
+		else if( r.isStartRepetition() )
+			out.append('[');
+		else if( r.isEndRepetition() ) {
+			out.append(']');
+			if( r.getType().getMinRepetitions()>=0 )
+				out.append('_').append(String.valueOf(r.getType().getMinRepetitions()));
+			if( r.getType().getMaxRepetitions()>=0 )
+				out.append('^').append(String.valueOf(r.getType().getMaxRepetitions()));
+		}
+		else if( r.isCleavage() ) {
+			writeResidueType(out,r.getCleavedResidue());
+			out.append('/');
+			out.append(r.getTypeName());
+		}
+		else {
+			if( r.hasAnomericState() || r.hasAnomericCarbon() ) {
+				out.append(r.getAnomericState());
+				out.append(r.getAnomericCarbon());
+			}
+			if( r.hasChirality() ) {
+				out.append(r.getChirality());
+				out.append('-');
+			}
+			out.append(r.getTypeName());
+			if( r.hasRingSize() ) {
+				out.append(',');
+				out.append(r.getRingSize());
+			}
+		}
+	}
+
+	/**
+	   Write the bonds of a linkage.
+	 */
+	public void writeLinkage(Appendable out, Linkage link) throws IOException {
+		Vector<Bond> bonds = link.getBonds();
+		for( int i=0; i<bonds.size(); i++ ) {
+			Bond b = bonds.get(i);
+			if( i>0 )
+				out.append(',');
+
+			// write parent positions
+			char[] p_poss = b.getParentPositions();
+			for( int l=0; l<p_poss.length; l++ ) {
+				if( l>0 )
+					out.append('/');
+				out.append(p_poss[l]);
+			}
+
+			// write child position for non-glycosidic bonds
+			if( i<bonds.size()-1 ) {
+				out.append('=');
+				out.append(b.getChildPosition());
+			}
+		}
+	}
+
+	private static void writePlacement(Appendable out, ResiduePlacement rp) throws IOException {
+		out.append(String.valueOf(rp.getPositions()[0].getIntAngle()+360));
+		if( rp.isSticky() )
+			out.append('s');
+	}
+
+	//----------------
+	// ordering
+
+	private static CanonicalKey computeKeys(Residue node, Map<Linkage,CanonicalKey> keys) {
+		int no_children = node.getNoChildren();
+		CanonicalKey[] links = new CanonicalKey[no_children];
+		for( int i=0; i<no_children; i++ ) {
+			Linkage l = node.getLinkageAt(i);
+			links[i] = CanonicalKey.linkage(l,computeKeys(l.getChildResidue(),keys));
+			keys.put(l,links[i]);
+		}
+		return CanonicalKey.node(node,links);
+	}
+
+	private List<Linkage> sortChildren(List<Linkage> children, final Map<Linkage,CanonicalKey> keys) {
+		List<Linkage> ret = new ArrayList<Linkage>(children);
+		Collections.sort(ret,new Comparator<Linkage>() {
+			public int compare(Linkage a, Linkage b) {
+				int ret = keys.get(a).compareTo(keys.get(b));
+				if( ret!=0 )
+					return ret;
+				return subtreeToString(a,keys).compareTo(subtreeToString(b,keys));
+			}
+		});
+		return ret;
+	}
+
+	private String subtreeToString(Linkage l, Map<Linkage,CanonicalKey> keys) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeSubtree(sb,l,keys);
+		}
+		catch(IOException e) {
+			// never thrown by StringBuilder
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+}
@@ -38,21 +38,7 @@ public class Geometry {
        Return the dimensions of a text in a given font.
      */
     static public Dimension textBounds(String text, String font_face, int font_size) {
-    
-    if( text.length()==0 )
-        return new Dimension(0,font_size);
-
-    // retrieve a graphics2d object
-    BufferedImage img = GraphicUtils.createCompatibleImage(10,10,true);
-    Graphics2D g2d = img.createGraphics();
-
-    // compute text bounds
-    FontRenderContext frc = g2d.getFontRenderContext();    
-    Font font = new Font(font_face,Font.PLAIN,font_size);
-
-    Rectangle text_bound = new Rectangle();
-    text_bound.setRect(new TextLayout(text,font,frc).getBounds());
-    return new Dimension(text_bound.width,text_bound.height);
+    return FontMetricsCache.getInstance().textBounds(text,font_face,font_size);
     }
     
 
@@ -60,16 +46,7 @@ public class Geometry {
        Return the shape used to draw a text in a given font.
      */
     static public Shape getTextShape(String text, String font_face, int font_size) {
-
-    // retrieve a graphics2d object    
-    BufferedImage img = GraphicUtils.createCompatibleImage(10,10,true);
-    Graphics2D g2d = img.createGraphics();
-
-    // compute text layout
-    FontRenderContext frc = g2d.getFontRenderContext();    
-    Font font = new Font(font_face,Font.PLAIN,font_size);    
-        TextLayout tl = new TextLayout(text, font, frc);
-        return tl.getOutline(null);
+    return FontMetricsCache.getInstance().getTextShape(text,font_face,font_size);
     }
 
     /**
@@ -230,7 +207,11 @@ public class Geometry {
        Return the distance between two points.
      */
     static public double distance(Point a, Point b) {
-    return Math.sqrt((a.x-b.x)*(a.x-b.x)+(a.y-b.y)*(a.y-b.y));
+    // compute the squares in double to avoid overflows on large
+    // display areas
+    double dx = a.x-b.x;
+    double dy = a.y-b.y;
+    return Math.sqrt(dx*dx+dy*dy);
     }
 
     /**
@@ -61,6 +61,13 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	private MassOptions mass_options = new MassOptions();
 	private String name;
 
+	// canonical key of the structure, valid until the residues change
+	private volatile KeyCache key_cache = null;
+
+	// mass and m/z of the structure, valid until the residues or the
+	// mass settings change
+	private volatile MassCache mass_cache = null;
+
 	// ------------------------
 	// construction
 
@@ -233,30 +240,98 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	}
 
 	/**
-       Compare this glycan to another object
+       Compare this glycan to another object. The structures are
+       sorted by canonical key, structures with the same key are
+       compared by their ordered string representation: two structures
+       are equal only if they have the same ordered string
+       representation.
        @see Comparable#compareTo
 	 */
 
 	public int compareTo(Object o) {
 		if( o==null || !(o instanceof Glycan))
 			return 1;
-		String s1 = this.toStringOrdered();
-		String s2 = ((Glycan)o).toStringOrdered();
-		return s1.compareTo(s2);
+		Glycan og = (Glycan)o;
+		int ret = this.canonicalKey().compareTo(og.canonicalKey());
+		if( ret!=0 )
+			return ret;
+		return this.toStringOrdered().compareTo(og.toStringOrdered());
 	}
 
 	/**
        Compare this glycan to another object ignoring the charge
        configuration.
-       @see Comparable#compareTo
+       @see #compareTo
 	 */
 
 	public int compareToIgnoreCharges(Object o) {
 		if( o==null || !(o instanceof Glycan))
 			return 1;
-		String s1 = this.toStringOrdered(false);
-		String s2 = ((Glycan)o).toStringOrdered(false);
-		return s1.compareTo(s2);
+		Glycan og = (Glycan)o;
+		int ret = this.canonicalKey(false).compareTo(og.canonicalKey(false));
+		if( ret!=0 )
+			return ret;
+		return this.toStringOrdered(false).compareTo(og.toStringOrdered(false));
+	}
+
+	/**
+       Return the canonical key of this structure including the mass
+       settings. Two structures with the same ordered string
+       representation have the same key, the converse holds only with
+       very high probability.
+       @see CanonicalKey
+	 */
+	public CanonicalKey canonicalKey() {
+		return canonicalKey(true);
+	}
+
+	/**
+       Return the canonical key of this structure. The key of the
+       residues is computed only once and updated when the structure
+       is modified.
+       @param add_massopt <code>true</code> if the key must include
+       the mass settings
+       @see CanonicalKey
+	 */
+	public CanonicalKey canonicalKey(boolean add_massopt) {
+		KeyCache cache = key_cache;
+		if( cache==null || !cache.isValid(root,bracket) ) {
+			cache = new KeyCache(root,bracket);
+			key_cache = cache;
+		}
+
+		if( !add_massopt || root==null )
+			return cache.key;
+		return cache.key.append(mass_options.toString());
+	}
+
+	/**
+       Hold the canonical key of the residues together with the
+       version of the tree from which it was computed.
+	 */
+	private static class KeyCache {
+
+		public final Residue root;
+		public final int root_version;
+		public final Residue bracket;
+		public final int bracket_version;
+		public final CanonicalKey key;
+
+		public KeyCache(Residue _root, Residue _bracket) {
+			root = _root;
+			root_version = (_root!=null) ?_root.getVersion() :0;
+			bracket = _bracket;
+			bracket_version = (_bracket!=null) ?_bracket.getVersion() :0;
+			key = CanonicalKey.compute(_root,_bracket);
+		}
+
+		public boolean isValid(Residue _root, Residue _bracket) {
+			if( _root!=root || _bracket!=bracket )
+				return false;
+			if( root!=null && root.getVersion()!=root_version )
+				return false;
+			return bracket==null || bracket.getVersion()==bracket_version;
+		}
 	}
 
 	/**
@@ -314,6 +389,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	public boolean setMassOptions(MassOptions mass_opt) {
 		boolean changed = mass_options.setValues(mass_opt);
 		changed |= setReducingEndType(mass_options.getReducingEndType());
+		mass_cache = null;
 		return changed;
 	}
 
@@ -1112,10 +1188,30 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 
 	/**
        Compute the mass of the molecule given the current mass
-       settings.
+       settings. The value is computed only once and updated when the
+       structure or the derivatization is modified.
 	 */
 	public double computeMass() {
-		if( hasRepetition() && (areAllRepetitionsConstant(root)==false || areAllRepetitionsConstant(bracket)==false)){
+		return getMassCache().mass;
+	}
+
+	// the field can be reset by setMassOptions at any time, the
+	// returned cache must be used instead of reading it again
+	private MassCache getMassCache() {
+		MassCache cache = mass_cache;
+		if( cache==null || !cache.isValid(root,bracket,mass_options) ) {
+			cache = new MassCache(root,bracket,mass_options,computeMassNoCache());
+			mass_cache = cache;
+		}
+		return cache;
+	}
+
+	private double computeMassNoCache() {
+		double mass = MassCalculator.getInstance(mass_options).computeMass(root);
+		if( !Double.isNaN(mass) && !hasRepetition(bracket) )
+			return mass + computeMass(bracket);
+
+		if( areAllRepetitionsConstant(root)==false || areAllRepetitionsConstant(bracket)==false ){
 			
 			return -1.;
 		}
@@ -1140,10 +1236,81 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
        Compute the mass-to-charge ratio given the current mass settings.
 	 */
 	public double computeMZ() {
-		double mass = computeMass();
-		return mass_options.ION_CLOUD.and(mass_options.NEUTRAL_EXCHANGES).computeMZ(mass);
+		MassCache cache = getMassCache();
+		if( !cache.isValidMZ(mass_options) ) {
+			double mz = mass_options.ION_CLOUD.and(mass_options.NEUTRAL_EXCHANGES).computeMZ(cache.mass);
+			cache = new MassCache(cache,mass_options,mz);
+			mass_cache = cache;
+		}
+		return cache.mz;
 	}   
 
+	/**
+       Hold the mass and m/z of the structure together with the
+       version of the tree and of the charges from which they were
+       computed.
+	 */
+	private static class MassCache {
+
+		public final Residue root;
+		public final int root_version;
+		public final Residue bracket;
+		public final int bracket_version;
+		public final String derivatization;
+		public final double mass;
+
+		public final IonCloud ion_cloud;
+		public final int ion_cloud_version;
+		public final IonCloud neutral_exchanges;
+		public final int neutral_exchanges_version;
+		public final double mz;
+
+		public MassCache(Residue _root, Residue _bracket, MassOptions mass_opt, double _mass) {
+			root = _root;
+			root_version = (_root!=null) ?_root.getVersion() :0;
+			bracket = _bracket;
+			bracket_version = (_bracket!=null) ?_bracket.getVersion() :0;
+			derivatization = mass_opt.DERIVATIZATION;
+			mass = _mass;
+
+			ion_cloud = null;
+			ion_cloud_version = 0;
+			neutral_exchanges = null;
+			neutral_exchanges_version = 0;
+			mz = 0.;
+		}
+
+		public MassCache(MassCache other, MassOptions mass_opt, double _mz) {
+			root = other.root;
+			root_version = other.root_version;
+			bracket = other.bracket;
+			bracket_version = other.bracket_version;
+			derivatization = other.derivatization;
+			mass = other.mass;
+
+			ion_cloud = mass_opt.ION_CLOUD;
+			ion_cloud_version = ion_cloud.getVersion();
+			neutral_exchanges = mass_opt.NEUTRAL_EXCHANGES;
+			neutral_exchanges_version = neutral_exchanges.getVersion();
+			mz = _mz;
+		}
+
+		public boolean isValid(Residue _root, Residue _bracket, MassOptions mass_opt) {
+			if( _root!=root || _bracket!=bracket )
+				return false;
+			if( root!=null && root.getVersion()!=root_version )
+				return false;
+			if( bracket!=null && bracket.getVersion()!=bracket_version )
+				return false;
+			return derivatization.equals(mass_opt.DERIVATIZATION);
+		}
+
+		public boolean isValidMZ(MassOptions mass_opt) {
+			return (ion_cloud==mass_opt.ION_CLOUD && ion_cloud_version==ion_cloud.getVersion() &&
+					neutral_exchanges==mass_opt.NEUTRAL_EXCHANGES && neutral_exchanges_version==neutral_exchanges.getVersion());
+		}
+	}
+
 	/**
        Compute the chemical formula for this structure.
        @see Molecule
@@ -1175,42 +1342,8 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 		return mass_options.ION_CLOUD.and(mass_options.NEUTRAL_EXCHANGES);
 	}       
 
-	private boolean isDropped(ResidueType type) {
-		if( type.isDroppedWithMethylation() &&
-				(mass_options.DERIVATIZATION.equals(MassOptions.PERMETHYLATED) ||
-						mass_options.DERIVATIZATION.equals(MassOptions.PERDMETHYLATED) ||
-							mass_options.DERIVATIZATION.equals(MassOptions.HEAVYPERMETHYLATION)) )
-			return true;
-		if( type.isDroppedWithAcetylation() &&
-				(mass_options.DERIVATIZATION.equals(MassOptions.PERACETYLATED) ||
-						mass_options.DERIVATIZATION.equals(MassOptions.PERACETYLATED)) )
-			return true;
-		return false;                
-	}
-
-	private int noSubstitutions(ResidueType type) {
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERMETHYLATED) ||
-				mass_options.DERIVATIZATION.equals(MassOptions.PERDMETHYLATED) ||
-						mass_options.DERIVATIZATION.equals(MassOptions.HEAVYPERMETHYLATION) )
-			return type.getNoMethyls();
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERACETYLATED) ||
-				mass_options.DERIVATIZATION.equals(MassOptions.PERDACETYLATED) )
-			return type.getNoAcetyls();
-		return 0;    
-	}
-
 	private double substitutionMass() {
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERMETHYLATED) ) 
-			return (MassUtils.methyl.getMass() - MassUtils.hydrogen.getMass());
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERDMETHYLATED) ) 
-			return (MassUtils.dmethyl.getMass() - MassUtils.hydrogen.getMass());
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERACETYLATED) ) 
-			return (MassUtils.acetyl.getMass() - MassUtils.hydrogen.getMass());
-		if( mass_options.DERIVATIZATION.equals(MassOptions.PERDACETYLATED) ) 
-			return (MassUtils.dacetyl.getMass() - MassUtils.hydrogen.getMass());
-		if( mass_options.DERIVATIZATION.equals(MassOptions.HEAVYPERMETHYLATION) ) 
-			return (MassUtils.heavyMethyl.getMass() - MassUtils.hydrogen.getMass());
-		return 0.;
+		return MassCalculator.getInstance(mass_options).getSubstitutionMass();
 	}
 
 	private Molecule substitutionMolecule() throws Exception {
@@ -1234,32 +1367,17 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 		ResidueType type = node.getType();
 		int no_bonds = node.getNoBonds();
 
-		// add mass of the saccharide    
-		double mass =  type.getMass();
-
-		// modify for alditol
-		if( node.isReducingEnd() && node.getType().makesAlditol() )
-			mass += 2*MassUtils.hydrogen.getMass();
-
+		double mass;
 		if( node.isBracket() ) {
+			mass = type.getMass();
+			if( node.isReducingEnd() && type.makesAlditol() )
+				mass += 2*MassUtils.hydrogen.getMass();
+
 			int no_linked_labiles = Math.min(countLabilePositions(),countDetachedLabiles());
 			mass -= (no_bonds-no_linked_labiles)*substitutionMass();
 		}
-		else if( node.isCleavage() && !node.isRingFragment() ) {
-			// cleavages have no derivatization
-			if( node.isReducingEnd() && !node.hasChildren() ) {
-				// fix for composition
-				//mass += MassOptions.H2O;    
-				mass += substitutionMass();
-			}
-		}
-		else {
-			// add groups
-			if( isDropped(type) )
-				mass -= (type.getMass() - MassUtils.water.getMass() - substitutionMass());
-			else
-				mass += (noSubstitutions(type)-no_bonds)*substitutionMass();
-		}    
+		else
+			mass = computeResidueMass(type,node.isReducingEnd(),node.hasChildren(),no_bonds);
 
 		// add children
 		for( Linkage l : node.getChildrenLinkages() ) {
@@ -1270,6 +1388,22 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 		return mass;
 	}
 	
+	/**
+       Compute the mass contributed by a single residue given the
+       current mass settings, excluding the water lost by the bonds
+       with its children.
+       @param type the type of the residue
+       @param reducing_end <code>true</code> if the residue is the
+       reducing end of the structure
+       @param has_children <code>true</code> if the residue has
+       children
+       @param no_bonds the number of bonds between the residue and its
+       parent and children
+	 */
+	public double computeResidueMass(ResidueType type, boolean reducing_end, boolean has_children, int no_bonds) {
+		return MassCalculator.getInstance(mass_options).computeResidueMass(type,reducing_end,has_children,no_bonds);
+	}
+
 	public boolean areAllRepetitionsConstant(Residue node){
 		if(node==null)
 			return true;
@@ -1310,35 +1444,21 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 		
 		double mass=0.;
 		
-		if(node.isRepetition()==false){
-			mass =  type.getMass();
-		}
-
-		// modify for alditol
-		if( node.isReducingEnd() && node.getType().makesAlditol() )
-			mass += 2*MassUtils.hydrogen.getMass();
-
 		if( node.isBracket() ) {
+			mass = type.getMass();
+			if( node.isReducingEnd() && type.makesAlditol() )
+				mass += 2*MassUtils.hydrogen.getMass();
+
 			int no_linked_labiles = Math.min(countLabilePositions(),countDetachedLabiles());
 			mass -= (no_bonds-no_linked_labiles)*substitutionMass();
 		}
-		else if( node.isCleavage() && !node.isRingFragment() ) {
-			// cleavages have no derivatization
-			if( node.isReducingEnd() && !node.hasChildren() ) {
-				// fix for composition
-				//mass += MassOptions.H2O;    
-				mass += substitutionMass();
-			}
+		else if( node.isRepetition() ) {
+			// modify for alditol
+			if( node.isReducingEnd() && type.makesAlditol() )
+				mass += 2*MassUtils.hydrogen.getMass();
 		}
-		else {
-			if(node.isRepetition()==false){
-				// add groups
-				if( isDropped(type) )
-					mass -= (type.getMass() - MassUtils.water.getMass() - substitutionMass());
-				else
-					mass += ((noSubstitutions(type)-no_bonds)*substitutionMass());
-			}
-		}    
+		else
+			mass = computeResidueMass(type,node.isReducingEnd(),node.hasChildren(),no_bonds);
 
 		mass=mass*multipler;
 		
@@ -1400,13 +1520,14 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 			}        
 		}
 		else {
-			if( isDropped(type) ) {
+			MassCalculator calculator = MassCalculator.getInstance(mass_options);
+			if( calculator.isDropped(type) ) {
 				ret.remove(type.getMolecule());
 				ret.add(MassUtils.water);
 				ret.add(substitution_molecule);
 			}
 			else 
-				ret.add(substitution_molecule,noSubstitutions(type)-no_bonds);
+				ret.add(substitution_molecule,calculator.getNoSubstitutions(type)-no_bonds);
 		}    
 
 		// add children
@@ -1813,7 +1934,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
        @see GlycoCTParser#toGlycoCT
 	 */
 	public String toGlycoCT() {
-		return new GlycoCTParser(false).toGlycoCT(this);
+		return GlycoCTParserPool.toGlycoCT(this);
 	}
 
 	/**
@@ -1822,7 +1943,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
        @see GlycoCTCondensedParser#toGlycoCTCondensed
 	 */
 	public String toGlycoCTCondensed() {
-		return new GlycoCTCondensedParser(false).toGlycoCTCondensed(this);
+		return GlycoCTParserPool.toGlycoCTCondensed(this);
 	}
 
 	/**
@@ -1830,7 +1951,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
        @see GlycoCTParser#toSugar
 	 */
 	public Sugar toSugar() throws Exception {
-		return new GlycoCTParser(false).toSugar(this);
+		return GlycoCTParserPool.toSugar(this);
 	}
 
 	/**
@@ -1839,7 +1960,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	 */
 	static public Glycan fromGlycoCT(String str) {
 		try {
-			return new GlycoCTParser(false).fromGlycoCT(str,new MassOptions());
+			return GlycoCTParserPool.fromGlycoCT(str,new MassOptions(),false);
 		}
 		catch(Exception e) {
 			e.printStackTrace();
@@ -1855,7 +1976,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	 */
 	static public Glycan fromGlycoCT(String str, MassOptions default_mass_options) {
 		try {
-			return new GlycoCTParser(false).fromGlycoCT(str,default_mass_options);
+			return GlycoCTParserPool.fromGlycoCT(str,default_mass_options,false);
 		}
 		catch(Exception e) {
 			LogUtils.report(e);
@@ -1870,7 +1991,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	 */
 	static public Glycan fromGlycoCTCondensed(String str) {
 		try {
-			return new GlycoCTCondensedParser(false).fromGlycoCTCondensed(str,new MassOptions());
+			return GlycoCTParserPool.fromGlycoCTCondensed(str,new MassOptions(),false);
 		}
 		catch(Exception e) {
 			e.printStackTrace();
@@ -1889,7 +2010,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	 */
 	static public Glycan fromGlycoCTCondensed(String str, boolean tolerate_unknown) {
 		try {
-			return new GlycoCTCondensedParser(tolerate_unknown).fromGlycoCTCondensed(str,new MassOptions());
+			return GlycoCTParserPool.fromGlycoCTCondensed(str,new MassOptions(),tolerate_unknown);
 		}
 		catch(Exception e) {
 			e.printStackTrace();
@@ -1905,7 +2026,7 @@ public class Glycan implements Comparable, SAXUtils.SAXWriter, MassAware {
 	 */
 	static public Glycan fromGlycoCTCondensed(String str, MassOptions default_mass_options) {
 		try {
-			return new GlycoCTCondensedParser(false).fromGlycoCTCondensed(str,default_mass_options);
+			return GlycoCTParserPool.fromGlycoCTCondensed(str,default_mass_options,false);
 		}
 		catch(Exception e) {
 			LogUtils.report(e);
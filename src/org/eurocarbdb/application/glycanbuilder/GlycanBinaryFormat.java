@@ -0,0 +1,671 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+   Compact binary encoding of glycan structures and fragment
+   collections. The data starts with a header made by the magic
+   bytes <code>GWB</code>, the version of the format, the kind of
+   content and the number of records. The residue type names, the
+   mass options and the fragment names are stored only the first time
+   they are used and then referenced by their index in a table built
+   while reading, as the type identifiers are not stable between
+   different executions. Integers are written as variable length
+   quantities and the positions of the bonds are packed two per
+   byte. The structures contain the same information of their
+   representation in the GlycoWorkbench internal format, without the
+   bounding boxes.
+
+   @see GWSParser
+ */
+
+public class GlycanBinaryFormat {
+
+	/** The current version of the format. */
+	public static final int VERSION = 1;
+
+	/** The kind of the data containing a list of structures. */
+	public static final byte KIND_STRUCTURES = 'S';
+
+	/** The kind of the data containing a fragment collection. */
+	public static final byte KIND_FRAGMENTS = 'F';
+
+	private static final byte[] MAGIC = { 'G', 'W', 'B' };
+
+	// residue tags, the upper bits contain the placement flags
+	private static final int TAG_NONE = 0;
+	private static final int TAG_BRACKET = 1;
+	private static final int TAG_START_REP = 2;
+	private static final int TAG_END_REP = 3;
+	private static final int TAG_RESIDUE = 4;
+	private static final int TAG_CLEAVAGE = 5;
+	private static final int TAG_MASK = 0x0f;
+	private static final int FLAG_PLACEMENT = 0x10;
+	private static final int FLAG_STICKY = 0x20;
+
+	// bond header for positions that cannot be packed
+	private static final int BOND_ESCAPE = 0;
+	private static final int MAX_PACKED_POSITIONS = 15;
+
+	private GlycanBinaryFormat() {
+	}
+
+	//----------------
+	// structures
+
+	/**
+	   Return the binary representation of a list of structures.
+	 */
+	public static byte[] toBytes(Collection<Glycan> structures) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			// avoid a synchronized call for each byte
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+			write(out,structures);
+			out.flush();
+		}
+		catch(IOException e) {
+			// never thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	   Write the binary representation of a list of structures.
+	 */
+	public static void write(DataOutput out, Collection<Glycan> structures) throws IOException {
+		writeHeader(out,KIND_STRUCTURES,structures.size());
+		Encoder encoder = new Encoder(out);
+		for( Glycan structure : structures )
+			encoder.writeGlycan(structure);
+	}
+
+	/**
+	   Read a list of structures from their binary representation.
+	   @throws Exception if the data is not valid
+	 */
+	public static List<Glycan> readGlycans(byte[] data) throws Exception {
+		return readGlycans(ByteBuffer.wrap(data));
+	}
+
+	/**
+	   Read a list of structures from their binary representation
+	   starting at the current position of the buffer. The position
+	   is moved after the end of the data.
+	   @throws Exception if the data is not valid
+	 */
+	public static List<Glycan> readGlycans(ByteBuffer in) throws Exception {
+		try {
+			int count = readHeader(in,KIND_STRUCTURES);
+			Decoder decoder = new Decoder(in);
+			List<Glycan> ret = new ArrayList<Glycan>(count);
+			for( int i=0; i<count; i++ )
+				ret.add(decoder.readGlycan());
+			return ret;
+		}
+		catch(BufferUnderflowException e) {
+			throw new EOFException("Unexpected end of data");
+		}
+	}
+
+	//----------------
+	// fragments
+
+	/**
+	   Return the binary representation of a fragment collection.
+	 */
+	public static byte[] toBytes(FragmentCollection fragments) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			// avoid a synchronized call for each byte
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+			write(out,fragments);
+			out.flush();
+		}
+		catch(IOException e) {
+			// never thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	   Write the binary representation of a fragment collection.
+	 */
+	public static void write(DataOutput out, FragmentCollection fragments) throws IOException {
+		writeHeader(out,KIND_FRAGMENTS,fragments.size());
+		Encoder encoder = new Encoder(out);
+		for( FragmentEntry fe : fragments.getFragments() )
+			encoder.writeFragment(fe);
+	}
+
+	/**
+	   Read a fragment collection from its binary representation.
+	   @throws Exception if the data is not valid
+	 */
+	public static FragmentCollection readFragments(byte[] data) throws Exception {
+		return readFragments(ByteBuffer.wrap(data));
+	}
+
+	/**
+	   Read a fragment collection from its binary representation
+	   starting at the current position of the buffer. The position
+	   is moved after the end of the data.
+	   @throws Exception if the data is not valid
+	 */
+	public static FragmentCollection readFragments(ByteBuffer in) throws Exception {
+		try {
+			int count = readHeader(in,KIND_FRAGMENTS);
+			Decoder decoder = new Decoder(in);
+			FragmentCollection ret = new FragmentCollection();
+			for( int i=0; i<count; i++ )
+				ret.addFragment(decoder.readFragment());
+			return ret;
+		}
+		catch(BufferUnderflowException e) {
+			throw new EOFException("Unexpected end of data");
+		}
+	}
+
+	//----------------
+	// header
+
+	private static void writeHeader(DataOutput out, byte kind, int count) throws IOException {
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(kind);
+		writeVarint(out,count);
+	}
+
+	private static int readHeader(ByteBuffer in, byte kind) throws IOException {
+		for( int i=0; i<MAGIC.length; i++ ) {
+			if( in.get()!=MAGIC[i] )
+				throw new IOException("Invalid binary format");
+		}
+		int version = in.get() & 0xff;
+		if( version!=VERSION )
+			throw new IOException("Unsupported version of the binary format: " + version);
+		byte found = in.get();
+		if( found!=kind )
+			throw new IOException("Invalid content: " + (char)found);
+		return readVarint(in);
+	}
+
+	//----------------
+	// encoding
+
+	/**
+	   Write structures and fragments to a stream of bytes. The names
+	   written by an encoder are stored in a table, so the records
+	   must be read in the same order by a single {@link Decoder}.
+	 */
+	public static class Encoder {
+
+		private final DataOutput out;
+		private final Map<String,Integer> strings;
+		private final boolean inline;
+
+		/**
+		   Create a new encoder writing to the specified output.
+		 */
+		public Encoder(DataOutput _out) {
+			out = _out;
+			strings = new HashMap<String,Integer>();
+			inline = true;
+		}
+
+		/**
+		   Create a new encoder using an external table of names. The
+		   new names are added to the table and only their index is
+		   written, the table must be stored separately and given to
+		   the decoders.
+		 */
+		Encoder(DataOutput _out, Map<String,Integer> _strings) {
+			out = _out;
+			strings = _strings;
+			inline = false;
+		}
+
+		/**
+		   Write a structure.
+		 */
+		public void writeGlycan(Glycan structure) throws IOException {
+			writeString(structure.getMassOptions().toString());
+			writeResidue(structure.getRoot());
+			writeResidue(structure.getBracket());
+		}
+
+		/**
+		   Write a fragment entry. The string representation of the
+		   fragment is not written, as it can be computed from the
+		   structure.
+		 */
+		public void writeFragment(FragmentEntry fe) throws IOException {
+			writeString(fe.name);
+			out.writeDouble(fe.mass);
+			out.writeDouble(fe.mz_ratio);
+			out.writeDouble(fe.score);
+			out.writeBoolean(fe.fragment!=null);
+			if( fe.fragment!=null )
+				writeGlycan(fe.fragment);
+		}
+
+		private void writeResidue(Residue r) throws IOException {
+			if( r==null ) {
+				out.writeByte(TAG_NONE);
+				return;
+			}
+
+			// write placement flags
+			int flags = 0;
+			Residue placed = (r.getCleavedResidue()!=null) ?r.getCleavedResidue() :r;
+			ResiduePlacement rp = (placed.hasPreferredPlacement()) ?placed.getPreferredPlacement() :null;
+			if( rp!=null )
+				flags = (rp.isSticky()) ?FLAG_PLACEMENT|FLAG_STICKY :FLAG_PLACEMENT;
+
+			// write type
+			if( r.isBracket() )
+				out.writeByte(TAG_BRACKET|flags);
+			else if( r.isStartRepetition() )
+				out.writeByte(TAG_START_REP|flags);
+			else if( r.isEndRepetition() ) {
+				out.writeByte(TAG_END_REP|flags);
+				writeVarint(out,r.getType().getMinRepetitions()+1);
+				writeVarint(out,r.getType().getMaxRepetitions()+1);
+			}
+			else if( r.isCleavage() ) {
+				out.writeByte(TAG_CLEAVAGE|flags);
+				writeString(r.getTypeName());
+				writeResidueType(r.getCleavedResidue());
+			}
+			else {
+				out.writeByte(TAG_RESIDUE|flags);
+				writeResidueType(r);
+			}
+			if( rp!=null )
+				writeVarint(out,zigzag(rp.getPositions()[0].getIntAngle()));
+
+			// write children
+			writeVarint(out,r.getNoChildren());
+			for( Linkage l : r.getChildrenLinkages() ) {
+				writeLinkage(l);
+				writeResidue(l.getChildResidue());
+			}
+		}
+
+		private void writeResidueType(Residue r) throws IOException {
+			writeString(r.getTypeName());
+			writeVarint(out,r.getAnomericState());
+			writeVarint(out,r.getAnomericCarbon());
+			writeVarint(out,r.getChirality());
+			writeVarint(out,r.getRingSize());
+		}
+
+		private void writeLinkage(Linkage l) throws IOException {
+			Vector<Bond> bonds = l.getBonds();
+			writeVarint(out,bonds.size());
+			for( Bond b : bonds )
+				writeBond(b);
+		}
+
+		private void writeBond(Bond b) throws IOException {
+			char[] p_poss = b.getParentPositions();
+			int c_code = positionCode(b.getChildPosition());
+			boolean packed = (c_code!=-1 && p_poss.length>0 && p_poss.length<=MAX_PACKED_POSITIONS);
+			for( int i=0; packed && i<p_poss.length; i++ )
+				packed = (positionCode(p_poss[i])!=-1);
+
+			if( !packed ) {
+				out.writeByte(BOND_ESCAPE);
+				writeVarint(out,p_poss.length);
+				for( char p : p_poss )
+					writeVarint(out,p);
+				writeVarint(out,b.getChildPosition());
+				return;
+			}
+
+			// number of parent positions and child position in the
+			// header, then two parent positions per byte
+			out.writeByte((p_poss.length<<4) | c_code);
+			for( int i=0; i<p_poss.length; i+=2 ) {
+				int low = (i+1<p_poss.length) ?positionCode(p_poss[i+1]) :0;
+				out.writeByte((positionCode(p_poss[i])<<4) | low);
+			}
+		}
+
+		private void writeString(String str) throws IOException {
+			Integer ind = strings.get(str);
+			if( ind!=null ) {
+				writeVarint(out,ind);
+				return;
+			}
+
+			// the first occurrence is written after the new index
+			int size = strings.size();
+			strings.put(str,size);
+			writeVarint(out,size);
+			if( inline )
+				writeUTF8(out,str);
+		}
+	}
+
+	//----------------
+	// decoding
+
+	/**
+	   Read structures and fragments from a buffer, in the same order
+	   in which they have been written by an {@link Encoder}. The
+	   buffer is read from its current position.
+	 */
+	public static class Decoder {
+
+		private final ByteBuffer in;
+		private final List<String> strings;
+		private final boolean inline;
+		private final ArrayList<ResidueType> types = new ArrayList<ResidueType>();
+		private final ArrayList<MassOptions> mass_options = new ArrayList<MassOptions>();
+
+		// start repetitions without their end
+		private final LinkedList<Residue> open_reps = new LinkedList<Residue>();
+
+		/**
+		   Create a new decoder reading from the specified buffer.
+		 */
+		public Decoder(ByteBuffer _in) {
+			in = _in;
+			strings = new ArrayList<String>();
+			inline = true;
+		}
+
+		/**
+		   Create a new decoder using an external table of names,
+		   written by an {@link Encoder} created with the same
+		   table. The table is not modified.
+		 */
+		Decoder(ByteBuffer _in, List<String> _strings) {
+			in = _in;
+			strings = _strings;
+			inline = false;
+			for( int i=0; i<strings.size(); i++ ) {
+				types.add(null);
+				mass_options.add(null);
+			}
+		}
+
+		/**
+		   Return the buffer read by this decoder.
+		 */
+		ByteBuffer getBuffer() {
+			return in;
+		}
+
+		/**
+		   Read a structure.
+		   @throws Exception if the data is not valid
+		 */
+		public Glycan readGlycan() throws Exception {
+			MassOptions mass_opt = readMassOptions();
+
+			open_reps.clear();
+			Residue root = readResidue();
+			Residue bracket = readResidue();
+			if( bracket==null )
+				return new Glycan(root,false,mass_opt);
+			return new Glycan(root,bracket,false,mass_opt);
+		}
+
+		/**
+		   Read a fragment entry.
+		   @throws Exception if the data is not valid
+		 */
+		public FragmentEntry readFragment() throws Exception {
+			FragmentEntry ret = new FragmentEntry();
+			ret.name = strings.get(readString());
+			ret.mass = in.getDouble();
+			ret.mz_ratio = in.getDouble();
+			ret.score = in.getDouble();
+			if( in.get()!=0 ) {
+				ret.fragment = readGlycan();
+				ret.structure = ret.fragment.toString();
+			}
+			return ret;
+		}
+
+		private MassOptions readMassOptions() throws Exception {
+			int ind = readString();
+			MassOptions ret = mass_options.get(ind);
+			if( ret==null ) {
+				// the values are copied by the structures
+				ret = MassOptions.fromString(strings.get(ind));
+				mass_options.set(ind,ret);
+			}
+			return ret;
+		}
+
+		private Residue readResidue() throws Exception {
+			int tag = in.get() & 0xff;
+			Residue ret = null;
+			Residue placed = null;
+			switch( tag & TAG_MASK ) {
+			case TAG_NONE:
+				return null;
+			case TAG_BRACKET:
+				ret = placed = ResidueDictionary.createBracket();
+				break;
+			case TAG_START_REP:
+				ret = placed = ResidueDictionary.createStartRepetition();
+				open_reps.addLast(ret);
+				break;
+			case TAG_END_REP: {
+				int min = readVarint(in)-1;
+				int max = readVarint(in)-1;
+				ret = placed = ResidueDictionary.createEndRepetition((min>=0) ?String.valueOf(min) :null,(max>=0) ?String.valueOf(max) :null);
+				if( open_reps.isEmpty() )
+					throw new IOException("End repetition without start");
+				open_reps.removeLast().setEndRepitionResidue(ret);
+				break;
+			}
+			case TAG_RESIDUE:
+				ret = placed = readResidueType();
+				break;
+			case TAG_CLEAVAGE: {
+				String cleavage_typename = strings.get(readString());
+				placed = readResidueType();
+				if( cleavage_typename.indexOf('_')!=-1 ) {
+					ret = CrossRingFragmentDictionary.newFragment(cleavage_typename,placed);
+					if( ret==null )
+						throw new Exception("Invalid type: <" + cleavage_typename + ">");
+				}
+				else
+					ret = new Residue(ResidueDictionary.getResidueType(cleavage_typename));
+				ret.setCleavedResidue(placed);
+				break;
+			}
+			default:
+				throw new IOException("Invalid residue tag: " + tag);
+			}
+
+			// read placement
+			if( (tag & FLAG_PLACEMENT)!=0 ) {
+				int angle = unzigzag(readVarint(in));
+				placed.setPreferredPlacement(new ResiduePlacement(new ResAngle(angle),false,(tag & FLAG_STICKY)!=0));
+			}
+
+			// read children
+			int no_children = readVarint(in);
+			for( int i=0; i<no_children; i++ ) {
+				Vector<Bond> bonds = readBonds();
+				Residue child = readResidue();
+				if( child==null )
+					throw new IOException("Missing child residue");
+
+				Linkage link = new Linkage(null,child);
+				link.setBonds(bonds);
+				child.setParentLinkage(link);
+				link.setParentResidue(ret);
+				ret.getChildrenLinkages().add(link);
+			}
+			return ret;
+		}
+
+		private Residue readResidueType() throws Exception {
+			ResidueType type = readType();
+			char anomeric_state = (char)readVarint(in);
+			char anomeric_carbon = (char)readVarint(in);
+			char chirality = (char)readVarint(in);
+			char ring_size = (char)readVarint(in);
+			return new Residue(type,anomeric_state,anomeric_carbon,chirality,ring_size);
+		}
+
+		private ResidueType readType() throws Exception {
+			int ind = readString();
+			ResidueType ret = types.get(ind);
+			if( ret!=null )
+				return ret;
+
+			String type_name = strings.get(ind);
+			ret = ResidueDictionary.getResidueType(type_name);
+			if( type_name.indexOf('=')==-1 ) // otherwise a new type is created for each residue
+				types.set(ind,ret);
+			return ret;
+		}
+
+		private Vector<Bond> readBonds() throws IOException {
+			int no_bonds = readVarint(in);
+			Vector<Bond> ret = new Vector<Bond>(no_bonds);
+			for( int i=0; i<no_bonds; i++ ) {
+				int header = in.get() & 0xff;
+				if( header==BOND_ESCAPE ) {
+					char[] p_poss = new char[readVarint(in)];
+					for( int l=0; l<p_poss.length; l++ )
+						p_poss[l] = (char)readVarint(in);
+					ret.add(new Bond(p_poss,(char)readVarint(in)));
+					continue;
+				}
+
+				char[] p_poss = new char[header>>4];
+				for( int l=0; l<p_poss.length; l+=2 ) {
+					int packed = in.get() & 0xff;
+					p_poss[l] = positionChar(packed>>4);
+					if( l+1<p_poss.length )
+						p_poss[l+1] = positionChar(packed & 0x0f);
+				}
+				ret.add(new Bond(p_poss,positionChar(header & 0x0f)));
+			}
+			return ret;
+		}
+
+		/**
+		   Read a reference to the string table, reading the string
+		   if it is new.
+		   @return the index of the string in the table
+		 */
+		private int readString() throws IOException {
+			int ind = readVarint(in);
+			if( ind<strings.size() )
+				return ind;
+			if( ind>strings.size() || !inline )
+				throw new IOException("Invalid string reference: " + ind);
+
+			strings.add(readUTF8(in));
+			types.add(null);
+			mass_options.add(null);
+			return ind;
+		}
+	}
+
+	//----------------
+	// primitives
+
+	private static int positionCode(char p) {
+		if( p=='?' )
+			return 0;
+		if( p>='1' && p<='9' )
+			return p-'0';
+		if( p=='N' )
+			return 10;
+		return -1;
+	}
+
+	private static char positionChar(int code) throws IOException {
+		if( code==0 )
+			return '?';
+		if( code<=9 )
+			return (char)('0'+code);
+		if( code==10 )
+			return 'N';
+		throw new IOException("Invalid position code: " + code);
+	}
+
+	private static int zigzag(int v) {
+		return (v<<1) ^ (v>>31);
+	}
+
+	private static int unzigzag(int v) {
+		return (v>>>1) ^ -(v&1);
+	}
+
+	static void writeUTF8(DataOutput out, String str) throws IOException {
+		byte[] bytes = str.getBytes("UTF-8");
+		writeVarint(out,bytes.length);
+		out.write(bytes);
+	}
+
+	static String readUTF8(ByteBuffer in) throws IOException {
+		int length = readVarint(in);
+		if( length<0 || length>in.remaining() )
+			throw new BufferUnderflowException();
+		if( in.hasArray() ) {
+			String ret = new String(in.array(),in.arrayOffset()+in.position(),length,"UTF-8");
+			in.position(in.position()+length);
+			return ret;
+		}
+
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes,"UTF-8");
+	}
+
+	static void writeVarint(DataOutput out, int v) throws IOException {
+		while( (v & ~0x7f)!=0 ) {
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	static int readVarint(ByteBuffer in) throws IOException {
+		int ret = 0;
+		for( int shift=0; shift<32; shift+=7 ) {
+			int b = in.get();
+			ret |= (b & 0x7f)<<shift;
+			if( (b & 0x80)==0 )
+				return ret;
+		}
+		throw new IOException("Invalid variable length integer");
+	}
+}
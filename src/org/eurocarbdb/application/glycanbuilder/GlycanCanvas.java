@@ -65,6 +65,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -248,6 +249,7 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 	protected Rectangle all_structures_bbox;
 	protected BBoxManager theBBoxManager;
 	protected PositionManager thePosManager;
+	protected LayoutCache theLayoutCache;
 	protected boolean is_printing;
 
 	protected JLabel sel_label = new JLabel();
@@ -415,6 +417,7 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 		setTheGlycanRenderer((GlycanRendererAWT) theWorkspace.getGlycanRenderer());
 		thePosManager = new PositionManager();
 		theBBoxManager = new BBoxManager();
+		theLayoutCache = new LayoutCache();
 		all_structures_bbox = null;
 		is_printing = false;
 
@@ -2867,6 +2870,26 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 		return thePosManager;
 	}
 
+	/**
+	 * Return <code>true</code> if only the structures that have been
+	 * modified are laid out again when the component is repainted.
+	 */
+	public boolean isIncrementalLayout() {
+		return theLayoutCache != null;
+	}
+
+	/**
+	 * Set whether only the structures that have been modified are laid out
+	 * again when the component is repainted. If <code>false</code> all the
+	 * structures are laid out at each repaint.
+	 * 
+	 * @see LayoutCache
+	 */
+	public void setIncrementalLayout(boolean f) {
+		if (f != isIncrementalLayout())
+			theLayoutCache = (f) ? new LayoutCache() : null;
+	}
+
 	// -------------------
 	// clipboard handling
 
@@ -2998,8 +3021,7 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 
 		// set clipping area
-		Rectangle clipRect = new Rectangle();
-		g.getClipBounds(clipRect);
+		Rectangle clipRect = g.getClipBounds();
 
 		// set scale
 		getTheGlycanRenderer().getGraphicOptions().setScale(
@@ -3015,11 +3037,17 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 
 		all_structures_bbox = getTheGlycanRenderer().computeBoundingBoxes(theDoc
 				.getStructures(), show_masses, show_redend, thePosManager,
-				theBBoxManager);
-		for (Glycan s : theDoc.getStructures())
+				theBBoxManager, theLayoutCache);
+		for (Glycan s : theDoc.getStructures()) {
+			// skip the structures outside the clipping area
+			if (!getTheGlycanRenderer().isVisible(s, clipRect, show_masses,
+					show_redend, theBBoxManager))
+				continue;
+
 			getTheGlycanRenderer().paint(new DefaultPaintable(g2d), s, selected_residues,
 					selected_linkages, show_masses, show_redend, thePosManager,
 					theBBoxManager);
+		}
 
 		if (!is_printing)
 			paintSelection(g2d, show_redend);
@@ -3097,18 +3125,65 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 	 * <code>null</code> if none is there
 	 */
 	public Residue getResidueAtPoint(Point p) {
-		for (Glycan g : theDoc.getStructures()) {
-			Residue ret = getResidueAtPoint(g.getRoot(), p);
-			if (ret != null)
-				return ret;
+		// among the residues at the point return the first one found when
+		// visiting the structures in order
+		Vector<Residue> nodes = theBBoxManager.getNodesAtPoint(p);
+		if (nodes == null)
+			return null;
 
-			ret = getResidueAtPoint(g.getBracket(), p);
-			if (ret != null)
+		Residue ret = null;
+		int[] ret_order = null;
+		for (Residue r : nodes) {
+			int[] order = getVisitOrder(r);
+			if (order != null
+					&& (ret_order == null || compareVisitOrder(order, ret_order) < 0)) {
+				ret = r;
+				ret_order = order;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the position of a residue in the visit of the structures of the
+	 * document: the index of the structure, 0 for the residues in the tree
+	 * and 1 for the residues in the bracket, followed by the indexes of the
+	 * children from the root to the residue. Return <code>null</code> if the
+	 * residue is not in the document.
+	 */
+	private int[] getVisitOrder(Residue r) {
+		LinkedList<Integer> path = new LinkedList<Integer>();
+		Residue top = r;
+		for (Residue parent = r.getParent(); parent != null; parent = parent
+				.getParent()) {
+			path.addFirst(parent.indexOf(top));
+			top = parent;
+		}
+
+		Vector<Glycan> structures = theDoc.getStructures();
+		for (int i = 0; i < structures.size(); i++) {
+			Glycan g = structures.get(i);
+			if (top == g.getRoot() || top == g.getBracket()) {
+				int[] ret = new int[path.size() + 2];
+				ret[0] = i;
+				ret[1] = (top == g.getRoot()) ? 0 : 1;
+				int j = 2;
+				for (Integer ind : path)
+					ret[j++] = ind;
 				return ret;
+			}
 		}
 		return null;
 	}
 
+	private static int compareVisitOrder(int[] a, int[] b) {
+		for (int i = 0; i < a.length && i < b.length; i++) {
+			if (a[i] != b[i])
+				return a[i] - b[i];
+		}
+		return a.length - b.length;
+	}
+
 	/**
 	 * Return the child of a residue that is displayed at the specified
 	 * position, or <code>null</code> if none is there
@@ -4621,7 +4696,8 @@ public class GlycanCanvas extends JComponent implements ActionListener,
 				.getGraphicOptions().SHOW_REDEND : getTheGlycanRenderer()
 				.getGraphicOptions().SHOW_REDEND_CANVAS;
 		getTheGlycanRenderer().computeBoundingBoxes(theDoc.getStructures(),
-				show_masses, show_redend, thePosManager, theBBoxManager);
+				show_masses, show_redend, thePosManager, theBBoxManager,
+				theLayoutCache);
 
 		//
 
@@ -1141,10 +1141,16 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 	 */
 	public boolean importFrom(String filename, String format) {
 		try {
-			// read file
-			FileInputStream fis = new FileInputStream(filename);
-			BufferedReader br = new BufferedReader(new InputStreamReader(fis));
-			return importFromString(consume(br), format);
+			// read structures one at a time
+			GlycanStreamReader reader = GlycanParserFactory.getStreamReader(
+					new FileInputStream(filename), format,
+					theWorkspace.getDefaultMassOptions(), false);
+			try {
+				addStructures(reader.readAll(), true);
+			} finally {
+				reader.close();
+			}
+			return true;
 		} catch (Exception e) {
 			LogUtils.report(e);
 			return false;
@@ -1176,9 +1182,10 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 			// tolerate_unknown);
 
 			// read structures
-			GlycanParser parser = GlycanParserFactory.getParser(format);
-			parser.setTolerateUnknown(tolerate_unknown);
-			fromString(buffer, true, true, parser);
+			GlycanStreamReader reader = new GlycanStreamReader(
+					new StringReader(buffer), format,
+					theWorkspace.getDefaultMassOptions(), tolerate_unknown);
+			addStructures(reader.readAll(), true);
 
 			return true;
 		} catch (Exception e) {
@@ -1202,12 +1209,7 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 
 			// serialize structures
 			GlycanParser parser = GlycanParserFactory.getParser(format);
-			String str = toString(parser);
-			if (str == null)
-				throw new Exception("Invalid output string");
-
-			// write to file
-			bw.write(str, 0, str.length());
+			write(bw, structures, parser);
 			bw.newLine();
 			bw.close();
 
@@ -1232,12 +1234,7 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 
 			// serialize structures
 			GlycanParser parser = GlycanParserFactory.getParser(format);
-			String str = toString(toexport, parser);
-			if (str == null)
-				throw new Exception("Invalid output string");
-
-			// write to file
-			bw.write(str, 0, str.length());
+			write(bw, toexport, parser);
 			bw.newLine();
 			bw.close();
 
@@ -1248,6 +1245,54 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 		}
 	}
 
+	/**
+	 * Write the specified structures to a stream using the given parser. The
+	 * structures are written directly to the stream when the parser is a
+	 * {@link GWSParser}, otherwise their string representation is computed
+	 * first.
+	 * 
+	 * @throws Exception
+	 *             if the structures cannot be encoded or written
+	 * @see GWSWriter
+	 */
+	static public void write(Appendable out, Collection<Glycan> structures,
+			GlycanParser parser) throws Exception {
+		if (parser instanceof GWSParser) {
+			new GWSWriter().write(out, structures);
+			return;
+		}
+
+		String str = toString(structures, parser);
+		if (str == null)
+			throw new Exception("Invalid output string");
+		out.append(str);
+	}
+
+	/**
+	 * Return a binary representation of the structures contained in the
+	 * document.
+	 * 
+	 * @see GlycanBinaryFormat
+	 */
+	public byte[] toBinary() {
+		return GlycanBinaryFormat.toBytes(structures);
+	}
+
+	/**
+	 * Add the structures read from their binary representation.
+	 * 
+	 * @param merge
+	 *            if <code>true</code> append the structures, otherwise
+	 *            overwrite the existing ones.
+	 * @see GlycanBinaryFormat
+	 */
+	public void fromBinary(byte[] data, boolean merge) throws Exception {
+		if (merge)
+			addStructures(GlycanBinaryFormat.readGlycans(data), false);
+		else
+			setStructures(GlycanBinaryFormat.readGlycans(data), false);
+	}
+
 	/**
 	 * Return a GlycoCT representation of the structures contained in the
 	 * document.
@@ -1255,7 +1300,11 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 	 * @see GlycoCTParser
 	 */
 	public String toGlycoCT() {
-		return toString(structures, new GlycoCTParser(false));
+		GlycoCTParser parser = GlycoCTParserPool.acquire(false);
+		String ret = toString(structures, parser);
+		if (ret.length() > 0)
+			GlycoCTParserPool.release(parser);
+		return ret;
 	}
 
 	/**
@@ -1265,12 +1314,18 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 	 * @see GlycoCTParser
 	 */
 	public String toGlycoCTCondensed() {
-		return toString(structures, new GlycoCTCondensedParser(false));
+		GlycoCTParser parser = GlycoCTParserPool.acquireCondensed(false);
+		String ret = toString(structures, parser);
+		if (ret.length() > 0)
+			GlycoCTParserPool.release(parser);
+		return ret;
 	}
 	
 	protected void fromGlycoCT(String str, boolean merge, boolean fire,
 			boolean tolerate) throws Exception {
-		fromString(str, merge, fire, new GlycoCTParser(tolerate));
+		GlycoCTParser parser = GlycoCTParserPool.acquire(tolerate);
+		fromString(str, merge, fire, parser);
+		GlycoCTParserPool.release(parser);
 	}
 
 	/**
@@ -1340,11 +1395,14 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 
 		String str = "";
 		if (parser instanceof GWSParser) {
-			for (Iterator<Glycan> i = structures.iterator(); i.hasNext();) {
-				str += parser.writeGlycan(i.next(), bboxManager);
-				if (i.hasNext())
-					str += ";";
+			StringBuilder sb = new StringBuilder();
+			try {
+				new GWSWriter(false, true, bboxManager).write(sb, structures);
+			} catch (IOException e) {
+				// never thrown by StringBuilder
+				throw new IllegalStateException(e);
 			}
+			str = sb.toString();
 		} else {
 			if(bboxManager!=null){ //At the moment this will force conversion to GlycoCT_XML
 				str = parser.writeGlycan(structures.isEmpty() ? null : structures
@@ -1422,11 +1480,10 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 			throws Exception {
 
 		Vector<Glycan> parsed = new Vector<Glycan>();
-		if (parser instanceof GWSParser) {
-			for (String t : TextUtils.tokenize(str, ";"))
-				parsed.add(parser.readGlycan(t,
-						theWorkspace.getDefaultMassOptions()));
-		} else
+		if (parser instanceof GWSParser)
+			parsed.addAll(new GWSReader().readGlycans(str,
+					theWorkspace.getDefaultMassOptions()));
+		else
 			parsed.add(parser.readGlycan(str,
 					theWorkspace.getDefaultMassOptions()));
 
@@ -1441,10 +1498,8 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 	public Collection<Glycan> parseString(String str) throws Exception {
 		// parse structures
 		Vector<Glycan> parsed = new Vector<Glycan>();
-		for (String t : TextUtils.tokenize(str, ";")){
-			parsed.add(GWSParser.fromString(t,
-					theWorkspace.getDefaultMassOptions()));
-		}
+		parsed.addAll(new GWSReader().readGlycans(str,
+				theWorkspace.getDefaultMassOptions()));
 		return parsed;
 	}
 
@@ -1458,8 +1513,7 @@ public class GlycanDocument extends BaseDocument implements SAXUtils.SAXWriter {
 			throws Exception {
 		// parse structures
 		Vector<Glycan> parsed = new Vector<Glycan>();
-		for (String t : TextUtils.tokenize(str, ";"))
-			parsed.add(GWSParser.fromString(t, opt));
+		parsed.addAll(new GWSReader().readGlycans(str, opt));
 		return parsed;
 	}
 
@@ -16,4 +16,17 @@ public enum GlycanFormat {
 	public String toString(){
 		return format;
 	}
+
+	/**
+	 * Return the format with the given identifier, ignoring the case, or
+	 * <code>null</code> if it is not one of the built-in formats.
+	 */
+	public static GlycanFormat fromString(String format){
+		for(GlycanFormat f : values()){
+			if(f.format.equalsIgnoreCase(format)){
+				return f;
+			}
+		}
+		return null;
+	}
 }
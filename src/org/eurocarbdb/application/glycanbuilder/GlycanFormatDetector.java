@@ -0,0 +1,186 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.io.*;
+import java.nio.CharBuffer;
+
+/**
+   Detect the format of a glycan sequence by inspecting only its
+   first characters, without parsing it. The rules are checked in
+   order:
+   <ul>
+   <li>GlycoCT XML documents start with an XML tag</li>
+   <li>GlycoCT condensed sequences start with a <code>RES</code> or
+   <code>LIN</code> section</li>
+   <li>Linucs sequences start with a bracketed linkage followed by a
+   bracketed type and a children block</li>
+   <li>GlycoWorkbench sequences contain linkages (<code>--</code>),
+   mass options (<code>$</code>) or stereochemistry prefixes</li>
+   <li>Glycominds sequences are made only by the letters, digits and
+   symbols of their alphabet and start with an upper case letter or
+   an unknown residue</li>
+   </ul>
+
+   @see GlycanParserFactory#getParserFor
+ */
+
+public class GlycanFormatDetector {
+
+	/** The maximum number of characters inspected. */
+	public static final int SNIFF_LENGTH = 512;
+
+	private GlycanFormatDetector() {
+	}
+
+	/**
+	   Return the format of the sequence contained in a reader, or
+	   <code>null</code> if the format cannot be recognized. The
+	   position of the reader is not changed.
+	   @throws IOException if the reader cannot be read
+	 */
+	public static GlycanFormat detect(BufferedReader reader) throws IOException {
+		char[] buffer = new char[SNIFF_LENGTH];
+		reader.mark(SNIFF_LENGTH);
+		int length = 0;
+		try {
+			for( int n; length<SNIFF_LENGTH && (n=reader.read(buffer,length,SNIFF_LENGTH-length))!=-1; )
+				length += n;
+		}
+		finally {
+			reader.reset();
+		}
+		return detect(CharBuffer.wrap(buffer,0,length));
+	}
+
+	/**
+	   Return the format of a sequence, or <code>null</code> if the
+	   format cannot be recognized. Only the first {@link
+	   #SNIFF_LENGTH} characters are inspected.
+	 */
+	public static GlycanFormat detect(CharSequence str) {
+		int end = Math.min(str.length(),SNIFF_LENGTH);
+		int start = 0;
+		while( start<end && (Character.isWhitespace(str.charAt(start)) || str.charAt(start)=='\uFEFF') )
+			start++;
+		if( start==end )
+			return null;
+
+		char first = str.charAt(start);
+		if( first=='<' )
+			return GlycanFormat.GLYCOCT;
+		if( startsWithSection(str,start,end,"RES") || startsWithSection(str,start,end,"LIN") )
+			return GlycanFormat.GLYCOCT_CONDENSED;
+		if( first=='[' && isLinucs(str,start,end) )
+			return GlycanFormat.GW_LINUCS;
+
+		// the first structure of a list of GWS sequences
+		int record_end = start;
+		while( record_end<end && str.charAt(record_end)!=';' )
+			record_end++;
+		while( record_end>start && Character.isWhitespace(str.charAt(record_end-1)) )
+			record_end--;
+
+		if( isGWS(str,start,record_end) )
+			return GlycanFormat.GWS;
+		if( isGlycominds(str,start,record_end) )
+			return GlycanFormat.GLYCOMINDS;
+		return null;
+	}
+
+	static private boolean startsWithSection(CharSequence str, int start, int end, String section) {
+		int ind = start+section.length();
+		if( ind>end || !regionMatches(str,start,section) )
+			return false;
+		return (ind==end || Character.isWhitespace(str.charAt(ind)));
+	}
+
+	/**
+	   The sequence starts with [link][type]{
+	 */
+	static private boolean isLinucs(CharSequence str, int start, int end) {
+		int ind = skipBrackets(str,start,end);
+		if( ind==-1 || ind>=end || str.charAt(ind)!='[' )
+			return false;
+		ind = skipBrackets(str,ind,end);
+		return (ind!=-1 && ind<end && str.charAt(ind)=='{');
+	}
+
+	static private int skipBrackets(CharSequence str, int start, int end) {
+		int depth = 0;
+		for( int i=start; i<end; i++ ) {
+			char c = str.charAt(i);
+			if( c=='[' )
+				depth++;
+			else if( c==']' && --depth==0 )
+				return i+1;
+		}
+		return -1;
+	}
+
+	static private boolean isGWS(CharSequence str, int start, int end) {
+		for( int i=start; i<end; i++ ) {
+			char c = str.charAt(i);
+			if( c=='$' || c=='@' || c=='}' )
+				return true;
+			if( c=='-' ) {
+				// linkage or chirality
+				if( i+1<end && str.charAt(i+1)=='-' )
+					return true;
+				if( i>start && (str.charAt(i-1)=='D' || str.charAt(i-1)=='L' || str.charAt(i-1)=='?') )
+					return true;
+			}
+			if( c==',' && i+1<end && (str.charAt(i+1)=='p' || str.charAt(i+1)=='f') && (i+2==end || !Character.isLetterOrDigit(str.charAt(i+2))) )
+				return true;
+		}
+
+		// single residues such as the reducing ends
+		return (end-start>0 && Character.isLowerCase(str.charAt(start)) && regionIsName(str,start,end));
+	}
+
+	static private boolean isGlycominds(CharSequence str, int start, int end) {
+		// the unsupported residues are written as '*'
+		if( end==start || !(Character.isUpperCase(str.charAt(start)) || str.charAt(start)=='*' || str.charAt(start)=='[') )
+			return false;
+		for( int i=start; i<end; i++ ) {
+			char c = str.charAt(i);
+			if( !Character.isLetterOrDigit(c) && "?*()[],/'^~|%:#".indexOf(c)==-1 )
+				return false;
+		}
+		return true;
+	}
+
+	static private boolean regionIsName(CharSequence str, int start, int end) {
+		for( int i=start; i<end; i++ ) {
+			if( !Character.isLetterOrDigit(str.charAt(i)) && str.charAt(i)!='_' && str.charAt(i)!='#' )
+				return false;
+		}
+		return true;
+	}
+
+	static private boolean regionMatches(CharSequence str, int start, String prefix) {
+		for( int i=0; i<prefix.length(); i++ ) {
+			if( str.charAt(start+i)!=prefix.charAt(i) )
+				return false;
+		}
+		return true;
+	}
+}
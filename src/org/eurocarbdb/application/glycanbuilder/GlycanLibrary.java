@@ -0,0 +1,349 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+   A read-only library of glycan structures stored in a file that is
+   mapped in memory. The file contains the m/z ratios of the
+   structures computed with their mass options, the order of the
+   structures by increasing m/z ratio, the offsets of the structures
+   and the structures themselves in the binary format of {@link
+   GlycanBinaryFormat}, followed by the table of the names they use.
+   The structures are decoded only when they are requested, and the
+   searches by m/z ratio are made on the mapped columns without
+   creating objects for the structures that are not returned. A
+   library can be used by several threads. The files are limited to
+   2GB.
+
+   @see Writer
+ */
+
+public class GlycanLibrary {
+
+	/** The current version of the file format. */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'G', 'W', 'L' };
+
+	// magic and version, count, offset of the name table, reserved
+	private static final int HEADER_SIZE = 16;
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int sorted_start;
+	private final int offsets_start;
+	private final List<String> names;
+
+	private final ThreadLocal<GlycanBinaryFormat.Decoder> decoders = new ThreadLocal<GlycanBinaryFormat.Decoder>() {
+		protected GlycanBinaryFormat.Decoder initialValue() {
+			return new GlycanBinaryFormat.Decoder(buffer.duplicate(),names);
+		}
+	};
+
+	/**
+	   Open a library file. The file is mapped in memory and must not
+	   be modified while the library is in use.
+	   @throws IOException if the file cannot be read or is not a
+	   valid library
+	 */
+	public GlycanLibrary(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try {
+			// the mapping remains valid after the file is closed
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+		}
+		finally {
+			raf.close();
+		}
+
+		if( buffer.limit()<HEADER_SIZE )
+			throw new IOException("Invalid library file: " + file);
+		for( int i=0; i<MAGIC.length; i++ ) {
+			if( buffer.get(i)!=MAGIC[i] )
+				throw new IOException("Invalid library file: " + file);
+		}
+		int version = buffer.get(MAGIC.length) & 0xff;
+		if( version!=VERSION )
+			throw new IOException("Unsupported version of the library file: " + version);
+
+		count = buffer.getInt(4);
+		sorted_start = HEADER_SIZE + 8*count;
+		offsets_start = sorted_start + 4*count;
+		int table_start = buffer.getInt(8);
+		if( count<0 || offsets_start+4*(count+1)>buffer.limit() || table_start<offsets_start || table_start>buffer.limit() )
+			throw new IOException("Invalid library file: " + file);
+
+		// read names
+		ByteBuffer table = buffer.duplicate();
+		table.position(table_start);
+		int no_names = GlycanBinaryFormat.readVarint(table);
+		ArrayList<String> read_names = new ArrayList<String>(no_names);
+		for( int i=0; i<no_names; i++ )
+			read_names.add(GlycanBinaryFormat.readUTF8(table));
+		names = Collections.unmodifiableList(read_names);
+	}
+
+	/**
+	   Return the number of structures in the library.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	   Return the m/z ratio of the structure at the specified index,
+	   computed with its mass options when the library was created,
+	   or <code>NaN</code> if the mass of the structure cannot be
+	   computed, as for repeating units with a variable number of
+	   repetitions.
+	 */
+	public double getMZ(int ind) {
+		checkIndex(ind);
+		return buffer.getDouble(HEADER_SIZE+8*ind);
+	}
+
+	/**
+	   Decode the structure at the specified index. A new object is
+	   returned at each call.
+	   @throws Exception if the structure cannot be decoded
+	 */
+	public Glycan getStructure(int ind) throws Exception {
+		checkIndex(ind);
+		GlycanBinaryFormat.Decoder decoder = decoders.get();
+		decoder.getBuffer().position(buffer.getInt(offsets_start+4*ind));
+		return decoder.readGlycan();
+	}
+
+	/**
+	   Return the indexes of the structures whose m/z ratio is
+	   between <code>min_mz</code> and <code>max_mz</code> included,
+	   sorted by increasing m/z ratio. The structures whose mass
+	   cannot be computed are never returned.
+	 */
+	public int[] findByMZ(double min_mz, double max_mz) {
+		// the unknown ratios are sorted last and never match
+		if( Double.isNaN(min_mz) || Double.isNaN(max_mz) )
+			return new int[0];
+
+		int first = lowerBound(min_mz,false);
+		int last = lowerBound(max_mz,true);
+		if( last<=first )
+			return new int[0];
+
+		int[] ret = new int[last-first];
+		for( int i=first; i<last; i++ )
+			ret[i-first] = buffer.getInt(sorted_start+4*i);
+		return ret;
+	}
+
+	/**
+	   Decode the structures whose m/z ratio is between
+	   <code>min_mz</code> and <code>max_mz</code> included, sorted by
+	   increasing m/z ratio.
+	   @throws Exception if a structure cannot be decoded
+	   @see #findByMZ
+	 */
+	public List<Glycan> getStructuresByMZ(double min_mz, double max_mz) throws Exception {
+		int[] inds = findByMZ(min_mz,max_mz);
+		List<Glycan> ret = new ArrayList<Glycan>(inds.length);
+		for( int ind : inds )
+			ret.add(getStructure(ind));
+		return ret;
+	}
+
+	/**
+	   Return the position in the sorted order of the first structure
+	   with an m/z ratio not smaller than the value, or greater than
+	   the value if <code>after</code> is <code>true</code>.
+	 */
+	private int lowerBound(double mz, boolean after) {
+		int low = 0;
+		int high = count;
+		while( low<high ) {
+			int mid = (low+high)>>>1;
+			int cmp = Double.compare(getMZ(buffer.getInt(sorted_start+4*mid)),mz);
+			if( cmp<0 || (after && cmp==0) )
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private void checkIndex(int ind) {
+		if( ind<0 || ind>=count )
+			throw new IndexOutOfBoundsException("Index: " + ind + ", size: " + count);
+	}
+
+	//----------------
+	// creation
+
+	/**
+	   Create a library file containing the specified structures.
+	   @throws IOException if the file cannot be written
+	 */
+	public static void write(File file, Collection<Glycan> structures) throws IOException {
+		Writer writer = new Writer(file);
+		for( Glycan structure : structures )
+			writer.add(structure);
+		writer.close();
+	}
+
+	/**
+	   Create a library file containing the structures read from a
+	   file in one of the formats supported by {@link
+	   GlycanParserFactory}.
+	   @param default_mass_options the mass options to use for the
+	   structures if they are not specified in their representation
+	   @return the number of structures in the library
+	   @throws Exception if the input file cannot be parsed or the
+	   library cannot be written
+	   @see GlycanParserFactory#getStreamReader
+	 */
+	public static int create(File file, File input, String format, MassOptions default_mass_options) throws Exception {
+		GlycanStreamReader reader = GlycanParserFactory.getStreamReader(new FileInputStream(input),format,default_mass_options,false,0);
+		try {
+			Writer writer = new Writer(file);
+			for( Glycan structure; (structure=reader.next())!=null; )
+				writer.add(structure);
+			writer.close();
+			return writer.size();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	   Write a library file one structure at a time. The encoded
+	   structures are kept in memory until the writer is closed.
+	 */
+	public static class Writer {
+
+		private final File file;
+		private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		private final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(records));
+		private final Map<String,Integer> names = new HashMap<String,Integer>();
+		private final GlycanBinaryFormat.Encoder encoder = new GlycanBinaryFormat.Encoder(data,names);
+
+		private int count = 0;
+		private double[] mz_ratios = new double[1024];
+		private int[] offsets = new int[1024];
+
+		/**
+		   Create a new writer for the specified file. The file is
+		   written when the writer is closed.
+		 */
+		public Writer(File _file) {
+			file = _file;
+		}
+
+		/**
+		   Return the number of structures added to the library.
+		 */
+		public int size() {
+			return count;
+		}
+
+		/**
+		   Add a structure to the library.
+		 */
+		public void add(Glycan structure) throws IOException {
+			if( count==offsets.length ) {
+				double[] old_mz_ratios = mz_ratios;
+				int[] old_offsets = offsets;
+				mz_ratios = new double[2*count];
+				offsets = new int[2*count];
+				System.arraycopy(old_mz_ratios,0,mz_ratios,0,count);
+				System.arraycopy(old_offsets,0,offsets,0,count);
+			}
+
+			double mass = structure.computeMass();
+			mz_ratios[count] = (mass>=0.) ?structure.computeMZ() :Double.NaN;
+			offsets[count] = data.size();
+			encoder.writeGlycan(structure);
+			count++;
+		}
+
+		/**
+		   Write the library file.
+		   @throws IOException if the file cannot be written or the
+		   library exceeds the maximum size
+		 */
+		public void close() throws IOException {
+			data.flush();
+
+			// sort by m/z ratio
+			Integer[] sorted = new Integer[count];
+			for( int i=0; i<count; i++ )
+				sorted[i] = i;
+			Arrays.sort(sorted,new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(mz_ratios[a],mz_ratios[b]);
+				}
+			});
+
+			long records_start = HEADER_SIZE + 16L*count + 4;
+			long table_start = records_start + records.size();
+			if( table_start>Integer.MAX_VALUE )
+				throw new IOException("The library exceeds the maximum size");
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				// header
+				out.write(MAGIC);
+				out.writeByte(VERSION);
+				out.writeInt(count);
+				out.writeInt((int)table_start);
+				out.writeInt(0);
+
+				// columns
+				for( int i=0; i<count; i++ )
+					out.writeDouble(mz_ratios[i]);
+				for( int i=0; i<count; i++ )
+					out.writeInt(sorted[i]);
+				for( int i=0; i<count; i++ )
+					out.writeInt((int)records_start + offsets[i]);
+				out.writeInt((int)table_start);
+
+				// structures
+				records.writeTo(out);
+
+				// names in the order of their index
+				String[] table = new String[names.size()];
+				for( Map.Entry<String,Integer> e : names.entrySet() )
+					table[e.getValue()] = e.getKey();
+				GlycanBinaryFormat.writeVarint(out,table.length);
+				for( String name : table )
+					GlycanBinaryFormat.writeUTF8(out,name);
+			}
+			finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@
 
 package org.eurocarbdb.application.glycanbuilder;
 
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -117,21 +118,102 @@ public class GlycanParserFactory {
         return new MolecularFrameworkParser(format);
 
     // internal formats
-    if( format.compareToIgnoreCase("gws")==0 ) 
+    GlycanFormat glycanFormat = GlycanFormat.fromString(format);
+    if( glycanFormat!=null )
+        return getParser(glycanFormat);
+
+    throw new Exception("Unsupported format-"+format+"-");
+    }
+
+    /**
+       Create a new instance of the parser of a built-in format.
+     */
+    static public GlycanParser getParser(GlycanFormat format) throws Exception{
+    switch( format ) {
+    case GWS:
         return new GWSParser();
-    else if( format.compareToIgnoreCase("gwlinucs")==0 ) 
+    case GW_LINUCS:
         return new LinucsParser();
-    else if( format.compareToIgnoreCase("glycominds")==0 ) 
+    case GLYCOMINDS:
         return new GlycoMindsParser();
-    else if( format.compareToIgnoreCase("glycoct")==0 ) 
-        return new GlycoCTParser(false);
-    else if( format.compareToIgnoreCase("glycoct_condensed")==0 ) 
+    case GLYCOCT:
         return new GlycoCTParser(false);
+    case GLYCOCT_CONDENSED:
+        return new GlycoCTCondensedParser(false);
+    }
+    throw new Exception("Unsupported format-"+format+"-");
+    }
 
+    /**
+       Create a new instance of a parser for a format given by its
+       identifier: the built-in formats are tried first, then the
+       encodings of the MolecularFramework library.
+       @param format the identifier of the encoding format
+       @throws Exception if the identifier does not represent a valid format
+       @see GlycanFormat#fromString
+     */
+    static public GlycanParser getParserForId(String format) throws Exception{
+    GlycanFormat glycanFormat = GlycanFormat.fromString(format);
+    if( glycanFormat!=null )
+        return getParser(glycanFormat);
+    if( MolecularFrameworkParser.isSequenceFormat(format) )
+        return new MolecularFrameworkParser(format);
     throw new Exception("Unsupported format-"+format+"-");
     }
     
     static public GlycanParser getParser(GlycanSequenceFormat glycanSequenceFormat) throws Exception{
     	return getParser(glycanSequenceFormat.toString());
     }
+
+    /**
+       Return the format of a sequence by inspecting its first
+       characters, or <code>null</code> if it cannot be recognized.
+       @see GlycanFormatDetector
+     */
+    static public GlycanFormat detectFormat(String buffer) {
+    return GlycanFormatDetector.detect(buffer);
+    }
+
+    /**
+       Create a new instance of a parser for the format of a sequence,
+       detected by inspecting its first characters.
+       @throws Exception if the format cannot be recognized
+       @see GlycanFormatDetector
+     */
+    static public GlycanParser getParserFor(String buffer) throws Exception {
+    GlycanFormat format = GlycanFormatDetector.detect(buffer);
+    if( format==null )
+        throw new Exception("Unrecognized sequence format");
+    return getParser(format);
+    }
+
+    /**
+       Create a new reader returning one at a time the structures
+       contained in a stream encoded in a given format.
+       @param format the identifier of the encoding format, or
+       <code>auto</code> to detect it from the start of the stream
+       @param default_mass_options the mass options to use for the
+       structures if they are not specified in their representation
+       @param tolerate_unknown if <code>true</code> tolerate residues
+       of a type that is not specified in the dictionary
+       @throws Exception if the identifier does not represent a valid format
+       @see GlycanStreamReader
+     */
+    static public GlycanStreamReader getStreamReader(InputStream is, String format, MassOptions default_mass_options, boolean tolerate_unknown) throws Exception {
+    return new GlycanStreamReader(is,format,default_mass_options,tolerate_unknown);
+    }
+
+    /**
+       Create a new reader returning one at a time the structures
+       contained in a stream encoded in a given format, decoding them
+       in parallel.
+       @param no_threads the number of threads used to decode the
+       structures, 0 means one per available processor
+       @see #getStreamReader(InputStream,String,MassOptions,boolean)
+     */
+    static public GlycanStreamReader getStreamReader(InputStream is, String format, MassOptions default_mass_options, boolean tolerate_unknown, int no_threads) throws Exception {
+    GlycanStreamReader ret = new GlycanStreamReader(is,format,default_mass_options,tolerate_unknown);
+    ret.setNoThreads(no_threads);
+    return ret;
+    }
 }
\ No newline at end of file
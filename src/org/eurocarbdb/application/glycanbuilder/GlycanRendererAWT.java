@@ -92,11 +92,13 @@ public class GlycanRendererAWT extends AbstractGlycanRenderer {
 			paintComposition(paintable, structure.getRoot(), structure.getBracket(),
 					selected_residues, posManager, bboxManager);
 		else {
+			Rectangle clip = getClipBounds(paintable);
 			paintResidue(paintable, structure.getRoot(show_redend),
 					selected_residues, selected_linkages, active_residues,
-					posManager, bboxManager);
+					posManager, bboxManager, clip);
 			paintBracket(paintable, structure.getBracket(), selected_residues,
-					selected_linkages, active_residues, posManager, bboxManager);
+					selected_linkages, active_residues, posManager, bboxManager,
+					clip);
 		}
 		if (show_mass)
 			displayMass(paintable, structure, show_redend, bboxManager);
@@ -110,7 +112,8 @@ public class GlycanRendererAWT extends AbstractGlycanRenderer {
 				.getRoot(show_redend));
 
 		g2d.setColor(Color.black);
-		g2d.setFont(new Font(theGraphicOptions.MASS_TEXT_FONT_FACE, Font.PLAIN,
+		g2d.setFont(FontMetricsCache.getInstance().getFont(
+				theGraphicOptions.MASS_TEXT_FONT_FACE,
 				theGraphicOptions.MASS_TEXT_SIZE));
 
 		String text = getMassText(structure);
@@ -141,8 +144,9 @@ public class GlycanRendererAWT extends AbstractGlycanRenderer {
 			g2d.setStroke(new BasicStroke(1));
 		}
 
-		Font font = new Font(theGraphicOptions.COMPOSITION_FONT_FACE,
-				Font.PLAIN, theGraphicOptions.COMPOSITION_FONT_SIZE);
+		Font font = FontMetricsCache.getInstance().getFont(
+				theGraphicOptions.COMPOSITION_FONT_FACE,
+				theGraphicOptions.COMPOSITION_FONT_SIZE);
 
 		StyledTextCellRenderer stcr = new StyledTextCellRenderer(false);
 		stcr.getRendererComponent(font, Color.black, Color.white, text);
@@ -197,7 +201,8 @@ public class GlycanRendererAWT extends AbstractGlycanRenderer {
 
 		// paint text
 		g2d.setColor(Color.black);
-		g2d.setFont(new Font(theGraphicOptions.NODE_FONT_FACE, Font.PLAIN,
+		g2d.setFont(FontMetricsCache.getInstance().getFont(
+				theGraphicOptions.NODE_FONT_FACE,
 				theGraphicOptions.NODE_FONT_SIZE));
 
 		if (orientation.equals(0) || orientation.equals(180))
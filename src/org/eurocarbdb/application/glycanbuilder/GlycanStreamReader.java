@@ -0,0 +1,418 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Read the glycan structures contained in a stream one at a time. The
+   stream is split in records without being loaded in memory: GWS
+   sequences are separated by semicolons, GlycoCT condensed sequences
+   by blank lines or by the start of a new <code>RES</code> block, and
+   GlycoCT XML documents end with their <code>sugar</code> element.
+   The streams in the other formats contain a single structure. The
+   records can be decoded in parallel by a pool of threads, each one
+   with its own parser; the structures are returned in the order of
+   the records and at most two records per thread are read in
+   advance. A reader must be used by a single thread.
+
+   @see GlycanParserFactory#getStreamReader
+ */
+
+public class GlycanStreamReader {
+
+	/**
+	   The identifier used to detect the format from the start of the
+	   stream.
+	   @see GlycanFormatDetector
+	 */
+	public static final String AUTO_FORMAT = "auto";
+
+	private static final String SUGAR_END = "</sugar>";
+
+	private final BufferedReader in;
+	private final String format;
+	private final MassOptions default_mass_options;
+	private final boolean tolerate_unknown;
+	private final RecordSplitter splitter;
+
+	private int no_threads = 1;
+	private ExecutorService executor = null;
+	private boolean own_executor = false;
+
+	private final Queue<GlycanParser> parsers = new ConcurrentLinkedQueue<GlycanParser>();
+	private final LinkedList<Future<Glycan>> pending = new LinkedList<Future<Glycan>>();
+	private boolean eof = false;
+
+	/**
+	   Create a new reader for a stream of bytes in the default
+	   character set.
+	   @param format the identifier of the encoding format, or
+	   {@link #AUTO_FORMAT} to detect it from the start of the stream
+	   @param default_mass_options the mass options to use for the
+	   structures if they are not specified in their representation
+	   @param tolerate_unknown if <code>true</code> tolerate residues
+	   of a type that is not specified in the dictionary
+	   @throws Exception if the identifier does not represent a valid
+	   format
+	   @see GlycanParserFactory#getParserForId
+	 */
+	public GlycanStreamReader(InputStream is, String format, MassOptions default_mass_options, boolean tolerate_unknown) throws Exception {
+		this(new InputStreamReader(is),format,default_mass_options,tolerate_unknown);
+	}
+
+	/**
+	   Create a new reader for a stream of characters.
+	   @param format the identifier of the encoding format, or
+	   {@link #AUTO_FORMAT} to detect it from the start of the stream
+	   @param default_mass_options the mass options to use for the
+	   structures if they are not specified in their representation
+	   @param tolerate_unknown if <code>true</code> tolerate residues
+	   of a type that is not specified in the dictionary
+	   @throws Exception if the identifier does not represent a valid
+	   format
+	   @see GlycanParserFactory#getParserForId
+	 */
+	public GlycanStreamReader(Reader reader, String _format, MassOptions _default_mass_options, boolean _tolerate_unknown) throws Exception {
+		in = (reader instanceof BufferedReader) ?(BufferedReader)reader :new BufferedReader(reader);
+		format = (_format.equalsIgnoreCase(AUTO_FORMAT)) ?detectFormat(in) :_format;
+		default_mass_options = _default_mass_options;
+		tolerate_unknown = _tolerate_unknown;
+
+		// check the format, the parsers of the built-in formats are
+		// created when the first record is decoded
+		if( GlycanFormat.fromString(format)==null )
+			parsers.add(newParser());
+
+		if( format.equalsIgnoreCase("gws") )
+			splitter = new GWSSplitter();
+		else if( format.equalsIgnoreCase("glycoct_condensed") )
+			splitter = new CondensedSplitter();
+		else if( format.equalsIgnoreCase("glycoct") || format.equalsIgnoreCase("glycoct_xml") )
+			splitter = new XMLSplitter();
+		else
+			splitter = new WholeSplitter();
+	}
+
+	/**
+	   Return the identifier of the format of the stream.
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	   Return the number of threads used to decode the records, 0
+	   means one per available processor.
+	 */
+	public int getNoThreads() {
+		return no_threads;
+	}
+
+	/**
+	   Set the number of threads used to decode the records, 0 means
+	   one per available processor. Must be called before the first
+	   structure is read.
+	 */
+	public void setNoThreads(int i) {
+		no_threads = i;
+	}
+
+	/**
+	   Set the executor used to decode the records. The executor is
+	   not shut down by the reader. If <code>null</code> a thread pool
+	   of {@link #getNoThreads} threads is created when needed. Must
+	   be called before the first structure is read.
+	 */
+	public void setExecutor(ExecutorService e) {
+		executor = e;
+	}
+
+	/**
+	   Return the next structure of the stream, or <code>null</code>
+	   if the end of the stream has been reached.
+	   @throws Exception if the stream cannot be read or the record
+	   cannot be parsed; the reading can continue with the following
+	   record
+	 */
+	public Glycan next() throws Exception {
+		if( getThreads()==1 && executor==null ) {
+			String record = splitter.nextRecord();
+			return (record!=null) ?decode(record) :null;
+		}
+
+		// keep the workers busy
+		if( executor==null ) {
+			executor = Executors.newFixedThreadPool(getThreads(),new DaemonThreadFactory());
+			own_executor = true;
+		}
+		while( !eof && pending.size()<2*getThreads() ) {
+			final String record = splitter.nextRecord();
+			if( record==null )
+				eof = true;
+			else {
+				pending.add(executor.submit(new Callable<Glycan>() {
+					public Glycan call() throws Exception {
+						return decode(record);
+					}
+				}));
+			}
+		}
+
+		if( pending.isEmpty() )
+			return null;
+		try {
+			return pending.removeFirst().get();
+		}
+		catch(ExecutionException e) {
+			if( e.getCause() instanceof Exception )
+				throw (Exception)e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	   Read all the remaining structures of the stream.
+	   @throws Exception if the stream cannot be read or a record
+	   cannot be parsed
+	 */
+	public List<Glycan> readAll() throws Exception {
+		List<Glycan> ret = new ArrayList<Glycan>();
+		for( Glycan g; (g=next())!=null; )
+			ret.add(g);
+		return ret;
+	}
+
+	/**
+	   Close the stream and stop the threads created by the reader.
+	 */
+	public void close() throws IOException {
+		for( Future<Glycan> f : pending )
+			f.cancel(false);
+		pending.clear();
+		if( own_executor ) {
+			executor.shutdown();
+			executor = null;
+			own_executor = false;
+		}
+		in.close();
+	}
+
+	private int getThreads() {
+		return (no_threads>0) ?no_threads :Runtime.getRuntime().availableProcessors();
+	}
+
+	static private String detectFormat(BufferedReader in) throws Exception {
+		GlycanFormat ret = GlycanFormatDetector.detect(in);
+		if( ret==null )
+			throw new Exception("Unrecognized sequence format");
+		return ret.toString();
+	}
+
+	private GlycanParser newParser() throws Exception {
+		GlycanParser ret = GlycanParserFactory.getParserForId(format);
+		ret.setTolerateUnknown(tolerate_unknown);
+		return ret;
+	}
+
+	/**
+	   Return the text of the next record without decoding it, or
+	   <code>null</code> if the end of the stream has been reached.
+	   Must not be mixed with calls to {@link #next}.
+	 */
+	public String nextRecord() throws IOException {
+		return splitter.nextRecord();
+	}
+
+	/**
+	   Decode a record, can be called by several threads.
+	 */
+	Glycan decode(String record) throws Exception {
+		// each parser is used by a single thread at a time
+		GlycanParser parser = parsers.poll();
+		if( parser==null )
+			parser = newParser();
+		try {
+			return parser.readGlycan(record,default_mass_options);
+		}
+		finally {
+			parsers.add(parser);
+		}
+	}
+
+	//----------------
+	// records
+
+	private interface RecordSplitter {
+
+		/**
+		   Return the next record, or <code>null</code> at the end of
+		   the stream.
+		 */
+		public String nextRecord() throws IOException;
+	}
+
+	/**
+	   Records separated by semicolons, empty records are skipped as
+	   done by {@link TextUtils#tokenize}.
+	 */
+	private class GWSSplitter implements RecordSplitter {
+
+		private StringBuilder record = new StringBuilder();
+
+		public String nextRecord() throws IOException {
+			record.setLength(0);
+			for( int ch; (ch=in.read())!=-1; ) {
+				if( ch==';' ) {
+					if( record.length()>0 )
+						return record.toString();
+				}
+				else
+					record.append((char)ch);
+			}
+			return (record.length()>0) ?record.toString() :null;
+		}
+	}
+
+	/**
+	   Records separated by blank lines or starting with a
+	   <code>RES</code> line. A <code>RES</code> line following the
+	   header of a repeating unit (<code>REPn</code>), of an uncertain
+	   subtree (<code>UNDn</code>) or of an alternative
+	   (<code>ALTn</code>, <code>ALTSUBGRAPHn</code>) belongs to the
+	   nested unit of the current record.
+	 */
+	private class CondensedSplitter implements RecordSplitter {
+
+		private StringBuilder record = new StringBuilder();
+		private String next_line = null;
+
+		public String nextRecord() throws IOException {
+			record.setLength(0);
+			boolean nested = false;
+			String line = next_line;
+			next_line = null;
+			if( line==null )
+				line = in.readLine();
+
+			for( ; line!=null; line=in.readLine() ) {
+				String trimmed = line.trim();
+				if( trimmed.length()==0 ) {
+					if( record.length()>0 )
+						return record.toString();
+				}
+				else if( trimmed.startsWith("RES") && record.length()>0 && !nested ) {
+					next_line = line;
+					return record.toString();
+				}
+				else {
+					// a unit header opens the next RES block only
+					if( isUnitHeader(trimmed) )
+						nested = true;
+					else if( trimmed.startsWith("RES") )
+						nested = false;
+					if( record.length()>0 )
+						record.append('\n');
+					record.append(line);
+				}
+			}
+			return (record.length()>0) ?record.toString() :null;
+		}
+
+		private boolean isUnitHeader(String line) {
+			int i = 0;
+			if( line.startsWith("ALTSUBGRAPH") )
+				i = 11;
+			else if( line.startsWith("REP") || line.startsWith("UND") || line.startsWith("ALT") )
+				i = 3;
+			else
+				return false;
+			return (i<line.length() && Character.isDigit(line.charAt(i)));
+		}
+	}
+
+	/**
+	   Records ending with the closing tag of the <code>sugar</code>
+	   element.
+	 */
+	private class XMLSplitter implements RecordSplitter {
+
+		private StringBuilder record = new StringBuilder();
+
+		public String nextRecord() throws IOException {
+			record.setLength(0);
+			for( int ch; (ch=in.read())!=-1; ) {
+				// the XML declaration must be at the start of the record
+				if( record.length()==0 && Character.isWhitespace(ch) )
+					continue;
+
+				record.append((char)ch);
+				if( ch=='>' && endsWith(record,SUGAR_END) )
+					return record.toString();
+			}
+			return (record.length()>0) ?record.toString() :null;
+		}
+	}
+
+	/**
+	   The whole stream as a single record.
+	 */
+	private class WholeSplitter implements RecordSplitter {
+
+		private boolean done = false;
+
+		public String nextRecord() throws IOException {
+			if( done )
+				return null;
+			done = true;
+
+			StringBuilder record = new StringBuilder();
+			char[] buffer = new char[8192];
+			for( int n; (n=in.read(buffer))!=-1; )
+				record.append(buffer,0,n);
+			return record.toString();
+		}
+	}
+
+	static private boolean endsWith(StringBuilder sb, String suffix) {
+		int offset = sb.length()-suffix.length();
+		if( offset<0 )
+			return false;
+		for( int i=0; i<suffix.length(); i++ ) {
+			if( sb.charAt(offset+i)!=suffix.charAt(i) )
+				return false;
+		}
+		return true;
+	}
+
+	static class DaemonThreadFactory implements ThreadFactory {
+
+		private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			Thread t = factory.newThread(r);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
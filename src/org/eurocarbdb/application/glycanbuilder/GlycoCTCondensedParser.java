@@ -43,6 +43,7 @@ public class GlycoCTCondensedParser extends GlycoCTParser {
 
     private SugarImporterGlycoCTCondensed cond_importer = null;
     private SugarExporterGlycoCTCondensed cond_exporter = null;
+    private GlycoCTCondensedWriter cond_writer = null;
   
     /**
        Default constructor. Initialize the MolecularFramework objects.
@@ -53,6 +54,7 @@ public class GlycoCTCondensedParser extends GlycoCTParser {
     try {
         cond_importer = new SugarImporterGlycoCTCondensed(); 
         cond_exporter = new SugarExporterGlycoCTCondensed();    
+        cond_writer = new GlycoCTCondensedWriter(this);
     }
     catch( Exception e ) {        
         LogUtils.report(e);
@@ -87,10 +89,17 @@ public class GlycoCTCondensedParser extends GlycoCTParser {
     
     /**
        Return a GlycoCT condensed representation of a glycan
-       structure. Equivalent to a call to {@link #writeGlycan}
+       structure. Equivalent to a call to {@link #writeGlycan}. The
+       string is written directly from the residues when possible,
+       otherwise the structure is converted to a MolecularFramework
+       sugar first.
      */
 
     public String toGlycoCTCondensed(Glycan structure) {
+    String ret = (cond_writer!=null) ?cond_writer.write(structure) :null;
+    if( ret!=null )
+        return ret;
+
     try {                
         cond_exporter.start(toSugar(structure));
         return cond_exporter.getHashCode();
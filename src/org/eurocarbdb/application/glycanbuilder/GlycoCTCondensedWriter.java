@@ -0,0 +1,476 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.eurocarbdb.resourcesdb.GlycanNamescheme;
+import org.eurocarbdb.resourcesdb.io.SubstituentExchangeObject;
+import org.eurocarbdb.MolecularFramework.sugar.GlycoEdge;
+import org.eurocarbdb.MolecularFramework.sugar.GlycoNode;
+import org.eurocarbdb.MolecularFramework.sugar.LinkageType;
+import org.eurocarbdb.MolecularFramework.sugar.Monosaccharide;
+import org.eurocarbdb.MolecularFramework.sugar.Substituent;
+import org.eurocarbdb.MolecularFramework.sugar.Sugar;
+import org.eurocarbdb.MolecularFramework.sugar.UnvalidatedGlycoNode;
+import org.eurocarbdb.MolecularFramework.io.namespace.GlycoVisitorToGlycoCT;
+
+/**
+   Write glycan structures in the GlycoCT condensed format directly
+   from the residue tree, without creating the MolecularFramework
+   sugar. The GlycoCT names and the built-in substituents of each
+   residue type are obtained from ResourcesDB the first time the type
+   is used and then cached for all the writers. The residues are
+   numbered in the canonical order of the MolecularFramework exporter
+   so that the two paths produce identical strings. Structures with
+   repeating units, antennae of unknown position or substituents that
+   the MolecularFramework would fuse are not handled and must be
+   written with the MolecularFramework exporter.
+
+   @see GlycoCTCondensedParser#toGlycoCTCondensed
+ */
+
+class GlycoCTCondensedWriter {
+
+	private static final Template UNSUPPORTED = new Template(null,false);
+
+	private static final ConcurrentHashMap<String,Template> templates = new ConcurrentHashMap<String,Template>();
+
+	private final GlycoCTParser parser;
+
+	/**
+	   Create a new writer using the ResourcesDB converter of a parser
+	   to translate the residue types not yet in cache.
+	 */
+	public GlycoCTCondensedWriter(GlycoCTParser _parser) {
+		parser = _parser;
+	}
+
+	/**
+	   Return the GlycoCT condensed representation of a structure, or
+	   <code>null</code> if the structure cannot be written by this
+	   class.
+	 */
+	public String write(Glycan structure) {
+		if( structure==null || structure.isFragment() || structure.getRoot()==null )
+			return null;
+		if( structure.getBracket()!=null && structure.getBracket().hasChildren() )
+			return null;
+
+		try {
+			Residue root = structure.getRoot();
+			Node node;
+			if( root.isSaccharide() )
+				node = createNode(root,false);
+			else if( root.firstChild()!=null )
+				node = createNode(root.firstChild(),root.getTypeName().equals("redEnd"));
+			else
+				return null;
+			return (node!=null) ?node.getCode() :null;
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+
+	//----------------
+	// residues
+
+	private Node createNode(Residue current, boolean alditol) throws Exception {
+		if( current.isStartRepetition() || current.isEndRepetition() )
+			return null;
+
+		Template template = getTemplate(parser.getIupacName(current,alditol));
+		if( template==UNSUPPORTED )
+			return null;
+		if( !template.monosaccharide && current.hasChildren() )
+			return null;
+
+		// built-in substituents precede the children
+		Node ret = new Node(template.name,template.monosaccharide,template);
+		for( Template.Substitution s : template.substitutions )
+			ret.children.add(new Edge(new Node(s.name,false,null),s.links));
+
+		for( Linkage link : current.getChildrenLinkages() ) {
+			Node child = createNode(link.getChildResidue(),false);
+			if( child==null )
+				return null;
+
+			Vector<Bond> bonds = link.getBonds();
+			Link[] links = new Link[bonds.size()];
+			for( int i=0; i<bonds.size(); i++ ) {
+				Bond b = bonds.get(i);
+				char[] p_poss = b.getParentPositions();
+				int[] parents = new int[p_poss.length];
+				for( int l=0; l<p_poss.length; l++ )
+					parents[l] = GlycoCTParser.toIntPosition(p_poss[l]);
+				int[] children = new int[] { GlycoCTParser.toIntPosition(b.getChildPosition()) };
+
+				if( child.monosaccharide )
+					links[i] = new Link(LinkageType.H_AT_OH.getType(),parents,children,LinkageType.DEOXY.getType());
+				else {
+					char type = child.template.getLinkageType(i);
+					if( type==0 )
+						return null;
+					links[i] = new Link(type,parents,children,LinkageType.NONMONOSACCHARID.getType());
+				}
+			}
+			ret.children.add(new Edge(child,sort(links)));
+		}
+
+		if( mayFuse(ret) )
+			return null;
+		Collections.sort(ret.children,EDGE_ORDER);
+		ret.init();
+		return ret;
+	}
+
+	/**
+	   Return <code>true</code> if two substituents are attached to the
+	   same position and could be merged in a single one by the
+	   MolecularFramework.
+	 */
+	static private boolean mayFuse(Node node) {
+		HashSet<Integer> positions = new HashSet<Integer>();
+		for( Edge e : node.children ) {
+			if( e.child.monosaccharide )
+				continue;
+
+			HashSet<Integer> edge_positions = new HashSet<Integer>();
+			for( Link l : e.links ) {
+				if( l.parents.length==0 )
+					return true;
+				for( int p : l.parents )
+					edge_positions.add(p);
+			}
+			for( Integer p : edge_positions ) {
+				if( !positions.add(p) )
+					return true;
+			}
+		}
+		return false;
+	}
+
+	//----------------
+	// templates
+
+	private Template getTemplate(String iupac_name) {
+		Template ret = templates.get(iupac_name);
+		if( ret==null ) {
+			ret = createTemplate(iupac_name);
+			templates.putIfAbsent(iupac_name,ret);
+		}
+		return ret;
+	}
+
+	/**
+	   Translate a single residue with the same procedure used for the
+	   whole structure by {@link GlycoCTParser#toSugar}.
+	 */
+	private Template createTemplate(String iupac_name) {
+		try {
+			UnvalidatedGlycoNode node = new UnvalidatedGlycoNode();
+			node.setName(iupac_name);
+			Sugar sugar = new Sugar();
+			sugar.addNode(node);
+
+			GlycoVisitorToGlycoCT visitor = parser.getVisitorExport();
+			visitor.start(sugar);
+			ArrayList<GlycoNode> roots = visitor.getNormalizedSugar().getRootNodes();
+			if( roots.size()!=1 )
+				return UNSUPPORTED;
+
+			GlycoNode nm_node = roots.get(0);
+			if( nm_node instanceof Monosaccharide ) {
+				Template ret = new Template("b:" + ((Monosaccharide)nm_node).getGlycoCTName(),true);
+				for( GlycoEdge nm_edge : nm_node.getChildEdges() ) {
+					if( !(nm_edge.getChild() instanceof Substituent) || nm_edge.getChild().getChildEdges().size()>0 )
+						return UNSUPPORTED;
+
+					ArrayList<org.eurocarbdb.MolecularFramework.sugar.Linkage> nm_links = nm_edge.getGlycosidicLinkages();
+					Link[] links = new Link[nm_links.size()];
+					for( int i=0; i<links.length; i++ )
+						links[i] = new Link(nm_links.get(i));
+					ret.substitutions.add(new Template.Substitution("s:" + ((Substituent)nm_edge.getChild()).getSubstituentType().getName(),sort(links)));
+				}
+				return ret;
+			}
+			if( nm_node instanceof Substituent ) {
+				Template ret = new Template("s:" + ((Substituent)nm_node).getSubstituentType().getName(),false);
+
+				SubstituentExchangeObject data = new SubstituentExchangeObject(GlycanNamescheme.GWB);
+				data.setName(iupac_name);
+				data = parser.getConverter().convertSubstituent(data,GlycanNamescheme.GWB,GlycanNamescheme.GLYCOCT);
+				ret.linkage_types[0] = toLinkageType(data.getLinkagetype1());
+				ret.linkage_types[1] = toLinkageType(data.getLinkagetype2());
+				ret.linkage_types[2] = toLinkageType(data.getLinkagetype3());
+				return ret;
+			}
+			return UNSUPPORTED;
+		}
+		catch(Exception e) {
+			return UNSUPPORTED;
+		}
+	}
+
+	static private char toLinkageType(org.eurocarbdb.resourcesdb.glycoconjugate_derived.LinkageType type) throws Exception {
+		return (type!=null) ?LinkageType.forName(type.getType()).getType() :0;
+	}
+
+	/**
+	   The GlycoCT translation of a residue type.
+	 */
+	static private class Template {
+
+		static class Substitution {
+			final String name;
+			final Link[] links;
+
+			Substitution(String _name, Link[] _links) {
+				name = _name;
+				links = _links;
+			}
+		}
+
+		final String name;
+		final boolean monosaccharide;
+		final ArrayList<Substitution> substitutions = new ArrayList<Substitution>();
+		final char[] linkage_types = new char[3];
+
+		Template(String _name, boolean _monosaccharide) {
+			name = _name;
+			monosaccharide = _monosaccharide;
+		}
+
+		/**
+		   Return the type of the i-th linkage to the parent of a
+		   substituent, 0 if not specified.
+		 */
+		char getLinkageType(int i) {
+			return linkage_types[Math.min(i,2)];
+		}
+	}
+
+	//----------------
+	// GlycoCT graph
+
+	static private class Link {
+		final char parent_type;
+		final int[] parents;
+		final int[] children;
+		final char child_type;
+
+		Link(char _parent_type, int[] _parents, int[] _children, char _child_type) {
+			parent_type = _parent_type;
+			parents = _parents;
+			children = _children;
+			child_type = _child_type;
+			Arrays.sort(parents);
+			Arrays.sort(children);
+		}
+
+		Link(org.eurocarbdb.MolecularFramework.sugar.Linkage nm_link) {
+			this(nm_link.getParentLinkageType().getType(),toArray(nm_link.getParentLinkages()),
+				 toArray(nm_link.getChildLinkages()),nm_link.getChildLinkageType().getType());
+		}
+
+		static int[] toArray(List<Integer> list) {
+			int[] ret = new int[list.size()];
+			for( int i=0; i<ret.length; i++ )
+				ret[i] = list.get(i);
+			return ret;
+		}
+
+		void write(StringBuilder sb, int parent_id, int child_id) {
+			sb.append(parent_id).append(parent_type).append('(');
+			write(sb,parents);
+			sb.append('+');
+			write(sb,children);
+			sb.append(')').append(child_id).append(child_type).append('\n');
+		}
+
+		static void write(StringBuilder sb, int[] positions) {
+			for( int i=0; i<positions.length; i++ ) {
+				if( i>0 )
+					sb.append('|');
+				sb.append(positions[i]);
+			}
+		}
+	}
+
+	static private class Edge {
+		final Node child;
+		final Link[] links;
+
+		Edge(Node _child, Link[] _links) {
+			child = _child;
+			links = _links;
+		}
+	}
+
+	static private class Node {
+		final String name;
+		final boolean monosaccharide;
+		final Template template;
+		final ArrayList<Edge> children = new ArrayList<Edge>();
+
+		int size = 1;
+		int depth = 1;
+		String code = null;
+
+		Node(String _name, boolean _monosaccharide, Template _template) {
+			name = _name;
+			monosaccharide = _monosaccharide;
+			template = _template;
+		}
+
+		void init() {
+			for( Edge e : children ) {
+				size += e.child.size;
+				depth = Math.max(depth,e.child.depth+1);
+			}
+		}
+
+		boolean isTerminal() {
+			for( Edge e : children ) {
+				if( e.child.monosaccharide || !e.child.children.isEmpty() || !monosaccharide )
+					return false;
+			}
+			return true;
+		}
+
+		boolean isBranching() {
+			return children.size()>1;
+		}
+
+		/**
+		   Return the GlycoCT condensed representation of the subtree
+		   rooted at this node, with the residues numbered from 1.
+		 */
+		String getCode() {
+			if( code==null ) {
+				StringBuilder res = new StringBuilder("RES\n");
+				StringBuilder lin = new StringBuilder();
+				write(null,0,res,lin,new int[] { 0, 1 });
+				if( lin.length()>0 )
+					res.append("LIN\n").append(lin);
+				code = res.toString();
+			}
+			return code;
+		}
+
+		private void write(Edge parent_edge, int parent_id, StringBuilder res, StringBuilder lin, int[] counters) {
+			int id = ++counters[0];
+			res.append(id).append(name).append('\n');
+			if( parent_edge!=null ) {
+				for( Link l : parent_edge.links ) {
+					lin.append(counters[1]++).append(':');
+					l.write(lin,parent_id,id);
+				}
+			}
+			for( Edge e : children )
+				e.child.write(e,id,res,lin,counters);
+		}
+	}
+
+	//----------------
+	// canonical order, same as GlycoCTLinkageComparator,
+	// GlycoCTGlycoEdgeComparator and GlycoCTGlycoNodeComparator
+
+	static private Link[] sort(Link[] links) {
+		Collections.sort(Arrays.asList(links),LINK_ORDER);
+		return links;
+	}
+
+	static private int compare(int[] p0, int[] p1) {
+		// lists of different length are in reverse order unless a
+		// position differs
+		if( p0.length!=p1.length ) {
+			for( int i=0; i<Math.min(p0.length,p1.length); i++ ) {
+				if( p0[i]<p1[i] )
+					return 1;
+				if( p0[i]>p1[i] )
+					return -1;
+			}
+			return (p0.length>p1.length) ?-1 :1;
+		}
+		for( int i=0; i<p0.length; i++ ) {
+			if( p0[i]<p1[i] )
+				return -1;
+			if( p0[i]>p1[i] )
+				return 1;
+		}
+		return 0;
+	}
+
+	private static final Comparator<Link> LINK_ORDER = new Comparator<Link>() {
+		public int compare(Link l0, Link l1) {
+			int ret = GlycoCTCondensedWriter.compare(l0.parents,l1.parents);
+			if( ret!=0 )
+				return ret;
+			ret = GlycoCTCondensedWriter.compare(l0.children,l1.children);
+			if( ret!=0 )
+				return ret;
+
+			// only adjacent types are ordered
+			ret = l0.parent_type-l1.parent_type;
+			if( ret==1 || ret==-1 )
+				return ret;
+			ret = l0.child_type-l1.child_type;
+			if( ret==1 || ret==-1 )
+				return ret;
+			return 0;
+		}
+	};
+
+	private static final Comparator<Node> NODE_ORDER = new Comparator<Node>() {
+		public int compare(Node n0, Node n1) {
+			if( n0.size!=n1.size )
+				return (n0.size<n1.size) ?-1 :1;
+			if( n0.depth!=n1.depth )
+				return (n0.depth<n1.depth) ?-1 :1;
+			boolean t0 = n0.isTerminal(), t1 = n1.isTerminal();
+			if( t0!=t1 )
+				return (t1) ?-1 :1;
+			boolean b0 = n0.isBranching(), b1 = n1.isBranching();
+			if( b0!=b1 )
+				return (b1) ?-1 :1;
+			return n1.getCode().compareTo(n0.getCode());
+		}
+	};
+
+	private static final Comparator<Edge> EDGE_ORDER = new Comparator<Edge>() {
+		public int compare(Edge e0, Edge e1) {
+			if( e0.links.length!=e1.links.length )
+				return (e0.links.length<e1.links.length) ?-1 :1;
+			for( int i=0; i<e0.links.length; i++ ) {
+				int ret = LINK_ORDER.compare(e0.links[i],e1.links[i]);
+				if( ret!=0 )
+					return ret;
+			}
+			if( e0.child==e1.child )
+				return 0;
+			return NODE_ORDER.compare(e0.child,e1.child);
+		}
+	};
+}
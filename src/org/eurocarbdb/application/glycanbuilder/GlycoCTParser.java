@@ -87,6 +87,14 @@ public class GlycoCTParser implements GlycanParser {
 		tolerate_unknown_residues = f;
 	}
 
+	/**
+	 * Return <code>true</code> if residues of a type that is not specified in
+	 * the dictionary are tolerated.
+	 */
+	public boolean isTolerateUnknown() {
+		return tolerate_unknown_residues;
+	}
+
 	public String writeGlycan(Glycan structure) {
 		return toGlycoCT(structure);
 	}
@@ -685,7 +693,7 @@ public class GlycoCTParser implements GlycanParser {
 			return (char) (pos + '0');
 	}
 
-	static private int toIntPosition(char pos) {
+	static int toIntPosition(char pos) {
 		if (pos == 'N')
 			return 2;
 		if (pos == '?' || pos == 'N')
@@ -0,0 +1,179 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import org.eurocarbdb.MolecularFramework.sugar.Sugar;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of initialized {@link GlycoCTParser} and
+ * {@link GlycoCTCondensedParser} objects. Creating a parser initializes the
+ * ResourceDB monosaccharide converter and the MolecularFramework importers and
+ * exporters, which is much slower than converting a single structure. The
+ * parsers are not thread safe: each one is given to a single caller by
+ * {@link #acquire} and returned to the pool by {@link #release} once the
+ * caller is done with it. The static helpers of this class can be called
+ * concurrently by several threads.
+ *
+ * @see Glycan#toGlycoCT
+ * @see Glycan#fromGlycoCT
+ */
+
+public final class GlycoCTParserPool {
+
+	/** The maximum number of idle parsers of each kind kept by the pool. */
+	public static final int MAX_IDLE = 16;
+
+	private static final Queue<GlycoCTParser> parsers = new ConcurrentLinkedQueue<GlycoCTParser>();
+	private static final Queue<GlycoCTParser> tolerant_parsers = new ConcurrentLinkedQueue<GlycoCTParser>();
+	private static final Queue<GlycoCTCondensedParser> condensed_parsers = new ConcurrentLinkedQueue<GlycoCTCondensedParser>();
+	private static final Queue<GlycoCTCondensedParser> tolerant_condensed_parsers = new ConcurrentLinkedQueue<GlycoCTCondensedParser>();
+
+	private GlycoCTParserPool() {
+	}
+
+	/**
+	 * Return a GlycoCT parser from the pool, or a new one if the pool is
+	 * empty.
+	 *
+	 * @param tolerate
+	 *            if <code>true</code> tolerate residues of a type that is not
+	 *            specified in the dictionary
+	 */
+	public static GlycoCTParser acquire(boolean tolerate) {
+		GlycoCTParser ret = (tolerate) ? tolerant_parsers.poll() : parsers.poll();
+		return (ret != null) ? ret : new GlycoCTParser(tolerate);
+	}
+
+	/**
+	 * Return a GlycoCT condensed parser from the pool, or a new one if the pool
+	 * is empty.
+	 *
+	 * @param tolerate
+	 *            if <code>true</code> tolerate residues of a type that is not
+	 *            specified in the dictionary
+	 */
+	public static GlycoCTCondensedParser acquireCondensed(boolean tolerate) {
+		GlycoCTCondensedParser ret = (tolerate) ? tolerant_condensed_parsers.poll()
+				: condensed_parsers.poll();
+		return (ret != null) ? ret : new GlycoCTCondensedParser(tolerate);
+	}
+
+	/**
+	 * Return a parser to the pool. The parser must not be used by the caller
+	 * after this call. Parsers of other classes and parsers exceeding
+	 * {@link #MAX_IDLE} are discarded.
+	 */
+	public static void release(GlycoCTParser parser) {
+		if (parser == null)
+			return;
+
+		if (parser.getClass() == GlycoCTParser.class)
+			offer((parser.isTolerateUnknown()) ? tolerant_parsers : parsers,
+					parser);
+		else if (parser.getClass() == GlycoCTCondensedParser.class)
+			offer((parser.isTolerateUnknown()) ? tolerant_condensed_parsers
+					: condensed_parsers, (GlycoCTCondensedParser) parser);
+	}
+
+	private static <T> void offer(Queue<T> queue, T parser) {
+		// the size is computed by scanning the queue, which is short
+		if (queue.size() < MAX_IDLE)
+			queue.offer(parser);
+	}
+
+	// --- helpers
+	// parsers that failed are not returned to the pool, as their state is
+	// unknown
+
+	/**
+	 * Return a GlycoCT representation of a glycan structure.
+	 *
+	 * @see GlycoCTParser#toGlycoCT
+	 */
+	public static String toGlycoCT(Glycan structure) {
+		GlycoCTParser parser = acquire(false);
+		String ret = parser.toGlycoCT(structure);
+		if (ret.length() > 0)
+			release(parser);
+		return ret;
+	}
+
+	/**
+	 * Return a GlycoCT condensed representation of a glycan structure.
+	 *
+	 * @see GlycoCTCondensedParser#toGlycoCTCondensed
+	 */
+	public static String toGlycoCTCondensed(Glycan structure) {
+		GlycoCTCondensedParser parser = acquireCondensed(false);
+		String ret = parser.toGlycoCTCondensed(structure);
+		if (ret.length() > 0)
+			release(parser);
+		return ret;
+	}
+
+	/**
+	 * Return a representation of a glycan structure as a MolecularFramework
+	 * object.
+	 *
+	 * @throws Exception
+	 *             if the conversion cannot be made
+	 * @see GlycoCTParser#toSugar
+	 */
+	public static Sugar toSugar(Glycan structure) throws Exception {
+		GlycoCTParser parser = acquire(false);
+		Sugar ret = parser.toSugar(structure);
+		release(parser);
+		return ret;
+	}
+
+	/**
+	 * Create a glycan structure from its GlycoCT representation.
+	 *
+	 * @throws Exception
+	 *             if the string cannot be parsed
+	 * @see GlycoCTParser#fromGlycoCT
+	 */
+	public static Glycan fromGlycoCT(String str, MassOptions default_mass_opt,
+			boolean tolerate) throws Exception {
+		GlycoCTParser parser = acquire(tolerate);
+		Glycan ret = parser.fromGlycoCT(str, default_mass_opt);
+		release(parser);
+		return ret;
+	}
+
+	/**
+	 * Create a glycan structure from its GlycoCT condensed representation.
+	 *
+	 * @throws Exception
+	 *             if the string cannot be parsed
+	 * @see GlycoCTCondensedParser#fromGlycoCTCondensed
+	 */
+	public static Glycan fromGlycoCTCondensed(String str,
+			MassOptions default_mass_opt, boolean tolerate) throws Exception {
+		GlycoCTCondensedParser parser = acquireCondensed(tolerate);
+		Glycan ret = parser.fromGlycoCTCondensed(str, default_mass_opt);
+		release(parser);
+		return ret;
+	}
+}
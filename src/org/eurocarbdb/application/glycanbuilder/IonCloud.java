@@ -48,6 +48,7 @@ public class IonCloud {
 	protected int ionsNum;
 	protected int ionsRelCount;
 	protected double ionsTotalMass;
+	protected int version = 0;
 
 	/**
 	 * Empty constructor
@@ -176,6 +177,7 @@ public class IonCloud {
 	 * Reset the object to contain no charges
 	 */
 	public void clear() {
+		version++;
 		ions.clear();
 		ionsNum = 0;
 		ionsRelCount = 0;
@@ -283,6 +285,7 @@ public class IonCloud {
 
 		if (quantity == 0)
 			return;
+		version++;
 
 		// add to list
 		if (ions.containsKey(charge_name))
@@ -428,6 +431,15 @@ public class IonCloud {
 
 	// member access
 
+	/**
+	 * Return a counter that is incremented at each modification of this
+	 * object. Used to invalidate the mass-to-charge ratios cached by the
+	 * {@link Glycan} objects.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	/**
 	 * Return the total number of ions
 	 */
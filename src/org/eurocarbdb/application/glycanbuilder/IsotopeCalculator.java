@@ -0,0 +1,330 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.*;
+
+/**
+   Compute the isotopic envelopes of molecules using the isotopes
+   loaded by {@link MassUtils}. The distribution of each element is
+   raised to the number of its atoms by repeated squaring, and the
+   distributions of the elements are then convolved; the isotopic
+   variants with the same nominal mass are grouped in a single peak
+   placed at their average mass. The peaks below a minimum relative
+   intensity are discarded during the computation. The envelopes are
+   stored in a cache indexed by the chemical formula, so that the
+   fragments with the same composition are computed only once. The
+   same calculator can be shared by several threads.
+
+   @see IsotopeEnvelope
+ */
+
+public class IsotopeCalculator {
+
+	/** The minimum relative intensity of the peaks used by default. */
+	public static final double DEFAULT_MIN_INTENSITY = 0.001;
+
+	/** The number of envelopes stored in the cache by default. */
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	// the peaks discarded during the computation are much smaller
+	// than the ones discarded from the final envelope
+	private static final double PRUNING_FACTOR = 0.001;
+
+	private final double min_intensity;
+	private final int cache_size;
+	private LinkedHashMap<String,IsotopeEnvelope> cache;
+	private long no_hits = 0;
+	private long no_misses = 0;
+
+	/**
+	   Create a new calculator with the default settings.
+	 */
+	public IsotopeCalculator() {
+		this(DEFAULT_MIN_INTENSITY,DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	   Create a new calculator.
+	   @param _min_intensity the minimum intensity of the peaks
+	   relative to the most abundant one
+	   @param _cache_size the maximum number of envelopes stored in
+	   the cache, 0 to disable the cache
+	 */
+	public IsotopeCalculator(double _min_intensity, int _cache_size) {
+		if( _min_intensity<0. || _min_intensity>=1. )
+			throw new IllegalArgumentException("Invalid minimum intensity: " + _min_intensity);
+		if( _cache_size<0 )
+			throw new IllegalArgumentException("Invalid cache size: " + _cache_size);
+
+		min_intensity = _min_intensity;
+		cache_size = _cache_size;
+		cache = new LinkedHashMap<String,IsotopeEnvelope>(16,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String,IsotopeEnvelope> eldest) {
+				return size()>cache_size;
+			}
+		};
+	}
+
+	/**
+	   Return the minimum intensity of the peaks relative to the most
+	   abundant one.
+	 */
+	public double getMinIntensity() {
+		return min_intensity;
+	}
+
+	/**
+	   Return the number of envelopes found in the cache.
+	 */
+	public synchronized long getNoHits() {
+		return no_hits;
+	}
+
+	/**
+	   Return the number of envelopes computed because they were not
+	   in the cache.
+	 */
+	public synchronized long getNoMisses() {
+		return no_misses;
+	}
+
+	/**
+	   Remove all envelopes from the cache.
+	 */
+	public synchronized void clearCache() {
+		cache.clear();
+	}
+
+	//----------------
+	// computation
+
+	/**
+	   Compute the envelope of a structure with the charges and
+	   neutral exchanges specified in its mass settings.
+	   @throws Exception if the chemical formula of the structure
+	   cannot be computed
+	   @see Glycan#computeIon
+	 */
+	public IsotopeEnvelope computeEnvelope(Glycan structure) throws Exception {
+		Molecule ion = structure.computeIon();
+		return computeEnvelope(ion,ion.getNoCharges());
+	}
+
+	/**
+	   Compute the envelopes of all fragments in a collection, in the
+	   same order of the fragments.
+	   @throws Exception if the chemical formula of a fragment cannot
+	   be computed
+	 */
+	public List<IsotopeEnvelope> computeEnvelopes(FragmentCollection fragments) throws Exception {
+		List<IsotopeEnvelope> ret = new ArrayList<IsotopeEnvelope>(fragments.size());
+		for( FragmentEntry fe : fragments.getFragments() )
+			ret.add(computeEnvelope(fe.getFragment()));
+		return ret;
+	}
+
+	/**
+	   Compute the envelope of a molecule.
+	   @param formula the chemical formula of the molecule, including
+	   its charges
+	   @param charge the number of charges by which the masses are
+	   divided, 0 to return the masses
+	   @throws Exception if the formula contains a negative number of
+	   atoms
+	 */
+	public IsotopeEnvelope computeEnvelope(Molecule formula, int charge) throws Exception {
+		String key = getKey(formula,charge);
+		synchronized( this ) {
+			IsotopeEnvelope ret = cache.get(key);
+			if( ret!=null ) {
+				no_hits++;
+				return ret;
+			}
+			no_misses++;
+		}
+
+		IsotopeEnvelope ret = compute(formula,charge);
+		if( cache_size>0 ) {
+			synchronized( this ) {
+				cache.put(key,ret);
+			}
+		}
+		return ret;
+	}
+
+	private static String getKey(Molecule formula, int charge) {
+		StringBuilder sb = new StringBuilder();
+		for( Map.Entry<Atom,Integer> e : formula.getAtoms() ) {
+			if( e.getValue()!=0 ) {
+				sb.append(e.getKey().getSymbol());
+				sb.append(e.getValue());
+			}
+		}
+		sb.append('|');
+		sb.append(formula.getNoCharges());
+		sb.append('|');
+		sb.append(charge);
+		return sb.toString();
+	}
+
+	private IsotopeEnvelope compute(Molecule formula, int charge) throws Exception {
+		double threshold = min_intensity*PRUNING_FACTOR;
+
+		Distribution dist = null;
+		for( Map.Entry<Atom,Integer> e : formula.getAtoms() ) {
+			int count = e.getValue();
+			if( count<0 )
+				throw new Exception("Invalid number of atoms for " + e.getKey().getSymbol() + ": " + count);
+			if( count>0 ) {
+				Distribution d = power(Distribution.forAtom(e.getKey()),count,threshold);
+				dist = (dist==null) ?d :dist.convolve(d,threshold);
+			}
+		}
+		if( dist==null )
+			return new IsotopeEnvelope(new double[0],new double[0],charge);
+
+		// the electrons lost or gained by the charges
+		double electrons = -formula.getNoCharges()*MassUtils.electron.getMainMass();
+		double max = 0.;
+		for( double p : dist.probabilities )
+			max = Math.max(max,p);
+
+		int no_peaks = 0;
+		for( double p : dist.probabilities ) {
+			if( p>=max*min_intensity )
+				no_peaks++;
+		}
+
+		double[] mz_ratios = new double[no_peaks];
+		double[] intensities = new double[no_peaks];
+		for( int i=0, j=0; i<dist.probabilities.length; i++ ) {
+			double p = dist.probabilities[i];
+			if( p>=max*min_intensity ) {
+				double mass = dist.masses[i]/p + electrons;
+				mz_ratios[j] = (charge!=0) ?mass/Math.abs(charge) :mass;
+				intensities[j] = p/max;
+				j++;
+			}
+		}
+		return new IsotopeEnvelope(mz_ratios,intensities,charge);
+	}
+
+	private static Distribution power(Distribution d, int n, double threshold) {
+		Distribution ret = null;
+		for( Distribution base=d; ; ) {
+			if( (n&1)!=0 )
+				ret = (ret==null) ?base :ret.convolve(base,threshold);
+			n >>= 1;
+			if( n==0 )
+				return ret;
+			base = base.convolve(base,threshold);
+		}
+	}
+
+	/**
+	   The probabilities of a molecule having each nominal mass,
+	   together with the sum of the masses of the variants weighted
+	   by their probability.
+	 */
+	private static class Distribution {
+
+		public final double[] probabilities;
+		public final double[] masses;
+
+		public Distribution(double[] _probabilities, double[] _masses) {
+			probabilities = _probabilities;
+			masses = _masses;
+		}
+
+		public static Distribution forAtom(Atom atom) {
+			Vector<Isotope> isotopes = MassUtils.getAllIsotopes(atom);
+			if( isotopes==null || isotopes.isEmpty() )
+				return new Distribution(new double[] { 1. },new double[] { atom.getMainMass() });
+
+			// the main isotope is the first one, peaks lighter than it
+			// are placed before
+			int min = 0;
+			int max = 0;
+			int main_number = isotopes.get(0).getAtomicNumber();
+			double total = 0.;
+			for( Isotope i : isotopes ) {
+				min = Math.min(min,i.getAtomicNumber()-main_number);
+				max = Math.max(max,i.getAtomicNumber()-main_number);
+				total += i.getAbundance();
+			}
+
+			double[] probabilities = new double[max-min+1];
+			double[] masses = new double[max-min+1];
+			for( Isotope i : isotopes ) {
+				int ind = i.getAtomicNumber()-main_number-min;
+				double p = i.getAbundance()/total;
+				probabilities[ind] += p;
+				masses[ind] += p*i.getMass();
+			}
+			return new Distribution(probabilities,masses);
+		}
+
+		/**
+		   Return the distribution of a molecule made by the union of
+		   two molecules. The peaks at both ends with a probability
+		   smaller than <code>threshold</code> times the highest one
+		   are discarded.
+		 */
+		public Distribution convolve(Distribution other, double threshold) {
+			int size = probabilities.length + other.probabilities.length - 1;
+			double[] p = new double[size];
+			double[] m = new double[size];
+			for( int i=0; i<probabilities.length; i++ ) {
+				double pi = probabilities[i];
+				if( pi==0. )
+					continue;
+				double mi = masses[i];
+				for( int j=0; j<other.probabilities.length; j++ ) {
+					double pj = other.probabilities[j];
+					p[i+j] += pi*pj;
+					m[i+j] += mi*pj + pi*other.masses[j];
+				}
+			}
+
+			// prune the tails
+			double max = 0.;
+			for( double v : p )
+				max = Math.max(max,v);
+			int first = 0;
+			while( first<size-1 && p[first]<max*threshold )
+				first++;
+			int last = size-1;
+			while( last>first && p[last]<max*threshold )
+				last--;
+			if( first==0 && last==size-1 )
+				return new Distribution(p,m);
+
+			double[] pp = new double[last-first+1];
+			double[] mm = new double[last-first+1];
+			System.arraycopy(p,first,pp,0,pp.length);
+			System.arraycopy(m,first,mm,0,mm.length);
+			return new Distribution(pp,mm);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+/**
+   The centroided isotopic envelope of a molecule: the list of peaks
+   obtained by grouping the isotopic variants with the same nominal
+   mass, ordered by increasing mass-to-charge ratio. The intensities
+   are relative to the most abundant peak, which has intensity 1.
+   Objects of this class cannot be modified.
+
+   @see IsotopeCalculator
+ */
+
+public class IsotopeEnvelope {
+
+	private final double[] mz_ratios;
+	private final double[] intensities;
+	private final int charge;
+
+	/**
+	   Create a new envelope from the list of peaks. The arrays are
+	   not copied.
+	 */
+	IsotopeEnvelope(double[] _mz_ratios, double[] _intensities, int _charge) {
+		mz_ratios = _mz_ratios;
+		intensities = _intensities;
+		charge = _charge;
+	}
+
+	/**
+	   Return the number of peaks.
+	 */
+	public int size() {
+		return mz_ratios.length;
+	}
+
+	/**
+	   Return the number of charges used to compute the
+	   mass-to-charge ratios, 0 if the ratios are masses.
+	 */
+	public int getCharge() {
+		return charge;
+	}
+
+	/**
+	   Return the mass-to-charge ratio of the peak at position
+	   <code>ind</code>.
+	 */
+	public double getMZ(int ind) {
+		return mz_ratios[ind];
+	}
+
+	/**
+	   Return the relative intensity of the peak at position
+	   <code>ind</code>.
+	 */
+	public double getIntensity(int ind) {
+		return intensities[ind];
+	}
+
+	/**
+	   Return a copy of the mass-to-charge ratios of all peaks.
+	 */
+	public double[] getMZs() {
+		return mz_ratios.clone();
+	}
+
+	/**
+	   Return a copy of the relative intensities of all peaks.
+	 */
+	public double[] getIntensities() {
+		return intensities.clone();
+	}
+
+	/**
+	   Return the position of the most abundant peak, or -1 if the
+	   envelope is empty.
+	 */
+	public int getMostAbundantPeak() {
+		int ret = -1;
+		for( int i=0; i<intensities.length; i++ ) {
+			if( ret==-1 || intensities[i]>intensities[ret] )
+				ret = i;
+		}
+		return ret;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for( int i=0; i<mz_ratios.length; i++ ) {
+			if( i>0 )
+				sb.append(' ');
+			sb.append(mz_ratios[i]);
+			sb.append(':');
+			sb.append(intensities[i]);
+		}
+		return sb.toString();
+	}
+}
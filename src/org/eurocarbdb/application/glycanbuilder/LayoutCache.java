@@ -0,0 +1,226 @@
+/*
+ *   EuroCarbDB, a framework for carbohydrate bioinformatics
+ *
+ *   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+ *   indicated by the @author tags or express copyright attribution
+ *   statements applied by the authors.
+ *
+ *   This copyrighted material is made available to anyone wishing to use, modify,
+ *   copy, or redistribute it subject to the terms and conditions of the GNU
+ *   Lesser General Public License, as published by the Free Software Foundation.
+ *   A copy of this license accompanies this distribution in the file LICENSE.txt.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ *   for more details.
+ *
+ *   Last commit: $Rev$ by $Author$ on $Date::             $
+ */
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.awt.Rectangle;
+import java.util.*;
+
+/**
+   Keep the layout of the structures displayed in a canvas between
+   two repaints. The layout of each structure is stored together with
+   the version of its residues: the bounding boxes of a structure
+   that has not been modified are not recomputed but only moved to
+   the new position of the structure, so that editing a residue does
+   not require to lay out again all the other structures of the
+   document. The layouts are forgotten when the graphic options or
+   the managers change. Objects of this class are not thread safe.
+
+   @see AbstractGlycanRenderer#computeBoundingBoxes(Collection,boolean,boolean,PositionManager,BBoxManager,LayoutCache)
+   @see Residue#getVersion
+ */
+
+public class LayoutCache {
+
+	private Object[] settings = null;
+	private IdentityHashMap<Glycan,Entry> entries = new IdentityHashMap<Glycan,Entry>();
+	private PositionManager scratchPosManager = new PositionManager();
+	private BBoxManager scratchBBoxManager = new BBoxManager();
+
+	/**
+	   Create an empty cache.
+	 */
+	public LayoutCache() {
+	}
+
+	/**
+	   Return the number of structures whose layout is stored.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	   Forget all the layouts. The next layout will recompute all the
+	   structures.
+	 */
+	public void clear() {
+		settings = null;
+		entries.clear();
+	}
+
+	/**
+	   Return <code>true</code> if the stored layouts have been
+	   computed with the given settings, otherwise forget them and
+	   store the new settings.
+	 */
+	boolean checkSettings(Object[] _settings) {
+		if( settings!=null && Arrays.equals(settings,_settings) )
+			return true;
+
+		settings = _settings;
+		entries.clear();
+		return false;
+	}
+
+	/**
+	   Remove from the managers the layouts of the structures that
+	   have been modified or that are not in the collection anymore.
+	   All the stale layouts must be removed before computing the new
+	   ones, as residues can be moved from one structure to another.
+	 */
+	void removeInvalid(Collection<Glycan> structures, PositionManager posManager, BBoxManager bboxManager) {
+		if( entries.isEmpty() )
+			return;
+
+		IdentityHashMap<Glycan,Glycan> current = new IdentityHashMap<Glycan,Glycan>();
+		for( Glycan structure : structures )
+			current.put(structure,structure);
+
+		for( Iterator<Entry> i=entries.values().iterator(); i.hasNext(); ) {
+			Entry e = i.next();
+			if( current.containsKey(e.structure) && e.isValid() )
+				continue;
+
+			for( Residue r : e.residues ) {
+				posManager.remove(r);
+				bboxManager.remove(r);
+			}
+			i.remove();
+		}
+	}
+
+	/**
+	   Move the stored layout of a structure so that its top left
+	   corner is at the given position.
+	   @return the bounding box of the structure, or <code>null</code>
+	   if its layout is not stored
+	 */
+	Rectangle place(Glycan structure, int left, int top, BBoxManager bboxManager) {
+		Entry e = entries.get(structure);
+		if( e==null )
+			return null;
+
+		int dx = left-e.bbox.x;
+		int dy = top-e.bbox.y;
+		if( dx!=0 || dy!=0 ) {
+			bboxManager.translate(dx,dy,e.shown_root);
+			bboxManager.translate(dx,dy,e.bracket);
+			e.bbox.translate(dx,dy);
+		}
+		return new Rectangle(e.bbox);
+	}
+
+	/**
+	   Compute the layout of a structure whose top left corner is at
+	   the given position and store it. The structure is laid out in
+	   separate managers and the result is copied in the given ones,
+	   so that all the residues added by the renderer are known,
+	   including the temporary attachment points of the antennae.
+	   @return the bounding box of the structure without the mass
+	   text
+	 */
+	Rectangle layout(AbstractGlycanRenderer renderer, Glycan structure, int left, int top, boolean show_redend,
+			 PositionManager posManager, BBoxManager bboxManager) {
+		if( structure==null )
+			return new Rectangle(left,top,0,0);
+
+		Rectangle bbox = null;
+		try {
+			bbox = renderer.computeStructureBoundingBoxes(structure,left,top,show_redend,scratchPosManager,scratchBBoxManager);
+		}
+		catch(Exception e) {
+			LogUtils.report(e);
+		}
+		boolean laid_out = (bbox!=null);
+		if( !laid_out )
+			bbox = new Rectangle(left,top,0,0);
+
+		HashSet<Residue> residues = new HashSet<Residue>();
+		copy(scratchPosManager.orientations,posManager.orientations,residues);
+		copy(scratchPosManager.rotations,posManager.rotations,residues);
+		copy(scratchPosManager.relative_positions,posManager.relative_positions,residues);
+		copy(scratchPosManager.absolute_positions,posManager.absolute_positions,residues);
+		copy(scratchPosManager.onborder_flags,posManager.onborder_flags,residues);
+		copy(scratchPosManager.sticky_flags,posManager.sticky_flags,residues);
+
+		copy(scratchBBoxManager.parent_bboxes,bboxManager.parent_bboxes,residues);
+		copy(scratchBBoxManager.current_bboxes,bboxManager.current_bboxes,residues);
+		copy(scratchBBoxManager.border_bboxes,bboxManager.border_bboxes,residues);
+		copy(scratchBBoxManager.complete_bboxes,bboxManager.complete_bboxes,residues);
+		copy(scratchBBoxManager.support_bboxes,bboxManager.support_bboxes,residues);
+		copy(scratchBBoxManager.linked_residues,bboxManager.linked_residues,residues);
+		bboxManager.invalidateIndex();
+		bboxManager.setGraphicOptions(scratchBBoxManager.getGraphicOptions());
+		scratchPosManager.reset();
+		scratchBBoxManager.reset();
+
+		entries.put(structure,new Entry(structure,show_redend,laid_out,residues,bbox));
+		return bbox;
+	}
+
+	/**
+	   Return <code>true</code> if the stored layout of a structure
+	   has been computed without errors and the structure is not
+	   empty.
+	 */
+	boolean isLaidOut(Glycan structure) {
+		Entry e = entries.get(structure);
+		return e!=null && e.laid_out;
+	}
+
+	private static <T> void copy(Map<Residue,T> src, Map<Residue,T> dest, Set<Residue> residues) {
+		dest.putAll(src);
+		residues.addAll(src.keySet());
+	}
+
+	private static class Entry {
+
+		public final Glycan structure;
+		public final Residue root;
+		public final int root_version;
+		public final Residue shown_root;
+		public final Residue bracket;
+		public final int bracket_version;
+		public final boolean laid_out;
+		public final Collection<Residue> residues;
+		public final Rectangle bbox;
+
+		public Entry(Glycan _structure, boolean show_redend, boolean _laid_out, Collection<Residue> _residues, Rectangle _bbox) {
+			structure = _structure;
+			root = _structure.getRoot();
+			root_version = (root!=null) ?root.getVersion() :0;
+			shown_root = (_structure.isComposition()) ?root :_structure.getRoot(show_redend);
+			bracket = _structure.getBracket();
+			bracket_version = (bracket!=null) ?bracket.getVersion() :0;
+			laid_out = _laid_out;
+			residues = _residues;
+			bbox = new Rectangle(_bbox);
+		}
+
+		public boolean isValid() {
+			if( structure.getRoot()!=root || structure.getBracket()!=bracket )
+				return false;
+			if( root!=null && root.getVersion()!=root_version )
+				return false;
+			return bracket==null || bracket.getVersion()==bracket_version;
+		}
+	}
+}
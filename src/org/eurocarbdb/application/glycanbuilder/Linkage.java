@@ -142,6 +142,7 @@ public class Linkage {
      */
     public void setParentResidue(Residue _parent) {
     parent = _parent;
+    changed();
     }
     
     /**
@@ -156,6 +157,7 @@ public class Linkage {
      */
     public void setChildResidue(Residue _child) {
     child = _child;
+    changed();
     }
 
     /**
@@ -184,6 +186,7 @@ public class Linkage {
     }
     else
         setLinkagePositions('?');
+    changed();
     }
 
     /**
@@ -225,6 +228,7 @@ public class Linkage {
     
     char c_pos = (child==null) ?'?' :child.getAnomericCarbon();
     bonds.add(new Bond(link_pos,c_pos));
+    changed();
     }
 
     /**
@@ -235,6 +239,7 @@ public class Linkage {
 
     char c_pos = (child==null) ?'?' :child.getAnomericCarbon();
     bonds.add(new Bond(link_poss,c_pos));
+    changed();
     }    
 
     /**
@@ -252,6 +257,7 @@ public class Linkage {
     // add glycosidic bond
     char c_pos = (child==null) ?'?' :child.getAnomericCarbon();
     bonds.add(new Bond(link_poss,c_pos));
+    changed();
     }
 
     /**
@@ -268,6 +274,7 @@ public class Linkage {
 
     if( child!=null ) 
         setAnomericCarbon(child.getAnomericCarbon());
+    changed();
     }
 
     /**
@@ -275,6 +282,14 @@ public class Linkage {
      */
     public void setAnomericCarbon(char pos) {
     glycosidicBond().setChildPosition(pos);
+    changed();
+    }
+
+    private void changed() {
+    if( parent!=null )
+        parent.changed();
+    else if( child!=null )
+        child.changed();
     }
 
     /**
@@ -76,7 +76,7 @@ public class LinkageRendererAWT extends AbstractLinkageRenderer {
     	LinkageStyle style = theLinkageStyleDictionary.getStyle(link);
 
     	Font old_font = g2d.getFont();
-    	Font new_font = new Font(theGraphicOptions.LINKAGE_INFO_FONT_FACE,Font.PLAIN,theGraphicOptions.LINKAGE_INFO_SIZE);
+    	Font new_font = FontMetricsCache.getInstance().getFont(theGraphicOptions.LINKAGE_INFO_FONT_FACE,theGraphicOptions.LINKAGE_INFO_SIZE);
     	g2d.setFont(new_font);
 
     	Residue child = link.getChildResidue();
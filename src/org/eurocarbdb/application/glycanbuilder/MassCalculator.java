@@ -0,0 +1,264 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+   Compute the masses of the residues for a given derivatization. The
+   derivatization settings are resolved once when the calculator is
+   created, and the contribution of each residue type is stored in a
+   table indexed by {@link ResidueType#id}, so that the mass of a
+   structure is computed without string comparisons. Only the types
+   loaded in the dictionaries are stored in the tables. The isotope
+   settings and the reducing end type do not change the mass of the
+   residues. Calculators are immutable apart from their tables and
+   can be shared by several threads.
+
+   @see Glycan#computeMass
+ */
+
+public final class MassCalculator {
+
+	// dictionary types with larger ids are not stored in the table
+	private static final int MAX_TABLE_SIZE = 1<<16;
+
+	private static final ConcurrentHashMap<String,MassCalculator> calculators = new ConcurrentHashMap<String,MassCalculator>();
+
+	private final String derivatization;
+	private final double substitution_mass;
+	private final boolean methylated;
+	private final boolean acetylated;
+	private final boolean drop_acetylated;
+	private final double water_mass;
+	private final double alditol_mass;
+
+	private volatile Entry[] table = new Entry[256];
+
+	/**
+	   Return the calculator for the derivatization specified in the
+	   mass settings.
+	 */
+	public static MassCalculator getInstance(MassOptions mass_opt) {
+		return getInstance(mass_opt.DERIVATIZATION);
+	}
+
+	/**
+	   Return the calculator for a given derivatization.
+	   @see MassOptions#DERIVATIZATIONS
+	 */
+	public static MassCalculator getInstance(String derivatization) {
+		MassCalculator ret = calculators.get(derivatization);
+		if( ret==null ) {
+			ret = new MassCalculator(derivatization);
+			MassCalculator old = calculators.putIfAbsent(derivatization,ret);
+			if( old!=null )
+				ret = old;
+		}
+		return ret;
+	}
+
+	private MassCalculator(String _derivatization) {
+		derivatization = _derivatization;
+
+		methylated = (derivatization.equals(MassOptions.PERMETHYLATED) ||
+					  derivatization.equals(MassOptions.PERDMETHYLATED) ||
+					  derivatization.equals(MassOptions.HEAVYPERMETHYLATION));
+		acetylated = (derivatization.equals(MassOptions.PERACETYLATED) ||
+					  derivatization.equals(MassOptions.PERDACETYLATED));
+		drop_acetylated = derivatization.equals(MassOptions.PERACETYLATED);
+
+		if( derivatization.equals(MassOptions.PERMETHYLATED) )
+			substitution_mass = MassUtils.methyl.getMass() - MassUtils.hydrogen.getMass();
+		else if( derivatization.equals(MassOptions.PERDMETHYLATED) )
+			substitution_mass = MassUtils.dmethyl.getMass() - MassUtils.hydrogen.getMass();
+		else if( derivatization.equals(MassOptions.PERACETYLATED) )
+			substitution_mass = MassUtils.acetyl.getMass() - MassUtils.hydrogen.getMass();
+		else if( derivatization.equals(MassOptions.PERDACETYLATED) )
+			substitution_mass = MassUtils.dacetyl.getMass() - MassUtils.hydrogen.getMass();
+		else if( derivatization.equals(MassOptions.HEAVYPERMETHYLATION) )
+			substitution_mass = MassUtils.heavyMethyl.getMass() - MassUtils.hydrogen.getMass();
+		else
+			substitution_mass = 0.;
+
+		water_mass = MassUtils.water.getMass();
+		alditol_mass = 2*MassUtils.hydrogen.getMass();
+	}
+
+	/**
+	   Return the derivatization handled by this calculator.
+	 */
+	public String getDerivatization() {
+		return derivatization;
+	}
+
+	/**
+	   Return the mass added by the derivatization of a free position.
+	 */
+	public double getSubstitutionMass() {
+		return substitution_mass;
+	}
+
+	/**
+	   Return the mass of the water molecule lost by each bond.
+	 */
+	public double getWaterMass() {
+		return water_mass;
+	}
+
+	/**
+	   Return <code>true</code> if the residues of a given type are
+	   removed by the derivatization.
+	 */
+	public boolean isDropped(ResidueType type) {
+		return (type.isDroppedWithMethylation() && methylated) ||
+			(type.isDroppedWithAcetylation() && drop_acetylated);
+	}
+
+	/**
+	   Return the number of positions of a residue type that are
+	   substituted by the derivatization.
+	 */
+	public int getNoSubstitutions(ResidueType type) {
+		if( methylated )
+			return type.getNoMethyls();
+		if( acetylated )
+			return type.getNoAcetyls();
+		return 0;
+	}
+
+	/**
+	   Compute the mass of a structure given its root. The root must
+	   not be a bracket. Return <code>Double.NaN</code> if the
+	   structure contains repeating units, whose mass is computed by
+	   {@link Glycan#computeMass}.
+	 */
+	public double computeMass(Residue node) {
+		if( node==null )
+			return 0.;
+
+		Entry e = getEntry(node.getType());
+		if( e.repetition )
+			return Double.NaN;
+
+		Vector<Linkage> children = node.getChildrenLinkages();
+		int no_children = children.size();
+		int no_bonds = 0;
+		for( int i=0; i<no_children; i++ )
+			no_bonds += children.get(i).getNoBonds();
+		Linkage parent = node.getParentLinkage();
+		if( parent!=null )
+			no_bonds += parent.getNoBonds();
+
+		double mass = computeResidueMass(e,node.isReducingEnd(),no_children>0,no_bonds);
+		for( int i=0; i<no_children; i++ ) {
+			Linkage l = children.get(i);
+			mass -= water_mass*l.getNoBonds(); // remove a water molecule for each bond
+			mass += computeMass(l.getChildResidue());
+		}
+		return mass;
+	}
+
+	/**
+	   Compute the mass contributed by a single residue, excluding the
+	   water lost by the bonds with its children.
+	   @see Glycan#computeResidueMass
+	 */
+	public double computeResidueMass(ResidueType type, boolean reducing_end, boolean has_children, int no_bonds) {
+		return computeResidueMass(getEntry(type),reducing_end,has_children,no_bonds);
+	}
+
+	private double computeResidueMass(Entry e, boolean reducing_end, boolean has_children, int no_bonds) {
+		double mass = e.mass;
+		if( reducing_end && e.alditol )
+			mass += alditol_mass;
+
+		if( e.cleavage ) {
+			// cleavages have no derivatization
+			if( reducing_end && !has_children )
+				mass += substitution_mass;
+		}
+		else if( e.dropped )
+			mass -= e.dropped_mass;
+		else
+			mass += (e.no_substitutions-no_bonds)*substitution_mass;
+		return mass;
+	}
+
+	private Entry getEntry(ResidueType type) {
+		Entry[] t = table;
+		if( type.id<t.length ) {
+			Entry e = t[type.id];
+			// the mass of a type can be changed after its creation
+			if( e!=null && e.type==type && e.mass==type.getMass() )
+				return e;
+		}
+
+		// the types created for a single structure, such as the
+		// reducing end of a new structure or the labile cleavages,
+		// would be kept alive by the table
+		Entry e = new Entry(type);
+		if( type.in_dictionary && type.id<MAX_TABLE_SIZE )
+			store(e);
+		return e;
+	}
+
+	private synchronized void store(Entry e) {
+		Entry[] t = table;
+		if( e.type.id>=t.length ) {
+			int size = t.length;
+			while( size<=e.type.id )
+				size *= 2;
+			Entry[] grown = new Entry[size];
+			System.arraycopy(t,0,grown,0,t.length);
+			t = grown;
+		}
+		t[e.type.id] = e;
+		table = t;
+	}
+
+	/**
+	   The contribution of a residue type to the mass of a structure.
+	 */
+	private class Entry {
+
+		public final ResidueType type;
+		public final double mass;
+		public final boolean repetition;
+		public final boolean alditol;
+		public final boolean cleavage;
+		public final boolean dropped;
+		public final double dropped_mass;
+		public final int no_substitutions;
+
+		public Entry(ResidueType _type) {
+			type = _type;
+			mass = type.getMass();
+			repetition = type.isRepetition();
+			alditol = type.makesAlditol();
+			cleavage = type.isCleavage() && !type.isRingFragment();
+			dropped = isDropped(type);
+			dropped_mass = type.getMass() - water_mass - substitution_mass;
+			no_substitutions = getNoSubstitutions(type);
+		}
+	}
+}
@@ -79,6 +79,18 @@ public class PositionManager {
     sticky_flags.clear();
     }
 
+    /**
+       Remove the information about the position of a residue.
+     */
+    public void remove(Residue node) {
+    orientations.remove(node);
+    rotations.remove(node);
+    relative_positions.remove(node);
+    absolute_positions.remove(node);
+    onborder_flags.remove(node);
+    sticky_flags.remove(node);
+    }
+
 
     /**
        Store the information about the position of a residue around
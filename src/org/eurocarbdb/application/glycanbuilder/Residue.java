@@ -21,6 +21,7 @@
 package org.eurocarbdb.application.glycanbuilder;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.*;
 import java.awt.*;
 
@@ -38,10 +39,8 @@ import java.awt.*;
 
 public class Residue {
     
-    private static int class_id;       
-    static {
-    class_id=0;    
-    }
+    // residues are also created by the worker threads of the fragmenter
+    private static final AtomicInteger class_id = new AtomicInteger(0);
     
     /** Unique id of this residue object */    
     public final int id;
@@ -72,6 +71,9 @@ public class Residue {
 	private Residue startRepititionResidue;
 
 	private Rectangle centerPos;
+
+    // modifications of this residue or of its subtree
+    private int version = 0;
     
     // ----
 
@@ -80,7 +82,7 @@ public class Residue {
     */
 
     public Residue() {
-    id = class_id++;
+    id = class_id.getAndIncrement();
 
     // init
     type = new ResidueType(); // empty type
@@ -100,7 +102,7 @@ public class Residue {
      */
     
     public Residue(ResidueType _type) {
-    id = class_id++;
+    id = class_id.getAndIncrement();
 
     // init
     type = _type;
@@ -121,7 +123,7 @@ public class Residue {
      */
 
     public Residue(ResidueType _type, char _anomeric_state, char _anomeric_carbon, char _chirality, char _ring_size) {
-    id = class_id++;
+    id = class_id.getAndIncrement();
 
     // init
     type = _type;
@@ -167,6 +169,7 @@ public class Residue {
     */
     public void setType(ResidueType _type) {
     type = _type;
+    changed();
     }
 
     /**
@@ -190,6 +193,7 @@ public class Residue {
      */
     public void setAnomericState(char _anomeric_state) {
     anomeric_state = _anomeric_state;
+    changed();
     }
 
     /**
@@ -213,6 +217,7 @@ public class Residue {
     anomeric_carbon = _anomeric_carbon;
     if( parent_linkage!=null )
         parent_linkage.setAnomericCarbon(anomeric_carbon);
+    changed();
     }
 
     /**
@@ -235,6 +240,7 @@ public class Residue {
      */
     public void setChirality(char _chirality) {
     chirality = _chirality;
+    changed();
     }
 
     /**
@@ -257,6 +263,7 @@ public class Residue {
      */
     public void setRingSize(char _ring_size) {
     ring_size = _ring_size;
+    changed();
     }
 
     /**
@@ -271,6 +278,7 @@ public class Residue {
      */
     public void setAlditol(boolean a) {
     alditol = a;
+    changed();
     }
     
     /**
@@ -416,6 +424,7 @@ public class Residue {
     */
     public void setMinRepetitions(String min) {
     type.setMinRepetitions(min);
+    changed();
     }
 
     /**
@@ -435,6 +444,7 @@ public class Residue {
     */
     public void setMaxRepetitions(String max) {
     type.setMaxRepetitions(max);
+    changed();
     }    
 
     /**
@@ -514,6 +524,7 @@ public class Residue {
     */ 
     public void setCleavedResidue(Residue _cleaved_residue) {
     cleaved_residue = _cleaved_residue;
+    changed();
     }
     
     /** 
@@ -571,6 +582,7 @@ public class Residue {
      */
     public void resetPreferredPlacement() {
     preferred_placement = null;
+    changed();
     }
 
     /**
@@ -580,6 +592,7 @@ public class Residue {
      */
     public void setPreferredPlacement(ResiduePlacement new_place) {
     preferred_placement = new_place;
+    changed();
     }
 
     /**
@@ -607,6 +620,7 @@ public class Residue {
     */
     public void setParentLinkage(Linkage _parent_linkage) {
     parent_linkage = _parent_linkage;
+    changed();
     }
 
     /**
@@ -1061,6 +1075,25 @@ public class Residue {
     return null;
     }
    
+    /**
+       Return a counter that is incremented at each modification of
+       this residue or of its subtree. Used to invalidate the
+       information cached by the {@link Glycan} objects.
+     */
+    public int getVersion() {
+    return version;
+    }
+
+    /**
+       Notify a modification of this residue to all its ancestors. It
+       is called by all the methods changing the structure and must
+       be called after changing the bonds of a linkage directly.
+     */
+    public void changed() {
+    for( Residue r=this; r!=null; r=r.getParent() )
+        r.version++;
+    }
+   
     //---------------
     // structure modification
     
@@ -1130,6 +1163,7 @@ public class Residue {
     // add labile back to lcleavage
     if( isLCleavage() && cleaved_residue.getTypeName().equals(child.getTypeName()) ) {
         this.copyResidue(cleaved_residue);
+        changed();
         return true;
     }
 
@@ -1139,6 +1173,7 @@ public class Residue {
     Linkage link = new Linkage(this,child,bonds);
     children_linkages.add(link);
     child.parent_linkage = link;
+    changed();
     return true;
     }
     
@@ -1190,6 +1225,7 @@ public class Residue {
     children_linkages.remove(child_ind);        
     int other_ind = indexOf(other);
     children_linkages.add(other_ind,child.getParentLinkage());    
+    changed();
     return true;
     }
 
@@ -1206,6 +1242,7 @@ public class Residue {
     children_linkages.remove(child_ind);        
     int other_ind = indexOf(other);
     children_linkages.add(other_ind+1,child.getParentLinkage());    
+    changed();
     return true;
     }
 
@@ -1245,6 +1282,7 @@ public class Residue {
     Linkage link = new Linkage(this,child,bonds);    
     children_linkages.add(ind,link);
     child.parent_linkage = link;
+    changed();
     return true;
     }
 
@@ -1262,6 +1300,7 @@ public class Residue {
         // unlink child from this node
         children_linkages.remove(ind);
         toremove.parent_linkage = null;
+        changed();
         
         // connect grand children to this node
         if( this.isStartRepetition() && !toremove.isEndRepetition() ) {
@@ -1371,6 +1410,7 @@ public class Residue {
 
     // link new parent to grand parent
     grand_parent.insertChildAt(toinsert,bonds,ind);
+    toinsert.changed();
 
     return true;
     }        
@@ -1392,6 +1432,7 @@ public class Residue {
     Linkage link2 = children_linkages.get(ind2);
     children_linkages.set(ind2,link1);
     children_linkages.set(ind1,link2);
+    changed();
     return true;
     }
       
@@ -1432,6 +1473,7 @@ public class Residue {
     this.preferred_placement = (other.preferred_placement!=null) ?other.preferred_placement.clone() :null;
     this.was_sticky = other.was_sticky;
 
+    changed();
     }
 
     /**
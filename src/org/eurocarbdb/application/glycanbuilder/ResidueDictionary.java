@@ -327,6 +327,7 @@ public class ResidueDictionary {
     }
 
     private static void add(ResidueType type) {
+    type.in_dictionary = true;
     dictionary.put(type.getName().toLowerCase(),type);
 
     for( String s : type.getSynonyms() )
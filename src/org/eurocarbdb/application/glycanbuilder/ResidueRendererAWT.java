@@ -43,6 +43,11 @@ import static org.eurocarbdb.application.glycanbuilder.Geometry.*;
 */
 
 public class ResidueRendererAWT extends AbstractResidueRenderer {
+
+    private static final BasicStroke THIN_STROKE = new BasicStroke(1);
+    private static final BasicStroke THICK_STROKE = new BasicStroke(2);
+    private static final BasicStroke DASHED_STROKE = new BasicStroke(2.f,BasicStroke.CAP_BUTT,BasicStroke.JOIN_ROUND,1.f,new float[] {5.f,5.f},0.f);
+
 	public ResidueRendererAWT() {
 
     }
@@ -154,18 +159,17 @@ public class ResidueRendererAWT extends AbstractResidueRenderer {
     		}
 
     		// draw contour
-    		g2d.setStroke( (selected) ?new BasicStroke(2) :new BasicStroke(1));
+    		g2d.setStroke( (selected) ?THICK_STROKE :THIN_STROKE);
     		g2d.setColor(shape_color);        
     		g2d.draw(shape);        
-    		g2d.setStroke(new BasicStroke(1));
+    		g2d.setStroke(THIN_STROKE);
     	}
     	else if( selected ) {
     		// draw selected contour for empty shape
-    		float[] dashes = {5.f,5.f};
-    		g2d.setStroke(new BasicStroke(2.f,BasicStroke.CAP_BUTT,BasicStroke.JOIN_ROUND,1.f,dashes,0.f));
+    		g2d.setStroke(DASHED_STROKE);
     		g2d.setColor(shape_color);        
     		g2d.draw(cur_bbox);
-    		g2d.setStroke(new BasicStroke(1));
+    		g2d.setStroke(THIN_STROKE);
     	}
 
     	// add text shape
@@ -192,7 +196,7 @@ public class ResidueRendererAWT extends AbstractResidueRenderer {
     		if( shape!=null ) 
     			font_size = sat(8 * font_size * cur_bbox.width / x_size / 10,font_size);
 
-    		Font new_font = new Font(theGraphicOptions.NODE_FONT_FACE,Font.PLAIN,font_size);
+    		Font new_font = FontMetricsCache.getInstance().getFont(theGraphicOptions.NODE_FONT_FACE,font_size);
     		Font old_font = g2d.getFont();
     		g2d.setFont(new_font);
 
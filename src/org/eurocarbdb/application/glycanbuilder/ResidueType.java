@@ -21,6 +21,7 @@
 package org.eurocarbdb.application.glycanbuilder;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.*;
@@ -40,6 +41,16 @@ import javax.swing.*;
 
 public class ResidueType {
 
+    private static final AtomicInteger class_id = new AtomicInteger(0);
+
+    /** Unique id of this residue type object, used to index the
+        tables of {@link MassCalculator} */
+    public final int id;
+
+    // true if the type has been loaded in a dictionary, the other
+    // types are created for a single structure and are not cached
+    boolean in_dictionary = false;
+
     //
 
     protected String  name;
@@ -77,6 +88,8 @@ public class ResidueType {
        Empty constructor.
     */
     public ResidueType() {
+    id = class_id.getAndIncrement();
+
     name = "#empty";
     superclass = "special";    
         composition_class = null;
@@ -110,6 +123,8 @@ public class ResidueType {
        Create a new residue type from an initialization string.
      */
     public ResidueType(String init) throws Exception {
+    id = class_id.getAndIncrement();
+
     Vector<String> tokens = TextUtils.tokenize(init,"\t");
     if( tokens.size()!=24) 
         throw new Exception("Invalid string format: " + init);
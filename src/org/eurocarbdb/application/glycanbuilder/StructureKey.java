@@ -0,0 +1,97 @@
+/*
+*   EuroCarbDB, a framework for carbohydrate bioinformatics
+*
+*   Copyright (c) 2006-2009, Eurocarb project, or third-party contributors as
+*   indicated by the @author tags or express copyright attribution
+*   statements applied by the authors.
+*
+*   This copyrighted material is made available to anyone wishing to use, modify,
+*   copy, or redistribute it subject to the terms and conditions of the GNU
+*   Lesser General Public License, as published by the Free Software Foundation.
+*   A copy of this license accompanies this distribution in the file LICENSE.txt.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+*   or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+*   for more details.
+*
+*   Last commit: $Rev$ by $Author$ on $Date::             $
+*/
+
+package org.eurocarbdb.application.glycanbuilder;
+
+/**
+   Identity of a structure in a hash table. Two structures are the
+   same if they have the same canonical key and the same ordered
+   string representation: the string is computed only when the keys
+   are the same, to confirm that the two structures are identical.
+
+   @see CanonicalKey
+ */
+
+class StructureKey {
+
+	private final CanonicalKey key;
+	private final boolean add_massopt;
+	private Glycan structure;
+	private String ordered = null;
+
+	/**
+	   Create the key of a structure.
+	   @param add_massopt <code>true</code> if the mass settings must
+	   be part of the key
+	 */
+	public StructureKey(Glycan _structure, boolean _add_massopt) {
+		this(_structure.canonicalKey(_add_massopt),_structure,_add_massopt);
+	}
+
+	/**
+	   Create the key of a structure whose canonical key has already
+	   been computed. If the structure is <code>null</code> it is
+	   created by {@link #createStructure} when needed.
+	 */
+	protected StructureKey(CanonicalKey _key, Glycan _structure, boolean _add_massopt) {
+		key = _key;
+		structure = _structure;
+		add_massopt = _add_massopt;
+	}
+
+	/**
+	   Return the canonical key of the structure.
+	 */
+	public CanonicalKey getKey() {
+		return key;
+	}
+
+	/**
+	   Create the structure when it was not given to the constructor.
+	 */
+	protected Glycan createStructure() {
+		return null;
+	}
+
+	private synchronized String getOrdered() {
+		if( ordered==null ) {
+			if( structure==null )
+				structure = createStructure();
+			ordered = structure.toStringOrdered(add_massopt);
+			structure = null;
+		}
+		return ordered;
+	}
+
+	public boolean equals(Object other) {
+		if( this==other )
+			return true;
+		if( !(other instanceof StructureKey) )
+			return false;
+		StructureKey k = (StructureKey)other;
+		if( !key.equals(k.key) || add_massopt!=k.add_massopt )
+			return false;
+		return getOrdered().equals(k.getOrdered());
+	}
+
+	public int hashCode() {
+		return key.hashCode();
+	}
+}
@@ -0,0 +1,144 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.eurocarbdb.application.glycanbuilder.BBoxManager;
+import org.eurocarbdb.application.glycanbuilder.Geometry;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the searches using the spatial index of {@link BBoxManager}
+ * return the same residues as the brute force searches on a random layout,
+ * also after translating and removing some residues.
+ */
+public class BBoxIndexTest {
+	private static final int RESIDUES=2000;
+	private static final int SIZE=3000;
+	private static final int QUERIES=500;
+
+	private Random random;
+	private BBoxManager bboxManager;
+	private List<Residue> residues;
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Before
+	public void createLayout() throws Exception{
+		random=new Random(42);
+		bboxManager=new BBoxManager();
+		residues=new ArrayList<Residue>();
+		for(int i=0;i<RESIDUES;i++){
+			Residue r=ResidueDictionary.newResidue("Glc");
+			// a few residues share the same bounding box
+			Rectangle bbox=(i%50==1) ? new Rectangle(bboxManager.getCurrent(residues.get(i-1))) : randomRectangle(40);
+			bboxManager.setAllBBoxes(r, bbox);
+			residues.add(r);
+		}
+	}
+
+	@Test
+	public void testSameAsBruteForce(){
+		assertSameAsBruteForce();
+	}
+
+	@Test
+	public void testAfterTranslate(){
+		assertSameAsBruteForce();
+		for(int i=0;i<RESIDUES;i+=3){
+			bboxManager.translate(random.nextInt(200)-100, random.nextInt(200)-100, residues.get(i));
+		}
+		assertSameAsBruteForce();
+	}
+
+	@Test
+	public void testAfterRemove() throws Exception{
+		assertSameAsBruteForce();
+		List<Residue> removed=new ArrayList<Residue>();
+		for(int i=0;i<RESIDUES;i+=4){
+			removed.add(residues.get(i));
+		}
+		for(Residue r : removed){
+			bboxManager.remove(r);
+		}
+		residues.removeAll(removed);
+		assertSameAsBruteForce();
+
+		// a residue replaced by another one, the number of residues is unchanged
+		bboxManager.remove(residues.remove(0));
+		Residue added=ResidueDictionary.newResidue("Gal");
+		bboxManager.setAllBBoxes(added, randomRectangle(40));
+		residues.add(added);
+		assertSameAsBruteForce();
+	}
+
+	private void assertSameAsBruteForce(){
+		for(int i=0;i<QUERIES;i++){
+			Point p=new Point(random.nextInt(SIZE), random.nextInt(SIZE));
+			Assert.assertEquals(p.toString(), nodesAtPoint(p), new HashSet<Residue>(bboxManager.getNodesAtPoint(p)));
+
+			Rectangle r=randomRectangle(300);
+			Assert.assertEquals(r.toString(), nodesInside(r), new HashSet<Residue>(bboxManager.getNodesInside(r)));
+		}
+
+		// the nearest residue is compared by distance and by the coordinate
+		// resolving the ties, residues with the same bounding box are
+		// interchangeable
+		for(Residue node : residues){
+			Rectangle cur=bboxManager.getCurrent(node);
+			assertSameNearest(cur, bboxManager.getNearestUp(node, residues), bboxManager.getNearestUp(node), true);
+			assertSameNearest(cur, bboxManager.getNearestDown(node, residues), bboxManager.getNearestDown(node), true);
+			assertSameNearest(cur, bboxManager.getNearestLeft(node, residues), bboxManager.getNearestLeft(node), false);
+			assertSameNearest(cur, bboxManager.getNearestRight(node, residues), bboxManager.getNearestRight(node), false);
+		}
+	}
+
+	private void assertSameNearest(Rectangle cur, Residue expected, Residue found, boolean vertical){
+		if(expected==null){
+			Assert.assertNull(cur.toString(), found);
+			return;
+		}
+		Assert.assertNotNull(cur.toString(), found);
+		Rectangle expected_bbox=bboxManager.getCurrent(expected);
+		Rectangle found_bbox=bboxManager.getCurrent(found);
+		Assert.assertEquals(cur.toString(), Geometry.distance(expected_bbox, cur), Geometry.distance(found_bbox, cur), 0.);
+		Assert.assertEquals(cur.toString(), (vertical) ? expected_bbox.x : expected_bbox.y, (vertical) ? found_bbox.x : found_bbox.y);
+	}
+
+	private HashSet<Residue> nodesAtPoint(Point p){
+		HashSet<Residue> ret=new HashSet<Residue>();
+		for(Residue r : residues){
+			if(bboxManager.getCurrent(r).contains(p)){
+				ret.add(r);
+			}
+		}
+		return ret;
+	}
+
+	private HashSet<Residue> nodesInside(Rectangle rect){
+		HashSet<Residue> ret=new HashSet<Residue>();
+		for(Residue r : residues){
+			if(rect.intersects(bboxManager.getCurrent(r))){
+				ret.add(r);
+			}
+		}
+		return ret;
+	}
+
+	private Rectangle randomRectangle(int max_size){
+		return new Rectangle(random.nextInt(SIZE), random.nextInt(SIZE), 1+random.nextInt(max_size), 1+random.nextInt(max_size));
+	}
+}
@@ -0,0 +1,132 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.BatchConverter;
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanFormat;
+import org.eurocarbdb.application.glycanbuilder.GlycanParser;
+import org.eurocarbdb.application.glycanbuilder.GlycanParserFactory;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that a stream of records converted by a pool of threads is written in
+ * the order of the input records, with the same output as the records
+ * converted one by one, and that the records that cannot be converted are
+ * reported with their position and skipped.
+ */
+public class BatchConverterTest {
+	private static final int RECORDS=40;
+	private static final int THREADS=4;
+	private static final int INVALID=7;
+
+	private static List<String> records;
+
+	@BeforeClass
+	public static void loadDictionaries() throws Exception{
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+
+		// structures of different sizes so that the threads do not complete
+		// the records in order
+		List<Glycan> corpus=ParserBenchmark.createCorpus();
+		records=new ArrayList<String>();
+		for(int i=0;i<RECORDS;i++){
+			Glycan structure=corpus.get((i*7)%corpus.size());
+			records.add((i%2==0) ? structure.toString() : corpus.get(0).toString());
+		}
+	}
+
+	@Test
+	public void testOrdered() throws Exception{
+		for(String format : Arrays.asList("gws", "glycoct_condensed", "glycoct")){
+			List<String> expected=convertOneByOne(format);
+			for(int threads=1;threads<=THREADS;threads++){
+				BatchConverter converter=new BatchConverter("gws", format);
+				converter.setNoThreads(threads);
+				StringWriter out=new StringWriter();
+				BatchConverter.Statistics stats=converter.convert(new StringReader(join(records, "gws")), out);
+
+				String message=format+" with "+threads+" threads";
+				Assert.assertEquals(message, RECORDS, stats.getNoRecords());
+				Assert.assertEquals(message, RECORDS, stats.getNoConverted());
+				Assert.assertEquals(message, 0, stats.getNoErrors());
+				Assert.assertEquals(message, join(expected, format), out.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testUnordered() throws Exception{
+		List<String> expected=convertOneByOne("glycoct_condensed");
+		BatchConverter converter=new BatchConverter("gws", "glycoct_condensed");
+		converter.setNoThreads(THREADS);
+		converter.setOrdered(false);
+		StringWriter out=new StringWriter();
+		BatchConverter.Statistics stats=converter.convert(new StringReader(join(records, "gws")), out);
+
+		// the same records, in any order
+		Assert.assertEquals(RECORDS, stats.getNoConverted());
+		StringBuilder found=new StringBuilder(out.toString());
+		for(String record : expected){
+			String output=record+"\n\n";
+			int ind=found.indexOf(output);
+			Assert.assertTrue(output, ind>=0);
+			found.delete(ind, ind+output.length());
+		}
+		Assert.assertEquals(0, found.length());
+	}
+
+	@Test
+	public void testErrors() throws Exception{
+		List<String> input=new ArrayList<String>(records);
+		input.set(INVALID, "freeEnd--?b1D-Unknown,p$MONO,perMe,Na,0,freeEnd");
+		List<String> expected=convertOneByOne("glycoct_condensed");
+		expected.remove(INVALID);
+
+		BatchConverter converter=new BatchConverter("gws", "glycoct_condensed");
+		converter.setNoThreads(THREADS);
+		StringWriter out=new StringWriter();
+		StringWriter errors=new StringWriter();
+		converter.setErrorWriter(errors);
+		BatchConverter.Statistics stats=converter.convert(new StringReader(join(input, "gws")), out);
+
+		Assert.assertEquals(RECORDS, stats.getNoRecords());
+		Assert.assertEquals(RECORDS-1, stats.getNoConverted());
+		Assert.assertEquals(1, stats.getNoErrors());
+		Assert.assertEquals(join(expected, "glycoct_condensed"), out.toString());
+		Assert.assertTrue(errors.toString(), errors.toString().startsWith("record "+(INVALID+1)+": "));
+	}
+
+	private static List<String> convertOneByOne(String format) throws Exception{
+		GlycanParser writer=GlycanParserFactory.getParser(GlycanFormat.fromString(format));
+		List<String> ret=new ArrayList<String>();
+		for(String record : records){
+			ret.add(writer.writeGlycan(Glycan.fromString(record)));
+		}
+		return ret;
+	}
+
+	/**
+	 * Join the records as done by the converter.
+	 */
+	private static String join(List<String> records, String format){
+		String separator=format.equals("gws") ? ";\n" : "\n\n";
+		StringBuilder sb=new StringBuilder();
+		for(String record : records){
+			sb.append(record).append(separator);
+		}
+		return sb.toString();
+	}
+}
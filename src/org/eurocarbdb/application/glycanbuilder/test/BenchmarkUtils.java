@@ -0,0 +1,130 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The measurement and the JSON output shared by the benchmarks. Each
+ * measurement is preceded by a warm up of the same length; the allocated bytes
+ * are reported only if the virtual machine can measure them.
+ */
+public class BenchmarkUtils {
+	private BenchmarkUtils(){
+	}
+
+	public interface Operation {
+		/**
+		 * Run a batch of operations and return their number.
+		 */
+		public int run() throws Exception;
+	}
+
+	public static class Measure {
+		public double ops_per_second=Double.NaN;
+		public double bytes_per_op=-1;
+		public String error=null;
+	}
+
+	/**
+	 * Run an operation repeatedly for the given number of milliseconds after
+	 * a warm up of the same length.
+	 */
+	public static Measure measure(Operation op, long time){
+		Measure ret=new Measure();
+		try{
+			// warm up
+			long end=System.currentTimeMillis()+time;
+			while(System.currentTimeMillis()<end){
+				op.run();
+			}
+
+			long ops=0;
+			long bytes=allocatedBytes();
+			long start=System.nanoTime();
+			end=System.currentTimeMillis()+time;
+			while(System.currentTimeMillis()<end){
+				ops+=op.run();
+			}
+			long elapsed=System.nanoTime()-start;
+			long allocated=allocatedBytes();
+
+			ret.ops_per_second=ops/(elapsed/1e9);
+			if(bytes>=0 && allocated>=0 && ops>0){
+				ret.bytes_per_op=(allocated-bytes)/(double)ops;
+			}
+		}catch(Exception e){
+			ret.error=e.getMessage();
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the bytes allocated by the current thread, or -1 if the virtual
+	 * machine does not provide them.
+	 */
+	public static long allocatedBytes(){
+		try{
+			ThreadMXBean bean=ManagementFactory.getThreadMXBean();
+			Class<?> extension=Class.forName("com.sun.management.ThreadMXBean");
+			if(!extension.isInstance(bean)){
+				return -1;
+			}
+			Method method=extension.getMethod("getThreadAllocatedBytes", long.class);
+			return ((Long)method.invoke(bean, Thread.currentThread().getId())).longValue();
+		}catch(Exception e){
+			return -1;
+		}
+	}
+
+	/**
+	 * Write the results of a benchmark preceded by the Java version and the
+	 * given properties, whose values are written as they are.
+	 *
+	 * @param results
+	 *            the JSON objects of the results separated by commas
+	 */
+	public static void writeJSON(Writer out, Map<String, ?> properties, CharSequence results) throws IOException{
+		out.write("{\n");
+		out.write("  \"java_version\": "+quote(System.getProperty("java.version"))+",\n");
+		for(Map.Entry<String, ?> e : properties.entrySet()){
+			out.write("  "+quote(e.getKey())+": "+e.getValue()+",\n");
+		}
+		out.write("  \"results\": [\n");
+		out.write(results.toString());
+		out.write("\n  ]\n}\n");
+	}
+
+	/**
+	 * Format a number, the negative and undefined values are written as
+	 * <code>null</code>.
+	 */
+	public static String number(double d, String format){
+		if(Double.isNaN(d) || Double.isInfinite(d) || d<0){
+			return "null";
+		}
+		return String.format(Locale.US, format, d);
+	}
+
+	public static String quote(String str){
+		if(str==null){
+			return "null";
+		}
+		StringBuilder sb=new StringBuilder("\"");
+		for(int i=0;i<str.length();i++){
+			char c=str.charAt(i);
+			if(c=='"' || c=='\\'){
+				sb.append('\\').append(c);
+			}else if(c<0x20){
+				sb.append(String.format("\\u%04x", (int)c));
+			}else{
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
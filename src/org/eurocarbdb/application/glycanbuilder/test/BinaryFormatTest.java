@@ -0,0 +1,81 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanBinaryFormat;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class BinaryFormatTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5}--?a1D-Man,p@90s$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--2=3,4b1D-Gal,p--1/3=6,2/4=5,6a1D-Man,p@-90--3b1D-Gal,p@270$MONO,Und,H,0,freeEnd",
+		"redEnd--?b1D-Glc,p--4b1D-Gal,p}(--?a2D-NeuAc,p)--?a1L-Fuc,p$MONO,perAc,Na,0,redEnd"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+	}
+
+	@Test
+	public void testStructuresRoundTrip() throws Exception{
+		List<Glycan> structures=new ArrayList<Glycan>();
+		for(String str : STRUCTURES){
+			structures.add(Glycan.fromString(str));
+		}
+
+		List<Glycan> read=GlycanBinaryFormat.readGlycans(GlycanBinaryFormat.toBytes(structures));
+		Assert.assertEquals(structures.size(), read.size());
+		for(int i=0;i<structures.size();i++){
+			Assert.assertEquals(structures.get(i).toString(), read.get(i).toString());
+		}
+	}
+
+	@Test
+	public void testFragmentsRoundTrip() throws Exception{
+		FragmentCollection fragments=new Fragmenter().computeAllFragments(Glycan.fromString(STRUCTURES[0]));
+		FragmentCollection read=FragmentCollection.fromBinary(fragments.toBinary());
+
+		Assert.assertEquals(fragments.size(), read.size());
+		for(int i=0;i<fragments.size();i++){
+			FragmentEntry expected=fragments.elementAt(i);
+			FragmentEntry found=read.elementAt(i);
+			Assert.assertEquals(expected.getName(), found.getName());
+			Assert.assertEquals(expected.getMZ(), found.getMZ());
+			Assert.assertEquals(expected.getFragment().toString(), found.getStructure());
+		}
+	}
+
+	@Test
+	public void testSmallerThanText() throws Exception{
+		List<Glycan> structures=new ArrayList<Glycan>();
+		for(String str : STRUCTURES){
+			structures.add(Glycan.fromString(str));
+		}
+		byte[] data=GlycanBinaryFormat.toBytes(structures);
+
+		StringBuilder text=new StringBuilder();
+		for(Glycan structure : structures){
+			text.append(structure.toString()).append(';');
+		}
+		Assert.assertTrue(data.length<text.length());
+	}
+
+	@Test(expected=java.io.IOException.class)
+	public void testInvalidHeader() throws Exception{
+		GlycanBinaryFormat.readGlycans("GWS".getBytes());
+	}
+}
@@ -0,0 +1,64 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class CanonicalKeyTest {
+	private static final String CHILDREN =
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-Gal,p--3a2D-NeuAc,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd";
+	private static final String CHILDREN_SWAPPED =
+		"freeEnd--?b1D-GlcNAc,p(--6a1L-Fuc,p)--4b1D-Gal,p--3a2D-NeuAc,p$MONO,perMe,Na,0,freeEnd";
+	private static final String PLACED_FIRST =
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd";
+	private static final String PLACED_SECOND =
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p)--?a1L-Fuc,p@270s$MONO,perMe,Na,0,freeEnd";
+	private static final String UNPLACED =
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd";
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testChildrenOrder(){
+		Glycan g1=Glycan.fromString(CHILDREN);
+		Glycan g2=Glycan.fromString(CHILDREN_SWAPPED);
+		Assert.assertEquals(g1.canonicalKey(), g2.canonicalKey());
+		Assert.assertEquals(0, g1.compareTo(g2));
+		Assert.assertEquals(g1.toStringOrdered(), g2.toStringOrdered());
+
+		// the comparison of the structures depends on the order of the children
+		Assert.assertTrue(g1.equalsStructure(Glycan.fromString(CHILDREN)));
+		Assert.assertFalse(g1.equalsStructure(g2));
+	}
+
+	@Test
+	public void testPlacement(){
+		Glycan placed=Glycan.fromString(PLACED_FIRST);
+		Glycan unplaced=Glycan.fromString(UNPLACED);
+		Assert.assertFalse(placed.canonicalKey().equals(unplaced.canonicalKey()));
+		Assert.assertTrue(placed.compareTo(unplaced)!=0);
+		Assert.assertEquals(-placed.compareTo(unplaced), unplaced.compareTo(placed));
+
+		// the same placement on either child gives the same structure
+		Glycan swapped=Glycan.fromString(PLACED_SECOND);
+		Assert.assertEquals(placed.canonicalKey(), swapped.canonicalKey());
+		Assert.assertEquals(0, placed.compareTo(swapped));
+	}
+
+	@Test
+	public void testFragmentsDifferingByPlacement(){
+		FragmentCollection fc=new FragmentCollection();
+		Assert.assertTrue(fc.addFragment(Glycan.fromString(PLACED_FIRST), "Y"));
+		Assert.assertTrue(fc.addFragment(Glycan.fromString(UNPLACED), "Y"));
+		Assert.assertFalse(fc.addFragment(Glycan.fromString(PLACED_SECOND), "Y"));
+		Assert.assertFalse(fc.addFragment(Glycan.fromString(UNPLACED), "Y"));
+		Assert.assertEquals(2, fc.size());
+	}
+}
@@ -0,0 +1,153 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.BBoxManager;
+import org.eurocarbdb.application.glycanbuilder.DefaultPaintable;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanRendererAWT;
+import org.eurocarbdb.application.glycanbuilder.GraphicOptions;
+import org.eurocarbdb.application.glycanbuilder.Paintable;
+import org.eurocarbdb.application.glycanbuilder.PositionManager;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that skipping the structures and the subtrees outside the clipping
+ * area does not change the painted pixels. A window is moved over the canvas
+ * and the clipped image painted as done by the canvas is compared with the
+ * one painted without culling.
+ */
+public class ClippedPaintTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4b1D-Gal,p}--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p)--6a1D-Man,p}(--?b1D-Gal,p--3a2D-NeuAc,p)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+	private static final int WINDOW_WIDTH=160;
+	private static final int WINDOW_HEIGHT=90;
+	private static final int STEP=47;
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testStructures(){
+		assertSameAsUnculled(GraphicOptions.RL, false);
+		assertSameAsUnculled(GraphicOptions.TB, false);
+	}
+
+	@Test
+	public void testWithMasses(){
+		assertSameAsUnculled(GraphicOptions.RL, true);
+		assertSameAsUnculled(GraphicOptions.BT, true);
+	}
+
+	private void assertSameAsUnculled(int orientation, boolean show_mass){
+		GlycanRendererAWT renderer=new GlycanRendererAWT();
+		renderer.getGraphicOptions().ORIENTATION=orientation;
+		GlycanRendererAWT unculled=new GlycanRendererAWT(){
+			protected Rectangle getClipBounds(Paintable paintable){
+				return null;
+			}
+		};
+		unculled.getGraphicOptions().ORIENTATION=orientation;
+
+		List<Glycan> structures=new ArrayList<Glycan>();
+		int brackets=0;
+		for(String str : STRUCTURES){
+			Glycan structure=Glycan.fromString(str);
+			if(structure.getBracket()!=null){
+				brackets++;
+			}
+			structures.add(structure);
+		}
+		Assert.assertEquals(2, brackets);
+		PositionManager posManager=new PositionManager();
+		BBoxManager bboxManager=new BBoxManager();
+		Rectangle all=renderer.computeBoundingBoxes(structures, show_mass, false, posManager, bboxManager);
+		int width=all.x+all.width+WINDOW_WIDTH;
+		int height=all.y+all.height+WINDOW_HEIGHT;
+
+		int skipped=0;
+		int painted=0;
+		for(int y=0;y<height;y+=STEP){
+			for(int x=0;x<width;x+=STEP){
+				Rectangle clip=new Rectangle(x, y, WINDOW_WIDTH, WINDOW_HEIGHT);
+				String message="orientation "+orientation+" masses "+show_mass+" clip "+clip;
+
+				BufferedImage expected=newImage();
+				Graphics2D g2d=createGraphics(expected, clip);
+				for(Glycan structure : structures){
+					unculled.paint(new DefaultPaintable(g2d), structure, null, null, show_mass, false, posManager, bboxManager);
+				}
+				g2d.dispose();
+
+				BufferedImage found=newImage();
+				g2d=createGraphics(found, clip);
+				for(Glycan structure : structures){
+					if(!renderer.isVisible(structure, clip, show_mass, false, bboxManager)){
+						skipped++;
+						continue;
+					}
+					renderer.paint(new DefaultPaintable(g2d), structure, null, null, show_mass, false, posManager, bboxManager);
+				}
+				g2d.dispose();
+
+				int[] expected_pixels=expected.getRGB(0, 0, WINDOW_WIDTH, WINDOW_HEIGHT, null, 0, WINDOW_WIDTH);
+				int[] found_pixels=found.getRGB(0, 0, WINDOW_WIDTH, WINDOW_HEIGHT, null, 0, WINDOW_WIDTH);
+				Assert.assertTrue(message, Arrays.equals(expected_pixels, found_pixels));
+				if(!isBlank(expected_pixels)){
+					painted++;
+				}
+			}
+		}
+
+		// the windows show some residues and cull some structures
+		Assert.assertTrue(painted>0);
+		Assert.assertTrue(skipped>0);
+	}
+
+	private static BufferedImage newImage(){
+		return new BufferedImage(WINDOW_WIDTH, WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Create a graphic context showing the window, as done by the canvas when
+	 * it is scrolled.
+	 */
+	private static Graphics2D createGraphics(BufferedImage image, Rectangle clip){
+		Graphics2D g2d=image.createGraphics();
+		g2d.setBackground(Color.white);
+		g2d.clearRect(0, 0, image.getWidth(), image.getHeight());
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2d.translate(-clip.x, -clip.y);
+		g2d.setClip(clip);
+		return g2d;
+	}
+
+	private static boolean isBlank(int[] pixels){
+		for(int pixel : pixels){
+			if(pixel!=0xffffffff){
+				return false;
+			}
+		}
+		return true;
+	}
+}
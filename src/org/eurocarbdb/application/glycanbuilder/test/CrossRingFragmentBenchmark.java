@@ -0,0 +1,173 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Measure;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Operation;
+
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.number;
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.quote;
+
+/**
+ * Measure the lookup of the ring fragment types of a residue, as done by the
+ * fragmenter for each residue of a structure, with the index of
+ * {@link CrossRingFragmentDictionary} and with the linear scan of the
+ * dictionary used before it. The residues are the ones of the corpus of
+ * {@link ParserBenchmark}. The results are written in JSON format.
+ *
+ * Usage: CrossRingFragmentBenchmark [output file] [milliseconds per
+ * measurement]
+ *
+ * @see CrossRingFragmentScan
+ */
+public class CrossRingFragmentBenchmark {
+	private static final long DEFAULT_TIME=2000;
+	private static final String FILENAME="/conf/cross_ring_fragment_types";
+
+	private final List<Residue> residues;
+	private final CrossRingFragmentScan scan;
+	private final long time;
+	private final StringBuilder results=new StringBuilder();
+
+	public CrossRingFragmentBenchmark(List<Residue> residues, CrossRingFragmentScan scan, long time){
+		this.residues=residues;
+		this.scan=scan;
+		this.time=time;
+	}
+
+	public static void main(String[] args) throws Exception{
+		String output=(args.length>0) ? args[0] : "benchmark.json";
+		long time=(args.length>1) ? Long.parseLong(args[1]) : DEFAULT_TIME;
+
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+		CrossRingFragmentDictionary.loadDictionary(FILENAME);
+
+		List<Residue> residues=new ArrayList<Residue>();
+		for(Glycan structure : ParserBenchmark.createCorpus()){
+			residues.addAll(structure.getAllResidues());
+		}
+
+		CrossRingFragmentBenchmark benchmark=new CrossRingFragmentBenchmark(residues, new CrossRingFragmentScan(FILENAME), time);
+		benchmark.runAll();
+
+		Writer out=new FileWriter(output);
+		try{
+			benchmark.writeJSON(out);
+		}finally{
+			out.close();
+		}
+		System.out.println("Results written to "+output);
+	}
+
+	public void runAll(){
+		addResult("types", "scan", BenchmarkUtils.measure(new Operation(){
+			public int run(){
+				int found=0;
+				for(Residue r : residues){
+					found+=scan.getCrossRingFragmentTypes(r).size();
+					found+=scan.getCrossRingFragmentTypesA(r).size();
+					found+=scan.getCrossRingFragmentTypesX(r).size();
+				}
+				consume(found);
+				return 3*residues.size();
+			}
+		}, time));
+		addResult("types", "index", BenchmarkUtils.measure(new Operation(){
+			public int run(){
+				int found=0;
+				for(Residue r : residues){
+					found+=CrossRingFragmentDictionary.getCrossRingFragmentTypes(r).size();
+					found+=CrossRingFragmentDictionary.getCrossRingFragmentTypesA(r).size();
+					found+=CrossRingFragmentDictionary.getCrossRingFragmentTypesX(r).size();
+				}
+				consume(found);
+				return 3*residues.size();
+			}
+		}, time));
+
+		// the A and X fragments between the first two carbons of the ring
+		addResult("type", "scan", BenchmarkUtils.measure(new Operation(){
+			public int run(){
+				int found=0;
+				for(Residue r : residues){
+					if(scan.getCrossRingFragmentType('A', 0, 2, r)!=null){
+						found++;
+					}
+					if(scan.getCrossRingFragmentType('X', 0, 2, r)!=null){
+						found++;
+					}
+				}
+				consume(found);
+				return 2*residues.size();
+			}
+		}, time));
+		addResult("type", "index", BenchmarkUtils.measure(new Operation(){
+			public int run(){
+				int found=0;
+				for(Residue r : residues){
+					if(CrossRingFragmentDictionary.getCrossRingFragmentType('A', 0, 2, r)!=null){
+						found++;
+					}
+					if(CrossRingFragmentDictionary.getCrossRingFragmentType('X', 0, 2, r)!=null){
+						found++;
+					}
+				}
+				consume(found);
+				return 2*residues.size();
+			}
+		}, time));
+	}
+
+	private int sink;
+
+	/**
+	 * Keep the results of the lookups so that they are not optimized away.
+	 */
+	private void consume(int found){
+		sink+=found;
+	}
+
+	//----------------
+	// output
+
+	private void addResult(String operation, String implementation, Measure m){
+		double ns_per_lookup=1e9/m.ops_per_second;
+		System.out.println(String.format(Locale.US, "%-8s %-8s %12.1f ns/lookup %10.1f B/lookup%s",
+				operation, implementation, ns_per_lookup, m.bytes_per_op, (m.error!=null) ? " "+m.error : ""));
+
+		if(results.length()>0){
+			results.append(",\n");
+		}
+		results.append("    {\"operation\": ").append(quote(operation));
+		results.append(", \"implementation\": ").append(quote(implementation));
+		results.append(", \"ns_per_lookup\": ").append(number(ns_per_lookup, "%.1f"));
+		results.append(", \"bytes_per_lookup\": ").append(number(m.bytes_per_op, "%.1f"));
+		if(m.error!=null){
+			results.append(", \"error\": ").append(quote(m.error));
+		}
+		results.append('}');
+	}
+
+	public void writeJSON(Writer out) throws IOException{
+		Map<String, Object> properties=new LinkedHashMap<String, Object>();
+		properties.put("residues", residues.size());
+		properties.put("dictionary_size", scan.size());
+		properties.put("measurement_ms", time);
+		BenchmarkUtils.writeJSON(out, properties, results);
+	}
+}
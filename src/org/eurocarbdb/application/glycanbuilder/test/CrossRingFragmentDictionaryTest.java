@@ -0,0 +1,118 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentType;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.ResidueType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the index of the ring fragment types returns the same types, in
+ * the same order, as the linear scan of the dictionary for every residue type,
+ * anomeric carbon and ring size.
+ */
+public class CrossRingFragmentDictionaryTest {
+	private static final String FILENAME="/conf/cross_ring_fragment_types";
+	private static final char[] ANOMERIC_CARBONS = { '?', '1', '2', '3' };
+	private static final char[] RING_SIZES = { '?', 'p', 'f', 'o' };
+
+	private static CrossRingFragmentScan scan;
+
+	@BeforeClass
+	public static void loadDictionaries() throws Exception{
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary(FILENAME);
+		scan=new CrossRingFragmentScan(FILENAME);
+	}
+
+	@Test
+	public void testSameAsScan() throws Exception{
+		int found=0;
+		for(Residue r : createResidues()){
+			String message=r.getTypeName()+" C"+r.getAnomericCarbon()+" "+r.getRingSize();
+			Assert.assertEquals(message, describe(scan.getCrossRingFragmentTypes(r)),
+					describe(CrossRingFragmentDictionary.getCrossRingFragmentTypes(r)));
+			Assert.assertEquals(message, describe(scan.getCrossRingFragmentTypesA(r)),
+					describe(CrossRingFragmentDictionary.getCrossRingFragmentTypesA(r)));
+			Assert.assertEquals(message, describe(scan.getCrossRingFragmentTypesX(r)),
+					describe(CrossRingFragmentDictionary.getCrossRingFragmentTypesX(r)));
+			found+=scan.getCrossRingFragmentTypes(r).size();
+		}
+		// every type of the dictionary is found at least once
+		Assert.assertTrue(found>=scan.size());
+	}
+
+	@Test
+	public void testSingleTypeSameAsScan() throws Exception{
+		for(Residue r : createResidues()){
+			for(char fragment_type : new char[]{ 'A', 'X', 'a', 'x' }){
+				for(int first_pos=0;first_pos<=6;first_pos++){
+					for(int last_pos=0;last_pos<=6;last_pos++){
+						String message=r.getTypeName()+" C"+r.getAnomericCarbon()+" "+r.getRingSize()+" "+fragment_type+" "+first_pos+","+last_pos;
+						Assert.assertEquals(message, describe(scan.getCrossRingFragmentType(fragment_type, first_pos, last_pos, r)),
+								describe(CrossRingFragmentDictionary.getCrossRingFragmentType(fragment_type, first_pos, last_pos, r)));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnmodifiable() throws Exception{
+		Residue r=ResidueDictionary.newResidue("Glc");
+		Collection<CrossRingFragmentType> types=CrossRingFragmentDictionary.getCrossRingFragmentTypes(r);
+		Assert.assertFalse(types.isEmpty());
+		try{
+			types.clear();
+			Assert.fail("the indexed types can be modified");
+		}catch(UnsupportedOperationException e){
+		}
+		Assert.assertEquals(describe(scan.getCrossRingFragmentTypes(r)),
+				describe(CrossRingFragmentDictionary.getCrossRingFragmentTypes(r)));
+	}
+
+	/**
+	 * Return a residue for every residue type, anomeric carbon and ring size.
+	 */
+	static List<Residue> createResidues() throws Exception{
+		List<Residue> ret=new ArrayList<Residue>();
+		for(ResidueType type : ResidueDictionary.allResidues()){
+			for(char anomeric_carbon : ANOMERIC_CARBONS){
+				for(char ring_size : RING_SIZES){
+					Residue r=ResidueDictionary.newResidue(type.getName());
+					r.setAnomericCarbon(anomeric_carbon);
+					r.setRingSize(ring_size);
+					ret.add(r);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Describe the ring fragment types, the dictionary and the scan hold
+	 * different instances.
+	 */
+	private static List<String> describe(Collection<CrossRingFragmentType> types){
+		List<String> ret=new ArrayList<String>();
+		for(CrossRingFragmentType crt : types){
+			ret.add(describe(crt));
+		}
+		return ret;
+	}
+
+	private static String describe(CrossRingFragmentType crt){
+		if(crt==null){
+			return null;
+		}
+		return crt.getName()+" "+crt.getDescription()+" "+crt.getResidueRingSize()+" "+crt.getComposition();
+	}
+}
@@ -0,0 +1,85 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentType;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.TextUtils;
+
+/**
+ * The lookup of the ring fragment types done by
+ * {@link CrossRingFragmentDictionary} before it was indexed: the whole
+ * dictionary is scanned at each call and a new list is returned. Used as a
+ * reference by the tests and the benchmarks.
+ */
+public class CrossRingFragmentScan {
+	private final List<CrossRingFragmentType> dictionary=new ArrayList<CrossRingFragmentType>();
+
+	public CrossRingFragmentScan(String filename) throws Exception{
+		InputStream stream=CrossRingFragmentScan.class.getResourceAsStream(filename);
+		if(stream==null){
+			throw new FileNotFoundException(filename);
+		}
+		BufferedReader is=new BufferedReader(new InputStreamReader(stream));
+		try{
+			String line;
+			while((line=is.readLine())!=null){
+				line=TextUtils.trim(line);
+				if(line.length()>0 && !line.startsWith("%")){
+					dictionary.add(new CrossRingFragmentType(line));
+				}
+			}
+		}finally{
+			is.close();
+		}
+	}
+
+	public int size(){
+		return dictionary.size();
+	}
+
+	public List<CrossRingFragmentType> getCrossRingFragmentTypes(Residue r){
+		List<CrossRingFragmentType> ret=new ArrayList<CrossRingFragmentType>();
+		for(CrossRingFragmentType crt : dictionary){
+			if(crt.matches(r)){
+				ret.add(crt);
+			}
+		}
+		return ret;
+	}
+
+	public List<CrossRingFragmentType> getCrossRingFragmentTypesA(Residue r){
+		List<CrossRingFragmentType> ret=new ArrayList<CrossRingFragmentType>();
+		for(CrossRingFragmentType crt : dictionary){
+			if(crt.matches(r) && crt.isACleavage()){
+				ret.add(crt);
+			}
+		}
+		return ret;
+	}
+
+	public List<CrossRingFragmentType> getCrossRingFragmentTypesX(Residue r){
+		List<CrossRingFragmentType> ret=new ArrayList<CrossRingFragmentType>();
+		for(CrossRingFragmentType crt : dictionary){
+			if(crt.matches(r) && crt.isXCleavage()){
+				ret.add(crt);
+			}
+		}
+		return ret;
+	}
+
+	public CrossRingFragmentType getCrossRingFragmentType(char fragment_type, int first_pos, int last_pos, Residue r){
+		for(CrossRingFragmentType crt : dictionary){
+			if(crt.matches(fragment_type, first_pos, last_pos, r)){
+				return crt;
+			}
+		}
+		return null;
+	}
+}
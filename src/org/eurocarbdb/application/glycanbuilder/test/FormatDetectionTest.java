@@ -0,0 +1,119 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CoreType;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanFormat;
+import org.eurocarbdb.application.glycanbuilder.GlycanFormatDetector;
+import org.eurocarbdb.application.glycanbuilder.GlycoMindsParser;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FormatDetectionTest {
+	private static final String[] GWS = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p)--6a1D-Man,p--2b1D-GlcNAc,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd;redEnd--?b1D-Gal,p$MONO,Und,H,0,redEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5}--?a1D-Man,p@90s",
+		"freeEnd"
+	};
+
+	private static final String[] GLYCOMINDS = {
+		"Ma3(Ma6)Mb4GNb4GNb",
+		"NNa3Ab4GNb2Ma3(NNa3Ab4GNb2Ma6)Mb4GNb4(Fa6)GNb",
+		"*AN[]b6S",
+		"Ab4GNb;Sp"
+	};
+
+	private static final String[] LINUCS = {
+		"[][b-D-GlcpNAc]{[(4+1)][b-D-GlcpNAc]{[(4+1)][b-D-Manp]{}}}",
+		"[][Asn]{[(1+1)][b-D-GlcpNAc]{}}"
+	};
+
+	private static final String[] GLYCOCT_CONDENSED = {
+		"RES\n1b:b-dglc-HEX-1:5\n2s:n-acetyl\n3b:b-dglc-HEX-1:5\nLIN\n1:1d(2+1)2n\n2:1o(4+1)3d\n",
+		"RES\r\n1b:x-dgal-HEX-1:5\r\n"
+	};
+
+	private static final String[] GLYCOCT = {
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<sugar version=\"1.0\">\n<residues>\n</residues>\n</sugar>",
+		"<sugar version=\"1.0\"><residues/></sugar>"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+	}
+
+	@Test
+	public void testSamples(){
+		assertDetected(GlycanFormat.GWS, GWS);
+		assertDetected(GlycanFormat.GLYCOMINDS, GLYCOMINDS);
+		assertDetected(GlycanFormat.GW_LINUCS, LINUCS);
+		assertDetected(GlycanFormat.GLYCOCT_CONDENSED, GLYCOCT_CONDENSED);
+		assertDetected(GlycanFormat.GLYCOCT, GLYCOCT);
+	}
+
+	@Test
+	public void testWrittenCorpus() throws Exception{
+		MassOptions mass_opt=new MassOptions();
+		GlycoMindsParser glycominds=new GlycoMindsParser();
+		for(CoreType core : CoreDictionary.getCores()){
+			for(TerminalType terminal : TerminalDictionary.getTerminals()){
+				Glycan structure=CoreDictionary.newStructure(core.getName(), mass_opt);
+				for(Residue r : structure.getAllResidues()){
+					if(r.isSaccharide() && !r.hasChildren()){
+						r.addChild(terminal.newTerminal());
+					}
+				}
+
+				String str=structure.toString();
+				Assert.assertEquals(str, GlycanFormat.GWS, GlycanFormatDetector.detect(str));
+
+				str=glycominds.writeGlycan(structure);
+				if(str!=null && str.length()>0){
+					Assert.assertEquals(str, GlycanFormat.GLYCOMINDS, GlycanFormatDetector.detect(str));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLeadingWhitespace(){
+		Assert.assertEquals(GlycanFormat.GLYCOCT_CONDENSED, GlycanFormatDetector.detect("\n\n  "+GLYCOCT_CONDENSED[0]));
+		Assert.assertEquals(GlycanFormat.GLYCOCT, GlycanFormatDetector.detect("\uFEFF"+GLYCOCT[0]));
+		Assert.assertEquals(GlycanFormat.GLYCOMINDS, GlycanFormatDetector.detect("\t"+GLYCOMINDS[0]+"\n"));
+	}
+
+	@Test
+	public void testUnrecognized(){
+		Assert.assertNull(GlycanFormatDetector.detect(""));
+		Assert.assertNull(GlycanFormatDetector.detect(" \n\t"));
+		Assert.assertNull(GlycanFormatDetector.detect("hello world!"));
+		Assert.assertNull(GlycanFormatDetector.detect("# RESIDUES"));
+	}
+
+	@Test
+	public void testReaderIsNotConsumed() throws Exception{
+		BufferedReader reader=new BufferedReader(new StringReader(GLYCOCT_CONDENSED[0]));
+		Assert.assertEquals(GlycanFormat.GLYCOCT_CONDENSED, GlycanFormatDetector.detect(reader));
+		Assert.assertEquals("RES", reader.readLine());
+	}
+
+	private static void assertDetected(GlycanFormat expected, String[] samples){
+		for(String str : samples){
+			Assert.assertEquals(str, expected, GlycanFormatDetector.detect(str));
+		}
+	}
+}
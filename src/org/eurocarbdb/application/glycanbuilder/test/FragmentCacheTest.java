@@ -0,0 +1,75 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCache;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FragmentCacheTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p)--?a1L-Fuc,p@270s$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--6?1S)--3a1D-Gal,p--??1S$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+	}
+
+	@Test
+	public void testSameAsUncached(){
+		Fragmenter uncached=new Fragmenter();
+		Fragmenter cached=new Fragmenter();
+		FragmentCache cache=new FragmentCache();
+		cached.setFragmentCache(cache);
+
+		// the second pass finds all the structures in the cache
+		for(int pass=0; pass<2; pass++){
+			for(String str : STRUCTURES){
+				Glycan structure=Glycan.fromString(str);
+				Assert.assertEquals(str, describe(uncached.computeAllFragments(structure)), describe(cached.computeAllFragments(structure)));
+			}
+		}
+		Assert.assertTrue(cache.getNoHits()>0);
+	}
+
+	@Test
+	public void testChangedSettings(){
+		Fragmenter uncached=new Fragmenter();
+		Fragmenter cached=new Fragmenter();
+		cached.setFragmentCache(new FragmentCache(10));
+		Glycan structure=Glycan.fromString(STRUCTURES[0]);
+		cached.computeAllFragments(structure);
+
+		uncached.setComputeAFragments(false);
+		cached.setComputeAFragments(false);
+		uncached.setMaxNoCrossRings(0);
+		cached.setMaxNoCrossRings(0);
+		Assert.assertEquals(describe(uncached.computeAllFragments(structure)), describe(cached.computeAllFragments(structure)));
+		Assert.assertTrue(cached.getFragmentCache().size()<=10);
+	}
+
+	private static List<String> describe(FragmentCollection fragments){
+		List<String> ret=new ArrayList<String>();
+		for(FragmentEntry fe : fragments.getFragments()){
+			ret.add(fe.name+" "+fe.mz_ratio+" "+fe.fragment.toString());
+		}
+		return ret;
+	}
+}
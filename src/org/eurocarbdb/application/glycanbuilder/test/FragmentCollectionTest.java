@@ -0,0 +1,91 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FragmentCollectionTest {
+	private static final String STRUCTURE = "freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd";
+
+	private static List<FragmentEntry> entries;
+
+	@BeforeClass
+	public static void computeEntries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+
+		Fragmenter fragmenter=new Fragmenter();
+		fragmenter.setMaxNoCleavages(1);
+		entries=new ArrayList<FragmentEntry>(fragmenter.computeAllFragments(Glycan.fromString(STRUCTURE)).getFragments());
+	}
+
+	@Test
+	public void testLiveView(){
+		FragmentCollection fc=new FragmentCollection();
+		Collection<FragmentEntry> view=fc.getFragments();
+		Assert.assertTrue(view.isEmpty());
+
+		// add in reverse order, the view is sorted at each read
+		for(int i=entries.size()-1; i>=0; i--){
+			Assert.assertTrue(fc.addFragment(entries.get(i)));
+			Assert.assertEquals(entries.size()-i, view.size());
+			Assert.assertEquals(entries.subList(i, entries.size()), new ArrayList<FragmentEntry>(view));
+		}
+		Assert.assertFalse(fc.addFragment(entries.get(0).clone()));
+		Assert.assertEquals(entries.size(), view.size());
+
+		fc.removeFragment(entries.get(0));
+		Assert.assertEquals(entries.subList(1, entries.size()), new ArrayList<FragmentEntry>(view));
+
+		List<FragmentEntry> removed=new ArrayList<FragmentEntry>();
+		for(int i=1; i<entries.size(); i+=2){
+			removed.add(entries.get(i));
+		}
+		fc.removeFragments(removed);
+		List<FragmentEntry> expected=new ArrayList<FragmentEntry>();
+		for(int i=2; i<entries.size(); i+=2){
+			expected.add(entries.get(i));
+		}
+		Assert.assertEquals(expected, new ArrayList<FragmentEntry>(view));
+		Assert.assertTrue(fc.addFragment(entries.get(1)));
+		Assert.assertEquals(entries.get(1), view.iterator().next());
+
+		fc.removeFragments(view);
+		Assert.assertTrue(view.isEmpty());
+		Assert.assertEquals(0, fc.size());
+	}
+
+	@Test
+	public void testIterator(){
+		FragmentCollection fc=new FragmentCollection();
+		for(FragmentEntry fe : entries){
+			fc.addFragment(fe);
+		}
+		Iterator<FragmentEntry> i=fc.iterator();
+		for(FragmentEntry fe : entries){
+			Assert.assertSame(fe, i.next());
+		}
+		Assert.assertFalse(i.hasNext());
+		for(int j=0; j<entries.size(); j++){
+			Assert.assertSame(entries.get(j), fc.elementAt(j));
+		}
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testReadOnly(){
+		FragmentCollection fc=new FragmentCollection();
+		fc.getFragments().add(entries.get(0));
+	}
+}
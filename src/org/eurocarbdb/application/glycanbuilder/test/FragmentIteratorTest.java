@@ -0,0 +1,94 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.FragmentIterator;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FragmentIteratorTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+	}
+
+	@Test
+	public void testSameAsCollection(){
+		Fragmenter fragmenter=new Fragmenter();
+		for(String str : STRUCTURES){
+			Glycan structure=Glycan.fromString(str);
+			FragmentCollection expected=fragmenter.computeAllFragments(structure);
+
+			FragmentCollection found=new FragmentCollection();
+			FragmentIterator i=fragmenter.iterateAllFragments(structure);
+			while(i.hasNext()){
+				Assert.assertTrue(found.addFragment(i.next()));
+			}
+			Assert.assertFalse(i.isTruncated());
+			Assert.assertEquals(expected.size(), i.getNoFragments());
+			Assert.assertEquals(str, describe(expected), describe(found));
+		}
+	}
+
+	@Test
+	public void testMaxNoFragments(){
+		Fragmenter fragmenter=new Fragmenter();
+		Glycan structure=Glycan.fromString(STRUCTURES[0]);
+		List<String> all=describe(fragmenter.iterateAllFragments(structure));
+
+		FragmentIterator i=fragmenter.iterateAllFragments(structure, 10, 0, null);
+		Assert.assertEquals(all.subList(0, 10), describe(i));
+		Assert.assertTrue(i.isTruncated());
+	}
+
+	@Test
+	public void testCancel(){
+		Fragmenter fragmenter=new Fragmenter();
+		AtomicBoolean cancelled=new AtomicBoolean(false);
+		FragmentIterator i=fragmenter.iterateAllFragments(Glycan.fromString(STRUCTURES[0]), 0, 0, cancelled);
+		Assert.assertTrue(i.hasNext());
+		i.next();
+		cancelled.set(true);
+		Assert.assertFalse(i.hasNext());
+		Assert.assertTrue(i.isTruncated());
+	}
+
+	private static List<String> describe(FragmentCollection fragments){
+		List<String> ret=new ArrayList<String>();
+		for(FragmentEntry fe : fragments.getFragments()){
+			ret.add(describe(fe));
+		}
+		return ret;
+	}
+
+	private static List<String> describe(FragmentIterator i){
+		List<String> ret=new ArrayList<String>();
+		while(i.hasNext()){
+			ret.add(describe(i.next()));
+		}
+		return ret;
+	}
+
+	private static String describe(FragmentEntry fe){
+		return fe.name+" "+fe.mz_ratio+" "+fe.fragment.toString();
+	}
+}
@@ -0,0 +1,68 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.FragmentMasses;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FragmentMassesTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+	}
+
+	@Test
+	public void testSameAsFragments(){
+		Fragmenter fragmenter=new Fragmenter();
+		for(String str : STRUCTURES){
+			Glycan structure=Glycan.fromString(str);
+			FragmentCollection fragments=fragmenter.computeAllFragments(structure);
+			FragmentMasses masses=fragmenter.computeAllFragmentMasses(structure);
+			Assert.assertEquals(str, fragments.size(), masses.size());
+
+			List<String> expected=new ArrayList<String>();
+			for(FragmentEntry fe : fragments.getFragments()){
+				expected.add(fe.name+" "+String.format("%.6f", fe.mz_ratio)+" "+fe.fragment.toStringOrdered());
+			}
+			List<String> found=new ArrayList<String>();
+			for(int i=0; i<masses.size(); i++){
+				found.add(masses.getName(i)+" "+String.format("%.6f", masses.getMZ(i))+" "+masses.getFragment(i).toStringOrdered());
+			}
+			Collections.sort(expected);
+			Collections.sort(found);
+			Assert.assertEquals(str, expected, found);
+		}
+	}
+
+	@Test
+	public void testFragmentEntries(){
+		Fragmenter fragmenter=new Fragmenter();
+		Glycan structure=Glycan.fromString(STRUCTURES[0]);
+		FragmentMasses masses=fragmenter.computeAllFragmentMasses(structure);
+		for(int i=0; i<masses.size(); i++){
+			FragmentEntry fe=masses.getFragmentEntry(i);
+			Assert.assertEquals(fe.fragment.computeMZ(), masses.getMZ(i), 1e-6);
+			Assert.assertEquals(Fragmenter.getFragmentType(fe.fragment), masses.getName(i));
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CoreType;
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.GWSParser;
+import org.eurocarbdb.application.glycanbuilder.GWSReader;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalType;
+import org.eurocarbdb.application.glycanbuilder.TextUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class GWSReaderTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5}--?a1D-Man,p@90s$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--2=3,4b1D-Gal,p--1/3=6,2/4=5,6a1D-Man,p@-90--3b1D-Gal,p@270$MONO,Und,H,0,freeEnd",
+		"redEnd--?b1D-Glc,p--4b1D-Gal,p}(--?a2D-NeuAc,p)--?a1L-Fuc,p$MONO,perAc,Na,0,redEnd",
+		"freeEnd--?b1D-Glc,p<bounding_box>10,20,30,40</bounding_box>--4b1D-Gal,p",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S",
+		"  freeEnd--?b1D-Glc,p  ",
+		"freeEnd",
+		""
+	};
+
+	private static final String[] INVALID = {
+		"freeEnd--?b1D-Glc,p(--4b1D-Gal,p",
+		"freeEnd--?b1D-Glc,p--4b1D-Unknown,p",
+		"freeEnd--?b1D-Glc,p--4b1D-Gal,p$MONO,perMe",
+		"freeEnd--?b1D-Glc,p@abc"
+	};
+
+	private static List<String> corpus;
+
+	@BeforeClass
+	public static void createCorpus() throws Exception{
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+
+		corpus=new ArrayList<String>();
+		for(String str : STRUCTURES){
+			corpus.add(str);
+		}
+		MassOptions mass_opt=new MassOptions();
+		for(CoreType core : CoreDictionary.getCores()){
+			for(TerminalType terminal : TerminalDictionary.getTerminals()){
+				Glycan structure=CoreDictionary.newStructure(core.getName(), mass_opt);
+				for(Residue r : structure.getAllResidues()){
+					if(r.isSaccharide() && !r.hasChildren()){
+						r.addChild(terminal.newTerminal());
+					}
+				}
+				corpus.add(structure.toString());
+			}
+		}
+
+		// fragments contain cleavages and cross ring cleavages
+		for(FragmentEntry fe : new Fragmenter().computeAllFragments(Glycan.fromString(STRUCTURES[0])).getFragments()){
+			corpus.add(fe.fragment.toString());
+		}
+	}
+
+	@Test
+	public void testSameAsRegexParser() throws Exception{
+		GWSReader reader=new GWSReader();
+		for(String str : corpus){
+			Glycan expected=readSubtrees(str, new MassOptions());
+			Glycan read=reader.readGlycan(str, new MassOptions());
+			Assert.assertEquals(str, expected.toString(), read.toString());
+			Assert.assertEquals(str, expected.getMassOptions().toString(), read.getMassOptions().toString());
+		}
+	}
+
+	@Test
+	public void testInvalid(){
+		GWSReader reader=new GWSReader();
+		for(String str : INVALID){
+			boolean expected=fails(str, null);
+			Assert.assertEquals(str, expected, fails(str, reader));
+		}
+	}
+
+	@Test
+	public void testList() throws Exception{
+		StringBuilder sb=new StringBuilder();
+		for(String str : corpus){
+			sb.append(str).append(';');
+		}
+		sb.append(';');
+
+		List<String> tokens=TextUtils.tokenize(sb.toString(), ";");
+		List<Glycan> read=new GWSReader().readGlycans(sb, new MassOptions());
+		Assert.assertEquals(tokens.size(), read.size());
+		for(int i=0; i<tokens.size(); i++){
+			Assert.assertEquals(readSubtrees(tokens.get(i), new MassOptions()).toString(), read.get(i).toString());
+		}
+	}
+
+	private static boolean fails(String str, GWSReader reader){
+		try{
+			if(reader!=null){
+				reader.readGlycan(str, new MassOptions());
+			}
+			else{
+				readSubtrees(str, new MassOptions());
+			}
+			return false;
+		}
+		catch(Exception e){
+			return true;
+		}
+	}
+
+	/**
+	 * The structure read with {@link GWSParser#readSubtree}, as done before the cursor reader.
+	 */
+	private static Glycan readSubtrees(String str, MassOptions default_mass_options) throws Exception{
+		str=TextUtils.trim(str);
+
+		MassOptions mass_opt=default_mass_options.clone();
+		int ind1=str.indexOf('$');
+		if(ind1!=-1){
+			mass_opt=MassOptions.fromString(str.substring(ind1+1));
+			str=str.substring(0, ind1);
+		}
+
+		int ind2=str.indexOf('}');
+		if(ind2==-1){
+			return new Glycan(GWSParser.readSubtree(str, true), false, mass_opt);
+		}
+		return new Glycan(GWSParser.readSubtree(str.substring(0, ind2), true), GWSParser.readSubtree(str.substring(ind2), true), false, mass_opt);
+	}
+}
@@ -0,0 +1,70 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import org.eurocarbdb.application.glycanbuilder.GWSWriter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class GWSWriterTest {
+	// each group contains the same structure with the children in different orders
+	private static final String[][] PERMUTATIONS = {
+		{
+			// children with the same key
+			"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p)--?a1L-Fuc,p"
+		},
+		{
+			"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p",
+			"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p)--?a1L-Fuc,p@270s"
+		},
+		{
+			"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270)--?a1L-Fuc,p@90",
+			"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@90)--?a1L-Fuc,p@270"
+		},
+		{
+			"freeEnd--?b1D-Glc,p((--?a1L-Fuc,p@270s)--?a1L-Fuc,p)--?a1L-Fuc,p@90",
+			"freeEnd--?b1D-Glc,p((--?a1L-Fuc,p)--?a1L-Fuc,p@90)--?a1L-Fuc,p@270s",
+			"freeEnd--?b1D-Glc,p((--?a1L-Fuc,p@90)--?a1L-Fuc,p@270s)--?a1L-Fuc,p"
+		},
+		{
+			"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S",
+			"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--6?1S)--3a1D-Gal,p--??1S"
+		},
+		{
+			"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p",
+			"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p"
+		}
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testPermutations() throws Exception{
+		GWSWriter writer=new GWSWriter(true, true, null);
+		for(String[] group : PERMUTATIONS){
+			String expected=Glycan.fromString(group[0]).toStringOrdered();
+			for(String str : group){
+				Glycan structure=Glycan.fromString(str);
+				Assert.assertEquals(str, expected, structure.toStringOrdered());
+
+				StringBuilder sb=new StringBuilder();
+				writer.write(sb, structure);
+				Assert.assertEquals(str, expected, sb.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testReadOrdered(){
+		for(String[] group : PERMUTATIONS){
+			String ordered=Glycan.fromString(group[0]).toStringOrdered();
+			Assert.assertEquals(ordered, Glycan.fromString(ordered).toStringOrdered());
+			Assert.assertEquals(ordered, Glycan.fromString(ordered).toString());
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CoreType;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanLibrary;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class GlycanLibraryTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_3^3--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	private static final double[][] WINDOWS = {
+		{-2., 0.}, {0., Double.POSITIVE_INFINITY}, {500., 1500.}, {1000., 1000.}, {2000., 1000.},
+		{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}, {Double.NaN, 1000.}
+	};
+
+	private static List<Glycan> structures;
+	private static GlycanLibrary library;
+
+	@BeforeClass
+	public static void createLibrary() throws Exception{
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+
+		structures=new ArrayList<Glycan>();
+		for(String str : STRUCTURES){
+			structures.add(Glycan.fromString(str));
+		}
+		MassOptions mass_opt=new MassOptions();
+		for(CoreType core : CoreDictionary.getCores()){
+			for(TerminalType terminal : TerminalDictionary.getTerminals()){
+				Glycan structure=CoreDictionary.newStructure(core.getName(), mass_opt);
+				for(Residue r : structure.getAllResidues()){
+					if(r.isSaccharide() && !r.hasChildren()){
+						r.addChild(terminal.newTerminal());
+					}
+				}
+				structures.add(structure);
+			}
+		}
+
+		File file=File.createTempFile("library", ".gwl");
+		file.deleteOnExit();
+		GlycanLibrary.write(file, structures);
+		library=new GlycanLibrary(file);
+	}
+
+	@Test
+	public void testStructures() throws Exception{
+		Assert.assertEquals(structures.size(), library.size());
+		for(int i=0; i<structures.size(); i++){
+			Assert.assertEquals(structures.get(i).toString(), library.getStructure(i).toString());
+		}
+		Assert.assertTrue(Double.isNaN(library.getMZ(0)));
+		Assert.assertEquals(structures.get(1).computeMZ(), library.getMZ(1), 0.);
+	}
+
+	@Test
+	public void testSameAsLinearSearch(){
+		for(double[] window : WINDOWS){
+			List<Integer> expected=new ArrayList<Integer>();
+			for(int i=0; i<structures.size(); i++){
+				Glycan structure=structures.get(i);
+				double mz=structure.computeMZ();
+				if(structure.computeMass()>=0. && mz>=window[0] && mz<=window[1]){
+					expected.add(i);
+				}
+			}
+
+			int[] found=library.findByMZ(window[0], window[1]);
+			Assert.assertEquals(expected.size(), found.length);
+			for(int i=0; i<found.length; i++){
+				Assert.assertTrue(expected.contains(found[i]));
+				if(i>0){
+					Assert.assertTrue(library.getMZ(found[i-1])<=library.getMZ(found[i]));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.BaseWorkspace;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanDocument;
+import org.eurocarbdb.application.glycanbuilder.GlycanParser;
+import org.eurocarbdb.application.glycanbuilder.GlycanStreamReader;
+import org.eurocarbdb.application.glycanbuilder.GlycoCTCondensedParser;
+import org.eurocarbdb.application.glycanbuilder.GlycoCTParser;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class GlycanStreamReaderTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5}--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd"
+	};
+
+	private static final BaseWorkspace WORKSPACE = new BaseWorkspace() {
+		public MassOptions getDefaultMassOptions() {
+			return new MassOptions();
+		}
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testCondensedRepeat() throws Exception{
+		GlycoCTCondensedParser parser=new GlycoCTCondensedParser(false);
+		String ct=parser.writeGlycan(Glycan.fromString(STRUCTURES[1]));
+		Assert.assertTrue(ct.indexOf("REP")>=0);
+
+		List<Glycan> read=read(ct, "glycoct_condensed", 1);
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(parser.readGlycan(ct, new MassOptions()).toStringOrdered(), read.get(0).toStringOrdered());
+		Assert.assertTrue(read.get(0).hasRepetition());
+
+		GlycanDocument doc=new GlycanDocument(WORKSPACE);
+		Assert.assertTrue(doc.importFromString(ct, "glycoct_condensed"));
+		Assert.assertEquals(1, doc.getStructures().size());
+		Assert.assertEquals(read.get(0).toStringOrdered(), doc.getStructures().iterator().next().toStringOrdered());
+	}
+
+	@Test
+	public void testCondensedRecords() throws Exception{
+		GlycoCTCondensedParser parser=new GlycoCTCondensedParser(false);
+		List<String> records=new ArrayList<String>();
+		for(String str : STRUCTURES){
+			records.add(parser.writeGlycan(Glycan.fromString(str)));
+		}
+
+		// records separated by blank lines or starting with a RES line
+		compare(records, join(records, "\n\n"), "glycoct_condensed", parser);
+		compare(records, join(records, "\n"), "glycoct_condensed", parser);
+		compare(records, join(records, "\n"), GlycanStreamReader.AUTO_FORMAT, parser);
+	}
+
+	@Test
+	public void testCondensedSplitter() throws Exception{
+		// no blank lines between the records, the RES lines after the
+		// nested units must start a new record
+		String[] records={
+			"RES\n1b:b-dglc-HEX-1:5\n2r:r1\nLIN\n1:1o(4+-1)2n\nREP\nREP1:3o(4+1)3d=2-5\nRES\n3b:b-dgal-HEX-1:5",
+			"RES\n1b:b-dgal-HEX-1:5\n2b:b-dglc-HEX-1:5\n3s:n-acetyl\nLIN\n1:1o(3+1)2d\n2:2d(2+1)3n",
+			"RES\n1b:b-dglc-HEX-1:5\nUND\nUND1:100.0:100.0\nParentIDs:1\nSubtreeLinkageID1:o(4+1)d\nRES\n2b:a-dman-HEX-1:5",
+			"RES\n1b:a-dman-HEX-1:5"
+		};
+		StringBuilder sb=new StringBuilder();
+		for(String record : records){
+			sb.append(record).append('\n');
+		}
+
+		GlycanStreamReader reader=new GlycanStreamReader(new StringReader(sb.toString()), "glycoct_condensed", new MassOptions(), false);
+		for(String record : records){
+			Assert.assertEquals(record, reader.nextRecord());
+		}
+		Assert.assertNull(reader.nextRecord());
+	}
+
+	@Test
+	public void testGWSRecords() throws Exception{
+		List<String> records=new ArrayList<String>();
+		for(String str : STRUCTURES){
+			records.add(str);
+		}
+		compare(records, join(records, ";"), "gws", null);
+	}
+
+	@Test
+	public void testXMLRecords() throws Exception{
+		GlycoCTParser parser=new GlycoCTParser(false);
+		List<String> records=new ArrayList<String>();
+		for(String str : STRUCTURES){
+			records.add(parser.writeGlycan(Glycan.fromString(str)));
+		}
+		compare(records, join(records, "\n"), "glycoct", parser);
+	}
+
+	private static void compare(List<String> records, String stream, String format, GlycanParser parser) throws Exception{
+		List<String> expected=new ArrayList<String>();
+		for(String record : records){
+			Glycan structure=(parser!=null) ?parser.readGlycan(record, new MassOptions()) :Glycan.fromString(record);
+			expected.add(structure.toStringOrdered());
+		}
+
+		for(int no_threads : new int[] {1, 4}){
+			List<Glycan> read=read(stream, format, no_threads);
+			Assert.assertEquals(format, expected.size(), read.size());
+			for(int i=0; i<read.size(); i++){
+				Assert.assertEquals(format, expected.get(i), read.get(i).toStringOrdered());
+			}
+		}
+	}
+
+	private static List<Glycan> read(String stream, String format, int no_threads) throws Exception{
+		GlycanStreamReader reader=new GlycanStreamReader(new StringReader(stream), format, new MassOptions(), false);
+		reader.setNoThreads(no_threads);
+		try{
+			return reader.readAll();
+		}
+		finally{
+			reader.close();
+		}
+	}
+
+	private static String join(List<String> records, String separator){
+		StringBuilder sb=new StringBuilder();
+		for(String record : records){
+			if(sb.length()>0){
+				sb.append(separator);
+			}
+			sb.append(record);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,195 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CoreType;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycoCTCondensedParser;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalType;
+import org.eurocarbdb.MolecularFramework.io.GlycoCT.SugarExporterGlycoCTCondensed;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check the GlycoCT condensed strings written directly from the residues
+ * against the ones written by the MolecularFramework exporter. The
+ * comparisons are skipped if the MolecularFramework or ResourcesDB classes
+ * are not available.
+ */
+public class GlycoCTCondensedTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5}--?a1D-Man,p$MONO,perMe,Na,0,freeEnd"
+	};
+
+	private static final String EXPECTED =
+		"RES\n1b:o-dgal-HEX-0:0|1:aldi\n2b:b-dglc-HEX-1:5\n3s:n-acetyl\n4b:b-dgal-HEX-1:5\n" +
+		"LIN\n1:1o(3+1)2d\n2:2d(2+1)3n\n3:2o(4+1)4d\n";
+
+	// name, chirality, anomeric carbon and linkage positions of the random residues
+	private static final String[][] SACCHARIDES = {
+		{ "Glc", "D", "1", "2346" },
+		{ "Gal", "D", "1", "2346" },
+		{ "Man", "D", "1", "2346" },
+		{ "GlcNAc", "D", "1", "346" },
+		{ "GalNAc", "D", "1", "346" },
+		{ "Fuc", "L", "1", "234" },
+		{ "Xyl", "D", "1", "234" },
+		{ "GlcA", "D", "1", "234" },
+		{ "IdoA", "L", "1", "234" },
+		{ "NeuAc", "D", "2", "4789" },
+		{ "KDN", "D", "2", "4789" }
+	};
+	private static final String[] SUBSTITUENTS = { "S", "P", "Me", "Ac" };
+	private static final int RANDOM_STRUCTURES=2000;
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+	}
+
+	@Test
+	public void testAlditol(){
+		GlycoCTCondensedParser parser=new GlycoCTCondensedParser(false);
+		Assert.assertEquals(EXPECTED, parser.writeGlycan(Glycan.fromString(STRUCTURES[2])));
+	}
+
+	@Test
+	public void testSameAsSugarExporter() throws Exception{
+		assumeMolecularFramework();
+		List<Glycan> structures=new ArrayList<Glycan>();
+		for(String str : STRUCTURES){
+			structures.add(Glycan.fromString(str));
+		}
+		MassOptions mass_opt=new MassOptions();
+		for(CoreType core : CoreDictionary.getCores()){
+			for(TerminalType terminal : TerminalDictionary.getTerminals()){
+				Glycan structure=CoreDictionary.newStructure(core.getName(), mass_opt);
+				for(Residue r : structure.getAllResidues()){
+					if(r.isSaccharide() && !r.hasChildren()){
+						r.addChild(terminal.newTerminal());
+					}
+				}
+				structures.add(structure);
+			}
+		}
+
+		assertSameAsSugarExporter(structures);
+	}
+
+	@Test
+	public void testRandomSameAsSugarExporter() throws Exception{
+		assumeMolecularFramework();
+
+		Random random=new Random(20);
+		List<Glycan> structures=new ArrayList<Glycan>();
+		for(int i=0;i<RANDOM_STRUCTURES;i++){
+			StringBuilder sb=new StringBuilder((random.nextInt(4)==0) ? "redEnd" : "freeEnd");
+			sb.append("--?");
+			appendRandomSaccharide(sb, random, 0);
+			sb.append("$MONO,perMe,Na,0,freeEnd");
+			Glycan structure=Glycan.fromString(sb.toString());
+			Assert.assertNotNull(sb.toString(), structure);
+			structures.add(structure);
+		}
+		assertSameAsSugarExporter(structures);
+	}
+
+	/**
+	 * Compare the strings of the writer with the ones of the exporter, the
+	 * structures not handled by the writer are not compared. Most of the
+	 * structures must be handled by the writer.
+	 */
+	private static void assertSameAsSugarExporter(List<Glycan> structures) throws Exception{
+		GlycoCTCondensedParser parser=new GlycoCTCondensedParser(false);
+		SugarExporterGlycoCTCondensed exporter=new SugarExporterGlycoCTCondensed();
+
+		Field field=GlycoCTCondensedParser.class.getDeclaredField("cond_writer");
+		field.setAccessible(true);
+		Object writer=field.get(parser);
+		Method write=writer.getClass().getDeclaredMethod("write", Glycan.class);
+		write.setAccessible(true);
+
+		int written=0;
+		for(Glycan structure : structures){
+			String found=(String)write.invoke(writer, structure);
+			if(found==null){
+				continue;
+			}
+			written++;
+
+			exporter.start(parser.toSugar(structure));
+			Assert.assertEquals(structure.toString(), exporter.getHashCode(), found);
+			Assert.assertEquals(structure.toString(), found, parser.toGlycoCTCondensed(structure));
+		}
+		Assert.assertTrue(written+" of "+structures.size(), written>=structures.size()*9/10);
+	}
+
+	/**
+	 * Append a random saccharide with its linkage to the parent and a random
+	 * subtree.
+	 */
+	private static void appendRandomSaccharide(StringBuilder sb, Random random, int depth){
+		String[] saccharide=SACCHARIDES[random.nextInt(SACCHARIDES.length)];
+		sb.append("abab?".charAt(random.nextInt(5)));
+		sb.append(saccharide[2]).append(saccharide[1]).append('-').append(saccharide[0]).append(",p");
+
+		// the children on distinct positions, possibly unknown
+		List<Character> positions=new ArrayList<Character>();
+		for(char c : saccharide[3].toCharArray()){
+			positions.add(c);
+		}
+		Collections.shuffle(positions, random);
+		int children=(depth<5) ? random.nextInt(Math.min(3, positions.size())+1) : 0;
+		List<String> subtrees=new ArrayList<String>();
+		for(int i=0;i<children;i++){
+			char position=(random.nextInt(8)==0) ? '?' : positions.get(i);
+			StringBuilder child=new StringBuilder("--").append(position);
+			if(random.nextInt(5)==0){
+				child.append("?1").append(SUBSTITUENTS[random.nextInt(SUBSTITUENTS.length)]);
+			}else{
+				appendRandomSaccharide(child, random, depth+1);
+			}
+			subtrees.add(child.toString());
+		}
+
+		// all the children but the last are branches, the parentheses are
+		// opened together as in ((--a)--b)--c
+		for(int i=1;i<subtrees.size();i++){
+			sb.append('(');
+		}
+		for(int i=0;i<subtrees.size();i++){
+			sb.append(subtrees.get(i));
+			if(i<subtrees.size()-1){
+				sb.append(')');
+			}
+		}
+	}
+
+	private static void assumeMolecularFramework(){
+		try{
+			Class.forName("org.eurocarbdb.MolecularFramework.io.GlycoCT.SugarExporterGlycoCTCondensed");
+			Class.forName("org.eurocarbdb.resourcesdb.io.MonosaccharideConverter");
+		}catch(Throwable e){
+			Assume.assumeNoException(e);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.IonCloud;
+import org.eurocarbdb.application.glycanbuilder.IsotopeCalculator;
+import org.eurocarbdb.application.glycanbuilder.IsotopeEnvelope;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Molecule;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class IsotopeCalculatorTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	// natural abundances of /conf/isotopes
+	private static final double C13=0.0107/0.9893;
+	private static final double H2=0.000115/0.999885;
+	private static final double O17=0.00038/0.99757;
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testGlucose() throws Exception{
+		IsotopeEnvelope envelope=new IsotopeCalculator().computeEnvelope(new Molecule("C6H12O6"), 0);
+		Assert.assertEquals(180.063388, envelope.getMZ(0), 1e-6);
+		Assert.assertEquals(1., envelope.getIntensity(0), 0.);
+		Assert.assertEquals(0, envelope.getMostAbundantPeak());
+
+		// a single heavier isotope: 6.86% for glucose
+		double m1=6*C13+12*H2+6*O17;
+		Assert.assertEquals(m1, envelope.getIntensity(1), 1e-9);
+		Assert.assertEquals(180.063388+1., envelope.getMZ(1), 0.01);
+	}
+
+	@Test
+	public void testLargeMolecule() throws Exception{
+		// the M+1 peak becomes the most abundant around 90 carbons
+		IsotopeEnvelope envelope=new IsotopeCalculator().computeEnvelope(new Molecule("C120H200O100"), 0);
+		Assert.assertEquals(120*C13+200*H2+100*O17, envelope.getIntensity(1)/envelope.getIntensity(0), 1e-9);
+		Assert.assertEquals(1, envelope.getMostAbundantPeak());
+	}
+
+	@Test
+	public void testMonoisotopicSameAsGlycan() throws Exception{
+		IsotopeCalculator calculator=new IsotopeCalculator();
+		for(String str : STRUCTURES){
+			for(String ions : new String[]{ "Na", "2H", "H,Na", "-H" }){
+				Glycan structure=Glycan.fromString(str);
+				MassOptions mass_opt=structure.getMassOptions().clone();
+				mass_opt.ION_CLOUD=new IonCloud(ions);
+				structure.setMassOptions(mass_opt);
+
+				IsotopeEnvelope envelope=calculator.computeEnvelope(structure);
+				Assert.assertEquals(str+" "+ions, structure.computeMZ(), envelope.getMZ(0), 1e-6);
+			}
+		}
+	}
+}
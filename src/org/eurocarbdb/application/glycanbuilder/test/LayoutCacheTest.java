@@ -0,0 +1,165 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eurocarbdb.application.glycanbuilder.BBoxManager;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanRendererAWT;
+import org.eurocarbdb.application.glycanbuilder.GraphicOptions;
+import org.eurocarbdb.application.glycanbuilder.LayoutCache;
+import org.eurocarbdb.application.glycanbuilder.PositionManager;
+import org.eurocarbdb.application.glycanbuilder.ResAngle;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.ResiduePlacement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class LayoutCacheTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4b1D-Gal,p}--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_2^5--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	private GlycanRendererAWT renderer;
+	private List<Glycan> structures;
+	private LayoutCache cache;
+	private PositionManager posManager;
+	private BBoxManager bboxManager;
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Before
+	public void createCanvas(){
+		renderer=new GlycanRendererAWT();
+		structures=new ArrayList<Glycan>();
+		for(String str : STRUCTURES){
+			structures.add(Glycan.fromString(str));
+		}
+		cache=new LayoutCache();
+		posManager=new PositionManager();
+		bboxManager=new BBoxManager();
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testUnchanged(){
+		assertSameAsFull();
+		Assert.assertEquals(STRUCTURES.length, cache.size());
+	}
+
+	@Test
+	public void testEdit(){
+		Residue r=structures.get(1).getRoot().firstChild();
+		r.setType(ResidueDictionary.findResidueType("Glc"));
+		assertSameAsFull();
+
+		// the anomeric state is part of the linkage text
+		structures.get(4).getRoot().firstChild().setAnomericState('a');
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testAddition() throws Exception{
+		Residue r=structures.get(0).getRoot().firstChild().firstChild();
+		r.addChild(ResidueDictionary.newResidue("Fuc"), '3');
+		assertSameAsFull();
+
+		structures.add(1, Glycan.fromString(STRUCTURES[1]));
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testRemoval(){
+		Glycan structure=structures.get(1);
+		Residue leaf=structure.getRoot().firstChild();
+		while(leaf.hasChildren()){
+			leaf=leaf.lastChild();
+		}
+		Assert.assertTrue(structure.removeResidue(leaf));
+		assertSameAsFull();
+
+		structures.remove(0);
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testMoveBetweenStructures(){
+		// a subtree moved from a structure to another is laid out again in both
+		Residue moved=structures.get(0).getRoot().firstChild().firstChild().firstChild();
+		Assert.assertTrue(structures.get(0).removeResidue(moved));
+		structures.get(4).getRoot().firstChild().lastChild().addChild(moved);
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testPreferredPlacement(){
+		Residue r=structures.get(0).getRoot().firstChild().firstChild();
+		r.setPreferredPlacement(new ResiduePlacement(new ResAngle(90), false, false));
+		assertSameAsFull();
+
+		r.resetPreferredPlacement();
+		assertSameAsFull();
+	}
+
+	@Test
+	public void testOptions(){
+		GraphicOptions opt=renderer.getGraphicOptions();
+		opt.ORIENTATION=GraphicOptions.TB;
+		assertSameAsFull();
+
+		opt.NODE_SIZE=opt.NODE_SIZE*2;
+		assertSameAsFull();
+
+		opt.NOTATION=GraphicOptions.NOTATION_CFGBW;
+		assertSameAsFull();
+
+		// the margins only move the structures
+		opt.MARGIN_TOP=opt.MARGIN_TOP+7;
+		opt.STRUCTURES_SPACE=opt.STRUCTURES_SPACE+3;
+		assertSameAsFull();
+	}
+
+	/**
+	 * Check that the layout reusing the cache is the same as the one computed
+	 * from scratch, with the masses shown.
+	 */
+	private void assertSameAsFull(){
+		Rectangle found=renderer.computeBoundingBoxes(structures, true, false, posManager, bboxManager, cache);
+
+		PositionManager fullPosManager=new PositionManager();
+		BBoxManager fullBBoxManager=new BBoxManager();
+		Rectangle expected=renderer.computeBoundingBoxes(structures, true, false, fullPosManager, fullBBoxManager);
+
+		Assert.assertEquals(expected, found);
+		Assert.assertEquals(describe(fullPosManager, fullBBoxManager), describe(posManager, bboxManager));
+		Assert.assertEquals(structures.size(), cache.size());
+	}
+
+	private List<String> describe(PositionManager pm, BBoxManager bm){
+		List<String> ret=new ArrayList<String>();
+		for(Glycan structure : structures){
+			List<Residue> residues=new ArrayList<Residue>(structure.getAllResidues());
+			if(structure.getBracket()!=null){
+				residues.add(structure.getBracket());
+			}
+			for(Residue r : residues){
+				ret.add(r.getTypeName()+" "+bm.getParent(r)+" "+bm.getCurrent(r)+" "+bm.getBorder(r)+" "+bm.getComplete(r)+" "+bm.getSupport(r)
+						+" "+pm.getOrientation(r)+" "+pm.getRotation(r)+" "+pm.getRelativePosition(r)+" "+pm.getAbsolutePosition(r)
+						+" "+pm.isOnBorder(r)+" "+pm.isSticky(r));
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,113 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.IonCloud;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the mass and m/z cached by a structure are computed again after
+ * each change of the structure or of its mass options. The expected values
+ * are computed on a new structure parsed from the string of the modified one.
+ */
+public class MassCacheTest {
+	private static final String STRUCTURE="freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p)--6a1D-Man,p--2b1D-GlcNAc,p$MONO,perMe,Na,0,freeEnd";
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+	}
+
+	@Test
+	public void testAddChild() throws Exception{
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		Residue leaf=structure.getRoot().firstChild().firstChild();
+		leaf.addChild(ResidueDictionary.newResidue("Gal"), '4');
+		assertNotStale(structure, mz);
+		mz=structure.computeMZ();
+
+		structure.removeResidue(leaf.firstChild());
+		assertNotStale(structure, mz);
+	}
+
+	@Test
+	public void testSetType(){
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		structure.getRoot().firstChild().setType(ResidueDictionary.findResidueType("Glc"));
+		assertNotStale(structure, mz);
+	}
+
+	@Test
+	public void testSetMassOptions(){
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		MassOptions mass_opt=structure.getMassOptions().clone();
+		mass_opt.setDerivatization(MassOptions.PERACETYLATED);
+		structure.setMassOptions(mass_opt);
+		assertNotStale(structure, mz);
+		mz=structure.computeMZ();
+
+		mass_opt=structure.getMassOptions().clone();
+		mass_opt.ION_CLOUD=new IonCloud("2H");
+		structure.setMassOptions(mass_opt);
+		assertNotStale(structure, mz);
+	}
+
+	@Test
+	public void testDerivatizationInPlace(){
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		structure.getMassOptions().DERIVATIZATION=MassOptions.NO_DERIVATIZATION;
+		assertNotStale(structure, mz);
+	}
+
+	@Test
+	public void testIonCloudInPlace(){
+		// the charges are modified without replacing the cloud, only its version changes
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		structure.getMassOptions().ION_CLOUD.set("Na", 2);
+		assertNotStale(structure, mz);
+		mz=structure.computeMZ();
+
+		structure.getMassOptions().ION_CLOUD.clear();
+		structure.getMassOptions().ION_CLOUD.add("H", 1);
+		assertNotStale(structure, mz);
+		mz=structure.computeMZ();
+
+		structure.getMassOptions().NEUTRAL_EXCHANGES.add("Na", 1);
+		assertNotStale(structure, mz);
+	}
+
+	@Test
+	public void testIonCloudReplaced(){
+		Glycan structure=cached();
+		double mz=structure.computeMZ();
+		structure.getMassOptions().ION_CLOUD=new IonCloud("K");
+		assertNotStale(structure, mz);
+	}
+
+	private static Glycan cached(){
+		Glycan structure=Glycan.fromString(STRUCTURE);
+		structure.computeMass();
+		structure.computeMZ();
+		return structure;
+	}
+
+	private static void assertNotStale(Glycan structure, double old_mz){
+		Glycan fresh=Glycan.fromString(structure.toString());
+		Assert.assertTrue(structure.toString(), fresh.computeMZ()!=old_mz);
+		Assert.assertEquals(structure.toString(), fresh.computeMass(), structure.computeMass(), 0.);
+		Assert.assertEquals(structure.toString(), fresh.computeMZ(), structure.computeMZ(), 0.);
+		// twice, from the cache
+		Assert.assertEquals(fresh.computeMZ(), structure.computeMZ(), 0.);
+		Assert.assertEquals(fresh.computeMass(), structure.computeMass(), 0.);
+	}
+}
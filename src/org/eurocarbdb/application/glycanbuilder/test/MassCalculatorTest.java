@@ -0,0 +1,69 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.lang.reflect.Method;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class MassCalculatorTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4[--4b1D-Gal,p--3]_3^3--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p--4b1D-Gal,p}--?a1D-Man,p$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	private static Method recursive_mass;
+
+	@BeforeClass
+	public static void loadDictionaries() throws Exception{
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+
+		// the tree walk used before MassCalculator, still used for the repeating units
+		recursive_mass=Glycan.class.getDeclaredMethod("computeMass", Residue.class, double.class);
+		recursive_mass.setAccessible(true);
+	}
+
+	@Test
+	public void testSameAsRecursive() throws Exception{
+		for(String str : STRUCTURES){
+			for(String derivatization : MassOptions.DERIVATIZATIONS){
+				Glycan structure=Glycan.fromString(str);
+				MassOptions mass_opt=structure.getMassOptions().clone();
+				mass_opt.setDerivatization(derivatization);
+				structure.setMassOptions(mass_opt);
+				assertSameMass(str+" "+derivatization, structure);
+			}
+		}
+	}
+
+	@Test
+	public void testFragmentsSameAsRecursive() throws Exception{
+		// cleavages, ring fragments and labile cleavages
+		Fragmenter fragmenter=new Fragmenter();
+		for(String str : STRUCTURES){
+			for(FragmentEntry entry : fragmenter.computeAllFragments(Glycan.fromString(str)).getFragments()){
+				assertSameMass(entry.structure, entry.fragment);
+			}
+		}
+	}
+
+	private static void assertSameMass(String message, Glycan structure) throws Exception{
+		double expected=(Double)recursive_mass.invoke(structure, structure.getRoot(), 1.)
+			+ (Double)recursive_mass.invoke(structure, structure.getBracket(), 1.);
+		Assert.assertEquals(message, expected, structure.computeMass(), 0.);
+	}
+}
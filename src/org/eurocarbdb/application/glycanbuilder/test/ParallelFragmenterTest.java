@@ -0,0 +1,74 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.FragmentCollection;
+import org.eurocarbdb.application.glycanbuilder.FragmentEntry;
+import org.eurocarbdb.application.glycanbuilder.Fragmenter;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class ParallelFragmenterTest {
+	private static final String[] STRUCTURES = {
+		"freeEnd--?b1D-GlcNAc,p--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p--3a2D-NeuAc,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p(--4b1D-GlcNAc,p--4b1D-Man,p(--3a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1D-Man,p--2b1D-GlcNAc,p--4b1D-Gal,p)--6a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-Glc,p(--?a1L-Fuc,p@270s)--?a1L-Fuc,p$MONO,perMe,Na,0,freeEnd",
+		"freeEnd--?b1D-GlcNAc,p--4b1D-Gal,p(--3a1D-Gal,p--??1S)--6?1S$MONO,perMe,Na,0,freeEnd",
+		"redEnd--?b1D-Gal,p--3b1D-GlcNAc,p--4b1D-Gal,p$MONO,Und,H,0,redEnd"
+	};
+
+	@BeforeClass
+	public static void loadDictionaries(){
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+	}
+
+	@Test
+	public void testSameAsSerial(){
+		Fragmenter serial=new Fragmenter();
+		Fragmenter parallel=new Fragmenter();
+		parallel.setParallelFragmentation(true);
+		parallel.setNoThreads(4);
+		for(String str : STRUCTURES){
+			Glycan structure=Glycan.fromString(str);
+			Assert.assertEquals(str, describe(serial.computeAllFragments(structure)), describe(parallel.computeAllFragments(structure)));
+		}
+	}
+
+	@Test
+	public void testSharedExecutor(){
+		Fragmenter serial=new Fragmenter();
+		serial.setMaxNoCleavages(3);
+		Fragmenter parallel=new Fragmenter();
+		parallel.setMaxNoCleavages(3);
+		parallel.setParallelFragmentation(true);
+
+		ExecutorService executor=Executors.newFixedThreadPool(3);
+		try{
+			parallel.setExecutor(executor);
+			for(String str : STRUCTURES){
+				Glycan structure=Glycan.fromString(str);
+				Assert.assertEquals(str, describe(serial.computeAllFragments(structure)), describe(parallel.computeAllFragments(structure)));
+			}
+		}
+		finally{
+			executor.shutdown();
+		}
+	}
+
+	private static List<String> describe(FragmentCollection fragments){
+		List<String> ret=new ArrayList<String>();
+		for(FragmentEntry fe : fragments.getFragments()){
+			ret.add(fe.name+" "+fe.mz_ratio+" "+fe.fragment.toString());
+		}
+		return ret;
+	}
+}
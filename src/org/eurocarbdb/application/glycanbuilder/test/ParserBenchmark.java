@@ -0,0 +1,245 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.CoreType;
+import org.eurocarbdb.application.glycanbuilder.CrossRingFragmentDictionary;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanFormat;
+import org.eurocarbdb.application.glycanbuilder.GlycanFormatDetector;
+import org.eurocarbdb.application.glycanbuilder.GlycanParser;
+import org.eurocarbdb.application.glycanbuilder.GlycanParserFactory;
+import org.eurocarbdb.application.glycanbuilder.MassOptions;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.TerminalType;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Measure;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Operation;
+
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.number;
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.quote;
+
+/**
+ * Measure the read and write throughput of the parsers returned by
+ * {@link GlycanParserFactory} for all the supported formats. The corpus is
+ * made by the core structures extended with each terminal motif on all their
+ * leaves. The time needed to detect the format of the encoded structures is
+ * also measured for the formats that can be read. The results are written in
+ * JSON format.
+ *
+ * Usage: ParserBenchmark [output file] [milliseconds per measurement]
+ *
+ * @see BenchmarkUtils
+ */
+public class ParserBenchmark {
+	private static final long DEFAULT_TIME=2000;
+
+	private final List<Glycan> corpus;
+	private final long time;
+	private final StringBuilder results=new StringBuilder();
+
+	public ParserBenchmark(List<Glycan> corpus, long time){
+		this.corpus=corpus;
+		this.time=time;
+	}
+
+	public static void main(String[] args) throws Exception{
+		String output=(args.length>0) ? args[0] : "benchmark.json";
+		long time=(args.length>1) ? Long.parseLong(args[1]) : DEFAULT_TIME;
+
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+		CrossRingFragmentDictionary.loadDictionary("/conf/cross_ring_fragment_types");
+
+		ParserBenchmark benchmark=new ParserBenchmark(createCorpus(), time);
+		benchmark.runAll();
+
+		Writer out=new FileWriter(output);
+		try{
+			benchmark.writeJSON(out);
+		}finally{
+			out.close();
+		}
+		System.out.println("Results written to "+output);
+	}
+
+	/**
+	 * Return the core structures and the cores extended with each terminal.
+	 */
+	public static List<Glycan> createCorpus() throws Exception{
+		MassOptions mass_opt=new MassOptions();
+		List<Glycan> ret=new ArrayList<Glycan>();
+		for(CoreType core : CoreDictionary.getCores()){
+			ret.add(CoreDictionary.newStructure(core.getName(), mass_opt));
+			for(TerminalType terminal : TerminalDictionary.getTerminals()){
+				Glycan structure=CoreDictionary.newStructure(core.getName(), mass_opt);
+				for(Residue r : structure.getAllResidues()){
+					if(r.isSaccharide() && !r.hasChildren()){
+						r.addChild(terminal.newTerminal());
+					}
+				}
+				ret.add(structure);
+			}
+		}
+		return ret;
+	}
+
+	public void runAll(){
+		TreeSet<String> read_formats=new TreeSet<String>(GlycanParserFactory.getImportFormats(true).keySet());
+		TreeSet<String> write_formats=new TreeSet<String>(GlycanParserFactory.getExportFormats().keySet());
+		write_formats.add("GWS");
+
+		TreeSet<String> formats=new TreeSet<String>(read_formats);
+		formats.addAll(write_formats);
+		for(String format : formats){
+			GlycanParser parser;
+			try{
+				parser=GlycanParserFactory.getParserForId(format);
+			}catch(Exception e){
+				addResult(format, "read", Double.NaN, -1, corpus.size(), e.getMessage());
+				continue;
+			}
+
+			// the encoded structures are needed to measure the reading
+			List<String> encoded=null;
+			if(write_formats.contains(format)){
+				encoded=benchmarkWrite(format, parser);
+			}
+			if(read_formats.contains(format)){
+				if(encoded==null || encoded.isEmpty()){
+					addResult(format, "read", Double.NaN, -1, 0, "no encoded structures");
+				}else{
+					benchmarkDetect(format, encoded);
+					benchmarkRead(format, parser, encoded);
+				}
+			}
+		}
+	}
+
+	private List<String> benchmarkWrite(String format, GlycanParser parser){
+		final List<Glycan> writable=new ArrayList<Glycan>();
+		List<String> encoded=new ArrayList<String>();
+		int failures=0;
+		for(Glycan structure : corpus){
+			try{
+				String str=parser.writeGlycan(structure);
+				if(str!=null && str.length()>0){
+					writable.add(structure);
+					encoded.add(str);
+				}else{
+					failures++;
+				}
+			}catch(Exception e){
+				failures++;
+			}
+		}
+
+		if(writable.isEmpty()){
+			addResult(format, "write", Double.NaN, -1, failures, "no writable structures");
+			return encoded;
+		}
+
+		final GlycanParser p=parser;
+		Measure m=BenchmarkUtils.measure(new Operation(){
+			public int run() throws Exception{
+				for(Glycan structure : writable){
+					p.writeGlycan(structure);
+				}
+				return writable.size();
+			}
+		}, time);
+		addResult(format, "write", m.ops_per_second, m.bytes_per_op, failures, m.error);
+		return encoded;
+	}
+
+	private void benchmarkRead(String format, GlycanParser parser, List<String> encoded){
+		final MassOptions mass_opt=new MassOptions();
+		final List<String> inputs=new ArrayList<String>();
+		int failures=0;
+		for(String str : encoded){
+			try{
+				if(parser.readGlycan(str, mass_opt)!=null){
+					inputs.add(str);
+				}else{
+					failures++;
+				}
+			}catch(Exception e){
+				failures++;
+			}
+		}
+		if(inputs.isEmpty()){
+			addResult(format, "read", Double.NaN, -1, failures, "no readable structures");
+			return;
+		}
+
+		final GlycanParser p=parser;
+		Measure m=BenchmarkUtils.measure(new Operation(){
+			public int run() throws Exception{
+				for(String str : inputs){
+					p.readGlycan(str, mass_opt);
+				}
+				return inputs.size();
+			}
+		}, time);
+		addResult(format, "read", m.ops_per_second, m.bytes_per_op, failures, m.error);
+	}
+
+	private void benchmarkDetect(String format, final List<String> encoded){
+		int failures=0;
+		for(String str : encoded){
+			GlycanFormat detected=GlycanFormatDetector.detect(str);
+			if(detected==null || !detected.toString().equalsIgnoreCase(format)){
+				failures++;
+			}
+		}
+
+		Measure m=BenchmarkUtils.measure(new Operation(){
+			public int run() throws Exception{
+				for(String str : encoded){
+					GlycanFormatDetector.detect(str);
+				}
+				return encoded.size();
+			}
+		}, time);
+		addResult(format, "detect", m.ops_per_second, m.bytes_per_op, failures, m.error);
+	}
+
+	//----------------
+	// output
+
+	private void addResult(String format, String operation, double ops_per_second, double bytes_per_op, int failures, String error){
+		System.out.println(String.format(Locale.US, "%-30s %-6s %12.1f ops/s %12.1f B/op %6d failures%s",
+				format, operation, ops_per_second, bytes_per_op, failures, (error!=null) ? " "+error : ""));
+
+		if(results.length()>0){
+			results.append(",\n");
+		}
+		results.append("    {\"format\": ").append(quote(format));
+		results.append(", \"operation\": ").append(quote(operation));
+		results.append(", \"ops_per_second\": ").append(number(ops_per_second, "%.1f"));
+		results.append(", \"bytes_per_op\": ").append(number(bytes_per_op, "%.1f"));
+		results.append(", \"failures\": ").append(failures);
+		if(error!=null){
+			results.append(", \"error\": ").append(quote(error));
+		}
+		results.append('}');
+	}
+
+	public void writeJSON(Writer out) throws IOException{
+		Map<String, Object> properties=new LinkedHashMap<String, Object>();
+		properties.put("corpus_size", corpus.size());
+		properties.put("measurement_ms", time);
+		BenchmarkUtils.writeJSON(out, properties, results);
+	}
+}
@@ -0,0 +1,266 @@
+package org.eurocarbdb.application.glycanbuilder.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eurocarbdb.application.glycanbuilder.BBoxManager;
+import org.eurocarbdb.application.glycanbuilder.CoreDictionary;
+import org.eurocarbdb.application.glycanbuilder.DefaultPaintable;
+import org.eurocarbdb.application.glycanbuilder.Glycan;
+import org.eurocarbdb.application.glycanbuilder.GlycanRendererAWT;
+import org.eurocarbdb.application.glycanbuilder.LayoutCache;
+import org.eurocarbdb.application.glycanbuilder.Linkage;
+import org.eurocarbdb.application.glycanbuilder.PositionManager;
+import org.eurocarbdb.application.glycanbuilder.Residue;
+import org.eurocarbdb.application.glycanbuilder.ResidueDictionary;
+import org.eurocarbdb.application.glycanbuilder.ResidueRenderer;
+import org.eurocarbdb.application.glycanbuilder.TerminalDictionary;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Measure;
+import org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.Operation;
+
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.number;
+import static org.eurocarbdb.application.glycanbuilder.test.BenchmarkUtils.quote;
+
+/**
+ * Measure the time and the memory allocated to paint a canvas holding a large
+ * number of residues. The canvas is filled with copies of the structures used
+ * by {@link ParserBenchmark} until the requested number of residues is
+ * reached, and the layout is computed once. Each frame paints all the
+ * structures on an image of the size of a window, as done by the canvas when
+ * it is repainted, and the visible part of the canvas is painted while
+ * scrolling it; the residues alone are also painted to separate their
+ * garbage from the one of the linkages. The layout of the whole canvas is
+ * measured both when it is computed from scratch and when a single structure
+ * is modified between two frames, as done when editing. The residues under
+ * the mouse and inside a selection rectangle are searched as done when the
+ * mouse is moved or dragged over the canvas. The allocated bytes
+ * are reported only if the virtual machine can measure them. The results are
+ * written in JSON format.
+ *
+ * Usage: RenderBenchmark [output file] [milliseconds per measurement]
+ * [number of residues]
+ */
+public class RenderBenchmark {
+	private static final long DEFAULT_TIME=2000;
+	private static final int DEFAULT_RESIDUES=10000;
+	private static final int WIDTH=1024;
+	private static final int HEIGHT=768;
+
+	private final List<Glycan> structures;
+	private final List<Residue> residues=new ArrayList<Residue>();
+	private final long time;
+	private final GlycanRendererAWT renderer=new GlycanRendererAWT();
+	private final PositionManager posManager=new PositionManager();
+	private final BBoxManager bboxManager=new BBoxManager();
+	private final int canvas_height;
+	private final Graphics2D g2d;
+	private final StringBuilder results=new StringBuilder();
+
+	public RenderBenchmark(List<Glycan> structures, long time){
+		this.structures=structures;
+		this.time=time;
+
+		canvas_height=renderer.computeBoundingBoxes(structures, false, false, posManager, bboxManager).height;
+		for(Glycan structure : structures){
+			for(Residue r : structure.getAllResidues()){
+				if(bboxManager.getCurrent(r)!=null){
+					residues.add(r);
+				}
+			}
+		}
+
+		BufferedImage img=new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		g2d=img.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2d.setBackground(Color.white);
+	}
+
+	public static void main(String[] args) throws Exception{
+		String output=(args.length>0) ? args[0] : "render-benchmark.json";
+		long time=(args.length>1) ? Long.parseLong(args[1]) : DEFAULT_TIME;
+		int no_residues=(args.length>2) ? Integer.parseInt(args[2]) : DEFAULT_RESIDUES;
+
+		ResidueDictionary.loadDictionary("/conf/residue_types");
+		TerminalDictionary.loadDictionary("/conf/terminal_types");
+		CoreDictionary.loadDictionary("/conf/core_types");
+
+		RenderBenchmark benchmark=new RenderBenchmark(createCanvas(no_residues), time);
+		benchmark.runAll();
+
+		Writer out=new FileWriter(output);
+		try{
+			benchmark.writeJSON(out);
+		}finally{
+			out.close();
+		}
+		System.out.println("Results written to "+output);
+	}
+
+	/**
+	 * Return copies of the benchmark corpus holding at least the given number
+	 * of residues.
+	 */
+	public static List<Glycan> createCanvas(int no_residues) throws Exception{
+		List<Glycan> corpus=ParserBenchmark.createCorpus();
+		List<Glycan> ret=new ArrayList<Glycan>();
+		int count=0;
+		for(int i=0;count<no_residues;i=(i+1)%corpus.size()){
+			Glycan structure=corpus.get(i).clone();
+			count+=structure.getAllResidues().size();
+			ret.add(structure);
+		}
+		return ret;
+	}
+
+	public void runAll(){
+		final HashSet<Residue> no_residues=new HashSet<Residue>();
+		final HashSet<Linkage> no_linkages=new HashSet<Linkage>();
+		final HashSet<Residue> all_residues=new HashSet<Residue>(residues);
+
+		addResult("frame", measure(new Frame(){
+			public void paint(){
+				g2d.clearRect(0, 0, WIDTH, HEIGHT);
+				for(Glycan structure : structures){
+					renderer.paint(new DefaultPaintable(g2d), structure, no_residues, no_linkages, false, false, posManager, bboxManager);
+				}
+			}
+		}));
+		addResult("frame_selected", measure(new Frame(){
+			public void paint(){
+				g2d.clearRect(0, 0, WIDTH, HEIGHT);
+				for(Glycan structure : structures){
+					renderer.paint(new DefaultPaintable(g2d), structure, all_residues, no_linkages, false, false, posManager, bboxManager);
+				}
+			}
+		}));
+
+		addResult("scroll", measure(new Frame(){
+			private int top=0;
+
+			public void paint(){
+				// paint the visible part of the canvas as done by the canvas
+				// when it is scrolled
+				Rectangle view=new Rectangle(0, top, WIDTH, HEIGHT);
+				g2d.clearRect(0, 0, WIDTH, HEIGHT);
+				g2d.translate(0, -top);
+				g2d.setClip(view);
+				for(Glycan structure : structures){
+					if(renderer.isVisible(structure, view, false, false, bboxManager)){
+						renderer.paint(new DefaultPaintable(g2d), structure, no_residues, no_linkages, false, false, posManager, bboxManager);
+					}
+				}
+				g2d.setClip(null);
+				g2d.translate(0, top);
+				top=(top+HEIGHT/4)%Math.max(1, canvas_height-HEIGHT);
+			}
+		}));
+
+		final ResidueRenderer residue_renderer=renderer.getResidueRenderer();
+		final DefaultPaintable paintable=new DefaultPaintable(g2d);
+		addResult("residues", measure(new Frame(){
+			public void paint(){
+				g2d.clearRect(0, 0, WIDTH, HEIGHT);
+				for(Residue r : residues){
+					Rectangle cur_bbox=bboxManager.getCurrent(r);
+					residue_renderer.paint(paintable, r, false, true, posManager.isOnBorder(r), bboxManager.getParent(r), cur_bbox,
+							bboxManager.getSupport(r), posManager.getOrientation(r));
+				}
+			}
+		}));
+
+		addResult("hit_test", measure(new Frame(){
+			private int next=0;
+
+			public void paint(){
+				// move the mouse over a different residue at each frame and
+				// drag a selection rectangle from it
+				Rectangle cur_bbox=bboxManager.getCurrent(residues.get(next));
+				Point p=new Point(cur_bbox.x+cur_bbox.width/2, cur_bbox.y+cur_bbox.height/2);
+				bboxManager.getNodeAtPoint(p);
+				bboxManager.getNodesInside(new Rectangle(p.x, p.y, WIDTH/4, HEIGHT/4));
+				next=(next+1)%residues.size();
+			}
+		}));
+
+		final PositionManager layout_pos=new PositionManager();
+		final BBoxManager layout_bbox=new BBoxManager();
+		addResult("layout", measure(new Frame(){
+			public void paint(){
+				renderer.computeBoundingBoxes(structures, false, false, layout_pos, layout_bbox);
+			}
+		}));
+		final LayoutCache layout_cache=new LayoutCache();
+		addResult("layout_edit", measure(new Frame(){
+			private int next=0;
+
+			public void paint(){
+				// modify a different structure at each frame
+				structures.get(next).getRoot().changed();
+				next=(next+1)%structures.size();
+				renderer.computeBoundingBoxes(structures, false, false, layout_pos, layout_bbox, layout_cache);
+			}
+		}));
+	}
+
+	//----------------
+	// measurement
+
+	/**
+	 * A frame, counted as a single operation.
+	 */
+	private static abstract class Frame implements Operation {
+		public int run() throws Exception{
+			paint();
+			return 1;
+		}
+
+		public abstract void paint() throws Exception;
+	}
+
+	private Measure measure(Frame frame){
+		return BenchmarkUtils.measure(frame, time);
+	}
+
+	//----------------
+	// output
+
+	private void addResult(String operation, Measure m){
+		double ms_per_frame=1e3/m.ops_per_second;
+		double bytes_per_residue=(m.bytes_per_op>=0) ? m.bytes_per_op/residues.size() : -1;
+		System.out.println(String.format(Locale.US, "%-15s %10.2f ms/frame %14.1f B/frame %10.1f B/residue%s",
+				operation, ms_per_frame, m.bytes_per_op, bytes_per_residue, (m.error!=null) ? " "+m.error : ""));
+
+		if(results.length()>0){
+			results.append(",\n");
+		}
+		results.append("    {\"operation\": ").append(quote(operation));
+		results.append(", \"ms_per_frame\": ").append(number(ms_per_frame, "%.3f"));
+		results.append(", \"bytes_per_frame\": ").append(number(m.bytes_per_op, "%.1f"));
+		results.append(", \"bytes_per_residue\": ").append(number(bytes_per_residue, "%.1f"));
+		if(m.error!=null){
+			results.append(", \"error\": ").append(quote(m.error));
+		}
+		results.append('}');
+	}
+
+	public void writeJSON(Writer out) throws IOException{
+		Map<String, Object> properties=new LinkedHashMap<String, Object>();
+		properties.put("structures", structures.size());
+		properties.put("residues", residues.size());
+		properties.put("measurement_ms", time);
+		BenchmarkUtils.writeJSON(out, properties, results);
+	}
+}